@@ -0,0 +1,47 @@
+import org.jpaste.pastebin.PastebinLink;
+import org.jpaste.pastebin.PastebinPaste;
+import org.jpaste.pastebin.account.PastebinAccount;
+
+/**
+ * 
+ * Example on how to paste and list pastes without blocking
+ * 
+ * @author Brian B
+ *
+ */
+public class AsyncPasteExample {
+
+	public static void main(String[] args) {
+		String[] credentials = { "YOUR USERNAME HERE", "YOUR PASSWORD HERE" };
+		String developerKey = "INSERT DEVELOPER KEY HERE";
+
+		PastebinAccount account = new PastebinAccount(developerKey, credentials[0], credentials[1]);
+
+		// login, paste and list the account pastes afterwards
+		account.loginAsync()
+				.thenCompose(a -> {
+					PastebinPaste paste = new PastebinPaste(a);
+					paste.setContents("Hello async world");
+					paste.setPasteTitle("My first async jPastebin paste!");
+					return paste.pasteAsync();
+				})
+				.thenCompose(link -> {
+					System.out.println("Pasted: " + link.getLink());
+					return account.getPastesAsync();
+				})
+				.thenAccept(pastes -> {
+					if (pastes == null) {
+						return;
+					}
+					for (PastebinLink paste : pastes) {
+						System.out.println(paste.getLink() + " " + paste.getPaste().getPasteTitle());
+					}
+				})
+				.exceptionally(e -> {
+					System.out.println("Failed: " + e.getCause().getMessage());
+					return null;
+				})
+				.join();
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.jpaste.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ *
+ * Generates responses in the formats pastebin answers with
+ *
+ * @author Brian B
+ *
+ */
+final class Data {
+	private static final String[] FORMATS = { "text", "java", "python",
+			"javascript", "cpp" };
+
+	private Data() {
+	}
+
+	/**
+	 * Generates paste contents with the mix of letters, punctuation and line
+	 * breaks of source code, which needs escaping in a form
+	 */
+	static String contents(int length) {
+		Random random = new Random(length);
+		String symbols = " (){};=+-*/<>&\"'.,:";
+		StringBuilder contents = new StringBuilder(length);
+		while (contents.length() < length) {
+			int kind = random.nextInt(10);
+			if (kind == 0) {
+				contents.append('\n');
+			} else if (kind < 3) {
+				contents.append(symbols.charAt(random.nextInt(symbols.length())));
+			} else {
+				contents.append((char) ('a' + random.nextInt(26)));
+			}
+		}
+		return contents.toString();
+	}
+
+	/**
+	 * Generates a trending or list response
+	 */
+	static byte[] pasteList(int entries) {
+		Random random = new Random(entries);
+		StringBuilder xml = new StringBuilder();
+		for (int i = 0; i < entries; i++) {
+			long date = 1338850060L + i * 61;
+			xml.append("<paste>\r\n<paste_key>").append(key(random))
+					.append("</paste_key>\r\n<paste_date>").append(date)
+					.append("</paste_date>\r\n<paste_title>Paste &amp; title ")
+					.append(i).append("</paste_title>\r\n<paste_size>")
+					.append(random.nextInt(100000))
+					.append("</paste_size>\r\n<paste_expire_date>")
+					.append(i % 2 == 0 ? 0 : date + 3600)
+					.append("</paste_expire_date>\r\n<paste_private>0</paste_private>\r\n")
+					.append("<paste_format_long>None</paste_format_long>\r\n<paste_format_short>")
+					.append(FORMATS[i % FORMATS.length])
+					.append("</paste_format_short>\r\n<paste_url>https://pastebin.com/")
+					.append(key(random)).append("</paste_url>\r\n<paste_hits>")
+					.append(random.nextInt(10000))
+					.append("</paste_hits>\r\n</paste>\r\n");
+		}
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates a scraping API response
+	 */
+	static byte[] scrapeList(int entries) {
+		Random random = new Random(entries);
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < entries; i++) {
+			String key = key(random);
+			long date = 1338850060L + i;
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("\n    {\n        \"scrape_url\": \"https://scrape.pastebin.com/api_scrape_item.php?i=")
+					.append(key)
+					.append("\",\n        \"full_url\": \"https://pastebin.com/")
+					.append(key).append("\",\n        \"date\": \"").append(date)
+					.append("\",\n        \"key\": \"").append(key)
+					.append("\",\n        \"size\": \"")
+					.append(random.nextInt(100000))
+					.append("\",\n        \"expire\": \"")
+					.append(i % 2 == 0 ? 0 : date + 600)
+					.append("\",\n        \"title\": \"Paste ").append(i)
+					.append("\",\n        \"syntax\": \"")
+					.append(FORMATS[i % FORMATS.length])
+					.append("\",\n        \"user\": \"\",\n        \"hits\": \"")
+					.append(random.nextInt(10000)).append("\"\n    }");
+		}
+		return json.append("\n]").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String key(Random random) {
+		String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+		char[] key = new char[8];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(key);
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.jpaste.benchmarks;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jpaste.pastebin.PasteExpireDate;
+import org.jpaste.pastebin.PastebinLink;
+import org.jpaste.pastebin.PastebinPaste;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * Construction of the model objects every parsed paste goes through
+ *
+ * @author Brian B
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+	private static final int[] EXPIRE_SECONDS = { 0, -1, 600, 3600, 86400,
+			604800, 1209600, 2592000 };
+	private URL[] urls;
+	private int index;
+
+	@Setup
+	public void setup() throws MalformedURLException {
+		Random random = new Random(1);
+		urls = new URL[1024];
+		for (int i = 0; i < urls.length; i++) {
+			urls[i] = new URL("https://pastebin.com/" + Data.key(random));
+		}
+	}
+
+	@Benchmark
+	public PastebinLink pastebinLink() {
+		URL url = urls[index++ & (urls.length - 1)];
+		return new PastebinLink(new PastebinPaste(), url, new Date(
+				1338850060000L));
+	}
+
+	@Benchmark
+	public PasteExpireDate expireDate() {
+		return PasteExpireDate.getExpireDate(EXPIRE_SECONDS[index++
+				& (EXPIRE_SECONDS.length - 1)]);
+	}
+
+}
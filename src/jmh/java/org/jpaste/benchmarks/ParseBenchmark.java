@@ -0,0 +1,62 @@
+package org.jpaste.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.jpaste.pastebin.PasteListReader;
+import org.jpaste.pastebin.PastebinLink;
+import org.jpaste.pastebin.ScrapedPasteReader;
+import org.jpaste.pastebin.exceptions.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * Parsing of the paste lists answered by the trends and list options, as
+ * read by <code>getTrending</code> and <code>getPastes</code>, and by the
+ * scraping API, as read by <code>getMostRecent</code>
+ *
+ * @author Brian B
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+	@Param({ "50", "100", "500", "1000" })
+	private int entries;
+	private byte[] pasteList;
+	private byte[] scrapeList;
+
+	@Setup
+	public void setup() {
+		pasteList = Data.pasteList(entries);
+		scrapeList = Data.scrapeList(entries);
+	}
+
+	@Benchmark
+	public PastebinLink[] pasteList() throws ParseException {
+		return new PasteListReader(new ByteArrayInputStream(pasteList),
+				StandardCharsets.UTF_8, null).readAll();
+	}
+
+	@Benchmark
+	public PastebinLink[] scrapeList() throws ParseException {
+		return new ScrapedPasteReader(new ByteArrayInputStream(scrapeList))
+				.readAll();
+	}
+
+}
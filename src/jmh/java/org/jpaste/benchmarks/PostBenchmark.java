@@ -0,0 +1,85 @@
+package org.jpaste.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jpaste.utils.web.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *
+ * Form encoding of paste contents, eagerly with {@link Post#getPost()} and
+ * streamed with {@link Post#writeTo(OutputStream)}
+ *
+ * @author Brian B
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostBenchmark {
+	@Param({ "10240", "1048576", "10485760" })
+	private int size;
+	private String contents;
+
+	@Setup
+	public void setup() {
+		contents = Data.contents(size);
+	}
+
+	@Benchmark
+	public String getPost() {
+		Post post = new Post();
+		post.put("api_dev_key", "0123456789abcdef0123456789abcdef");
+		post.put("api_option", "paste");
+		post.put("api_paste_code", contents);
+		return post.getPost();
+	}
+
+	@Benchmark
+	public void writeTo(Blackhole blackhole) throws IOException {
+		Post post = new Post();
+		post.put("api_dev_key", "0123456789abcdef0123456789abcdef");
+		post.put("api_option", "paste");
+		post.put("api_paste_code", (CharSequence) contents);
+		post.writeTo(new Sink(blackhole));
+	}
+
+	/**
+	 * Consumes the written bytes without keeping them
+	 */
+	private static class Sink extends OutputStream {
+		private final Blackhole blackhole;
+
+		private Sink(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(int b) {
+			blackhole.consume(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			blackhole.consume(b);
+			blackhole.consume(len);
+		}
+	}
+
+}
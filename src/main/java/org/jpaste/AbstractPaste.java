@@ -1,6 +1,10 @@
 package org.jpaste;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import org.jpaste.exceptions.PasteException;
+import org.jpaste.utils.concurrent.Async;
 
 /**
  * 
@@ -56,4 +60,16 @@ public abstract class AbstractPaste<P extends AbstractPasteLink> {
 	 */
 	public abstract P paste() throws PasteException;
 
+	/**
+	 * Pastes this paste asynchronously
+	 * 
+	 * @param executor
+	 *            the executor to run {@link #paste()} on
+	 * @return future paste result, completes exceptionally with a
+	 *         {@link PasteException} if it failed to paste the paste
+	 */
+	public CompletableFuture<P> pasteAsync(Executor executor) {
+		return Async.supply(this::paste, executor);
+	}
+
 }
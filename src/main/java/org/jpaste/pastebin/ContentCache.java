@@ -0,0 +1,536 @@
+package org.jpaste.pastebin;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * A cache of raw paste contents keyed by paste key, bounded in bytes
+ *
+ * <p>
+ * Contents never change once pasted, but pastes expire. An entry expires with
+ * its paste, computed from {@link PastebinLink#getPasteDate()} and
+ * {@link PastebinPaste#getPasteExpireDate()}, and is never served after that.
+ * Contents fetched by key alone, with {@link PastebinLink#getContents(String)},
+ * have no known expiry and are only cached for the default time to live,
+ * which is <code>0</code> unless set.
+ * </p>
+ *
+ * <p>
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window, from
+ * which they move into the main space only if they have been used more often
+ * recently than the entry they would push out, as estimated by a
+ * {@link FrequencySketch}. One-off fetches can't flush out the hot pastes
+ * that way. The main space is split in a probation and a protected segment,
+ * entries used again while on probation are protected.
+ * </p>
+ *
+ * <p>
+ * The weight of an entry estimates its memory, two bytes per character plus
+ * a fixed overhead. Thread safe, operations hold the lock of the cache for
+ * constant time. Set it as the cache of all raw fetches with
+ * {@link Pastebin#setContentCache(ContentCache)}.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class ContentCache {
+	/**
+	 * Expiry of contents whose paste never expires
+	 */
+	public static final long NEVER = Long.MAX_VALUE;
+	/**
+	 * Expiry of contents whose paste expiry is not known
+	 */
+	public static final long UNKNOWN = -1;
+	private static final long ENTRY_OVERHEAD = 96;
+	private static final long SHORTEST_MONTH = TimeUnit.DAYS.toMillis(28);
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+	private final HashMap<String, Node> entries = new HashMap<String, Node>();
+	private final FrequencySketch sketch = new FrequencySketch();
+	private final Segment window = new Segment();
+	private final Segment probation = new Segment();
+	private final Segment protectedSegment = new Segment();
+	private final long maximumBytes;
+	private final long windowBytes;
+	private final long mainBytes;
+	private final long protectedBytes;
+	private long defaultTimeToLive;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+
+	/**
+	 * Creates a new <code>ContentCache</code> instance.
+	 *
+	 * @param maximumBytes
+	 *            the estimated memory all contents may take
+	 */
+	public ContentCache(long maximumBytes) {
+		if (maximumBytes < 100) {
+			throw new IllegalArgumentException(
+					"Maximum bytes must be at least 100: " + maximumBytes);
+		}
+		this.maximumBytes = maximumBytes;
+		this.windowBytes = maximumBytes / 100;
+		this.mainBytes = maximumBytes - windowBytes;
+		this.protectedBytes = mainBytes / 5 * 4;
+	}
+
+	/**
+	 * Gets the estimated memory all contents may take
+	 *
+	 * @return bytes
+	 */
+	public long getMaximumBytes() {
+		return maximumBytes;
+	}
+
+	/**
+	 * Sets how long contents with an unknown expiry are cached
+	 *
+	 * <p>
+	 * A paste fetched by key alone may have expired up to this long before it
+	 * is served from the cache.
+	 * </p>
+	 *
+	 * @param defaultTimeToLive
+	 *            time in milliseconds, <code>0</code> to not cache them, the
+	 *            default
+	 */
+	public synchronized void setDefaultTimeToLive(long defaultTimeToLive) {
+		if (defaultTimeToLive < 0) {
+			throw new IllegalArgumentException(
+					"Time to live can't be negative: " + defaultTimeToLive);
+		}
+		this.defaultTimeToLive = defaultTimeToLive;
+	}
+
+	/**
+	 * Gets how long contents with an unknown expiry are cached
+	 *
+	 * @return time in milliseconds, <code>0</code> if they are not cached
+	 */
+	public synchronized long getDefaultTimeToLive() {
+		return defaultTimeToLive;
+	}
+
+	/**
+	 * Gets when the contents of a link expire
+	 *
+	 * <p>
+	 * A month is taken as 28 days from the paste date, the shortest month, so
+	 * contents are never kept past the expiry of their paste.
+	 * </p>
+	 *
+	 * @param link
+	 *            the link
+	 * @return time in milliseconds since the epoch, {@link #NEVER} or
+	 *         {@link #UNKNOWN}
+	 */
+	public static long expiresAt(PastebinLink link) {
+		Date pasteDate = link.getPasteDate();
+		PasteExpireDate expireDate = link.getPaste() == null ? null : link
+				.getPaste().getPasteExpireDate();
+		if (expireDate == PasteExpireDate.NEVER) {
+			return NEVER;
+		}
+		if (expireDate == null || pasteDate == null) {
+			return UNKNOWN;
+		}
+		if (expireDate == PasteExpireDate.ONE_MONTH) {
+			return pasteDate.getTime() + SHORTEST_MONTH;
+		}
+		return pasteDate.getTime()
+				+ TimeUnit.SECONDS.toMillis(expireDate.getTimeSeconds());
+	}
+
+	/**
+	 * Gets the contents of a paste
+	 *
+	 * @param key
+	 *            the paste key
+	 * @return the contents, <code>null</code> if they are not cached or have
+	 *         expired
+	 */
+	public synchronized String get(String key) {
+		sketch.increment(key);
+		Node node = entries.get(key);
+		if (node == null) {
+			misses++;
+			return null;
+		}
+		if (node.expiresAt <= System.currentTimeMillis()) {
+			remove(node);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		onAccess(node);
+		return node.contents;
+	}
+
+	/**
+	 * Caches the contents of a paste with an unknown expiry
+	 *
+	 * @param key
+	 *            the paste key
+	 * @param contents
+	 *            the contents
+	 * @see #setDefaultTimeToLive(long)
+	 */
+	public void put(String key, String contents) {
+		put(key, contents, UNKNOWN);
+	}
+
+	/**
+	 * Caches the contents of a link until its paste expires
+	 *
+	 * @param link
+	 *            the link, with its contents fetched
+	 */
+	public void put(PastebinLink link) {
+		String contents = link.getPaste().getContents();
+		if (contents == null) {
+			throw new IllegalArgumentException("Contents not fetched: "
+					+ link.getKey());
+		}
+		put(link.getKey(), contents, expiresAt(link));
+	}
+
+	/**
+	 * Caches the contents of a paste
+	 *
+	 * <p>
+	 * Contents which have expired already, or would take more than the
+	 * maximum bytes, are not cached.
+	 * </p>
+	 *
+	 * @param key
+	 *            the paste key
+	 * @param contents
+	 *            the contents
+	 * @param expiresAt
+	 *            time in milliseconds since the epoch, {@link #NEVER} or
+	 *            {@link #UNKNOWN}
+	 */
+	public synchronized void put(String key, String contents, long expiresAt) {
+		if (key == null || contents == null) {
+			throw new IllegalArgumentException(
+					"Key and contents can't be null.");
+		}
+		long now = System.currentTimeMillis();
+		if (expiresAt == UNKNOWN) {
+			if (defaultTimeToLive == 0) {
+				return;
+			}
+			expiresAt = now + defaultTimeToLive;
+		}
+		long weight = ENTRY_OVERHEAD + 2L * (key.length() + contents.length());
+		Node node = entries.get(key);
+		if (expiresAt <= now || weight > mainBytes) {
+			if (node != null) {
+				remove(node);
+			}
+			return;
+		}
+		sketch.increment(key);
+		if (node != null) {
+			segment(node.queue).weight += weight - node.weight;
+			node.contents = contents;
+			node.weight = weight;
+			node.expiresAt = expiresAt;
+			onAccess(node);
+		} else {
+			node = new Node(key, contents, weight, expiresAt);
+			entries.put(key, node);
+			sketch.ensureCapacity(entries.size());
+			window.addLast(node);
+		}
+		evict();
+	}
+
+	/**
+	 * Removes the contents of a paste, such as after it has been deleted
+	 *
+	 * @param key
+	 *            the paste key
+	 */
+	public synchronized void invalidate(String key) {
+		Node node = entries.get(key);
+		if (node != null) {
+			remove(node);
+		}
+	}
+
+	/**
+	 * Removes all contents
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		window.clear();
+		probation.clear();
+		protectedSegment.clear();
+	}
+
+	/**
+	 * Removes all expired contents, which are otherwise removed when they are
+	 * looked up or evicted
+	 */
+	public synchronized void cleanUp() {
+		long now = System.currentTimeMillis();
+		Iterator<Node> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Node node = iterator.next();
+			if (node.expiresAt <= now) {
+				iterator.remove();
+				segment(node.queue).remove(node);
+				expirations++;
+			}
+		}
+	}
+
+	/**
+	 * Gets the amount of cached pastes
+	 *
+	 * @return pastes
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the estimated memory of the cached contents
+	 *
+	 * @return bytes
+	 */
+	public synchronized long getResidentBytes() {
+		return window.weight + probation.weight + protectedSegment.weight;
+	}
+
+	/**
+	 * Gets the amount of lookups which found contents
+	 *
+	 * @return hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the amount of lookups which found no contents
+	 *
+	 * @return misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the share of lookups which found contents
+	 *
+	 * @return ratio from <code>0</code> to <code>1</code>, <code>0</code>
+	 *         before the first lookup
+	 */
+	public synchronized double getHitRatio() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : hits / (double) lookups;
+	}
+
+	/**
+	 * Gets the amount of contents evicted to make room
+	 *
+	 * @return evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the amount of contents removed because their paste expired
+	 *
+	 * @return expirations
+	 */
+	public synchronized long getExpirations() {
+		return expirations;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"%d pastes, %d of %d bytes, hit ratio %.3f, %d evictions, %d expirations",
+				entries.size(), getResidentBytes(), maximumBytes,
+				getHitRatio(), evictions, expirations);
+	}
+
+	private void onAccess(Node node) {
+		if (node.queue == WINDOW) {
+			window.moveToEnd(node);
+		} else if (node.queue == PROBATION) {
+			probation.remove(node);
+			node.queue = PROTECTED;
+			protectedSegment.addLast(node);
+			// the least recently used protected entries go on probation
+			while (protectedSegment.weight > protectedBytes) {
+				Node demoted = protectedSegment.head;
+				protectedSegment.remove(demoted);
+				demoted.queue = PROBATION;
+				probation.addLast(demoted);
+			}
+		} else {
+			protectedSegment.moveToEnd(node);
+		}
+	}
+
+	/**
+	 * Moves what no longer fits the window into probation, then lets each of
+	 * these candidates compete with the least recently used entry of the main
+	 * space until that fits
+	 */
+	private void evict() {
+		Node candidate = null;
+		while (window.weight > windowBytes) {
+			Node node = window.head;
+			window.remove(node);
+			node.queue = PROBATION;
+			probation.addLast(node);
+			if (candidate == null) {
+				candidate = node;
+			}
+		}
+		long now = System.currentTimeMillis();
+		while (probation.weight + protectedSegment.weight > mainBytes) {
+			Node victim = probation.head != null ? probation.head
+					: protectedSegment.head;
+			if (victim.expiresAt <= now) {
+				if (victim == candidate) {
+					candidate = candidate.next;
+				}
+				remove(victim);
+				expirations++;
+				continue;
+			}
+			if (candidate == null || victim == candidate) {
+				// nothing left to compete with
+				if (victim == candidate) {
+					candidate = candidate.next;
+				}
+				remove(victim);
+				evictions++;
+				continue;
+			}
+			if (admit(candidate, victim)) {
+				remove(victim);
+			} else {
+				Node rejected = candidate;
+				candidate = candidate.next;
+				remove(rejected);
+			}
+			evictions++;
+		}
+	}
+
+	/**
+	 * Determines if a candidate is worth more than the victim, letting a warm
+	 * candidate in now and then so a flood of colliding keys can't keep the
+	 * victim forever
+	 */
+	private boolean admit(Node candidate, Node victim) {
+		int candidateFrequency = sketch.frequency(candidate.key);
+		int victimFrequency = sketch.frequency(victim.key);
+		if (candidateFrequency > victimFrequency) {
+			return true;
+		}
+		return candidateFrequency >= 6
+				&& ThreadLocalRandom.current().nextInt(128) == 0;
+	}
+
+	private void remove(Node node) {
+		entries.remove(node.key);
+		segment(node.queue).remove(node);
+	}
+
+	private Segment segment(int queue) {
+		return queue == WINDOW ? window : queue == PROBATION ? probation
+				: protectedSegment;
+	}
+
+	/**
+	 * Cached contents, linked in the order of their segment
+	 */
+	private static class Node {
+		private final String key;
+		private String contents;
+		private long weight;
+		private long expiresAt;
+		private int queue = WINDOW;
+		private Node previous;
+		private Node next;
+
+		private Node(String key, String contents, long weight, long expiresAt) {
+			this.key = key;
+			this.contents = contents;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * Entries from least to most recently used, with their total weight
+	 */
+	private static class Segment {
+		private Node head;
+		private Node tail;
+		private long weight;
+
+		void addLast(Node node) {
+			node.previous = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			weight += node.weight;
+		}
+
+		void remove(Node node) {
+			if (node.previous == null) {
+				head = node.next;
+			} else {
+				node.previous.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.previous;
+			} else {
+				node.next.previous = node.previous;
+			}
+			node.previous = null;
+			node.next = null;
+			weight -= node.weight;
+		}
+
+		void moveToEnd(Node node) {
+			if (node != tail) {
+				remove(node);
+				addLast(node);
+			}
+		}
+
+		void clear() {
+			head = null;
+			tail = null;
+			weight = 0;
+		}
+	}
+
+}
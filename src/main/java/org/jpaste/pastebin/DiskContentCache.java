@@ -0,0 +1,714 @@
+package org.jpaste.pastebin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * A cache of raw paste contents on disk, which survives restarts
+ *
+ * <p>
+ * Contents are appended to segment files of a fixed size, which are read and
+ * written through memory mappings. Only an index from paste key to record is
+ * kept on the heap, it is rebuilt by scanning the segments when the cache is
+ * opened. Records carry a checksum, a record torn by a crash ends its segment.
+ * </p>
+ *
+ * <p>
+ * Replaced, invalidated and expired contents leave dead records behind. Once
+ * half of a full segment is dead, its live records are copied to the current
+ * segment and the file is deleted. While the segments take more than the
+ * maximum bytes, the oldest segment is dropped with what is left in it.
+ * Deletions are written as tombstones, so deleted pastes stay deleted after
+ * a restart.
+ * </p>
+ *
+ * <p>
+ * Expiry works as in {@link ContentCache}, contents with an unknown expiry
+ * are only kept for the default time to live. Thread safe, a directory can
+ * only be open by one cache at a time. Set it as the disk tier of all raw
+ * fetches with {@link Pastebin#setDiskCache(DiskContentCache)}.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class DiskContentCache implements Closeable {
+	private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private static final String SUFFIX = ".segment";
+	// length, checksum, expiry, key length, flags
+	private static final int HEADER = 4 + 4 + 8 + 2 + 1;
+	private static final byte DATA = 0;
+	private static final byte TOMBSTONE = 1;
+	private final Path directory;
+	private final long maximumBytes;
+	private final int segmentSize;
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+	private final HashMap<String, Location> index = new HashMap<String, Location>();
+	private Segment active;
+	private long defaultTimeToLive;
+	private boolean maintaining;
+	private boolean closed;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long compactions;
+
+	/**
+	 * Creates a new <code>DiskContentCache</code> instance with 64 MB
+	 * segments.
+	 *
+	 * @param directory
+	 *            directory of the segment files, created if missing
+	 * @param maximumBytes
+	 *            the disk space all segments may take
+	 * @throws IOException
+	 *             if the directory could not be opened
+	 */
+	public DiskContentCache(Path directory, long maximumBytes)
+			throws IOException {
+		this(directory, maximumBytes, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Creates a new <code>DiskContentCache</code> instance.
+	 *
+	 * @param directory
+	 *            directory of the segment files, created if missing
+	 * @param maximumBytes
+	 *            the disk space all segments may take, at least two segments
+	 * @param segmentSize
+	 *            size of a segment file in bytes, which bounds the size of
+	 *            cached contents
+	 * @throws IOException
+	 *             if the directory could not be opened or is in use
+	 */
+	public DiskContentCache(Path directory, long maximumBytes, int segmentSize)
+			throws IOException {
+		if (segmentSize < 4096) {
+			throw new IllegalArgumentException(
+					"Segment size must be at least 4096: " + segmentSize);
+		}
+		if (maximumBytes < 2L * segmentSize) {
+			throw new IllegalArgumentException(
+					"Maximum bytes must hold two segments: " + maximumBytes);
+		}
+		this.directory = directory;
+		this.maximumBytes = maximumBytes;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+		lockChannel = FileChannel.open(directory.resolve("cache.lock"),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock acquired;
+		try {
+			acquired = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// open in this process
+			acquired = null;
+		} catch (IOException e) {
+			lockChannel.close();
+			throw e;
+		}
+		if (acquired == null) {
+			lockChannel.close();
+			throw new IOException("Cache directory in use: " + directory);
+		}
+		lock = acquired;
+		try {
+			load();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets how long contents with an unknown expiry are cached
+	 *
+	 * @param defaultTimeToLive
+	 *            time in milliseconds, <code>0</code> to not cache them, the
+	 *            default
+	 * @see ContentCache#setDefaultTimeToLive(long)
+	 */
+	public synchronized void setDefaultTimeToLive(long defaultTimeToLive) {
+		if (defaultTimeToLive < 0) {
+			throw new IllegalArgumentException(
+					"Time to live can't be negative: " + defaultTimeToLive);
+		}
+		this.defaultTimeToLive = defaultTimeToLive;
+	}
+
+	/**
+	 * Gets how long contents with an unknown expiry are cached
+	 *
+	 * @return time in milliseconds, <code>0</code> if they are not cached
+	 */
+	public synchronized long getDefaultTimeToLive() {
+		return defaultTimeToLive;
+	}
+
+	/**
+	 * Gets the directory of the segment files
+	 *
+	 * @return directory
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Gets the contents of a paste
+	 *
+	 * @param key
+	 *            the paste key
+	 * @return the contents, <code>null</code> if they are not cached or have
+	 *         expired
+	 */
+	public synchronized String get(String key) {
+		Location location = find(key);
+		if (location == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		ByteBuffer record = location.segment.buffer.duplicate();
+		record.position(location.offset + HEADER + location.keyLength);
+		// a bulk copy decodes far faster than a decoder on the mapping
+		byte[] data = new byte[location.length - HEADER - location.keyLength];
+		record.get(data);
+		return new String(data, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets when the cached contents of a paste expire
+	 *
+	 * @param key
+	 *            the paste key
+	 * @return time in milliseconds since the epoch,
+	 *         {@link ContentCache#NEVER}, or {@link ContentCache#UNKNOWN} if
+	 *         the contents are not cached
+	 */
+	public synchronized long getExpiresAt(String key) {
+		Location location = find(key);
+		return location == null ? ContentCache.UNKNOWN : location.expiresAt;
+	}
+
+	private Location find(String key) {
+		checkOpen();
+		Location location = index.get(key);
+		if (location != null
+				&& location.expiresAt <= System.currentTimeMillis()) {
+			index.remove(key);
+			location.segment.dead += location.length;
+			return null;
+		}
+		return location;
+	}
+
+	/**
+	 * Caches the contents of a paste
+	 *
+	 * <p>
+	 * Contents which have expired already, or do not fit a segment, are not
+	 * cached.
+	 * </p>
+	 *
+	 * @param key
+	 *            the paste key
+	 * @param contents
+	 *            the contents
+	 * @param expiresAt
+	 *            time in milliseconds since the epoch,
+	 *            {@link ContentCache#NEVER} or {@link ContentCache#UNKNOWN}
+	 * @throws IOException
+	 *             if a new segment file could not be created
+	 */
+	public synchronized void put(String key, String contents, long expiresAt)
+			throws IOException {
+		if (key == null || contents == null) {
+			throw new IllegalArgumentException(
+					"Key and contents can't be null.");
+		}
+		checkOpen();
+		long now = System.currentTimeMillis();
+		if (expiresAt == ContentCache.UNKNOWN) {
+			if (defaultTimeToLive == 0) {
+				return;
+			}
+			expiresAt = now + defaultTimeToLive;
+		}
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+		if (expiresAt <= now || keyBytes.length > 0xffff
+				|| (long) HEADER + keyBytes.length + data.length > segmentSize) {
+			remove(key);
+			return;
+		}
+		Location location = append(keyBytes, data, expiresAt, DATA);
+		Location previous = index.put(key, location);
+		if (previous != null) {
+			previous.segment.dead += previous.length;
+		}
+		maintain();
+	}
+
+	/**
+	 * Removes the contents of a paste, such as after it has been deleted
+	 *
+	 * @param key
+	 *            the paste key
+	 * @throws IOException
+	 *             if a new segment file could not be created
+	 */
+	public synchronized void invalidate(String key) throws IOException {
+		checkOpen();
+		if (remove(key)) {
+			Location tombstone = append(key.getBytes(StandardCharsets.UTF_8),
+					new byte[0], ContentCache.NEVER, TOMBSTONE);
+			tombstone.segment.dead += tombstone.length;
+			maintain();
+		}
+	}
+
+	private boolean remove(String key) {
+		Location previous = index.remove(key);
+		if (previous == null) {
+			return false;
+		}
+		previous.segment.dead += previous.length;
+		return true;
+	}
+
+	/**
+	 * Forgets expired contents and compacts every full segment which is at
+	 * least half dead
+	 *
+	 * @throws IOException
+	 *             if a new segment file could not be created
+	 */
+	public synchronized void compact() throws IOException {
+		checkOpen();
+		long now = System.currentTimeMillis();
+		Iterator<Location> iterator = index.values().iterator();
+		while (iterator.hasNext()) {
+			Location location = iterator.next();
+			if (location.expiresAt <= now) {
+				iterator.remove();
+				location.segment.dead += location.length;
+			}
+		}
+		maintain();
+	}
+
+	/**
+	 * Gets the amount of cached pastes
+	 *
+	 * @return pastes
+	 */
+	public synchronized int getSize() {
+		return index.size();
+	}
+
+	/**
+	 * Gets the amount of segment files
+	 *
+	 * @return segments
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Gets the disk space taken by the segment files
+	 *
+	 * @return bytes
+	 */
+	public synchronized long getDiskBytes() {
+		long bytes = 0;
+		for (Segment segment : segments.values()) {
+			bytes += segment.size;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the bytes of the records of cached contents
+	 *
+	 * @return bytes
+	 */
+	public synchronized long getLiveBytes() {
+		long bytes = 0;
+		for (Segment segment : segments.values()) {
+			bytes += segment.position - segment.dead;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the amount of lookups which found contents
+	 *
+	 * @return hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the amount of lookups which found no contents
+	 *
+	 * @return misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the amount of contents dropped with the oldest segment to stay
+	 * within the maximum bytes
+	 *
+	 * @return evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the amount of segments compacted
+	 *
+	 * @return compactions
+	 */
+	public synchronized long getCompactions() {
+		return compactions;
+	}
+
+	/**
+	 * Writes the segments to disk and closes them
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (Segment segment : segments.values()) {
+			segment.close();
+		}
+		segments.clear();
+		index.clear();
+		try {
+			lock.release();
+		} catch (IOException e) {
+			// released when the channel closes
+		}
+		try {
+			lockChannel.close();
+		} catch (IOException e) {
+			// nothing left to release
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"%d pastes in %d segments, %d live of %d bytes, %d evictions, %d compactions",
+				index.size(), segments.size(), getLiveBytes(), getDiskBytes(),
+				evictions, compactions);
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Cache closed.");
+		}
+	}
+
+	/**
+	 * Opens the segment files oldest first, indexing their records
+	 */
+	private void load() throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*"
+				+ SUFFIX);
+		try {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		} finally {
+			stream.close();
+		}
+		long now = System.currentTimeMillis();
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			long id;
+			try {
+				id = Long.parseLong(name.substring(0, name.length()
+						- SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			segments.put(id, new Segment(id, file, (int) Math.min(
+					Files.size(file), Integer.MAX_VALUE)));
+		}
+		for (Segment segment : segments.values()) {
+			scan(segment, now);
+		}
+		if (segments.isEmpty()) {
+			active = newSegment(0);
+		} else {
+			active = segments.lastEntry().getValue();
+		}
+		maintain();
+	}
+
+	private void scan(Segment segment, long now) {
+		ByteBuffer buffer = segment.buffer;
+		int position = 0;
+		while (position + HEADER <= segment.size) {
+			int length = buffer.getInt(position);
+			if (length < HEADER || length > segment.size - position
+					|| checksum(buffer, position, length) != buffer
+							.getInt(position + 4)) {
+				break;
+			}
+			long expiresAt = buffer.getLong(position + 8);
+			int keyLength = buffer.getShort(position + 16) & 0xffff;
+			byte flags = buffer.get(position + 18);
+			String key = key(buffer, position, keyLength);
+			Location previous;
+			if (flags == TOMBSTONE) {
+				segment.dead += length;
+				previous = index.remove(key);
+			} else {
+				Location location = new Location(segment, position, length,
+						keyLength, expiresAt);
+				if (expiresAt <= now) {
+					segment.dead += length;
+					previous = index.remove(key);
+				} else {
+					previous = index.put(key, location);
+				}
+			}
+			if (previous != null) {
+				previous.segment.dead += previous.length;
+			}
+			position += length;
+		}
+		segment.position = position;
+		if (position + 4 <= segment.size) {
+			// cuts off a torn record
+			buffer.putInt(position, 0);
+		}
+	}
+
+	private Location append(byte[] key, byte[] data, long expiresAt,
+			byte flags) throws IOException {
+		int length = HEADER + key.length + data.length;
+		if (active.size - active.position < length) {
+			active.seal();
+			active = newSegment(active.id + 1);
+		}
+		int offset = active.position;
+		ByteBuffer buffer = active.buffer.duplicate();
+		buffer.position(offset + 8);
+		buffer.putLong(expiresAt).putShort((short) key.length).put(flags)
+				.put(key).put(data);
+		active.buffer.putInt(offset + 4, checksum(active.buffer, offset, length));
+		active.buffer.putInt(offset, length);
+		active.position += length;
+		if (active.position + 4 <= active.size) {
+			active.buffer.putInt(active.position, 0);
+		}
+		return new Location(active, offset, length, key.length, expiresAt);
+	}
+
+	private static int checksum(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer covered = buffer.duplicate();
+		covered.limit(offset + length).position(offset + 8);
+		CRC32 crc = new CRC32();
+		crc.update(covered);
+		return (int) crc.getValue();
+	}
+
+	private static String key(ByteBuffer buffer, int offset, int keyLength) {
+		ByteBuffer key = buffer.duplicate();
+		key.limit(offset + HEADER + keyLength).position(offset + HEADER);
+		return StandardCharsets.UTF_8.decode(key).toString();
+	}
+
+	/**
+	 * Drops the oldest segments while there are too many, then compacts the
+	 * full segments which are at least half dead, segments filled by the
+	 * compaction wait for the next call
+	 */
+	private void maintain() throws IOException {
+		if (maintaining) {
+			return;
+		}
+		maintaining = true;
+		try {
+			while (getDiskBytes() > maximumBytes && segments.size() > 1) {
+				drop(segments.firstEntry().getValue());
+			}
+			for (Segment segment : new ArrayList<Segment>(segments.values())) {
+				if (segment != active && segments.containsKey(segment.id)
+						&& segment.dead * 2 >= segment.position) {
+					compact(segment);
+				}
+			}
+		} finally {
+			maintaining = false;
+		}
+	}
+
+	/**
+	 * Copies the live records of a segment to the active one and deletes it,
+	 * tombstones are kept unless no older segment is left
+	 */
+	private void compact(Segment segment) throws IOException {
+		boolean oldest = segment == segments.firstEntry().getValue();
+		ByteBuffer buffer = segment.buffer;
+		int position = 0;
+		while (position < segment.position) {
+			int length = buffer.getInt(position);
+			int keyLength = buffer.getShort(position + 16) & 0xffff;
+			String key = key(buffer, position, keyLength);
+			Location location = index.get(key);
+			if (buffer.get(position + 18) == TOMBSTONE) {
+				if (!oldest && location == null) {
+					Location tombstone = append(
+							key.getBytes(StandardCharsets.UTF_8), new byte[0],
+							ContentCache.NEVER, TOMBSTONE);
+					tombstone.segment.dead += tombstone.length;
+				}
+			} else if (location != null && location.segment == segment
+					&& location.offset == position) {
+				byte[] record = new byte[length - HEADER - keyLength];
+				ByteBuffer data = buffer.duplicate();
+				data.position(position + HEADER + keyLength);
+				data.get(record);
+				index.put(key, append(key.getBytes(StandardCharsets.UTF_8),
+						record, location.expiresAt, DATA));
+			}
+			position += length;
+		}
+		delete(segment);
+		compactions++;
+	}
+
+	private void drop(Segment segment) {
+		Iterator<Location> iterator = index.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().segment == segment) {
+				iterator.remove();
+				evictions++;
+			}
+		}
+		delete(segment);
+	}
+
+	private void delete(Segment segment) {
+		segments.remove(segment.id);
+		// keeps a file which can't be deleted while mapped from coming back
+		if (segment.size >= 4) {
+			segment.buffer.putInt(0, 0);
+		}
+		segment.close();
+		try {
+			Files.deleteIfExists(segment.file);
+		} catch (IOException e) {
+			// emptied above
+		}
+	}
+
+	private Segment newSegment(long id) throws IOException {
+		Path file = directory.resolve(String.format("%019d", id) + SUFFIX);
+		Segment segment = new Segment(id, file, segmentSize);
+		segments.put(id, segment);
+		return segment;
+	}
+
+	/**
+	 * Where the record of cached contents is
+	 */
+	private static class Location {
+		private final Segment segment;
+		private final int offset;
+		private final int length;
+		private final int keyLength;
+		private final long expiresAt;
+
+		private Location(Segment segment, int offset, int length,
+				int keyLength, long expiresAt) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.keyLength = keyLength;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * A memory mapped segment file
+	 */
+	private static class Segment {
+		private final long id;
+		private final Path file;
+		private final int size;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private int position;
+		private long dead;
+
+		private Segment(long id, Path file, int size) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.size = size;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+						size);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Marks the end of the records of a full segment
+		 */
+		private void seal() {
+			if (position + 4 <= size) {
+				buffer.putInt(position, 0);
+			}
+			buffer.force();
+		}
+
+		private void close() {
+			buffer.force();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// the mapping stays valid until collected
+			}
+		}
+	}
+
+}
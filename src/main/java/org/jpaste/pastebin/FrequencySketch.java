@@ -0,0 +1,118 @@
+package org.jpaste.pastebin;
+
+/**
+ *
+ * Estimates how often keys have been seen recently
+ *
+ * <p>
+ * A count-min sketch of four bit counters, sixteen to a <code>long</code>,
+ * with four counters per key. Once as many keys have been added as ten times
+ * the table length, all counters are halved, so old popularity fades. This is
+ * the frequency filter of W-TinyLFU. Not thread safe.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+class FrequencySketch {
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+			0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int MIN_LENGTH = 64;
+	private static final int MAX_LENGTH = 1 << 22;
+	private long[] table = new long[MIN_LENGTH];
+	private int sampleSize = 10 * MIN_LENGTH;
+	private int size;
+
+	/**
+	 * Grows the table to count about as many keys as given, forgetting all
+	 * counts if it grows
+	 *
+	 * @param keys
+	 *            amount of keys
+	 */
+	void ensureCapacity(long keys) {
+		int length = (int) Math.min(Math.max(keys, MIN_LENGTH), MAX_LENGTH);
+		length = Integer.highestOneBit(length * 2 - 1);
+		if (length <= table.length) {
+			return;
+		}
+		table = new long[length];
+		sampleSize = 10 * length;
+		size = 0;
+	}
+
+	/**
+	 * Gets the estimated amount of times a key has been seen
+	 *
+	 * @param key
+	 *            the key
+	 * @return frequency, <code>0</code> to <code>15</code>
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = 15;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Counts a key as seen once more
+	 *
+	 * @param key
+	 *            the key
+	 */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Halves all counters
+	 */
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		// halving truncated the odd counters
+		size = (size >>> 1) - (odd >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return (int) h & (table.length - 1);
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+}
@@ -40,6 +40,16 @@ public enum PasteExpireDate {
 		return val;
 	}
 
+	/**
+	 * Gets the time a paste lives
+	 * 
+	 * @return time in seconds, <code>-1</code> for {@link #NEVER} and
+	 *         {@link #ONE_MONTH}, whose length varies
+	 */
+	public int getTimeSeconds() {
+		return timeSeconds;
+	}
+
 	/**
 	 * Gets PasteExpireDate based on: paste expire date minus paste date (in
 	 * seconds)
@@ -0,0 +1,158 @@
+package org.jpaste.pastebin;
+
+import java.util.Arrays;
+
+/**
+ *
+ * A bounded set of paste keys which forgets the oldest keys first
+ *
+ * <p>
+ * Paste keys are 8 base62 characters, which fit a <code>long</code>. Keys are
+ * kept in two generations of open addressing <code>long</code> tables: once
+ * the current generation is full, the previous one is dropped and the
+ * current one takes its place. A key is remembered for at least
+ * <code>capacity</code> insertions and at most twice that, using 16 bytes
+ * per key at most. Not thread safe.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+class PasteKeySet {
+	private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+	private static final int MAX_ENCODED_LENGTH = 10;
+	private final int capacity;
+	private long[] current;
+	private long[] previous;
+	private int size;
+	private int previousSize;
+
+	/**
+	 * Creates a new <code>PasteKeySet</code> instance.
+	 *
+	 * @param capacity
+	 *            amount of keys per generation
+	 */
+	PasteKeySet(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: "
+					+ capacity);
+		}
+		this.capacity = capacity;
+		// load factor of 0.5 at most
+		int length = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) * 2;
+		this.current = new long[length];
+		this.previous = new long[length];
+	}
+
+	/**
+	 * Adds a key
+	 *
+	 * @param key
+	 *            the paste key
+	 * @return <code>true</code> if the key was not in the set
+	 */
+	boolean add(String key) {
+		long encoded = encode(key);
+		if (contains(previous, encoded) || contains(current, encoded)) {
+			return false;
+		}
+		if (size == capacity) {
+			rotate();
+		}
+		insert(current, encoded);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Determines if a key is in the set
+	 *
+	 * @param key
+	 *            the paste key
+	 * @return <code>true</code> if the key has been added and not forgotten
+	 */
+	boolean contains(String key) {
+		long encoded = encode(key);
+		return contains(current, encoded) || contains(previous, encoded);
+	}
+
+	/**
+	 * Gets the amount of keys in the set
+	 *
+	 * @return amount of remembered keys
+	 */
+	int size() {
+		return size + previousSize;
+	}
+
+	private void rotate() {
+		long[] dropped = previous;
+		Arrays.fill(dropped, 0L);
+		previous = current;
+		previousSize = size;
+		current = dropped;
+		size = 0;
+	}
+
+	private static boolean contains(long[] table, long encoded) {
+		int mask = table.length - 1;
+		for (int i = mix(encoded) & mask;; i = (i + 1) & mask) {
+			long slot = table[i];
+			if (slot == 0L) {
+				return false;
+			}
+			if (slot == encoded) {
+				return true;
+			}
+		}
+	}
+
+	private static void insert(long[] table, long encoded) {
+		int mask = table.length - 1;
+		int i = mix(encoded) & mask;
+		while (table[i] != 0L) {
+			i = (i + 1) & mask;
+		}
+		table[i] = encoded;
+	}
+
+	private static int mix(long value) {
+		value *= 0x9E3779B97F4A7C15L;
+		return (int) (value ^ (value >>> 32));
+	}
+
+	/**
+	 * Encodes a key to a non-zero <code>long</code>
+	 *
+	 * <p>
+	 * Base62 keys of up to 10 characters are encoded exactly, other keys are
+	 * hashed to a value with the sign bit set.
+	 * </p>
+	 */
+	static long encode(String key) {
+		if (key.length() <= MAX_ENCODED_LENGTH) {
+			long value = 1;
+			for (int i = 0; i < key.length(); i++) {
+				int digit = ALPHABET.indexOf(key.charAt(i));
+				if (digit < 0) {
+					return hash(key);
+				}
+				value = value * 62 + digit;
+			}
+			return value;
+		}
+		return hash(key);
+	}
+
+	private static long hash(String key) {
+		// 64 bit FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash | Long.MIN_VALUE;
+	}
+
+}
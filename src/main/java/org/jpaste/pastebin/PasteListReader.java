@@ -0,0 +1,291 @@
+package org.jpaste.pastebin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jpaste.pastebin.account.PastebinAccount;
+import org.jpaste.pastebin.exceptions.ParseException;
+import org.jpaste.pastebin.metrics.Operation;
+import org.jpaste.pastebin.metrics.OperationProbe;
+import org.jpaste.utils.web.Web;
+import org.jpaste.utils.web.WebException;
+import org.jpaste.utils.web.WebRequest;
+import org.jpaste.utils.web.WebResponse;
+import org.jpaste.utils.xml.XMLUtils;
+
+/**
+ *
+ * Reads a list of pastes as returned by the trending and list API options
+ *
+ * <p>
+ * The list is a sequence of <code>&lt;paste&gt;</code> elements without a
+ * root element. It is parsed straight from the response stream with a pull
+ * parser, one paste at a time, without building a document.
+ * </p>
+ *
+ * @author Brian B
+ * @see Pastebin#streamTrending(String)
+ * @see PastebinAccount#streamPastes(int)
+ *
+ */
+public class PasteListReader extends PasteReader {
+	private static final byte[] PASTE = "<paste>"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ROOT_START = "<pastes>"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ROOT_END = "</pastes>"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final int MAX_MESSAGE_LENGTH = 4096;
+	private final InputStream in;
+	private final XMLStreamReader reader;
+	private final PastebinAccount account;
+
+	/**
+	 * Creates a new <code>PasteListReader</code> instance.
+	 *
+	 * @param in
+	 *            the paste elements, in an ASCII compatible encoding
+	 * @param charset
+	 *            encoding of the paste elements
+	 * @param account
+	 *            the account the pastes belong to, <code>null</code> for
+	 *            public pastes
+	 * @throws ParseException
+	 *             if the parser could not be created
+	 */
+	public PasteListReader(InputStream in, Charset charset,
+			PastebinAccount account) throws ParseException {
+		this.in = in;
+		this.account = account;
+		// XML needs a single root, it is streamed around the elements
+		InputStream document = new SequenceInputStream(
+				Collections.enumeration(Arrays.asList(new ByteArrayInputStream(
+						ROOT_START), in, new ByteArrayInputStream(ROOT_END))));
+		try {
+			this.reader = XMLUtils.createReader(document, charset.name());
+		} catch (XMLStreamException e) {
+			throw new ParseException("Failed to parse pastes: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Sends a request for a paste list and starts reading the response
+	 *
+	 * @param request
+	 *            the trending or list request
+	 * @param account
+	 *            the account the pastes belong to, <code>null</code> for
+	 *            public pastes
+	 * @return a reader over the pastes, <code>null</code> if pastebin answered
+	 *         with <code>No pastes found.</code>
+	 * @throws ParseException
+	 *             if pastebin did not answer with a paste list
+	 * @throws WebException
+	 *             if the request failed
+	 */
+	public static PasteListReader open(WebRequest request,
+			PastebinAccount account) throws ParseException {
+		return open(request, account, null);
+	}
+
+	/**
+	 * Sends a request for a paste list and starts reading the response,
+	 * measuring it as an operation for
+	 * {@link org.jpaste.pastebin.metrics.PastebinMetrics PastebinMetrics}
+	 * 
+	 * @param request
+	 *            the trending or list request
+	 * @param account
+	 *            the account the pastes belong to, <code>null</code> for
+	 *            public pastes
+	 * @param operation
+	 *            the operation the request is sent for, <code>null</code> to
+	 *            measure none
+	 * @return a reader over the pastes, <code>null</code> if pastebin answered
+	 *         with <code>No pastes found.</code>
+	 * @throws ParseException
+	 *             if pastebin did not answer with a paste list
+	 * @throws WebException
+	 *             if the request failed
+	 */
+	public static PasteListReader open(WebRequest request,
+			PastebinAccount account, Operation operation)
+			throws ParseException {
+		OperationProbe probe = OperationProbe.start(operation);
+		try {
+			PasteListReader reader = send(
+					OperationProbe.attach(probe, request), account, probe);
+			if (reader == null) {
+				OperationProbe.finish(probe, null);
+			} else {
+				reader.watch(probe);
+			}
+			return reader;
+		} catch (ParseException e) {
+			OperationProbe.fail(probe, e);
+			throw e;
+		} catch (RuntimeException e) {
+			OperationProbe.fail(probe, e);
+			throw e;
+		}
+	}
+
+	private static PasteListReader send(WebRequest request,
+			PastebinAccount account, OperationProbe probe)
+			throws ParseException {
+		WebResponse response;
+		try {
+			response = Web.open(request);
+		} catch (IOException e) {
+			throw new WebException("Failed to fetch contents from link: " + e,
+					e);
+		}
+		try {
+			BufferedInputStream in = new BufferedInputStream(
+					response.getInputStream());
+			if (startsWith(in, PASTE)) {
+				try {
+					return new PasteListReader(in, response.getCharset(),
+							account);
+				} catch (ParseException | RuntimeException e) {
+					response.close();
+					throw e;
+				}
+			}
+			String message = readMessage(in, response.getCharset());
+			response.close();
+			if (message.equals("No pastes found.")) {
+				return null;
+			}
+			OperationProbe.finish(probe, message);
+			throw new ParseException("Failed to parse pastes: " + message);
+		} catch (IOException e) {
+			response.close();
+			throw new WebException("Failed to fetch contents from link: " + e,
+					e);
+		}
+	}
+
+	private static boolean startsWith(BufferedInputStream in, byte[] prefix)
+			throws IOException {
+		in.mark(prefix.length);
+		try {
+			for (byte b : prefix) {
+				if (in.read() != b) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	private static String readMessage(InputStream in, Charset charset)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[512];
+		int read;
+		while (out.size() < MAX_MESSAGE_LENGTH && (read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), charset).trim();
+	}
+
+	@Override
+	public PastebinLink next() throws ParseException {
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT
+						&& reader.getLocalName().equals("paste")) {
+					return readPaste();
+				}
+			}
+			return null;
+		} catch (XMLStreamException e) {
+			throw new ParseException("Failed to parse pastes: "
+					+ e.getMessage());
+		} catch (MalformedURLException e) {
+			throw new ParseException("Failed to parse pastes: "
+					+ e.getMessage());
+		} catch (NumberFormatException e) {
+			throw new ParseException("Failed to parse pastes: "
+					+ e.getMessage());
+		}
+	}
+
+	private PastebinLink readPaste() throws XMLStreamException,
+			MalformedURLException {
+		String pasteFormat = null;
+		String title = null;
+		String url = null;
+		int visibility = 0;
+		int hits = 0;
+		long expireDate = 0;
+		long pasteDate = 0;
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			String text = reader.getElementText();
+			if (name.equals("paste_format_short")) {
+				pasteFormat = text;
+			} else if (name.equals("paste_title")) {
+				title = text;
+			} else if (name.equals("paste_private")) {
+				visibility = Integer.parseInt(text.trim());
+			} else if (name.equals("paste_hits")) {
+				hits = Integer.parseInt(text.trim());
+			} else if (name.equals("paste_expire_date")) {
+				expireDate = Long.parseLong(text.trim());
+			} else if (name.equals("paste_date")) {
+				pasteDate = Long.parseLong(text.trim());
+			} else if (name.equals("paste_url")) {
+				url = text.trim();
+			}
+		}
+
+		PastebinPaste paste = account == null ? new PastebinPaste()
+				: new PastebinPaste(account);
+		paste.setPasteFormat(pasteFormat);
+		paste.setPasteTitle(title);
+		paste.setVisibility(visibility);
+		paste.setPasteExpireDate(expireDate == 0L ? PasteExpireDate.NEVER
+				: PasteExpireDate.getExpireDate((int) (expireDate - pasteDate)));
+
+		PastebinLink link = new PastebinLink(paste, new URL(url), new Date(
+				pasteDate * 1000));
+		link.setHits(hits);
+		return link;
+	}
+
+	@Override
+	public void close() {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			// the stream is closed below
+		}
+		try {
+			in.close();
+		} catch (IOException e) {
+			// nothing left to free
+		}
+		finish();
+	}
+
+}
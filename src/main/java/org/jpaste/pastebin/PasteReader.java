@@ -0,0 +1,157 @@
+package org.jpaste.pastebin;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.jpaste.pastebin.exceptions.ParseException;
+import org.jpaste.pastebin.exceptions.UncheckedParseException;
+import org.jpaste.pastebin.metrics.OperationProbe;
+
+/**
+ *
+ * Reads pastes one at a time while a paste list response arrives
+ *
+ * <p>
+ * Every paste is handed out as soon as it has been parsed, so a caller can
+ * start working on the first paste or stop early without waiting for the
+ * whole list. The response is released once the last paste has been read or
+ * the reader is closed, a reader which is not read to the end must be
+ * closed:
+ * </p>
+ *
+ * <pre>
+ * try (Stream&lt;PastebinLink&gt; pastes = Pastebin.streamTrending(developerKey)) {
+ * 	pastes.filter(link -&gt; link.getHits() &gt; 1000).limit(5).forEach(System.out::println);
+ * }
+ * </pre>
+ *
+ * @author Brian B
+ *
+ */
+public abstract class PasteReader implements Closeable, Iterable<PastebinLink> {
+	private OperationProbe probe;
+	private String error;
+
+	/**
+	 * Reads the next paste
+	 *
+	 * @return the next paste, <code>null</code> once all pastes have been read
+	 * @throws ParseException
+	 *             if the list is malformed
+	 */
+	public abstract PastebinLink next() throws ParseException;
+
+	/**
+	 * Closes the reader and the response it reads from
+	 */
+	@Override
+	public abstract void close();
+
+	/**
+	 * Reads all remaining pastes and closes this reader
+	 *
+	 * @return the pastes
+	 * @throws ParseException
+	 *             if the list is malformed
+	 */
+	public PastebinLink[] readAll() throws ParseException {
+		try {
+			ArrayList<PastebinLink> pastes = new ArrayList<PastebinLink>();
+			PastebinLink link;
+			while ((link = next()) != null) {
+				pastes.add(link);
+			}
+			return pastes.toArray(new PastebinLink[pastes.size()]);
+		} catch (ParseException e) {
+			failed(e);
+			throw e;
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Iterates the remaining pastes, the reader is closed after the last one
+	 *
+	 * @return an iterator which throws an {@link UncheckedParseException} if
+	 *         the list is malformed
+	 */
+	@Override
+	public Iterator<PastebinLink> iterator() {
+		return new Iterator<PastebinLink>() {
+			private PastebinLink next;
+			private boolean done;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null && !done) {
+					try {
+						next = PasteReader.this.next();
+					} catch (ParseException e) {
+						close();
+						throw new UncheckedParseException(e);
+					}
+					if (next == null) {
+						done = true;
+						close();
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public PastebinLink next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				PastebinLink link = next;
+				next = null;
+				return link;
+			}
+		};
+	}
+
+	/**
+	 * Measures this reader as part of a call, which finishes once the reader
+	 * is closed
+	 */
+	void watch(OperationProbe probe) {
+		this.probe = probe;
+	}
+
+	/**
+	 * Records the failure the measured call finishes with
+	 */
+	void failed(Exception e) {
+		if (probe != null && error == null) {
+			error = OperationProbe.error(e);
+		}
+	}
+
+	/**
+	 * Finishes the measured call, called by {@link #close()}
+	 */
+	void finish() {
+		OperationProbe.finish(probe, error);
+	}
+
+	/**
+	 * Streams the remaining pastes, closing the stream closes the reader
+	 *
+	 * @return a sequential stream which throws an
+	 *         {@link UncheckedParseException} if the list is malformed
+	 */
+	public Stream<PastebinLink> stream() {
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(iterator(),
+						Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+}
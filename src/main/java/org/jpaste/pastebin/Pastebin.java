@@ -1,28 +1,19 @@
 package org.jpaste.pastebin;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Map;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 import org.jpaste.exceptions.PasteException;
 import org.jpaste.pastebin.exceptions.ParseException;
+import org.jpaste.pastebin.metrics.Operation;
+import org.jpaste.utils.concurrent.Async;
+import org.jpaste.utils.concurrent.SingleFlight;
+import org.jpaste.utils.web.ConnectionPool;
 import org.jpaste.utils.web.Post;
-import org.jpaste.utils.web.Web;
-import org.jpaste.utils.xml.XMLUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jpaste.utils.web.WebRequest;
 
 /**
  * 
@@ -36,6 +27,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * 
  */
 public class Pastebin {
+    /**
+     * The pastebin site all links below are relative to by default
+     */
+    public static final String BASE_URL = "https://pastebin.com";
     /**
      * Used to interact with the pastebin API
      */
@@ -50,6 +45,213 @@ public class Pastebin {
      */
     public static final String API_SCRAPING_LINK = "https://pastebin.com/api_scraping.php";
 
+    private static volatile String baseURL = BASE_URL;
+    private static volatile Executor executor = Async.newExecutor(
+            2 * ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST, "jpastebin-async");
+    private static volatile PastebinRateLimiter rateLimiter = new PastebinRateLimiter();
+    private static volatile ContentCache contentCache;
+    private static volatile DiskContentCache diskCache;
+    private static volatile TrendingCache trendingCache;
+    private static final SingleFlight<String, PastebinLink[]> TRENDING_FLIGHTS = new SingleFlight<String, PastebinLink[]>();
+
+    /**
+     * Gets the site all requests are sent to
+     * 
+     * @return base URL without a trailing slash, {@link #BASE_URL} by
+     *         default
+     */
+    public static String getBaseURL() {
+        return baseURL;
+    }
+
+    /**
+     * Sends all requests to another site with the pastebin API, such as the
+     * <code>LocalPastebinServer</code> the tests run against
+     * 
+     * @param baseURL
+     *            the new base URL, such as <code>http://127.0.0.1:8080</code>
+     */
+    public static void setBaseURL(String baseURL) {
+        if (baseURL == null) {
+            throw new IllegalArgumentException("Base URL can't be null.");
+        }
+        while (baseURL.endsWith("/")) {
+            baseURL = baseURL.substring(0, baseURL.length() - 1);
+        }
+        try {
+            new URL(baseURL);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid base URL: " + baseURL, e);
+        }
+        Pastebin.baseURL = baseURL;
+    }
+
+    /**
+     * Gets the link to interact with the pastebin API
+     * 
+     * @return {@link #API_POST_LINK} relative to {@link #getBaseURL()}
+     */
+    public static String getPostLink() {
+        return baseURL + "/api/api_post.php";
+    }
+
+    /**
+     * Gets the link to fetch an user session id
+     * 
+     * @return {@link #API_LOGIN_LINK} relative to {@link #getBaseURL()}
+     */
+    public static String getLoginLink() {
+        return baseURL + "/api/api_login.php";
+    }
+
+    /**
+     * Gets the link of the scraping api
+     * 
+     * @return {@link #API_SCRAPING_LINK} relative to {@link #getBaseURL()}
+     */
+    public static String getScrapingLink() {
+        return baseURL + "/api_scraping.php";
+    }
+
+    /**
+     * Gets the link raw paste contents are fetched from, followed by the
+     * paste key
+     * 
+     * @return raw link relative to {@link #getBaseURL()}
+     */
+    public static String getRawLink() {
+        return baseURL + "/raw.php?i=";
+    }
+
+    /**
+     * Gets the rate limiter all calls with a developer key go through
+     * 
+     * @return shared rate limiter
+     */
+    public static PastebinRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter all calls with a developer key go through
+     * 
+     * @param rateLimiter
+     *            the new shared rate limiter
+     */
+    public static void setRateLimiter(PastebinRateLimiter rateLimiter) {
+        if (rateLimiter == null) {
+            throw new IllegalArgumentException("Rate limiter can't be null.");
+        }
+        Pastebin.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Gets the executor the <code>*Async</code> operations run on by default
+     * 
+     * @return default executor
+     */
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor the <code>*Async</code> operations run on by default
+     * 
+     * <p>
+     * The default executor runs a small, bounded amount of daemon threads,
+     * requests beyond that wait in its queue without holding a thread. On a
+     * JDK with virtual threads a virtual thread per task executor can be set
+     * instead.
+     * </p>
+     * 
+     * @param executor
+     *            the new default executor
+     */
+    public static void setExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor can't be null.");
+        }
+        Pastebin.executor = executor;
+    }
+
+    /**
+     * Gets the cache raw paste contents are fetched through
+     * 
+     * @return content cache, <code>null</code> if contents are not cached
+     */
+    public static ContentCache getContentCache() {
+        return contentCache;
+    }
+
+    /**
+     * Sets the cache raw paste contents are fetched through
+     * 
+     * <p>
+     * Covers {@link #getContents(String)}, {@link PastebinLink#fetchContent()}
+     * and the {@link PastebinContentFetcher}, not the streaming
+     * <code>openContents</code> and <code>transferContents</code> calls.
+     * </p>
+     * 
+     * @param contentCache
+     *            the cache, <code>null</code> to not cache contents, the
+     *            default
+     */
+    public static void setContentCache(ContentCache contentCache) {
+        Pastebin.contentCache = contentCache;
+    }
+
+    /**
+     * Gets the disk cache raw paste contents are fetched through
+     * 
+     * @return disk cache, <code>null</code> if contents are not cached on disk
+     */
+    public static DiskContentCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Sets the disk cache raw paste contents are fetched through
+     * 
+     * <p>
+     * The disk cache sits below the content cache, contents found on disk are
+     * put into the content cache. It covers the same calls as
+     * {@link #setContentCache(ContentCache)}.
+     * </p>
+     * 
+     * @param diskCache
+     *            the disk cache, <code>null</code> to not cache contents on
+     *            disk, the default
+     */
+    public static void setDiskCache(DiskContentCache diskCache) {
+        Pastebin.diskCache = diskCache;
+    }
+
+    /**
+     * Gets the cache trending pastes are read from
+     * 
+     * @return trending cache, <code>null</code> if trending pastes are not
+     *         cached
+     */
+    public static TrendingCache getTrendingCache() {
+        return trendingCache;
+    }
+
+    /**
+     * Sets the cache trending pastes are read from
+     * 
+     * <p>
+     * Covers {@link #getTrending(String)} and its asynchronous variants, not
+     * {@link #streamTrending(String)}.
+     * </p>
+     * 
+     * @param trendingCache
+     *            the cache, <code>null</code> to not cache trending pastes,
+     *            the default
+     */
+    public static void setTrendingCache(TrendingCache trendingCache) {
+        Pastebin.trendingCache = trendingCache;
+    }
+
     /**
      * Fetches a paste text from pastebin
      *
@@ -61,6 +263,17 @@ public class Pastebin {
         return PastebinLink.getContents(pasteKey);
     }
 
+    /**
+     * Fetches a paste text from pastebin asynchronously
+     *
+     * @param pasteKey
+     *            the unique paste key
+     * @return future contents of the paste
+     */
+    public static CompletableFuture<String> getContentsAsync(String pasteKey) {
+        return PastebinLink.getContentsAsync(pasteKey);
+    }
+
     /**
      * Generates a paste on pastebin and returns the URL to it
      * 
@@ -130,6 +343,12 @@ public class Pastebin {
     /**
      * Gets the current trending pastebin pastes
      * 
+     * <p>
+     * Concurrent calls with the same developer key share one request, each
+     * caller gets its own copies of the links. Read from the
+     * {@link #getTrendingCache() trending cache} if one is set.
+     * </p>
+     * 
      * @param developerKey
      *            a developer key which can be fetched from the pastebin API
      *            page
@@ -138,6 +357,63 @@ public class Pastebin {
      *             if it failed to parse the trending pastes
      */
     public static PastebinLink[] getTrending(String developerKey) throws ParseException {
+        if (developerKey == null || developerKey.isEmpty()) {
+            throw new IllegalArgumentException("Developer key can't be null or empty.");
+        }
+        TrendingCache cache = trendingCache;
+        if (cache != null) {
+            return cache.get(developerKey);
+        }
+        return copyTrending(fetchTrending(developerKey));
+    }
+
+    /**
+     * Fetches the trending pastes, concurrent calls with the same developer
+     * key share one request and its links
+     */
+    static PastebinLink[] fetchTrending(String developerKey) throws ParseException {
+        return TRENDING_FLIGHTS.execute(developerKey, () -> readTrending(developerKey));
+    }
+
+    static PastebinLink[] copyTrending(PastebinLink[] trending) {
+        PastebinLink[] copies = new PastebinLink[trending.length];
+        for (int i = 0; i < trending.length; i++) {
+            copies[i] = trending[i].copy();
+        }
+        return copies;
+    }
+
+    private static PastebinLink[] readTrending(String developerKey) throws ParseException {
+        PasteReader reader = openTrending(developerKey);
+        if (reader == null) {
+            throw new ParseException("Failed to parse pastes: No pastes found.");
+        }
+        return reader.readAll();
+    }
+
+    /**
+     * Streams the current trending pastebin pastes, each paste is handed out
+     * as soon as it has been parsed from the response
+     * 
+     * <p>
+     * The stream must be closed if it isn't read to the end.
+     * </p>
+     * 
+     * @param developerKey
+     *            a developer key which can be fetched from the pastebin API
+     *            page
+     * @return a lazy stream of {@link PastebinLink}, which throws an
+     *         {@link org.jpaste.pastebin.exceptions.UncheckedParseException
+     *         UncheckedParseException} if a paste can't be parsed
+     * @throws ParseException
+     *             if pastebin did not answer with a paste list
+     */
+    public static Stream<PastebinLink> streamTrending(String developerKey) throws ParseException {
+        PasteReader reader = openTrending(developerKey);
+        return reader == null ? Stream.<PastebinLink> empty() : reader.stream();
+    }
+
+    private static PasteReader openTrending(String developerKey) throws ParseException {
         if (developerKey == null || developerKey.isEmpty()) {
             throw new IllegalArgumentException("Developer key can't be null or empty.");
         }
@@ -145,57 +421,42 @@ public class Pastebin {
         post.put("api_dev_key", developerKey);
         post.put("api_option", "trends");
 
-        String response = Web.getContents(API_POST_LINK, post);
-
-        if (response.startsWith("<paste>")) {
-            // success
-            try {
-                DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-                response = "<dummy>" + response + "</dummy>"; // requires root
-                                                              // element
-                Document doc = dBuilder.parse(new InputSource(new ByteArrayInputStream(response.getBytes("utf-8"))));
-                doc.getDocumentElement().normalize();
-
-                NodeList nodes = doc.getElementsByTagName("paste");
-                ArrayList<PastebinLink> pastes = new ArrayList<PastebinLink>(nodes.getLength());
-                for (int i = 0; i < nodes.getLength(); i++) {
-                    Node node = nodes.item(i);
-                    if (node.getNodeType() == Node.ELEMENT_NODE) {
-                        Element element = (Element) node;
-
-                        String pasteFormat = XMLUtils.getText(element, "paste_format_short");
-                        String title = XMLUtils.getText(element, "paste_title");
-                        int visibility = Integer.parseInt(XMLUtils.getText(element, "paste_private"));
-                        int hits = Integer.parseInt(XMLUtils.getText(element, "paste_hits"));
-
-                        long expireDate = Long.parseLong(XMLUtils.getText(element, "paste_expire_date"));
-                        long pasteDate = Long.parseLong(XMLUtils.getText(element, "paste_date"));
-
-                        URL pasteURL = new URL(XMLUtils.getText(element, "paste_url"));
-
-                        PastebinPaste paste = new PastebinPaste();
-                        paste.setPasteFormat(pasteFormat);
-                        paste.setPasteTitle(title);
-                        paste.setVisibility(visibility);
-                        paste.setPasteExpireDate(expireDate == 0L ? PasteExpireDate.NEVER
-                                : PasteExpireDate.getExpireDate((int) (expireDate - pasteDate)));
-
-                        PastebinLink pastebinLink = new PastebinLink(paste, pasteURL, new Date(pasteDate * 1000));
-                        pastebinLink.setHits(hits);
-
-                        pastes.add(pastebinLink);
-                    }
-                }
-
-                return pastes.toArray(new PastebinLink[pastes.size()]);
-            } catch (Exception e) {
-                throw new ParseException("Failed to parse pastes: " + e.getMessage());
-            }
+        WebRequest request = new WebRequest(getPostLink(), post);
+        request.setIdempotent(true);
 
-        }
+        rateLimiter.acquire(developerKey);
+        return PasteListReader.open(request, null, Operation.TRENDS);
+    }
 
-        throw new ParseException("Failed to parse pastes: " + response);
+    /**
+     * Gets the current trending pastebin pastes asynchronously
+     * 
+     * @param developerKey
+     *            a developer key which can be fetched from the pastebin API
+     *            page
+     * @return future array of {@link PastebinLink}, completes exceptionally
+     *         with a {@link ParseException} if it failed to parse the
+     *         trending pastes
+     */
+    public static CompletableFuture<PastebinLink[]> getTrendingAsync(String developerKey) {
+        return getTrendingAsync(developerKey, executor);
+    }
+
+    /**
+     * Gets the current trending pastebin pastes asynchronously
+     * 
+     * @param developerKey
+     *            a developer key which can be fetched from the pastebin API
+     *            page
+     * @param executor
+     *            the executor to run the request on
+     * @return future array of {@link PastebinLink}, completes exceptionally
+     *         with a {@link ParseException} if it failed to parse the
+     *         trending pastes
+     */
+    public static CompletableFuture<PastebinLink[]> getTrendingAsync(final String developerKey,
+            Executor executor) {
+        return Async.supply(() -> getTrending(developerKey), executor);
     }
 
     /**
@@ -213,60 +474,63 @@ public class Pastebin {
      * @return the pastes.
      */
     public static PastebinLink[] getMostRecent(Post post) throws ParseException {
-        String url = API_SCRAPING_LINK;
-        if (post != null && !post.getPost().isEmpty()) {
-            url += "?" + post.getPost();
-        }
-
-        String response = Web.getContents(url);
+        return openMostRecent(post).readAll();
+    }
 
-        if (response == null || response.isEmpty()
-                || !(response.charAt(0) == '[' && response.charAt(response.length() - 2) == ']')) {
-            throw new ParseException("Failed to parse pastes: " + response);
-        }
+    /**
+     * Streams the most recent pastes, see {@link #getMostRecent(Post)}. Each
+     * paste is handed out as soon as it has been parsed from the response.
+     * 
+     * <p>
+     * The stream must be closed if it isn't read to the end.
+     * </p>
+     * 
+     * @param post
+     *            the <code>Post</code> with the options
+     * @return a lazy stream of {@link PastebinLink}, which throws an
+     *         {@link org.jpaste.pastebin.exceptions.UncheckedParseException
+     *         UncheckedParseException} if a paste can't be parsed
+     * @throws ParseException
+     *             if pastebin did not answer with a paste list
+     */
+    public static Stream<PastebinLink> streamMostRecent(Post post) throws ParseException {
+        return openMostRecent(post).stream();
+    }
 
-        ArrayList<Object> listData = getJSonData(response);
-
-        ArrayList<PastebinLink> listPastebinLink = new ArrayList<>(listData.size());
-        for (Object object : listData) {
-            Map<String, Object> tempMap = (Map<String, Object>) object;
-            PastebinPaste pastebinPaste = new PastebinPaste();
-            pastebinPaste.setPasteFormat(tempMap.get("syntax").toString());
-            String pasteTitle = tempMap.get("title").toString();
-            pastebinPaste.setPasteTitle(pasteTitle == null ? "" : pasteTitle);
-            long pasteExpireDate = Long.parseLong(tempMap.get("expire").toString());
-            long pasteDate = Long.parseLong(tempMap.get("date").toString());
-            pastebinPaste.setPasteExpireDate(pasteExpireDate == 0L ? PasteExpireDate.NEVER
-                    : PasteExpireDate.getExpireDate((int) (pasteExpireDate - pasteDate)));
-            pastebinPaste.setVisibility(PastebinPaste.VISIBILITY_PUBLIC);
-            // All the pastes retrieved from this api are public.
-
-            PastebinLink pastebinLink = null;
-            try {
-                pastebinLink = new PastebinLink(pastebinPaste, new URL(tempMap.get("full_url").toString()),
-                        new Date(pasteDate * 1000));
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
-            }
-
-            if (pastebinLink != null) {
-                listPastebinLink.add(pastebinLink);
-            }
+    private static PasteReader openMostRecent(Post post) throws ParseException {
+        String url = getScrapingLink();
+        if (post != null && !post.getPost().isEmpty()) {
+            url += "?" + post.getPost();
         }
-
-        return listPastebinLink.toArray(new PastebinLink[listPastebinLink.size()]);
+        return ScrapedPasteReader.open(url);
     }
 
-    private static ArrayList<Object> getJSonData(String response) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            ArrayList<Object> data = mapper.readValue(response, ArrayList.class);
-            return data;
-        } catch (IOException e) {
+    /**
+     * Gets the most recent pastes asynchronously, see
+     * {@link #getMostRecent(Post)}
+     * 
+     * @param post
+     *            the <code>Post</code> with the options
+     * @return future pastes, completes exceptionally with a
+     *         {@link ParseException} if it failed to parse the pastes
+     */
+    public static CompletableFuture<PastebinLink[]> getMostRecentAsync(Post post) {
+        return getMostRecentAsync(post, executor);
+    }
 
-            e.printStackTrace();
-        }
-        return null;
+    /**
+     * Gets the most recent pastes asynchronously, see
+     * {@link #getMostRecent(Post)}
+     * 
+     * @param post
+     *            the <code>Post</code> with the options
+     * @param executor
+     *            the executor to run the request on
+     * @return future pastes, completes exceptionally with a
+     *         {@link ParseException} if it failed to parse the pastes
+     */
+    public static CompletableFuture<PastebinLink[]> getMostRecentAsync(final Post post, Executor executor) {
+        return Async.supply(() -> getMostRecent(post), executor);
     }
 
 }
@@ -0,0 +1,220 @@
+package org.jpaste.pastebin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 
+ * The outcome of a {@link PastebinBatchUploader} run
+ * 
+ * <p>
+ * Holds the links of all successful pastes and the failed pastes with their
+ * error, both in the order the pastes were submitted, and throughput and
+ * latency statistics of the run.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class PastebinBatchReport {
+	private final List<PastebinLink> links;
+	private final List<Failure> failures;
+	private final long[] latencies;
+	private final long elapsedNanos;
+
+	/**
+	 * Creates a new <code>PastebinBatchReport</code> instance.
+	 * 
+	 * @param links
+	 *            links of the successful pastes
+	 * @param failures
+	 *            the failed pastes
+	 * @param latencies
+	 *            latency of every paste in nanoseconds
+	 * @param elapsedNanos
+	 *            duration of the whole run in nanoseconds
+	 */
+	PastebinBatchReport(List<PastebinLink> links, List<Failure> failures,
+			long[] latencies, long elapsedNanos) {
+		this.links = Collections.unmodifiableList(links);
+		this.failures = Collections.unmodifiableList(failures);
+		this.latencies = latencies;
+		this.elapsedNanos = elapsedNanos;
+		Arrays.sort(this.latencies);
+	}
+
+	/**
+	 * Gets the links of the successful pastes
+	 * 
+	 * @return links in submission order
+	 */
+	public List<PastebinLink> getLinks() {
+		return links;
+	}
+
+	/**
+	 * Gets the failed pastes
+	 * 
+	 * @return failures in submission order
+	 */
+	public List<Failure> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Gets the amount of pastes submitted
+	 * 
+	 * @return submitted pastes
+	 */
+	public int getSubmitted() {
+		return links.size() + failures.size();
+	}
+
+	/**
+	 * Gets the amount of successful pastes
+	 * 
+	 * @return successful pastes
+	 */
+	public int getSucceeded() {
+		return links.size();
+	}
+
+	/**
+	 * Gets the amount of failed pastes
+	 * 
+	 * @return failed pastes
+	 */
+	public int getFailed() {
+		return failures.size();
+	}
+
+	/**
+	 * Gets the duration of the whole run
+	 * 
+	 * @return duration in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000L;
+	}
+
+	/**
+	 * Gets the amount of pastes handled per second, successful or not
+	 * 
+	 * @return pastes per second
+	 */
+	public double getThroughput() {
+		if (elapsedNanos == 0) {
+			return 0;
+		}
+		return getSubmitted() / (elapsedNanos / 1e9);
+	}
+
+	/**
+	 * Gets the lowest paste latency
+	 * 
+	 * @return latency in milliseconds
+	 */
+	public double getMinLatency() {
+		return latencies.length == 0 ? 0 : latencies[0] / 1e6;
+	}
+
+	/**
+	 * Gets the highest paste latency
+	 * 
+	 * @return latency in milliseconds
+	 */
+	public double getMaxLatency() {
+		return latencies.length == 0 ? 0
+				: latencies[latencies.length - 1] / 1e6;
+	}
+
+	/**
+	 * Gets the average paste latency
+	 * 
+	 * @return latency in milliseconds
+	 */
+	public double getAverageLatency() {
+		if (latencies.length == 0) {
+			return 0;
+		}
+		double total = 0;
+		for (long latency : latencies) {
+			total += latency;
+		}
+		return total / latencies.length / 1e6;
+	}
+
+	/**
+	 * Gets a paste latency percentile
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return latency in milliseconds
+	 */
+	public double getLatencyPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+					"Percentile must be between 0 and 100: " + percentile);
+		}
+		if (latencies.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+		return latencies[Math.max(0, index)] / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%d pasted, %d failed in %d ms (%.1f/s), latency avg %.1f ms, p99 %.1f ms, max %.1f ms",
+				getSucceeded(), getFailed(), getElapsedMillis(),
+				getThroughput(), getAverageLatency(),
+				getLatencyPercentile(99), getMaxLatency());
+	}
+
+	/**
+	 * 
+	 * A paste which failed to be pasted
+	 * 
+	 */
+	public static class Failure {
+		private final PastebinPaste paste;
+		private final Throwable exception;
+
+		Failure(PastebinPaste paste, Throwable exception) {
+			this.paste = paste;
+			this.exception = exception;
+		}
+
+		/**
+		 * Gets the paste which failed
+		 * 
+		 * @return failed paste
+		 */
+		public PastebinPaste getPaste() {
+			return paste;
+		}
+
+		/**
+		 * Gets the error message, the pastebin response for a
+		 * {@link org.jpaste.exceptions.PasteException PasteException}
+		 * 
+		 * @return error message
+		 */
+		public String getMessage() {
+			return exception.getMessage();
+		}
+
+		/**
+		 * Gets the exception the paste failed with, an {@link Error} thrown
+		 * while pasting included
+		 * 
+		 * @return the exception
+		 */
+		public Throwable getException() {
+			return exception;
+		}
+	}
+
+}
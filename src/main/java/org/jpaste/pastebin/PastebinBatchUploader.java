@@ -0,0 +1,180 @@
+package org.jpaste.pastebin;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import org.jpaste.pastebin.PastebinBatchReport.Failure;
+import org.jpaste.utils.concurrent.Async;
+
+/**
+ * 
+ * Pastes many pastes with a bounded amount of concurrent requests
+ * 
+ * <p>
+ * Every paste is pasted with {@link PastebinPaste#paste()}, at most
+ * {@link #getParallelism()} at a time. A failing paste doesn't affect the
+ * others, it ends up in the {@link PastebinBatchReport} with its error.
+ * Pastes from a stream are pulled only as fast as they are pasted. An
+ * uploader created without an executor should be closed once it is no longer
+ * used, to free its threads.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class PastebinBatchUploader implements Closeable {
+	private final int parallelism;
+	private final Executor executor;
+	private final boolean ownExecutor;
+
+	/**
+	 * Creates a new <code>PastebinBatchUploader</code> instance which runs on
+	 * its own daemon threads.
+	 * 
+	 * @param parallelism
+	 *            maximum amount of concurrent pastes
+	 */
+	public PastebinBatchUploader(int parallelism) {
+		this(parallelism, Async.newExecutor(Math.max(1, parallelism),
+				"jpastebin-batch"), true);
+	}
+
+	/**
+	 * Creates a new <code>PastebinBatchUploader</code> instance.
+	 * 
+	 * @param parallelism
+	 *            maximum amount of concurrent pastes
+	 * @param executor
+	 *            the executor to paste on
+	 */
+	public PastebinBatchUploader(int parallelism, Executor executor) {
+		this(parallelism, executor, false);
+	}
+
+	private PastebinBatchUploader(int parallelism, Executor executor,
+			boolean ownExecutor) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"Parallelism must be positive: " + parallelism);
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor can't be null.");
+		}
+		this.parallelism = parallelism;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	/**
+	 * Gets the maximum amount of concurrent pastes
+	 * 
+	 * @return parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Pastes all pastes and waits for them to finish
+	 * 
+	 * @param pastes
+	 *            the pastes to paste
+	 * @return report of the run
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, pastes in flight still finish
+	 */
+	public PastebinBatchReport upload(Collection<PastebinPaste> pastes)
+			throws InterruptedException {
+		return upload(pastes.iterator());
+	}
+
+	/**
+	 * Pastes all pastes of a stream and waits for them to finish
+	 * 
+	 * @param pastes
+	 *            the pastes to paste
+	 * @return report of the run
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, pastes in flight still finish
+	 */
+	public PastebinBatchReport upload(Stream<PastebinPaste> pastes)
+			throws InterruptedException {
+		return upload(pastes.iterator());
+	}
+
+	private PastebinBatchReport upload(Iterator<PastebinPaste> pastes)
+			throws InterruptedException {
+		final Semaphore permits = new Semaphore(parallelism);
+		final ConcurrentSkipListMap<Integer, Object> results = new ConcurrentSkipListMap<Integer, Object>();
+		final ConcurrentSkipListMap<Integer, Long> latencies = new ConcurrentSkipListMap<Integer, Long>();
+		long start = System.nanoTime();
+		int index = 0;
+		while (pastes.hasNext()) {
+			final PastebinPaste paste = pastes.next();
+			final int position = index++;
+			permits.acquire();
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						long begin = System.nanoTime();
+						try {
+							results.put(position, paste.paste());
+						} catch (Throwable t) {
+							// errors too, every paste ends up in the report
+							results.put(position, new Failure(paste, t));
+						} finally {
+							latencies.put(position, System.nanoTime() - begin);
+							permits.release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				results.put(position, new Failure(paste, e));
+				permits.release();
+			}
+		}
+		// all permits are back once every paste finished
+		permits.acquire(parallelism);
+		permits.release(parallelism);
+		long elapsed = System.nanoTime() - start;
+
+		List<PastebinLink> links = new ArrayList<PastebinLink>();
+		List<Failure> failures = new ArrayList<Failure>();
+		for (Object result : results.values()) {
+			if (result instanceof PastebinLink) {
+				links.add((PastebinLink) result);
+			} else {
+				failures.add((Failure) result);
+			}
+		}
+		long[] times = new long[latencies.size()];
+		int i = 0;
+		for (Long latency : latencies.values()) {
+			times[i++] = latency;
+		}
+		return new PastebinBatchReport(links, failures, times, elapsed);
+	}
+
+	/**
+	 * Frees the threads of an uploader created without an executor once the
+	 * pastes in flight are done, a given executor is left running. Pastes
+	 * uploaded afterwards fail.
+	 */
+	@Override
+	public void close() {
+		if (ownExecutor) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,308 @@
+package org.jpaste.pastebin;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jpaste.utils.concurrent.Async;
+import org.jpaste.utils.web.Deadline;
+
+/**
+ *
+ * Fetches the contents of many pastes with a bounded amount of concurrent
+ * requests
+ *
+ * <p>
+ * Every link gets its contents set as {@link PastebinLink#fetchContent()}
+ * would, at most {@link #getParallelism()} at a time and each within
+ * {@link #getTimeout()}. Links are handed to the {@link Listener} on the
+ * calling thread, either in the order they were given or as soon as their
+ * contents arrived:
+ * </p>
+ *
+ * <pre>
+ * PastebinContentFetcher fetcher = new PastebinContentFetcher(8);
+ * fetcher.setOrdered(false);
+ * fetcher.fetch(Arrays.asList(Pastebin.getMostRecent(null)), link -&gt; index(link));
+ * </pre>
+ *
+ * <p>
+ * A failing link doesn't affect the others. Links which already have
+ * contents are handed on without a request. A fetcher created without an
+ * executor should be closed once it is no longer used, to free its threads.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinContentFetcher implements Closeable {
+	/**
+	 * Default time in milliseconds a single link may take
+	 */
+	public static final long DEFAULT_TIMEOUT = 30000L;
+	private final int parallelism;
+	private final Executor executor;
+	private final boolean ownExecutor;
+	private long timeout = DEFAULT_TIMEOUT;
+	private boolean ordered = true;
+
+	/**
+	 * Creates a new <code>PastebinContentFetcher</code> instance which runs on
+	 * its own daemon threads.
+	 *
+	 * @param parallelism
+	 *            maximum amount of concurrent requests
+	 */
+	public PastebinContentFetcher(int parallelism) {
+		this(parallelism, Async.newExecutor(Math.max(1, parallelism),
+				"jpastebin-fetch"), true);
+	}
+
+	/**
+	 * Creates a new <code>PastebinContentFetcher</code> instance.
+	 *
+	 * @param parallelism
+	 *            maximum amount of concurrent requests
+	 * @param executor
+	 *            the executor to fetch on
+	 */
+	public PastebinContentFetcher(int parallelism, Executor executor) {
+		this(parallelism, executor, false);
+	}
+
+	private PastebinContentFetcher(int parallelism, Executor executor,
+			boolean ownExecutor) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"Parallelism must be positive: " + parallelism);
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor can't be null.");
+		}
+		this.parallelism = parallelism;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	/**
+	 * Gets the maximum amount of concurrent requests
+	 *
+	 * @return parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the time a single link may take, from the start of its request
+	 *
+	 * @param timeout
+	 *            time in milliseconds, 0 for no timeout
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Timeout can't be negative: "
+					+ timeout);
+		}
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Gets the time a single link may take
+	 *
+	 * @return time in milliseconds, 0 for no timeout
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the order links are handed on in
+	 *
+	 * @param ordered
+	 *            <code>true</code> to hand links on in the order they were
+	 *            given, <code>false</code> to hand them on as soon as they
+	 *            are done
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Determines if links are handed on in the order they were given
+	 *
+	 * @return <code>true</code> if ordered
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Fetches the contents of all links and waits for them to finish
+	 *
+	 * @param links
+	 *            the links
+	 * @return the links whose contents are set, failed links are left out
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, requests in flight still
+	 *             finish
+	 */
+	public List<PastebinLink> fetch(Collection<PastebinLink> links)
+			throws InterruptedException {
+		return fetch(links, null);
+	}
+
+	/**
+	 * Fetches the contents of all links, hands every link to a listener once
+	 * it is done and waits for all of them to finish
+	 *
+	 * @param links
+	 *            the links
+	 * @param listener
+	 *            the listener, called on the calling thread, may be
+	 *            <code>null</code>
+	 * @return the links whose contents are set, in the order they were handed
+	 *         on
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, requests in flight still
+	 *             finish
+	 */
+	public List<PastebinLink> fetch(Collection<PastebinLink> links,
+			Listener listener) throws InterruptedException {
+		final BlockingQueue<Result> done = new LinkedBlockingQueue<Result>();
+		final Deadline outer = Deadline.current();
+		final long timeout = this.timeout;
+		boolean ordered = this.ordered;
+		Map<Integer, Result> waiting = new HashMap<Integer, Result>();
+		List<PastebinLink> fetched = new ArrayList<PastebinLink>(links.size());
+		Iterator<PastebinLink> iterator = links.iterator();
+		int index = 0;
+		int next = 0;
+		int running = 0;
+		while (iterator.hasNext() || running > 0) {
+			while (running < parallelism && iterator.hasNext()) {
+				final Result result = new Result(index++, iterator.next());
+				running++;
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								result.run(timeout, outer);
+							} finally {
+								done.add(result);
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					result.error = e;
+					done.add(result);
+				}
+			}
+			Result result = done.take();
+			running--;
+			if (!ordered) {
+				deliver(result, listener, fetched);
+				continue;
+			}
+			waiting.put(result.index, result);
+			while ((result = waiting.remove(next)) != null) {
+				deliver(result, listener, fetched);
+				next++;
+			}
+		}
+		return fetched;
+	}
+
+	private static void deliver(Result result, Listener listener,
+			List<PastebinLink> fetched) {
+		if (result.error == null) {
+			fetched.add(result.link);
+			if (listener != null) {
+				listener.onFetched(result.link);
+			}
+		} else if (listener != null) {
+			listener.onFailed(result.link, result.error);
+		}
+	}
+
+	/**
+	 * Receives the links of a {@link PastebinContentFetcher}
+	 */
+	public interface Listener {
+
+		/**
+		 * Called once the contents of a link are set
+		 *
+		 * @param link
+		 *            the link, see {@link PastebinPaste#getContents()}
+		 */
+		void onFetched(PastebinLink link);
+
+		/**
+		 * Called when the contents of a link could not be fetched
+		 *
+		 * @param link
+		 *            the link
+		 * @param e
+		 *            the failure, an {@link Error} thrown while fetching
+		 *            included
+		 */
+		default void onFailed(PastebinLink link, Throwable e) {
+		}
+	}
+
+	/**
+	 * Frees the threads of a fetcher created without an executor once the
+	 * requests in flight are done, a given executor is left running. Links
+	 * fetched afterwards fail.
+	 */
+	@Override
+	public void close() {
+		if (ownExecutor) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+
+	private static class Result {
+		private final int index;
+		private final PastebinLink link;
+		private Throwable error;
+
+		private Result(int index, PastebinLink link) {
+			this.index = index;
+			this.link = link;
+		}
+
+		private void run(long timeout, Deadline outer) {
+			if (link.getPaste().getContents() != null) {
+				return;
+			}
+			Deadline deadline = outer;
+			if (timeout > 0) {
+				deadline = Deadline.earliest(outer,
+						Deadline.after(timeout, TimeUnit.MILLISECONDS));
+			}
+			try {
+				String contents = deadline == null ? link.readContents()
+						: deadline.call(link::readContents);
+				link.getPaste().setContents(contents);
+			} catch (Throwable t) {
+				// errors too, a link without contents is never handed on as
+				// fetched
+				error = t;
+			}
+		}
+	}
+
+}
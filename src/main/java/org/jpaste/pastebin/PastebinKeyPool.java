@@ -0,0 +1,671 @@
+package org.jpaste.pastebin;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jpaste.exceptions.PasteException;
+import org.jpaste.pastebin.account.PastebinAccount;
+import org.jpaste.pastebin.exceptions.RateLimitException;
+import org.jpaste.utils.web.CircuitOpenException;
+import org.jpaste.utils.web.WebException;
+
+/**
+ *
+ * Spreads pastes over several developer keys and accounts
+ *
+ * <p>
+ * Every paste is made with a key of the pool, picked round robin or the one
+ * with the least pastes in progress. The pool watches the answers of every
+ * key:
+ * </p>
+ * <ul>
+ * <li>a key which hits the post limit, gets <code>429 Too Many
+ * Requests</code> or is refused by a non-blocking
+ * {@link PastebinRateLimiter} is throttled, it is taken out of rotation for
+ * the cooldown, doubled with every throttle in a row up to the maximum
+ * cooldown</li>
+ * <li>a key which pastebin calls invalid is taken out for the maximum
+ * cooldown</li>
+ * <li>a key which fails as often in a row as the failure threshold, for any
+ * other reason than a bad paste, is taken out for the cooldown</li>
+ * </ul>
+ * <p>
+ * A paste refused for one of the first two reasons is pasted again with
+ * another key, unless its contents are read from a {@link java.io.Reader}.
+ * </p>
+ *
+ * <pre>
+ * PastebinKeyPool pool = new PastebinKeyPool();
+ * pool.add(&quot;key1&quot;);
+ * pool.add(&quot;key2&quot;, account);
+ * PastebinLink link = pool.paste(new PastebinPaste(&quot;contents&quot;));
+ * </pre>
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinKeyPool {
+	/**
+	 * Default time in milliseconds a throttled or failing key is taken out of
+	 * rotation
+	 */
+	public static final long DEFAULT_COOLDOWN = 60000L;
+	/**
+	 * Default longest time in milliseconds a key is taken out of rotation,
+	 * the post limit of pastebin lasts a day
+	 */
+	public static final long DEFAULT_MAX_COOLDOWN = TimeUnit.DAYS.toMillis(1);
+	/**
+	 * Default amount of failures in a row after which a key is taken out of
+	 * rotation
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+	private final CopyOnWriteArrayList<Key> keys = new CopyOnWriteArrayList<Key>();
+	private final AtomicInteger cursor = new AtomicInteger();
+	private volatile Policy policy;
+	private volatile long cooldown = DEFAULT_COOLDOWN;
+	private volatile long maxCooldown = DEFAULT_MAX_COOLDOWN;
+	private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+	/**
+	 * Creates a new <code>PastebinKeyPool</code> instance which picks the
+	 * least loaded key.
+	 */
+	public PastebinKeyPool() {
+		this(Policy.LEAST_LOADED);
+	}
+
+	/**
+	 * Creates a new <code>PastebinKeyPool</code> instance.
+	 *
+	 * @param policy
+	 *            how keys are picked
+	 */
+	public PastebinKeyPool(Policy policy) {
+		setPolicy(policy);
+	}
+
+	/**
+	 * Sets how keys are picked
+	 *
+	 * @param policy
+	 *            the policy
+	 */
+	public void setPolicy(Policy policy) {
+		if (policy == null) {
+			throw new IllegalArgumentException("Policy can't be null.");
+		}
+		this.policy = policy;
+	}
+
+	/**
+	 * Gets how keys are picked
+	 *
+	 * @return the policy
+	 */
+	public Policy getPolicy() {
+		return this.policy;
+	}
+
+	/**
+	 * Sets how long keys are taken out of rotation
+	 *
+	 * @param cooldown
+	 *            time in milliseconds after a first throttle or failure
+	 * @param maxCooldown
+	 *            longest time in milliseconds, used for invalid keys
+	 */
+	public void setCooldown(long cooldown, long maxCooldown) {
+		if (cooldown < 1) {
+			throw new IllegalArgumentException("Cooldown must be positive: "
+					+ cooldown);
+		}
+		if (maxCooldown < cooldown) {
+			throw new IllegalArgumentException(
+					"Max cooldown can't be less than the cooldown: "
+							+ maxCooldown);
+		}
+		this.cooldown = cooldown;
+		this.maxCooldown = maxCooldown;
+	}
+
+	/**
+	 * Gets the time a key is taken out of rotation after a first throttle or
+	 * failure
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getCooldown() {
+		return this.cooldown;
+	}
+
+	/**
+	 * Gets the longest time a key is taken out of rotation
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getMaxCooldown() {
+		return this.maxCooldown;
+	}
+
+	/**
+	 * Sets the amount of failures in a row after which a key is taken out of
+	 * rotation
+	 *
+	 * @param failureThreshold
+	 *            amount of failures
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException(
+					"Failure threshold must be positive: " + failureThreshold);
+		}
+		this.failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * Gets the amount of failures in a row after which a key is taken out of
+	 * rotation
+	 *
+	 * @return amount of failures
+	 */
+	public int getFailureThreshold() {
+		return this.failureThreshold;
+	}
+
+	/**
+	 * Adds a developer key which pastes as guest
+	 *
+	 * @param developerKey
+	 *            the developer key
+	 * @return the pooled key
+	 */
+	public Key add(String developerKey) {
+		return add(developerKey, null);
+	}
+
+	/**
+	 * Adds a developer key which pastes with an account
+	 *
+	 * @param developerKey
+	 *            the developer key
+	 * @param account
+	 *            the account, logged in, <code>null</code> to keep the
+	 *            account of the pastes
+	 * @return the pooled key
+	 */
+	public Key add(String developerKey, PastebinAccount account) {
+		if (developerKey == null || developerKey.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Developer key can't be null or empty.");
+		}
+		Key key = new Key(developerKey, account);
+		keys.add(key);
+		return key;
+	}
+
+	/**
+	 * Removes a key, pastes in progress with it are finished
+	 *
+	 * @param key
+	 *            the pooled key
+	 * @return <code>true</code> if the key was in the pool
+	 */
+	public boolean remove(Key key) {
+		return keys.remove(key);
+	}
+
+	/**
+	 * Gets all pooled keys, in rotation or not
+	 *
+	 * @return the keys
+	 */
+	public List<Key> getKeys() {
+		return Collections.unmodifiableList(keys);
+	}
+
+	/**
+	 * Gets the amount of keys in rotation
+	 *
+	 * @return available keys
+	 */
+	public int getAvailable() {
+		long now = System.nanoTime();
+		int available = 0;
+		for (Key key : keys) {
+			if (key.isAvailable(now)) {
+				available++;
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * Gets the recent paste rate over all keys
+	 *
+	 * @return pastes per second
+	 */
+	public double getThroughput() {
+		double throughput = 0;
+		for (Key key : keys) {
+			throughput += key.getThroughput();
+		}
+		return throughput;
+	}
+
+	/**
+	 * Picks a key for a call
+	 *
+	 * <p>
+	 * The lease must be closed once the call is over, after reporting how it
+	 * went with {@link Lease#succeeded()} or {@link Lease#failed(Exception)}.
+	 * </p>
+	 *
+	 * @return lease of the key
+	 * @throws RateLimitException
+	 *             if no key is in rotation
+	 */
+	public Lease acquire() {
+		Key[] keys = this.keys.toArray(new Key[0]);
+		if (keys.length == 0) {
+			throw new IllegalStateException("Key pool is empty.");
+		}
+		boolean roundRobin = policy == Policy.ROUND_ROBIN;
+		int start = Math.floorMod(cursor.getAndIncrement(), keys.length);
+		long now = System.nanoTime();
+		Key best = null;
+		for (int i = 0; i < keys.length; i++) {
+			Key key = keys[(start + i) % keys.length];
+			if (!key.isAvailable(now)) {
+				continue;
+			}
+			if (roundRobin) {
+				best = key;
+				break;
+			}
+			if (best == null || key.getInFlight() < best.getInFlight()) {
+				best = key;
+			}
+		}
+		if (best == null) {
+			throw new RateLimitException("All developer keys are cooling down.");
+		}
+		best.inFlight.incrementAndGet();
+		return new Lease(best);
+	}
+
+	/**
+	 * Pastes a paste with a key of the pool
+	 *
+	 * <p>
+	 * The paste itself is left alone, a copy of it is pasted with the
+	 * developer key, and account if the key has one, of the pool. The copy is
+	 * the paste of the returned link.
+	 * </p>
+	 *
+	 * @param paste
+	 *            the paste
+	 * @return link of the paste
+	 * @throws PasteException
+	 *             if it failed to paste the paste
+	 * @throws RateLimitException
+	 *             if no key is in rotation
+	 */
+	public PastebinLink paste(PastebinPaste paste) throws PasteException {
+		boolean repeatable = paste.isRepeatable();
+		Exception refused = null;
+		for (int attempt = 0;; attempt++) {
+			Lease lease;
+			try {
+				lease = acquire();
+			} catch (RateLimitException e) {
+				if (refused instanceof PasteException) {
+					throw (PasteException) refused;
+				}
+				if (refused != null) {
+					throw (RuntimeException) refused;
+				}
+				throw e;
+			}
+			try {
+				PastebinPaste copy = paste.copy();
+				lease.apply(copy);
+				PastebinLink link = copy.paste();
+				lease.succeeded();
+				return link;
+			} catch (PasteException | RuntimeException e) {
+				if (!lease.failed(e) || !repeatable
+						|| attempt + 1 >= keys.size()) {
+					throw e;
+				}
+				refused = e;
+			} finally {
+				lease.close();
+			}
+		}
+	}
+
+	/**
+	 * Records how a call with a key went and takes the key out of rotation if
+	 * needed
+	 *
+	 * @return <code>true</code> if the key itself was refused
+	 */
+	private boolean record(Key key, Exception e) {
+		long now = System.nanoTime();
+		if (e == null) {
+			key.succeeded(now);
+			return false;
+		}
+		if (e instanceof WebException
+				&& e.getCause() instanceof CircuitOpenException) {
+			// never reached pastebin, says nothing about the key
+			return false;
+		}
+		String message = e.getMessage() == null ? "" : e.getMessage();
+		if (isThrottled(e, message)) {
+			key.throttled(now, cooldown, maxCooldown);
+			return true;
+		}
+		if (message.contains("invalid api_dev_key")
+				|| message.contains("invalid api_user_key")) {
+			key.quarantine(now, maxCooldown, message);
+			key.failures.incrementAndGet();
+			return true;
+		}
+		if (e instanceof PasteException) {
+			// a bad paste says nothing about the key
+			key.failures.incrementAndGet();
+			return false;
+		}
+		key.failed(now, failureThreshold, cooldown, message);
+		return false;
+	}
+
+	private static boolean isThrottled(Exception e, String message) {
+		if (e instanceof RateLimitException) {
+			return true;
+		}
+		if (e instanceof WebException) {
+			return ((WebException) e).getStatusCode() == 429;
+		}
+		return e instanceof PasteException
+				&& (message.contains("Post limit") || message
+						.contains("maximum number of"));
+	}
+
+	@Override
+	public String toString() {
+		return "PastebinKeyPool [policy=" + policy + ", keys=" + keys + "]";
+	}
+
+	/**
+	 * How keys are picked
+	 */
+	public enum Policy {
+		/**
+		 * Every key in rotation in turn
+		 */
+		ROUND_ROBIN,
+		/**
+		 * The key in rotation with the least calls in progress, in turn among
+		 * equally loaded keys
+		 */
+		LEAST_LOADED
+	}
+
+	/**
+	 * A developer key of a pool, with the account it pastes with
+	 */
+	public static final class Key {
+		private static final long RATE_WINDOW = TimeUnit.MINUTES.toNanos(1);
+		private final String developerKey;
+		private final PastebinAccount account;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicLong pastes = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong throttles = new AtomicLong();
+		private volatile long availableAt;
+		private volatile String lastError;
+		private int failuresInRow;
+		private int throttlesInRow;
+		private double rate;
+		private long rateTime = System.nanoTime();
+
+		Key(String developerKey, PastebinAccount account) {
+			this.developerKey = developerKey;
+			this.account = account;
+			this.availableAt = rateTime;
+		}
+
+		/**
+		 * Gets the developer key
+		 *
+		 * @return developer key
+		 */
+		public String getDeveloperKey() {
+			return developerKey;
+		}
+
+		/**
+		 * Gets the account the key pastes with
+		 *
+		 * @return the account, <code>null</code> to keep the account of the
+		 *         pastes
+		 */
+		public PastebinAccount getAccount() {
+			return account;
+		}
+
+		/**
+		 * Gets the amount of calls in progress with the key
+		 *
+		 * @return calls in progress
+		 */
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * Gets the amount of successful calls
+		 *
+		 * @return pastes
+		 */
+		public long getPastes() {
+			return pastes.get();
+		}
+
+		/**
+		 * Gets the amount of failed calls, throttled ones excluded
+		 *
+		 * @return failures
+		 */
+		public long getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * Gets the amount of times the key was throttled
+		 *
+		 * @return throttles
+		 */
+		public long getThrottles() {
+			return throttles.get();
+		}
+
+		/**
+		 * Gets the error which took the key out of rotation last
+		 *
+		 * @return the error message, <code>null</code> if there was none
+		 */
+		public String getLastError() {
+			return lastError;
+		}
+
+		/**
+		 * Determines if the key is in rotation
+		 *
+		 * @return <code>true</code> if available
+		 */
+		public boolean isAvailable() {
+			return isAvailable(System.nanoTime());
+		}
+
+		boolean isAvailable(long now) {
+			return now - availableAt >= 0;
+		}
+
+		/**
+		 * Gets the time until the key is back in rotation
+		 *
+		 * @return time in milliseconds, <code>0</code> if available
+		 */
+		public long getCooldownRemaining() {
+			return Math.max(0, TimeUnit.NANOSECONDS.toMillis(availableAt
+					- System.nanoTime()));
+		}
+
+		/**
+		 * Gets the recent paste rate of the key, an average which decays over
+		 * about a minute
+		 *
+		 * @return pastes per second
+		 */
+		public synchronized double getThroughput() {
+			return decayed(System.nanoTime())
+					* TimeUnit.SECONDS.toNanos(1) / RATE_WINDOW;
+		}
+
+		private double decayed(long now) {
+			return rate * Math.exp(-(now - rateTime) / (double) RATE_WINDOW);
+		}
+
+		synchronized void succeeded(long now) {
+			pastes.incrementAndGet();
+			failuresInRow = 0;
+			throttlesInRow = 0;
+			rate = decayed(now) + 1;
+			rateTime = now;
+		}
+
+		synchronized void failed(long now, int threshold, long cooldown,
+				String error) {
+			failures.incrementAndGet();
+			if (++failuresInRow >= threshold) {
+				failuresInRow = 0;
+				quarantine(now, cooldown, error);
+			}
+		}
+
+		synchronized void throttled(long now, long cooldown, long maxCooldown) {
+			throttles.incrementAndGet();
+			int shift = Math.min(throttlesInRow++, 30);
+			quarantine(now, Math.min(maxCooldown, cooldown << shift),
+					"Throttled");
+		}
+
+		void quarantine(long now, long cooldown, String error) {
+			lastError = error;
+			availableAt = now + TimeUnit.MILLISECONDS.toNanos(cooldown);
+		}
+
+		@Override
+		public String toString() {
+			return "Key [developerKey=" + developerKey + ", inFlight="
+					+ getInFlight() + ", pastes=" + getPastes()
+					+ ", failures=" + getFailures() + ", throttles="
+					+ getThrottles() + ", throughput="
+					+ String.format("%.2f", getThroughput()) + "/s"
+					+ (isAvailable() ? "" : ", cooldown "
+							+ getCooldownRemaining() + " ms") + "]";
+		}
+	}
+
+	/**
+	 * A key picked for a call
+	 */
+	public final class Lease implements AutoCloseable {
+		private final Key key;
+		private boolean closed;
+
+		Lease(Key key) {
+			this.key = key;
+		}
+
+		/**
+		 * Gets the picked key
+		 *
+		 * @return the pooled key
+		 */
+		public Key getKey() {
+			return key;
+		}
+
+		/**
+		 * Gets the developer key to call with
+		 *
+		 * @return developer key
+		 */
+		public String getDeveloperKey() {
+			return key.getDeveloperKey();
+		}
+
+		/**
+		 * Gets the account to call with
+		 *
+		 * @return the account, <code>null</code> to keep the account of the
+		 *         call
+		 */
+		public PastebinAccount getAccount() {
+			return key.getAccount();
+		}
+
+		/**
+		 * Sets the developer key, and account if the key has one, of a paste
+		 *
+		 * @param paste
+		 *            the paste
+		 */
+		public void apply(PastebinPaste paste) {
+			paste.setDeveloperKey(key.getDeveloperKey());
+			if (key.getAccount() != null) {
+				paste.setAccount(key.getAccount());
+			}
+		}
+
+		/**
+		 * Reports that the call succeeded
+		 */
+		public void succeeded() {
+			record(key, null);
+		}
+
+		/**
+		 * Reports that the call failed
+		 *
+		 * @param e
+		 *            the failure
+		 * @return <code>true</code> if the key was refused, throttled or
+		 *         invalid, so another key may succeed
+		 */
+		public boolean failed(Exception e) {
+			return record(key, e);
+		}
+
+		/**
+		 * Hands the key back
+		 */
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				key.inFlight.decrementAndGet();
+			}
+		}
+	}
+
+}
@@ -1,14 +1,33 @@
 package org.jpaste.pastebin;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.jpaste.AbstractPasteLink;
 import org.jpaste.exceptions.PasteException;
 import org.jpaste.pastebin.account.PastebinAccount;
+import org.jpaste.pastebin.metrics.Operation;
+import org.jpaste.pastebin.metrics.OperationProbe;
+import org.jpaste.utils.concurrent.Async;
+import org.jpaste.utils.concurrent.SingleFlight;
 import org.jpaste.utils.web.Post;
 import org.jpaste.utils.web.Web;
+import org.jpaste.utils.web.WebRequest;
+import org.jpaste.utils.web.WebResponse;
 
 /**
  * 
@@ -23,6 +42,7 @@ import org.jpaste.utils.web.Web;
  * 
  */
 public class PastebinLink extends AbstractPasteLink {
+        private static final SingleFlight<String, String> CONTENT_FLIGHTS = new SingleFlight<String, String>();
         private PastebinPaste paste;
         private URL link;
         private int hits;
@@ -98,7 +118,78 @@ public class PastebinLink extends AbstractPasteLink {
                 if(getPaste().getContents() != null) {
                         throw new IllegalStateException("Contents already fetched.");
                 }
-                getPaste().setContents(getContents(getKey()));
+                getPaste().setContents(readContents());
+        }
+
+        /**
+         * Fetches the contents of this link, through the content cache which
+         * keeps them until this paste expires
+         * 
+         * @return contents of the paste
+         */
+        String readContents() {
+                return getContents(getKey(), ContentCache.expiresAt(this));
+        }
+
+        /**
+         * Fetches the pastebin link content asynchronously on the executor of
+         * {@link Pastebin#getExecutor()}
+         * 
+         * @return future completing with this link once the contents are set
+         */
+        public CompletableFuture<PastebinLink> fetchContentAsync() {
+                return fetchContentAsync(Pastebin.getExecutor());
+        }
+
+        /**
+         * Fetches the pastebin link content asynchronously
+         * 
+         * @param executor
+         *            the executor to run the request on
+         * @return future completing with this link once the contents are set
+         */
+        public CompletableFuture<PastebinLink> fetchContentAsync(Executor executor) {
+                return Async.supply(() -> {
+                        fetchContent();
+                        return this;
+                }, executor);
+        }
+
+        /**
+         * Opens a stream to the raw contents of this paste
+         * 
+         * @return raw paste bytes, see {@link #openContents(String)}
+         * @throws IOException
+         *             if the request failed
+         */
+        public InputStream openStream() throws IOException {
+                return openContents(getKey());
+        }
+
+        /**
+         * Writes the raw contents of this paste to a channel
+         * 
+         * @param target
+         *            the channel to write to, which is left open
+         * @return amount of bytes written
+         * @throws IOException
+         *             if the request or writing failed
+         */
+        public long transferTo(WritableByteChannel target) throws IOException {
+                return transferContents(getKey(), target);
+        }
+
+        /**
+         * Downloads the raw contents of this paste to a file
+         * 
+         * @param target
+         *            the file to create or overwrite
+         * @return amount of bytes written
+         * @throws IOException
+         *             if the request or writing failed
+         */
+        public long downloadTo(Path target) throws IOException {
+                return downloadContents(getKey(), target);
         }
 
         /**
@@ -123,6 +214,18 @@ public class PastebinLink extends AbstractPasteLink {
                 return this.hits;
         }
 
+        /**
+         * Creates a copy of this link and its paste, for callers which share a
+         * parsed link
+         * 
+         * @return the copy
+         */
+        PastebinLink copy() {
+                PastebinLink copy = new PastebinLink(paste.copy(), link, pasteDate);
+                copy.hits = hits;
+                return copy;
+        }
+
         /**
          * Gets the paste date
          * 
@@ -155,10 +258,33 @@ public class PastebinLink extends AbstractPasteLink {
                 post.put("api_paste_key", getKey());
                 post.put("api_option", "delete");
                 
-                String response = Web.getContents(Pastebin.API_POST_LINK, post);
+                Pastebin.getRateLimiter().acquire(developerKey);
+                OperationProbe probe = OperationProbe.start(Operation.DELETE);
+                String response;
+                try {
+                        response = Web.getContents(OperationProbe.attach(probe,
+                                        new WebRequest(Pastebin.getPostLink(), post)));
+                } catch (RuntimeException e) {
+                        OperationProbe.fail(probe, e);
+                        throw e;
+                }
                 if(response.equals("Paste Removed")) {
+                        OperationProbe.finish(probe, null);
+                        ContentCache cache = Pastebin.getContentCache();
+                        if(cache != null) {
+                                cache.invalidate(getKey());
+                        }
+                        DiskContentCache diskCache = Pastebin.getDiskCache();
+                        if(diskCache != null) {
+                                try {
+                                        diskCache.invalidate(getKey());
+                                } catch (IOException e) {
+                                        // the paste is gone either way, the disk tier is best effort
+                                }
+                        }
                         return;
                 }
+                OperationProbe.finish(probe, response);
                 throw new PasteException("Failed to delete paste: " + response);
         }
 
@@ -170,6 +296,40 @@ public class PastebinLink extends AbstractPasteLink {
                 delete(getPaste().getDeveloperKey(), getPaste().getAccount());
         }
 
+        /**
+         * Deletes this paste asynchronously on the executor of
+         * {@link Pastebin#getExecutor()}
+         * 
+         * @return future completing once the paste has been deleted, or
+         *         exceptionally with a {@link PasteException} if it failed to
+         *         delete the paste
+         */
+        public CompletableFuture<Void> deleteAsync() {
+                return deleteAsync(getPaste().getDeveloperKey(), getPaste().getAccount(), Pastebin.getExecutor());
+        }
+
+        /**
+         * Deletes this paste asynchronously
+         * 
+         * @param developerKey
+         *            a developer key which can be fetched from the pastebin API
+         *            page
+         * @param account
+         *            the account which was used to create this paste
+         * @param executor
+         *            the executor to run the request on
+         * @return future completing once the paste has been deleted, or
+         *         exceptionally with a {@link PasteException} if it failed to
+         *         delete the paste
+         */
+        public CompletableFuture<Void> deleteAsync(final String developerKey, final PastebinAccount account,
+                        Executor executor) {
+                return Async.supply(() -> {
+                        delete(developerKey, account);
+                        return null;
+                }, executor);
+        }
+
         /**
          * Fetches a paste text from pastebin
          * 
@@ -178,7 +338,184 @@ public class PastebinLink extends AbstractPasteLink {
          * @return contents of the paste
          */
         public static String getContents(String pasteKey) {
-                return Web.getContents("https://pastebin.com/raw.php?i=" + pasteKey);
+                return getContents(pasteKey, ContentCache.UNKNOWN);
+        }
+
+        private static String getContents(String pasteKey, long expiresAt) {
+                ContentCache cache = Pastebin.getContentCache();
+                DiskContentCache diskCache = Pastebin.getDiskCache();
+                String contents;
+                if(cache != null && (contents = cache.get(pasteKey)) != null) {
+                        return contents;
+                }
+                if(diskCache != null && (contents = diskCache.get(pasteKey)) != null) {
+                        if(cache != null) {
+                                cache.put(pasteKey, contents, diskCache.getExpiresAt(pasteKey));
+                        }
+                        return contents;
+                }
+                return CONTENT_FLIGHTS.execute(pasteKey, () -> fetchContents(pasteKey, expiresAt, cache, diskCache));
+        }
+
+        /**
+         * Fetches contents missing from the caches and caches them, run once for
+         * all concurrent callers of a paste
+         */
+        private static String fetchContents(String pasteKey, long expiresAt, ContentCache cache,
+                        DiskContentCache diskCache) {
+                String contents = fetchContents(pasteKey);
+                if(cache != null) {
+                        cache.put(pasteKey, contents, expiresAt);
+                }
+                if(diskCache != null) {
+                        try {
+                                diskCache.put(pasteKey, contents, expiresAt);
+                        } catch (IOException e) {
+                                // the contents were fetched, the disk tier is best effort
+                        }
+                }
+                return contents;
+        }
+
+        private static String fetchContents(String pasteKey) {
+                OperationProbe probe = OperationProbe.start(Operation.RAW);
+                try {
+                        String contents = Web.getContents(OperationProbe.attach(probe,
+                                        new WebRequest(Pastebin.getRawLink() + pasteKey)));
+                        OperationProbe.finish(probe, null);
+                        return contents;
+                } catch (RuntimeException e) {
+                        OperationProbe.fail(probe, e);
+                        throw e;
+                }
+        }
+
+        /**
+         * Opens a stream to the raw contents of a paste
+         * 
+         * <p>
+         * Unlike {@link #getContents(String)} the bytes are passed on exactly as
+         * pastebin serves them, line endings included, and the paste is never
+         * held in memory as a whole. Closing the stream releases the connection.
+         * </p>
+         * 
+         * @param pasteKey
+         *            the unique paste key
+         * @return raw paste bytes
+         * @throws IOException
+         *             if the request failed
+         */
+        public static InputStream openContents(String pasteKey) throws IOException {
+                return openRaw(pasteKey).getInputStream();
+        }
+
+        /**
+         * Opens the raw contents of a paste, measured until the body is closed
+         */
+        private static WebResponse openRaw(String pasteKey) throws IOException {
+                OperationProbe probe = OperationProbe.start(Operation.RAW);
+                try {
+                        WebResponse response = Web.open(OperationProbe.attach(probe,
+                                        new WebRequest(Pastebin.getRawLink() + pasteKey)));
+                        if (probe == null) {
+                                return response;
+                        }
+                        return new WebResponse(response.getURL(), response.getStatusCode(),
+                                        response.getStatusMessage(), response.getHeaders(),
+                                        OperationProbe.finishOnClose(probe, response.getInputStream()));
+                } catch (IOException | RuntimeException e) {
+                        OperationProbe.fail(probe, e);
+                        throw e;
+                }
+        }
+
+        /**
+         * Opens a reader on the raw contents of a paste, decoded with the
+         * charset pastebin declares (UTF-8 if none)
+         * 
+         * @param pasteKey
+         *            the unique paste key
+         * @return raw paste text
+         * @throws IOException
+         *             if the request failed
+         */
+        public static Reader openContentsReader(String pasteKey) throws IOException {
+                WebResponse response = openRaw(pasteKey);
+                return new InputStreamReader(response.getInputStream(), response.getCharset());
+        }
+
+        /**
+         * Writes the raw contents of a paste to a channel
+         * 
+         * @param pasteKey
+         *            the unique paste key
+         * @param target
+         *            the channel to write to, which is left open
+         * @return amount of bytes written
+         * @throws IOException
+         *             if the request or writing failed
+         */
+        public static long transferContents(String pasteKey, WritableByteChannel target) throws IOException {
+                try (ReadableByteChannel source = Channels.newChannel(openContents(pasteKey))) {
+                        ByteBuffer buffer = ByteBuffer.allocate(8192);
+                        long written = 0;
+                        while (source.read(buffer) != -1) {
+                                buffer.flip();
+                                while (buffer.hasRemaining()) {
+                                        written += target.write(buffer);
+                                }
+                                buffer.clear();
+                        }
+                        return written;
+                }
+        }
+
+        /**
+         * Downloads the raw contents of a paste to a file
+         * 
+         * <p>
+         * The file is created or truncated before the download starts, it holds
+         * a partial paste if the download fails.
+         * </p>
+         * 
+         * @param pasteKey
+         *            the unique paste key
+         * @param target
+         *            the file to create or overwrite
+         * @return amount of bytes written
+         * @throws IOException
+         *             if the request or writing failed
+         */
+        public static long downloadContents(String pasteKey, Path target) throws IOException {
+                try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                        return transferContents(pasteKey, channel);
+                }
+        }
+
+        /**
+         * Fetches a paste text from pastebin asynchronously on the executor of
+         * {@link Pastebin#getExecutor()}
+         * 
+         * @param pasteKey
+         *            the unique paste key
+         * @return future contents of the paste
+         */
+        public static CompletableFuture<String> getContentsAsync(String pasteKey) {
+                return getContentsAsync(pasteKey, Pastebin.getExecutor());
+        }
+
+        /**
+         * Fetches a paste text from pastebin asynchronously
+         * 
+         * @param pasteKey
+         *            the unique paste key
+         * @param executor
+         *            the executor to run the request on
+         * @return future contents of the paste
+         */
+        public static CompletableFuture<String> getContentsAsync(final String pasteKey, Executor executor) {
+                return Async.supply(() -> getContents(pasteKey), executor);
         }
 
 }
@@ -1,13 +1,19 @@
 package org.jpaste.pastebin;
 
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 import org.jpaste.AbstractPaste;
 import org.jpaste.exceptions.PasteException;
 import org.jpaste.pastebin.account.PastebinAccount;
+import org.jpaste.pastebin.metrics.Operation;
+import org.jpaste.pastebin.metrics.OperationProbe;
 import org.jpaste.utils.web.Post;
 import org.jpaste.utils.web.Web;
+import org.jpaste.utils.web.WebRequest;
 
 /**
  * 
@@ -50,6 +56,7 @@ public class PastebinPaste extends AbstractPaste<PastebinLink> {
 	private String pasteFormat;
 	private PasteExpireDate expireDate;
 	private int visibility;
+	private Object contentsSource;
 
 	/**
 	 * Creates a new empty <code>PastebinPaste</code> instance.
@@ -109,6 +116,55 @@ public class PastebinPaste extends AbstractPaste<PastebinLink> {
 		this.account = account;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setContents(String contents) {
+		super.setContents(contents);
+		this.contentsSource = null;
+	}
+
+	/**
+	 * Sets a UTF-8 text file as paste contents
+	 * 
+	 * <p>
+	 * The file is read through a memory mapping and encoded straight into the
+	 * connection when pasting, it is never loaded into memory as a whole.
+	 * {@link #getContents()} returns <code>null</code> for file contents.
+	 * </p>
+	 * 
+	 * @param file
+	 *            file holding the paste contents
+	 */
+	public void setContents(Path file) {
+		if (file == null) {
+			throw new IllegalArgumentException("File can't be null.");
+		}
+		super.setContents(null);
+		this.contentsSource = file;
+	}
+
+	/**
+	 * Sets a reader as paste contents
+	 * 
+	 * <p>
+	 * The reader is read and encoded straight into the connection when
+	 * pasting, and closed afterwards, so this paste can only be pasted once.
+	 * {@link #getContents()} returns <code>null</code> for reader contents.
+	 * </p>
+	 * 
+	 * @param reader
+	 *            reader of the paste contents
+	 */
+	public void setContents(Reader reader) {
+		if (reader == null) {
+			throw new IllegalArgumentException("Reader can't be null.");
+		}
+		super.setContents(null);
+		this.contentsSource = reader;
+	}
+
 	/**
 	 * Sets the pastebin account If you set an account the pastes will be listed
 	 * on your account.
@@ -259,12 +315,40 @@ public class PastebinPaste extends AbstractPaste<PastebinLink> {
 		return this.visibility;
 	}
 
+	/**
+	 * Creates a copy of this paste, for callers which share a parsed paste
+	 * 
+	 * @return the copy
+	 */
+	PastebinPaste copy() {
+		PastebinPaste copy = new PastebinPaste(getContents());
+		copy.developerKey = developerKey;
+		copy.account = account;
+		copy.pasteTitle = pasteTitle;
+		copy.pasteFormat = pasteFormat;
+		copy.expireDate = expireDate;
+		copy.visibility = visibility;
+		copy.contentsSource = contentsSource;
+		return copy;
+	}
+
+	/**
+	 * Determines if the contents can be sent more than once, contents read
+	 * from a {@link Reader} can't
+	 * 
+	 * @return <code>true</code> if the paste can be pasted again
+	 */
+	boolean isRepeatable() {
+		return !(this.contentsSource instanceof Reader);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public PastebinLink paste() throws PasteException {
-		if (getContents() == null || getContents().isEmpty()) {
+		if (this.contentsSource == null
+				&& (getContents() == null || getContents().isEmpty())) {
 			throw new IllegalStateException("Paste can not be null or empty.");
 		}
 		if (getDeveloperKey() == null || getDeveloperKey().isEmpty()) {
@@ -276,7 +360,14 @@ public class PastebinPaste extends AbstractPaste<PastebinLink> {
 		// required parameters
 		post.put("api_dev_key", getDeveloperKey());
 		post.put("api_option", "paste");
-		post.put("api_paste_code", getContents());
+		// encoded while writing the post, large pastes aren't copied
+		if (this.contentsSource instanceof Path) {
+			post.put("api_paste_code", (Path) this.contentsSource);
+		} else if (this.contentsSource instanceof Reader) {
+			post.put("api_paste_code", (Reader) this.contentsSource);
+		} else {
+			post.put("api_paste_code", (CharSequence) getContents());
+		}
 
 		// optional parameters
 		if (this.account != null && this.account.getUserSessionId() != null) {
@@ -293,20 +384,40 @@ public class PastebinPaste extends AbstractPaste<PastebinLink> {
 			post.put("api_paste_expire_date", expireDate.getValue());
 		}
 
+		Pastebin.getRateLimiter().acquire(getDeveloperKey());
+		OperationProbe probe = OperationProbe.start(Operation.PASTE);
 		try {
-			String pageResponse = Web.getContents(Pastebin.API_POST_LINK, post);
+			String pageResponse = Web.getContents(OperationProbe.attach(probe,
+					new WebRequest(Pastebin.getPostLink(), post)));
 			if (pageResponse.startsWith("http")) {
 				// success
 				PastebinLink result = new PastebinLink(this, new URL(
 						pageResponse));
+				OperationProbe.finish(probe, null);
 				return result;
 			}
+			OperationProbe.finish(probe, pageResponse);
 			throw new PasteException("Failed to generate paste: "
 					+ pageResponse);
 		} catch (MalformedURLException e) {
 			// shouldn't happen
+			OperationProbe.fail(probe, e);
 			throw new PasteException("Failed to generate paste: " + e);
+		} catch (RuntimeException e) {
+			OperationProbe.fail(probe, e);
+			throw e;
 		}
 	}
 
+	/**
+	 * Pastes this paste asynchronously on the executor of
+	 * {@link Pastebin#getExecutor()}
+	 * 
+	 * @return future paste result, completes exceptionally with a
+	 *         {@link PasteException} if it failed to paste the paste
+	 */
+	public CompletableFuture<PastebinLink> pasteAsync() {
+		return pasteAsync(Pastebin.getExecutor());
+	}
+
 }
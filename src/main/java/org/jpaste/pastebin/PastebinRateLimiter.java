@@ -0,0 +1,204 @@
+package org.jpaste.pastebin;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jpaste.pastebin.exceptions.RateLimitException;
+import org.jpaste.utils.concurrent.TokenBucket;
+import org.jpaste.utils.web.Deadline;
+
+/**
+ * 
+ * Limits the rate of API calls per developer key
+ * 
+ * <p>
+ * Every call which sends an <code>api_dev_key</code> takes a permit from the
+ * {@link TokenBucket} of that key first, so all calls with the same key share
+ * one budget. In blocking mode calls wait for a permit, otherwise they fail
+ * with a {@link RateLimitException} right away. The limiter used by the API
+ * classes is {@link Pastebin#getRateLimiter()}, which doesn't limit anything
+ * until a limit is set.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class PastebinRateLimiter {
+	private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+	private volatile double permitsPerSecond;
+	private volatile int burst;
+	private volatile boolean blocking = true;
+
+	/**
+	 * Creates a new <code>PastebinRateLimiter</code> instance without a limit.
+	 */
+	public PastebinRateLimiter() {
+		this(0, 1);
+	}
+
+	/**
+	 * Creates a new <code>PastebinRateLimiter</code> instance.
+	 * 
+	 * @param permitsPerSecond
+	 *            calls per second per developer key, <code>0</code> for no
+	 *            limit
+	 * @param burst
+	 *            amount of calls a developer key may make at once
+	 */
+	public PastebinRateLimiter(double permitsPerSecond, int burst) {
+		setLimit(permitsPerSecond, burst);
+	}
+
+	/**
+	 * Sets the limit of all developer keys
+	 * 
+	 * <p>
+	 * Buckets of previously used keys are dropped, calls already waiting keep
+	 * their place.
+	 * </p>
+	 * 
+	 * @param permitsPerSecond
+	 *            calls per second per developer key, <code>0</code> for no
+	 *            limit
+	 * @param burst
+	 *            amount of calls a developer key may make at once
+	 */
+	public void setLimit(double permitsPerSecond, int burst) {
+		// validates the values
+		new TokenBucket(permitsPerSecond, burst);
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = burst;
+		buckets.clear();
+	}
+
+	/**
+	 * Sets the limit of a single developer key
+	 * 
+	 * @param developerKey
+	 *            the developer key
+	 * @param permitsPerSecond
+	 *            calls per second, <code>0</code> for no limit
+	 * @param burst
+	 *            amount of calls the key may make at once
+	 */
+	public void setLimit(String developerKey, double permitsPerSecond, int burst) {
+		buckets.put(developerKey, new TokenBucket(permitsPerSecond, burst));
+	}
+
+	/**
+	 * Sets if calls wait for a permit
+	 * 
+	 * @param blocking
+	 *            <code>true</code> to wait (default), <code>false</code> to
+	 *            throw a {@link RateLimitException} if no permit is available
+	 */
+	public void setBlocking(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	/**
+	 * Determines if calls wait for a permit
+	 * 
+	 * @return <code>true</code> if calls wait
+	 */
+	public boolean isBlocking() {
+		return this.blocking;
+	}
+
+	/**
+	 * Gets the bucket of a developer key, creating it if needed
+	 * 
+	 * @param developerKey
+	 *            the developer key
+	 * @return token bucket of the key
+	 */
+	public TokenBucket getBucket(String developerKey) {
+		TokenBucket bucket = buckets.get(developerKey);
+		if (bucket == null) {
+			TokenBucket created = new TokenBucket(permitsPerSecond, burst);
+			bucket = buckets.putIfAbsent(developerKey, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * Gets the buckets of all developer keys used so far
+	 * 
+	 * @return buckets keyed by developer key
+	 */
+	public Map<String, TokenBucket> getBuckets() {
+		return Collections.unmodifiableMap(buckets);
+	}
+
+	/**
+	 * Takes a permit for a call with a developer key
+	 * 
+	 * <p>
+	 * In blocking mode a call running under a {@link Deadline} waits no longer
+	 * than the deadline allows.
+	 * </p>
+	 * 
+	 * @param developerKey
+	 *            the developer key of the call
+	 * @throws RateLimitException
+	 *             if no permit is available in non-blocking mode, or in time
+	 *             for the deadline of the call, or the thread was interrupted
+	 *             while waiting
+	 */
+	public void acquire(String developerKey) {
+		TokenBucket bucket = getBucket(developerKey);
+		if (!blocking) {
+			if (!bucket.tryAcquire()) {
+				throw new RateLimitException("Rate limit exceeded.");
+			}
+			return;
+		}
+		Deadline deadline = Deadline.current();
+		try {
+			if (deadline == null) {
+				bucket.acquire();
+			} else if (bucket.tryAcquire(
+					deadline.remaining(TimeUnit.NANOSECONDS),
+					TimeUnit.NANOSECONDS) < 0) {
+				throw new RateLimitException(
+						"Rate limit exceeded within the deadline.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RateLimitException(
+					"Interrupted while waiting for the rate limit.");
+		}
+	}
+
+	/**
+	 * Gets the time calls spent waiting for a permit over all keys
+	 * 
+	 * @return total wait time in nanoseconds
+	 */
+	public long getWaitNanos() {
+		long total = 0;
+		for (TokenBucket bucket : buckets.values()) {
+			total += bucket.getWaitNanos();
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the amount of calls waiting for a permit over all keys
+	 * 
+	 * @return queue depth
+	 */
+	public int getQueueDepth() {
+		int total = 0;
+		for (TokenBucket bucket : buckets.values()) {
+			total += bucket.getQueueDepth();
+		}
+		return total;
+	}
+
+}
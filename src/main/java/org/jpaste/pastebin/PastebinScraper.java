@@ -0,0 +1,588 @@
+package org.jpaste.pastebin;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.jpaste.utils.web.Post;
+
+/**
+ *
+ * Polls the scraping API and hands every new paste to its subscribers once
+ *
+ * <p>
+ * Consecutive responses of {@link Pastebin#getMostRecent(Post)} overlap, the
+ * scraper remembers the keys it has seen in a bounded set and only passes on
+ * pastes it hasn't seen before, oldest first. Polls run on a single daemon
+ * thread, subscribers are called on that thread and must not block for long.
+ * </p>
+ *
+ * <p>
+ * A poll which shares no paste with the previous one has likely missed
+ * pastes in between, their amount is estimated from the paste rate of the
+ * response. Poll more often or with a higher limit if
+ * {@link #getEstimatedMissed()} keeps growing, or let the scraper choose
+ * both from the paste rate with {@link #setAdaptive(boolean)}.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinScraper implements Closeable {
+	/**
+	 * Default time in milliseconds between polls
+	 */
+	public static final long DEFAULT_INTERVAL = 10000L;
+	/**
+	 * Default amount of pastes requested per poll
+	 */
+	public static final int DEFAULT_LIMIT = 250;
+	/**
+	 * Maximum amount of pastes the scraping API returns per request
+	 */
+	public static final int MAX_LIMIT = 500;
+	/**
+	 * Default share of adaptive polls which may miss pastes
+	 */
+	public static final double DEFAULT_TARGET_MISS_RATE = 0.01;
+	private final PasteKeySet seen;
+	private final PollingCadence cadence = new PollingCadence(MAX_LIMIT,
+			DEFAULT_TARGET_MISS_RATE, 1000L, 60000L);
+	private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+	private final ScheduledExecutorService scheduler;
+	// serializes polls, the monitor of the scraper guards the settings
+	private final Object pollLock = new Object();
+	private final AtomicLong polls = new AtomicLong();
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong gaps = new AtomicLong();
+	private final AtomicLong estimatedMissed = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private volatile long interval = DEFAULT_INTERVAL;
+	private volatile int limit = DEFAULT_LIMIT;
+	private volatile String language;
+	private volatile boolean adaptive;
+	private volatile double rate = Double.NaN;
+	private volatile double lastOverlapRatio = Double.NaN;
+	private ScheduledFuture<?> next;
+	private boolean running;
+	private long generation;
+	private long newestDate = -1;
+
+	/**
+	 * Creates a new <code>PastebinScraper</code> instance which remembers the
+	 * keys of the last 20 full polls at least.
+	 */
+	public PastebinScraper() {
+		this(20 * MAX_LIMIT);
+	}
+
+	/**
+	 * Creates a new <code>PastebinScraper</code> instance.
+	 *
+	 * @param seenCapacity
+	 *            amount of paste keys which are remembered at least, twice
+	 *            that at most
+	 */
+	public PastebinScraper(int seenCapacity) {
+		this.seen = new PasteKeySet(seenCapacity);
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				1, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "jpastebin-scraper");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.setRemoveOnCancelPolicy(true);
+		this.scheduler = executor;
+	}
+
+	/**
+	 * Sets the time between the end of a poll and the start of the next,
+	 * replaced after every poll while adaptive
+	 *
+	 * @param interval
+	 *            time in milliseconds
+	 */
+	public void setInterval(long interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Interval must be positive: "
+					+ interval);
+		}
+		this.interval = interval;
+	}
+
+	/**
+	 * Gets the time between polls
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * Sets the amount of pastes requested per poll, replaced after every poll
+	 * while adaptive
+	 *
+	 * @param limit
+	 *            amount of pastes, up to {@link #MAX_LIMIT}
+	 */
+	public void setLimit(int limit) {
+		if (limit < 1 || limit > MAX_LIMIT) {
+			throw new IllegalArgumentException("Limit must be between 1 and "
+					+ MAX_LIMIT + ": " + limit);
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * Gets the amount of pastes requested per poll
+	 *
+	 * @return amount of pastes
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Lets the scraper choose the interval and limit after every poll from
+	 * the estimated paste rate, polling as rarely as the target miss rate
+	 * allows
+	 *
+	 * @param adaptive
+	 *            <code>true</code> to adapt the interval and limit
+	 * @see #setTargetMissRate(double)
+	 * @see #setIntervalBounds(long, long)
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Determines if the scraper adapts the interval and limit
+	 *
+	 * @return <code>true</code> if adaptive
+	 */
+	public boolean isAdaptive() {
+		return this.adaptive;
+	}
+
+	/**
+	 * Sets the share of adaptive polls which may miss pastes
+	 *
+	 * @param targetMissRate
+	 *            share of polls, between 0 and 0.5 exclusive
+	 */
+	public synchronized void setTargetMissRate(double targetMissRate) {
+		cadence.setTargetMissRate(targetMissRate);
+	}
+
+	/**
+	 * Gets the share of adaptive polls which may miss pastes
+	 *
+	 * @return share of polls
+	 */
+	public synchronized double getTargetMissRate() {
+		return cadence.getTargetMissRate();
+	}
+
+	/**
+	 * Sets the bounds of the adaptive interval, one second to one minute by
+	 * default
+	 *
+	 * @param minInterval
+	 *            shortest interval in milliseconds
+	 * @param maxInterval
+	 *            longest interval in milliseconds
+	 */
+	public synchronized void setIntervalBounds(long minInterval,
+			long maxInterval) {
+		cadence.setIntervalBounds(minInterval, maxInterval);
+	}
+
+	/**
+	 * Gets the shortest adaptive interval
+	 *
+	 * @return time in milliseconds
+	 */
+	public synchronized long getMinInterval() {
+		return cadence.getMinInterval();
+	}
+
+	/**
+	 * Gets the longest adaptive interval
+	 *
+	 * @return time in milliseconds
+	 */
+	public synchronized long getMaxInterval() {
+		return cadence.getMaxInterval();
+	}
+
+	/**
+	 * Only scrapes pastes of a syntax
+	 *
+	 * @param language
+	 *            the syntax, <code>null</code> for all pastes
+	 */
+	public void setLanguage(String language) {
+		this.language = language;
+	}
+
+	/**
+	 * Gets the syntax of the scraped pastes
+	 *
+	 * @return the syntax, <code>null</code> for all pastes
+	 */
+	public String getLanguage() {
+		return this.language;
+	}
+
+	/**
+	 * Registers a subscriber
+	 *
+	 * @param subscriber
+	 *            the subscriber
+	 */
+	public void subscribe(Subscriber subscriber) {
+		if (subscriber == null) {
+			throw new IllegalArgumentException("Subscriber can't be null.");
+		}
+		subscribers.add(subscriber);
+	}
+
+	/**
+	 * Removes a subscriber
+	 *
+	 * @param subscriber
+	 *            the subscriber
+	 */
+	public void unsubscribe(Subscriber subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	/**
+	 * Starts polling right away
+	 */
+	public synchronized void start() {
+		if (scheduler.isShutdown()) {
+			throw new IllegalStateException("Scraper has been closed.");
+		}
+		if (!running) {
+			running = true;
+			// polls of an earlier start which are still in progress don't
+			// schedule their successors any more
+			long current = ++generation;
+			next = scheduler.schedule(() -> run(current), 0,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops polling, a poll in progress is finished
+	 */
+	public synchronized void stop() {
+		running = false;
+		if (next != null) {
+			next.cancel(false);
+			next = null;
+		}
+	}
+
+	/**
+	 * Determines if the scraper is polling
+	 *
+	 * @return <code>true</code> if started
+	 */
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Stops polling and frees the polling thread
+	 */
+	@Override
+	public void close() {
+		stop();
+		scheduler.shutdown();
+	}
+
+	private void run(long generation) {
+		if (!isCurrent(generation)) {
+			return;
+		}
+		try {
+			poll();
+		} catch (Exception e) {
+			// counted and reported by poll
+		}
+		schedule(generation, interval);
+	}
+
+	private synchronized boolean isCurrent(long generation) {
+		return running && this.generation == generation;
+	}
+
+	/**
+	 * Schedules the next poll if the scraper is still running since the
+	 * start which scheduled the previous one
+	 *
+	 * @param generation
+	 *            the start the polls belong to
+	 * @param delay
+	 *            time in milliseconds until the next poll
+	 */
+	synchronized void schedule(long generation, long delay) {
+		if (isCurrent(generation) && !scheduler.isShutdown()) {
+			next = scheduler.schedule(() -> run(generation), delay,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Polls once and hands the new pastes to the subscribers
+	 *
+	 * <p>
+	 * Called by the polling thread, can be called directly on a scraper which
+	 * hasn't been started. Polls run one at a time, without holding the lock
+	 * of the settings, so the scraper can be stopped or configured while one
+	 * is waiting for pastebin or calling the subscribers.
+	 * </p>
+	 *
+	 * @return the new pastes, oldest first
+	 * @throws Exception
+	 *             if the poll failed, which is reported to the subscribers
+	 *             too
+	 */
+	public List<PastebinLink> poll() throws Exception {
+		synchronized (pollLock) {
+			return pollOnce();
+		}
+	}
+
+	private List<PastebinLink> pollOnce() throws Exception {
+		int limit = this.limit;
+		List<PastebinLink> pastes;
+		try {
+			Post post = new Post();
+			post.put("limit", Integer.toString(limit));
+			if (language != null) {
+				post.put("lang", language);
+			}
+			try (Stream<PastebinLink> stream = Pastebin.streamMostRecent(post)) {
+				pastes = new ArrayList<PastebinLink>(limit);
+				stream.forEach(pastes::add);
+			}
+		} catch (Exception e) {
+			errors.incrementAndGet();
+			for (Subscriber subscriber : subscribers) {
+				try {
+					subscriber.onError(e);
+				} catch (RuntimeException ignored) {
+					// a failing subscriber doesn't affect the others
+				}
+			}
+			throw e;
+		}
+		polls.incrementAndGet();
+		received.addAndGet(pastes.size());
+
+		List<PastebinLink> fresh = new ArrayList<PastebinLink>(pastes.size());
+		long oldest = Long.MAX_VALUE;
+		long newest = Long.MIN_VALUE;
+		for (PastebinLink link : pastes) {
+			long date = time(link);
+			oldest = Math.min(oldest, date);
+			newest = Math.max(newest, date);
+			if (seen.add(link.getKey())) {
+				fresh.add(link);
+			}
+		}
+		int overlap = pastes.size() - fresh.size();
+		duplicates.addAndGet(overlap);
+		if (!pastes.isEmpty()) {
+			lastOverlapRatio = (double) overlap / pastes.size();
+			if (overlap == 0 && newestDate >= 0 && oldest > newestDate) {
+				gaps.incrementAndGet();
+				estimatedMissed.addAndGet(estimateMissed(pastes.size(), oldest,
+						newest, newestDate));
+			}
+		}
+		synchronized (this) {
+			cadence.update(System.currentTimeMillis(), pastes.size(),
+					fresh.size(), oldest, newest, newestDate);
+			rate = cadence.getRate();
+			if (adaptive) {
+				long interval = cadence.interval();
+				this.interval = interval;
+				this.limit = cadence.limit(interval);
+			}
+		}
+		if (!pastes.isEmpty()) {
+			newestDate = Math.max(newestDate, newest);
+		}
+
+		// the API lists the most recent paste first
+		Collections.reverse(fresh);
+		for (PastebinLink link : fresh) {
+			for (Subscriber subscriber : subscribers) {
+				try {
+					subscriber.onPaste(link);
+				} catch (RuntimeException e) {
+					errors.incrementAndGet();
+				}
+			}
+		}
+		delivered.addAndGet(fresh.size());
+		return fresh;
+	}
+
+	/**
+	 * Estimates the pastes made between the previous poll and the oldest
+	 * paste of this poll from the paste rate of this poll
+	 */
+	private static long estimateMissed(int count, long oldest, long newest,
+			long previousNewest) {
+		if (count < 2 || newest <= oldest) {
+			return 0;
+		}
+		double rate = (double) (count - 1) / (newest - oldest);
+		return Math.max(0, Math.round(rate * (oldest - previousNewest)) - 1);
+	}
+
+	private static long time(PastebinLink link) {
+		Date date = link.getPasteDate();
+		return date == null ? 0 : date.getTime();
+	}
+
+	/**
+	 * Gets the amount of successful polls
+	 *
+	 * @return polls
+	 */
+	public long getPolls() {
+		return polls.get();
+	}
+
+	/**
+	 * Gets the amount of pastes received over all polls, duplicates included
+	 *
+	 * @return received pastes
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * Gets the amount of received pastes which had been seen before
+	 *
+	 * @return duplicate pastes
+	 */
+	public long getDuplicates() {
+		return duplicates.get();
+	}
+
+	/**
+	 * Gets the amount of new pastes handed to the subscribers
+	 *
+	 * @return delivered pastes
+	 */
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	/**
+	 * Gets the share of received pastes which had been seen before
+	 *
+	 * @return overlap ratio over all polls, between 0 and 1
+	 */
+	public double getOverlapRatio() {
+		long total = received.get();
+		return total == 0 ? 0 : (double) duplicates.get() / total;
+	}
+
+	/**
+	 * Gets the share of pastes of the last poll which had been seen before
+	 *
+	 * @return overlap ratio of the last poll, <code>NaN</code> before the
+	 *         first poll with pastes
+	 */
+	public double getLastOverlapRatio() {
+		return lastOverlapRatio;
+	}
+
+	/**
+	 * Gets the amount of polls which shared no paste with the polls before,
+	 * each likely missed pastes
+	 *
+	 * @return polls with a gap
+	 */
+	public long getGaps() {
+		return gaps.get();
+	}
+
+	/**
+	 * Gets the estimated amount of pastes missed in gaps between polls
+	 *
+	 * @return estimated missed pastes
+	 */
+	public long getEstimatedMissed() {
+		return estimatedMissed.get();
+	}
+
+	/**
+	 * Gets the estimated paste rate, which is estimated whether the scraper
+	 * is adaptive or not
+	 *
+	 * @return pastes per second, <code>NaN</code> before the first estimate
+	 */
+	public double getRate() {
+		return rate * 1000;
+	}
+
+	/**
+	 * Gets the amount of failed polls and failing subscriber calls
+	 *
+	 * @return errors
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * Receives the new pastes of a {@link PastebinScraper}
+	 */
+	public interface Subscriber {
+
+		/**
+		 * Called once for every new paste
+		 *
+		 * @param link
+		 *            the paste
+		 */
+		void onPaste(PastebinLink link);
+
+		/**
+		 * Called when a poll fails, the scraper keeps polling
+		 *
+		 * @param e
+		 *            the failure
+		 */
+		default void onError(Exception e) {
+		}
+	}
+
+}
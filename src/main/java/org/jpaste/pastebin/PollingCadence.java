@@ -0,0 +1,182 @@
+package org.jpaste.pastebin;
+
+/**
+ *
+ * Chooses the interval and limit of scraping polls from the paste rate
+ *
+ * <p>
+ * The pastes made during an interval <code>T</code> are taken as Poisson
+ * distributed with mean <code>m = rate * T</code>, approximated by a normal
+ * distribution. A poll misses pastes when more than <code>limit - 1</code>
+ * arrive, one paste is kept to overlap with the previous poll. The interval
+ * is the longest for which <code>m + z * sqrt(m)</code> fits the largest
+ * limit, <code>z</code> being the quantile of the target miss rate, and the
+ * limit is the smallest which still fits once the interval is clamped to its
+ * bounds.
+ * </p>
+ *
+ * <p>
+ * The rate is estimated from the paste dates: from the new pastes since the
+ * newest paste of the previous poll when the polls overlap, from the span
+ * of the response otherwise. Estimates are smoothed, but rises after a poll
+ * without overlap are taken as they are so a spike is caught up with on the
+ * next poll. Not thread safe.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+class PollingCadence {
+	private static final double SMOOTHING = 0.3;
+	private static final int MIN_LIMIT = 25;
+	private final int maxLimit;
+	private double targetMissRate;
+	private double quantile;
+	private long minInterval;
+	private long maxInterval;
+	private double rate = Double.NaN;
+	private long lastPoll = -1;
+
+	/**
+	 * Creates a new <code>PollingCadence</code> instance.
+	 *
+	 * @param maxLimit
+	 *            the largest limit a poll may use
+	 * @param targetMissRate
+	 *            share of polls which may miss pastes
+	 * @param minInterval
+	 *            shortest interval in milliseconds
+	 * @param maxInterval
+	 *            longest interval in milliseconds
+	 */
+	PollingCadence(int maxLimit, double targetMissRate, long minInterval,
+			long maxInterval) {
+		this.maxLimit = maxLimit;
+		setTargetMissRate(targetMissRate);
+		setIntervalBounds(minInterval, maxInterval);
+	}
+
+	void setTargetMissRate(double targetMissRate) {
+		if (!(targetMissRate > 0 && targetMissRate < 0.5)) {
+			throw new IllegalArgumentException(
+					"Target miss rate must be between 0 and 0.5: "
+							+ targetMissRate);
+		}
+		this.targetMissRate = targetMissRate;
+		this.quantile = quantile(targetMissRate);
+	}
+
+	double getTargetMissRate() {
+		return targetMissRate;
+	}
+
+	void setIntervalBounds(long minInterval, long maxInterval) {
+		if (minInterval < 1 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("Invalid interval bounds: "
+					+ minInterval + " - " + maxInterval);
+		}
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+	}
+
+	long getMinInterval() {
+		return minInterval;
+	}
+
+	long getMaxInterval() {
+		return maxInterval;
+	}
+
+	/**
+	 * Gets the estimated paste rate
+	 *
+	 * @return pastes per millisecond, <code>NaN</code> before the first
+	 *         estimate
+	 */
+	double getRate() {
+		return rate;
+	}
+
+	/**
+	 * Updates the rate estimate with a poll
+	 *
+	 * @param now
+	 *            time of the poll in milliseconds
+	 * @param count
+	 *            pastes received
+	 * @param fresh
+	 *            pastes not seen before
+	 * @param oldest
+	 *            date of the oldest paste received in milliseconds
+	 * @param newest
+	 *            date of the newest paste received in milliseconds
+	 * @param previousNewest
+	 *            date of the newest paste of the previous polls in
+	 *            milliseconds, negative before the first poll
+	 */
+	void update(long now, int count, int fresh, long oldest, long newest,
+			long previousNewest) {
+		boolean overlap = count > fresh;
+		double sample = Double.NaN;
+		if (overlap && previousNewest >= 0 && newest > previousNewest) {
+			sample = (double) fresh / (newest - previousNewest);
+		} else if (overlap && fresh == 0 && lastPoll >= 0 && now > lastPoll) {
+			// nothing new since the last poll, which bounds the rate
+			sample = 0;
+		} else if (count > 1 && newest > oldest) {
+			sample = (double) (count - 1) / (newest - oldest);
+		}
+		lastPoll = now;
+		if (Double.isNaN(sample)) {
+			return;
+		}
+		if (Double.isNaN(rate) || (!overlap && sample > rate)) {
+			rate = sample;
+		} else {
+			rate += SMOOTHING * (sample - rate);
+		}
+	}
+
+	/**
+	 * Gets the interval for the estimated rate
+	 *
+	 * @return time in milliseconds until the next poll
+	 */
+	long interval() {
+		if (Double.isNaN(rate) || rate <= 0) {
+			return maxInterval;
+		}
+		double root = (-quantile + Math.sqrt(quantile * quantile + 4
+				* (maxLimit - 1))) / 2;
+		long interval = (long) (root * root / rate);
+		return Math.max(minInterval, Math.min(maxInterval, interval));
+	}
+
+	/**
+	 * Gets the limit for the estimated rate and an interval
+	 *
+	 * @param interval
+	 *            time in milliseconds until the next poll
+	 * @return amount of pastes to request
+	 */
+	int limit(long interval) {
+		if (Double.isNaN(rate)) {
+			return maxLimit;
+		}
+		double mean = rate * interval;
+		long limit = (long) Math.ceil(mean + quantile * Math.sqrt(mean)) + 1;
+		return (int) Math.max(Math.min(MIN_LIMIT, maxLimit),
+				Math.min(maxLimit, limit));
+	}
+
+	/**
+	 * Approximates the upper quantile of the standard normal distribution
+	 * (Abramowitz and Stegun 26.2.23, error below 4.5e-4)
+	 */
+	static double quantile(double p) {
+		double t = Math.sqrt(-2 * Math.log(p));
+		return t - (2.515517 + 0.802853 * t + 0.010328 * t * t)
+				/ (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+	}
+
+}
@@ -0,0 +1,245 @@
+package org.jpaste.pastebin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import org.jpaste.pastebin.exceptions.ParseException;
+import org.jpaste.pastebin.metrics.Operation;
+import org.jpaste.pastebin.metrics.OperationProbe;
+import org.jpaste.utils.web.Web;
+import org.jpaste.utils.web.WebException;
+import org.jpaste.utils.web.WebRequest;
+import org.jpaste.utils.web.WebResponse;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ *
+ * Reads the JSON array of pastes returned by the scraping API
+ *
+ * <p>
+ * The array is read token by token while the response arrives, every paste
+ * is built straight from the fields it needs. Unused fields are skipped and
+ * numeric fields, which the API sends as strings, are parsed without creating
+ * strings.
+ * </p>
+ *
+ * @author Brian B
+ * @see Pastebin#streamMostRecent(org.jpaste.utils.web.Post)
+ *
+ */
+public class ScrapedPasteReader extends PasteReader {
+	private static final JsonFactory FACTORY = new JsonFactory();
+	private static final int MAX_MESSAGE_LENGTH = 4096;
+	private final JsonParser parser;
+
+	/**
+	 * Creates a new <code>ScrapedPasteReader</code> instance.
+	 *
+	 * @param in
+	 *            the JSON array
+	 * @throws ParseException
+	 *             if the array could not be opened
+	 */
+	public ScrapedPasteReader(InputStream in) throws ParseException {
+		try {
+			this.parser = FACTORY.createParser(in);
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				parser.close();
+				throw new ParseException("Failed to parse pastes: "
+						+ "not a JSON array");
+			}
+		} catch (IOException e) {
+			throw new ParseException("Failed to parse pastes: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Fetches a scraping API link and starts reading the response
+	 *
+	 * @param link
+	 *            the scraping API link with its query
+	 * @return a reader over the pastes
+	 * @throws ParseException
+	 *             if the response is not a JSON array
+	 * @throws WebException
+	 *             if the request failed
+	 */
+	public static ScrapedPasteReader open(String link) throws ParseException {
+		OperationProbe probe = OperationProbe.start(Operation.SCRAPING);
+		try {
+			ScrapedPasteReader reader = open(OperationProbe.attach(probe,
+					new WebRequest(link)), probe);
+			reader.watch(probe);
+			return reader;
+		} catch (ParseException e) {
+			OperationProbe.fail(probe, e);
+			throw e;
+		} catch (RuntimeException e) {
+			OperationProbe.fail(probe, e);
+			throw e;
+		}
+	}
+
+	private static ScrapedPasteReader open(WebRequest request,
+			OperationProbe probe) throws ParseException {
+		WebResponse response;
+		try {
+			response = Web.open(request);
+		} catch (IOException e) {
+			throw new WebException("Failed to fetch contents from link: " + e,
+					e);
+		}
+		try {
+			BufferedInputStream in = new BufferedInputStream(
+					response.getInputStream());
+			in.mark(1);
+			int first = in.read();
+			in.reset();
+			if (first == '[') {
+				try {
+					return new ScrapedPasteReader(in);
+				} catch (ParseException | RuntimeException e) {
+					response.close();
+					throw e;
+				}
+			}
+			String message = readMessage(in, response.getCharset());
+			response.close();
+			OperationProbe.finish(probe, message);
+			throw new ParseException("Failed to parse pastes: " + message);
+		} catch (IOException e) {
+			response.close();
+			throw new WebException("Failed to fetch contents from link: " + e,
+					e);
+		}
+	}
+
+	private static String readMessage(InputStream in, Charset charset)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[512];
+		int read;
+		while (out.size() < MAX_MESSAGE_LENGTH && (read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), charset).trim();
+	}
+
+	@Override
+	public PastebinLink next() throws ParseException {
+		try {
+			JsonToken token;
+			while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+				PastebinLink link = readPaste();
+				if (link != null) {
+					return link;
+				}
+			}
+			if (token != JsonToken.END_ARRAY && token != null) {
+				throw new ParseException("Failed to parse pastes: unexpected "
+						+ token + " at " + parser.getCurrentLocation());
+			}
+			return null;
+		} catch (IOException e) {
+			throw new ParseException("Failed to parse pastes: "
+					+ e.getMessage());
+		} catch (NumberFormatException e) {
+			throw new ParseException("Failed to parse pastes: "
+					+ e.getMessage());
+		}
+	}
+
+	private PastebinLink readPaste() throws IOException {
+		String syntax = null;
+		String title = null;
+		String fullURL = null;
+		long pasteExpireDate = 0;
+		long pasteDate = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			if (name.equals("syntax")) {
+				syntax = parser.getValueAsString();
+			} else if (name.equals("title")) {
+				title = parser.getValueAsString();
+			} else if (name.equals("full_url")) {
+				fullURL = parser.getValueAsString();
+			} else if (name.equals("date")) {
+				pasteDate = readLong();
+			} else if (name.equals("expire")) {
+				pasteExpireDate = readLong();
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		PastebinPaste pastebinPaste = new PastebinPaste();
+		pastebinPaste.setPasteFormat(syntax);
+		pastebinPaste.setPasteTitle(title == null ? "" : title);
+		pastebinPaste.setPasteExpireDate(pasteExpireDate == 0L ? PasteExpireDate.NEVER
+				: PasteExpireDate
+						.getExpireDate((int) (pasteExpireDate - pasteDate)));
+		// All the pastes retrieved from this api are public.
+		pastebinPaste.setVisibility(PastebinPaste.VISIBILITY_PUBLIC);
+
+		if (fullURL == null) {
+			return null;
+		}
+		try {
+			return new PastebinLink(pastebinPaste, new URL(fullURL), new Date(
+					pasteDate * 1000));
+		} catch (MalformedURLException e) {
+			// pastes without a valid link are skipped
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a number sent as number or as string
+	 */
+	private long readLong() throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.VALUE_NUMBER_INT) {
+			return parser.getLongValue();
+		}
+		if (token != JsonToken.VALUE_STRING) {
+			throw new NumberFormatException("Not a number: " + token);
+		}
+		char[] chars = parser.getTextCharacters();
+		int offset = parser.getTextOffset();
+		int length = parser.getTextLength();
+		if (length == 0 || length > 18) {
+			return Long.parseLong(parser.getText());
+		}
+		long value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.parseLong(parser.getText());
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	@Override
+	public void close() {
+		try {
+			parser.close();
+		} catch (IOException e) {
+			// nothing left to free
+		}
+		finish();
+	}
+
+}
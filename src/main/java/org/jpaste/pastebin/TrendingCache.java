@@ -0,0 +1,378 @@
+package org.jpaste.pastebin;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jpaste.pastebin.exceptions.ParseException;
+
+/**
+ *
+ * Keeps the trending pastes of every developer key it is asked for and
+ * refreshes them in the background before they go stale
+ *
+ * <p>
+ * The first read of a developer key fetches its trending pastes, later reads
+ * are answered from memory. A single daemon thread refreshes every key once
+ * its pastes are as old as the refresh interval, so reads don't wait for the
+ * network while refreshes succeed. A failed refresh keeps the old pastes and
+ * is retried after a quarter of the refresh interval. Pastes older than the
+ * maximum staleness are never handed out, such a read fetches them again
+ * itself.
+ * </p>
+ *
+ * <p>
+ * Keys which haven't been read for the idle timeout are dropped instead of
+ * refreshed. Every read gets its own copies of the links.
+ * </p>
+ *
+ * @author Brian B
+ * @see Pastebin#setTrendingCache(TrendingCache)
+ *
+ */
+public class TrendingCache implements Closeable {
+	/**
+	 * Default time in milliseconds after which trending pastes are refreshed
+	 */
+	public static final long DEFAULT_REFRESH_INTERVAL = 60000L;
+	/**
+	 * Default age in milliseconds after which trending pastes are not handed
+	 * out anymore
+	 */
+	public static final long DEFAULT_MAX_STALENESS = 300000L;
+	/**
+	 * Default time in milliseconds after which unread keys are dropped
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 1800000L;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final ScheduledExecutorService scheduler;
+	private final long refreshInterval;
+	private final long maxStaleness;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong refreshFailures = new AtomicLong();
+	private final AtomicLong refreshNanos = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	/**
+	 * Creates a new <code>TrendingCache</code> instance which refreshes every
+	 * minute and hands out pastes up to five minutes old.
+	 */
+	public TrendingCache() {
+		this(DEFAULT_REFRESH_INTERVAL, DEFAULT_MAX_STALENESS);
+	}
+
+	/**
+	 * Creates a new <code>TrendingCache</code> instance.
+	 *
+	 * @param refreshInterval
+	 *            age in milliseconds after which trending pastes are refreshed
+	 * @param maxStaleness
+	 *            age in milliseconds after which trending pastes are not
+	 *            handed out anymore, at least the refresh interval
+	 */
+	public TrendingCache(long refreshInterval, long maxStaleness) {
+		if (refreshInterval < 1) {
+			throw new IllegalArgumentException(
+					"Refresh interval must be positive: " + refreshInterval);
+		}
+		if (maxStaleness < refreshInterval) {
+			throw new IllegalArgumentException(
+					"Max staleness can't be less than the refresh interval: "
+							+ maxStaleness);
+		}
+		this.refreshInterval = refreshInterval;
+		this.maxStaleness = maxStaleness;
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				1, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "jpastebin-trending");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.setRemoveOnCancelPolicy(true);
+		this.scheduler = executor;
+	}
+
+	/**
+	 * Gets the age after which trending pastes are refreshed
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getRefreshInterval() {
+		return refreshInterval;
+	}
+
+	/**
+	 * Gets the age after which trending pastes are not handed out anymore
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	/**
+	 * Sets the time after which keys which haven't been read are dropped
+	 *
+	 * @param idleTimeout
+	 *            time in milliseconds
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 1) {
+			throw new IllegalArgumentException(
+					"Idle timeout must be positive: " + idleTimeout);
+		}
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Gets the time after which keys which haven't been read are dropped
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Gets the trending pastes of a developer key, fetching them if they
+	 * aren't cached or too stale
+	 *
+	 * @param developerKey
+	 *            a developer key which can be fetched from the pastebin API
+	 *            page
+	 * @return copies of the trending pastes
+	 * @throws ParseException
+	 *             if they had to be fetched and it failed to parse them
+	 */
+	public PastebinLink[] get(String developerKey) throws ParseException {
+		if (developerKey == null || developerKey.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Developer key can't be null or empty.");
+		}
+		long now = System.nanoTime();
+		Entry entry = entries.get(developerKey);
+		if (entry != null) {
+			entry.lastRead = now;
+			PastebinLink[] links = entry.links;
+			if (now - entry.loaded <= TimeUnit.MILLISECONDS
+					.toNanos(maxStaleness)) {
+				hits.incrementAndGet();
+				return Pastebin.copyTrending(links);
+			}
+		}
+		misses.incrementAndGet();
+		PastebinLink[] links = Pastebin.fetchTrending(developerKey);
+		entry = new Entry(developerKey, links, System.nanoTime());
+		Entry cached = entries.putIfAbsent(developerKey, entry);
+		if (cached == null) {
+			schedule(entry, refreshInterval);
+		} else {
+			cached.update(links, entry.loaded);
+		}
+		return Pastebin.copyTrending(links);
+	}
+
+	/**
+	 * Gets the age of the cached trending pastes of a developer key
+	 *
+	 * @param developerKey
+	 *            the developer key
+	 * @return age in milliseconds, <code>-1</code> if the key isn't cached
+	 */
+	public long getAge(String developerKey) {
+		Entry entry = entries.get(developerKey);
+		if (entry == null) {
+			return -1;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.loaded);
+	}
+
+	/**
+	 * Drops the trending pastes of a developer key
+	 *
+	 * @param developerKey
+	 *            the developer key
+	 */
+	public void invalidate(String developerKey) {
+		Entry entry = entries.remove(developerKey);
+		if (entry != null) {
+			entry.cancel();
+		}
+	}
+
+	/**
+	 * Stops refreshing and drops all trending pastes, later reads fetch
+	 * without caching
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		for (Entry entry : entries.values()) {
+			invalidate(entry.developerKey);
+		}
+	}
+
+	private void schedule(Entry entry, long delay) {
+		synchronized (entry) {
+			if (entry.cancelled || scheduler.isShutdown()) {
+				entries.remove(entry.developerKey, entry);
+				return;
+			}
+			entry.next = scheduler.schedule(() -> refresh(entry), delay,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void refresh(Entry entry) {
+		long start = System.nanoTime();
+		if (start - entry.lastRead > TimeUnit.MILLISECONDS
+				.toNanos(idleTimeout)) {
+			if (entries.remove(entry.developerKey, entry)) {
+				evictions.incrementAndGet();
+			}
+			return;
+		}
+		long delay = refreshInterval;
+		try {
+			PastebinLink[] links = Pastebin.fetchTrending(entry.developerKey);
+			long end = System.nanoTime();
+			entry.update(links, end);
+			refreshes.incrementAndGet();
+			refreshNanos.addAndGet(end - start);
+		} catch (Exception e) {
+			refreshFailures.incrementAndGet();
+			delay = Math.max(1, refreshInterval / 4);
+		}
+		schedule(entry, delay);
+	}
+
+	/**
+	 * Gets the amount of cached developer keys
+	 *
+	 * @return cached keys
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the amount of reads answered from memory
+	 *
+	 * @return hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of reads which fetched the trending pastes, because
+	 * they weren't cached or were too stale
+	 *
+	 * @return misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the share of reads answered from memory
+	 *
+	 * @return hit ratio, between 0 and 1
+	 */
+	public double getHitRatio() {
+		long hits = this.hits.get();
+		long total = hits + misses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Gets the amount of successful background refreshes
+	 *
+	 * @return refreshes
+	 */
+	public long getRefreshes() {
+		return refreshes.get();
+	}
+
+	/**
+	 * Gets the amount of failed background refreshes
+	 *
+	 * @return failed refreshes
+	 */
+	public long getRefreshFailures() {
+		return refreshFailures.get();
+	}
+
+	/**
+	 * Gets the average time a successful background refresh took
+	 *
+	 * @return time in milliseconds, <code>0</code> before the first refresh
+	 */
+	public double getAverageRefreshTime() {
+		long refreshes = this.refreshes.get();
+		return refreshes == 0 ? 0 : refreshNanos.get()
+				/ (double) TimeUnit.MILLISECONDS.toNanos(1) / refreshes;
+	}
+
+	/**
+	 * Gets the amount of keys dropped for not being read
+	 *
+	 * @return evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "TrendingCache [keys=" + getSize() + ", hits=" + getHits()
+				+ ", misses=" + getMisses() + ", refreshes=" + getRefreshes()
+				+ ", refreshFailures=" + getRefreshFailures()
+				+ ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * The trending pastes of a developer key
+	 */
+	private static final class Entry {
+		private final String developerKey;
+		private volatile PastebinLink[] links;
+		private volatile long loaded;
+		private volatile long lastRead;
+		private ScheduledFuture<?> next;
+		private boolean cancelled;
+
+		Entry(String developerKey, PastebinLink[] links, long loaded) {
+			this.developerKey = developerKey;
+			this.links = links;
+			this.loaded = loaded;
+			this.lastRead = loaded;
+		}
+
+		synchronized void update(PastebinLink[] links, long loaded) {
+			if (loaded - this.loaded > 0) {
+				this.links = links;
+				this.loaded = loaded;
+			}
+		}
+
+		synchronized void cancel() {
+			cancelled = true;
+			if (next != null) {
+				next.cancel(false);
+			}
+		}
+	}
+
+}
@@ -1,26 +1,29 @@
 package org.jpaste.pastebin.account;
 
 import java.io.ByteArrayInputStream;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
-import org.jpaste.pastebin.PasteExpireDate;
+import org.jpaste.pastebin.PasteListReader;
+import org.jpaste.pastebin.PasteReader;
 import org.jpaste.pastebin.Pastebin;
 import org.jpaste.pastebin.PastebinLink;
-import org.jpaste.pastebin.PastebinPaste;
 import org.jpaste.pastebin.exceptions.LoginException;
 import org.jpaste.pastebin.exceptions.ParseException;
+import org.jpaste.pastebin.exceptions.UncheckedParseException;
+import org.jpaste.pastebin.metrics.Operation;
+import org.jpaste.pastebin.metrics.OperationProbe;
+import org.jpaste.utils.concurrent.Async;
+import org.jpaste.utils.concurrent.SingleFlight;
 import org.jpaste.utils.web.Post;
 import org.jpaste.utils.web.Web;
-import org.jpaste.utils.xml.XMLUtils;
+import org.jpaste.utils.web.WebRequest;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
 /**
@@ -41,6 +44,7 @@ import org.xml.sax.InputSource;
  * 
  */
 public class PastebinAccount {
+	private static final SingleFlight<String, PastebinAccountDetails> DETAILS_FLIGHTS = new SingleFlight<String, PastebinAccountDetails>();
 	private String username, password, userSessionId, developerKey;
 
 	/**
@@ -202,13 +206,25 @@ public class PastebinAccount {
 		post.put("api_user_name", username);
 		post.put("api_user_password", password);
 
-		String response = Web.getContents(Pastebin.API_LOGIN_LINK, post);
+		Pastebin.getRateLimiter().acquire(getDeveloperKey());
+		OperationProbe probe = OperationProbe.start(Operation.LOGIN);
+		String response;
+		try {
+			response = Web.getContents(OperationProbe.attach(probe,
+					new WebRequest(Pastebin.getLoginLink(), post)));
+		} catch (RuntimeException e) {
+			OperationProbe.fail(probe, e);
+			throw e;
+		}
 		if (response == null || response.isEmpty()) {
+			OperationProbe.finish(probe, "Empty response");
 			throw new LoginException("Empty response from login API server.");
 		}
 		if (response.toLowerCase().startsWith("bad")) {
+			OperationProbe.finish(probe, response);
 			throw new LoginException("Failed to login: " + response);
 		}
+		OperationProbe.finish(probe, null);
 
 		this.userSessionId = response;
 	}
@@ -226,6 +242,48 @@ public class PastebinAccount {
 	 *             if it failed to parse the pastes
 	 */
 	public PastebinLink[] getPastes(int limit) throws ParseException {
+		PasteReader reader = openPastes(limit);
+		return reader == null ? null : reader.readAll();
+	}
+
+	/**
+	 * Streams the pastes pasted by this user, each paste is handed out as soon
+	 * as it has been parsed from the response
+	 * 
+	 * <p>
+	 * The stream must be closed if it isn't read to the end.
+	 * </p>
+	 * 
+	 * @param limit
+	 *            maximum amount of pastes to receive
+	 *            <p>
+	 *            <code>0 > limit > 1000</code>
+	 *            </p>
+	 * @return a lazy stream of the pastes, empty if the user has none, which
+	 *         throws an {@link UncheckedParseException} if a paste can't be
+	 *         parsed
+	 * @throws ParseException
+	 *             if pastebin did not answer with a paste list
+	 */
+	public Stream<PastebinLink> streamPastes(int limit) throws ParseException {
+		PasteReader reader = openPastes(limit);
+		return reader == null ? Stream.<PastebinLink> empty() : reader
+				.stream();
+	}
+
+	/**
+	 * Streams the pastes (max 50) pasted by this user, see
+	 * {@link #streamPastes(int)}
+	 * 
+	 * @return a lazy stream of the pastes
+	 * @throws ParseException
+	 *             if pastebin did not answer with a paste list
+	 */
+	public Stream<PastebinLink> streamPastes() throws ParseException {
+		return streamPastes(50);
+	}
+
+	private PasteReader openPastes(int limit) throws ParseException {
 		if (limit > 1000) {
 			limit = 1000;
 		}
@@ -246,72 +304,11 @@ public class PastebinAccount {
 		post.put("api_results_limit", Integer.toString(limit));
 		post.put("api_option", "list");
 
-		String response = Web.getContents(Pastebin.API_POST_LINK, post);
-		if (response.equals("No pastes found.")) {
-			return null;
-		}
+		WebRequest request = new WebRequest(Pastebin.getPostLink(), post);
+		request.setIdempotent(true);
 
-		if (response.startsWith("<paste>")) {
-			// success
-			try {
-				DocumentBuilderFactory dbFactory = DocumentBuilderFactory
-						.newInstance();
-				DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-				response = "<dummy>" + response + "</dummy>"; // requires root
-																// element
-				Document doc = dBuilder.parse(new InputSource(
-						new ByteArrayInputStream(response.getBytes("utf-8"))));
-				doc.getDocumentElement().normalize();
-
-				NodeList nodes = doc.getElementsByTagName("paste");
-				ArrayList<PastebinLink> pastes = new ArrayList<PastebinLink>(
-						nodes.getLength());
-				for (int i = 0; i < nodes.getLength(); i++) {
-					Node node = nodes.item(i);
-					if (node.getNodeType() == Node.ELEMENT_NODE) {
-						Element element = (Element) node;
-
-						String pasteFormat = XMLUtils.getText(element,
-								"paste_format_short");
-						String title = XMLUtils.getText(element, "paste_title");
-						int visibility = Integer.parseInt(XMLUtils.getText(
-								element, "paste_private"));
-						int hits = Integer.parseInt(XMLUtils.getText(element,
-								"paste_hits"));
-
-						long expireDate = Long.parseLong(XMLUtils.getText(
-								element, "paste_expire_date"));
-						long pasteDate = Long.parseLong(XMLUtils.getText(
-								element, "paste_date"));
-
-						URL pasteURL = new URL(XMLUtils.getText(element,
-								"paste_url"));
-
-						PastebinPaste paste = new PastebinPaste(this);
-						paste.setPasteFormat(pasteFormat);
-						paste.setPasteTitle(title);
-						paste.setVisibility(visibility);
-						paste.setPasteExpireDate(expireDate == 0L ? PasteExpireDate.NEVER
-								: PasteExpireDate
-										.getExpireDate((int) (expireDate - pasteDate)));
-
-						PastebinLink pastebinLink = new PastebinLink(paste,
-								pasteURL, new Date(pasteDate * 1000));
-						pastebinLink.setHits(hits);
-
-						pastes.add(pastebinLink);
-					}
-				}
-
-				return pastes.toArray(new PastebinLink[pastes.size()]);
-			} catch (Exception e) {
-				throw new ParseException("Failed to parse pastes: "
-						+ e.getMessage());
-			}
-
-		}
-
-		throw new ParseException("Failed to parse pastes: " + response);
+		Pastebin.getRateLimiter().acquire(getDeveloperKey());
+		return PasteListReader.open(request, this, Operation.LIST);
 	}
 
 	/**
@@ -328,6 +325,11 @@ public class PastebinAccount {
 	/**
 	 * Fetches the account details of this account
 	 * 
+	 * <p>
+	 * Concurrent calls for the same developer key and user session id share
+	 * one request.
+	 * </p>
+	 * 
 	 * @return account details
 	 * @throws ParseException
 	 *             if it failed to parse the account details
@@ -339,15 +341,34 @@ public class PastebinAccount {
 		if (getDeveloperKey() == null || getDeveloperKey().isEmpty()) {
 			throw new IllegalStateException("Developer key is missing.");
 		}
+		String developerKey = getDeveloperKey();
+		String userSessionId = getUserSessionId();
+		return DETAILS_FLIGHTS.execute(developerKey + '\n' + userSessionId,
+				() -> fetchAccountDetails(developerKey, userSessionId));
+	}
 
+	private static PastebinAccountDetails fetchAccountDetails(
+			String developerKey, String userSessionId) throws ParseException {
 		Post post = new Post();
-		post.put("api_dev_key", getDeveloperKey());
-		post.put("api_user_key", getUserSessionId());
+		post.put("api_dev_key", developerKey);
+		post.put("api_user_key", userSessionId);
 		post.put("api_option", "userdetails");
 
-		String response = Web.getContents(Pastebin.API_POST_LINK, post);
+		WebRequest request = new WebRequest(Pastebin.getPostLink(), post);
+		request.setIdempotent(true);
+
+		Pastebin.getRateLimiter().acquire(developerKey);
+		OperationProbe probe = OperationProbe.start(Operation.USER_DETAILS);
+		String response;
+		try {
+			response = Web.getContents(OperationProbe.attach(probe, request));
+		} catch (RuntimeException e) {
+			OperationProbe.fail(probe, e);
+			throw e;
+		}
 
 		if (!response.startsWith("<user>")) {
+			OperationProbe.finish(probe, response);
 			throw new ParseException("Failed to parse account details: "
 					+ response);
 		}
@@ -360,11 +381,102 @@ public class PastebinAccount {
 					new ByteArrayInputStream(response.getBytes("utf-8"))));
 			doc.getDocumentElement().normalize();
 
-			return new PastebinAccountDetails((Element) doc
-					.getElementsByTagName("user").item(0));
+			PastebinAccountDetails details = new PastebinAccountDetails(
+					(Element) doc.getElementsByTagName("user").item(0));
+			OperationProbe.finish(probe, null);
+			return details;
 		} catch (Exception e) {
+			OperationProbe.fail(probe, e);
 			throw new ParseException("Failed to parse account details: " + e);
 		}
 	}
 
+	/**
+	 * Fetches an user session id asynchronously on the executor of
+	 * {@link Pastebin#getExecutor()}
+	 * 
+	 * @return future completing with this account once logged in, or
+	 *         exceptionally with a {@link LoginException} if fetching the user
+	 *         session id failed
+	 */
+	public CompletableFuture<PastebinAccount> loginAsync() {
+		return loginAsync(Pastebin.getExecutor());
+	}
+
+	/**
+	 * Fetches an user session id asynchronously
+	 * 
+	 * @param executor
+	 *            the executor to run the request on
+	 * @return future completing with this account once logged in, or
+	 *         exceptionally with a {@link LoginException} if fetching the user
+	 *         session id failed
+	 */
+	public CompletableFuture<PastebinAccount> loginAsync(Executor executor) {
+		return Async.supply(() -> {
+			login();
+			return this;
+		}, executor);
+	}
+
+	/**
+	 * Gets pasted pastes (max 50) by this user asynchronously on the executor
+	 * of {@link Pastebin#getExecutor()}
+	 * 
+	 * @return future pastes, see {@link #getPastes()}
+	 */
+	public CompletableFuture<PastebinLink[]> getPastesAsync() {
+		return getPastesAsync(50, Pastebin.getExecutor());
+	}
+
+	/**
+	 * Gets all pasted pastes by this user asynchronously on the executor of
+	 * {@link Pastebin#getExecutor()}
+	 * 
+	 * @param limit
+	 *            maximum amount of pastes to receive
+	 * @return future pastes, see {@link #getPastes(int)}
+	 */
+	public CompletableFuture<PastebinLink[]> getPastesAsync(int limit) {
+		return getPastesAsync(limit, Pastebin.getExecutor());
+	}
+
+	/**
+	 * Gets all pasted pastes by this user asynchronously
+	 * 
+	 * @param limit
+	 *            maximum amount of pastes to receive
+	 * @param executor
+	 *            the executor to run the request on
+	 * @return future pastes, see {@link #getPastes(int)}
+	 */
+	public CompletableFuture<PastebinLink[]> getPastesAsync(final int limit,
+			Executor executor) {
+		return Async.supply(() -> getPastes(limit), executor);
+	}
+
+	/**
+	 * Fetches the account details of this account asynchronously on the
+	 * executor of {@link Pastebin#getExecutor()}
+	 * 
+	 * @return future account details, completes exceptionally with a
+	 *         {@link ParseException} if it failed to parse the account details
+	 */
+	public CompletableFuture<PastebinAccountDetails> getAccountDetailsAsync() {
+		return getAccountDetailsAsync(Pastebin.getExecutor());
+	}
+
+	/**
+	 * Fetches the account details of this account asynchronously
+	 * 
+	 * @param executor
+	 *            the executor to run the request on
+	 * @return future account details, completes exceptionally with a
+	 *         {@link ParseException} if it failed to parse the account details
+	 */
+	public CompletableFuture<PastebinAccountDetails> getAccountDetailsAsync(
+			Executor executor) {
+		return Async.supply(this::getAccountDetails, executor);
+	}
+
 }
@@ -0,0 +1,23 @@
+package org.jpaste.pastebin.exceptions;
+
+/**
+ * 
+ * Thrown when a request is refused by the client side rate limiter
+ * 
+ * <p>
+ * Unchecked, so the existing API methods keep their signatures.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class RateLimitException extends RuntimeException {
+	private static final long serialVersionUID = -1876212540918283475L;
+
+	public RateLimitException() {
+	}
+
+	public RateLimitException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,22 @@
+package org.jpaste.pastebin.exceptions;
+
+/**
+ * 
+ * Wraps a {@link ParseException} thrown while a lazily read paste list is
+ * iterated
+ * 
+ * @author Brian B
+ * 
+ */
+public class UncheckedParseException extends RuntimeException {
+	private static final long serialVersionUID = 2707314426301942170L;
+
+	public UncheckedParseException(ParseException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	@Override
+	public ParseException getCause() {
+		return (ParseException) super.getCause();
+	}
+}
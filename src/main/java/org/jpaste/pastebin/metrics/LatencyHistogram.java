@@ -0,0 +1,118 @@
+package org.jpaste.pastebin.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * A lock free histogram of nanosecond latencies
+ * 
+ * <p>
+ * Every power of two is split in four buckets, so a percentile is off by 25%
+ * at most. Recording a value is two atomic additions without allocation.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * Records a latency
+	 * 
+	 * @param nanos
+	 *            latency in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets.incrementAndGet(index(nanos));
+		sum.add(nanos);
+	}
+
+	/**
+	 * Gets the amount of recorded latencies
+	 * 
+	 * @return count
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the mean latency
+	 * 
+	 * @return mean in nanoseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : sum.doubleValue() / count;
+	}
+
+	/**
+	 * Gets a latency percentile
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return upper bound of the bucket holding the percentile in
+	 *         nanoseconds, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[buckets.length()];
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			count += counts[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(counts.length - 1);
+	}
+
+	/**
+	 * Clears all recorded latencies
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		sum.reset();
+	}
+
+	private static int index(long value) {
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent < SUB_BUCKET_BITS) {
+			return (int) value;
+		}
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = index % SUB_BUCKETS;
+		long base = 1L << exponent;
+		long width = base >>> SUB_BUCKET_BITS;
+		return base + (sub + 1) * width - 1;
+	}
+
+}
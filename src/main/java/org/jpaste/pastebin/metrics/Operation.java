@@ -0,0 +1,36 @@
+package org.jpaste.pastebin.metrics;
+
+/**
+ * 
+ * The pastebin API calls which are measured
+ * 
+ * @author Brian B
+ * 
+ */
+public enum Operation {
+	PASTE("paste"), LIST("list"), TRENDS("trends"), DELETE("delete"), USER_DETAILS(
+			"userdetails"), LOGIN("login"), RAW("raw"), SCRAPING("scraping");
+
+	private final String name;
+
+	/**
+	 * Creates a new <code>Operation</code> instance.
+	 * 
+	 * @param name
+	 *            the api_option or endpoint name
+	 */
+	Operation(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets the <code>api_option</code> of the call, or the name of its
+	 * endpoint for calls without one
+	 * 
+	 * @return operation name
+	 */
+	public String getName() {
+		return name;
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.jpaste.pastebin.metrics;
+
+/**
+ * 
+ * A finished pastebin API call
+ * 
+ * <p>
+ * The time of a call is split in network time, spent sending the request and
+ * reading the response, and parse time, spent on everything else, mostly
+ * parsing the response. Calls which stream their response, such as
+ * {@link org.jpaste.pastebin.Pastebin#streamTrending(String)
+ * streamTrending}, finish once the stream is closed.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public final class OperationEvent {
+	private final Operation operation;
+	private final long totalNanos;
+	private final long networkNanos;
+	private final long requestBytes;
+	private final long responseBytes;
+	private final String error;
+
+	/**
+	 * Creates a new <code>OperationEvent</code> instance.
+	 * 
+	 * @param operation
+	 *            the call
+	 * @param totalNanos
+	 *            time of the call in nanoseconds
+	 * @param networkNanos
+	 *            network time of the call in nanoseconds
+	 * @param requestBytes
+	 *            post bytes sent
+	 * @param responseBytes
+	 *            response bytes read
+	 * @param error
+	 *            the error, <code>null</code> if the call succeeded
+	 */
+	public OperationEvent(Operation operation, long totalNanos,
+			long networkNanos, long requestBytes, long responseBytes,
+			String error) {
+		this.operation = operation;
+		this.totalNanos = totalNanos;
+		this.networkNanos = Math.min(networkNanos, totalNanos);
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+		this.error = error;
+	}
+
+	/**
+	 * Gets the call
+	 * 
+	 * @return the operation
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Gets the time of the call
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the time spent sending the request and reading the response
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public long getNetworkNanos() {
+		return networkNanos;
+	}
+
+	/**
+	 * Gets the time spent outside the network, mostly parsing
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public long getParseNanos() {
+		return totalNanos - networkNanos;
+	}
+
+	/**
+	 * Gets the amount of post bytes sent
+	 * 
+	 * @return request bytes
+	 */
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * Gets the amount of response bytes read, after decompression
+	 * 
+	 * @return response bytes
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * Determines if the call succeeded
+	 * 
+	 * @return <code>true</code> if succeeded
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * Gets the error the call failed with: the answer of pastebin, such as
+	 * <code>Bad API request, invalid api_dev_key</code>, or the name of the
+	 * exception for failed requests
+	 * 
+	 * @return the error, <code>null</code> if the call succeeded
+	 */
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return operation.getName() + " " + (error == null ? "ok" : error)
+				+ " in " + totalNanos / 1000 + " us (network "
+				+ networkNanos / 1000 + " us), " + requestBytes + " B sent, "
+				+ responseBytes + " B received";
+	}
+
+}
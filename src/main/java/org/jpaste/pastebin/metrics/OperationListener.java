@@ -0,0 +1,25 @@
+package org.jpaste.pastebin.metrics;
+
+/**
+ * 
+ * Receives an event for every finished pastebin API call
+ * 
+ * @author Brian B
+ * @see PastebinMetrics#addListener(OperationListener)
+ * 
+ */
+public interface OperationListener {
+
+	/**
+	 * Called once a call finished, on the thread which finished it
+	 * 
+	 * <p>
+	 * Called for every call, so it must be quick and must not throw.
+	 * </p>
+	 * 
+	 * @param event
+	 *            the finished call
+	 */
+	void onOperation(OperationEvent event);
+
+}
@@ -0,0 +1,214 @@
+package org.jpaste.pastebin.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jpaste.utils.web.HttpStatusException;
+import org.jpaste.utils.web.TransferStats;
+import org.jpaste.utils.web.WebException;
+import org.jpaste.utils.web.WebRequest;
+
+/**
+ * 
+ * Measures a single pastebin API call for {@link PastebinMetrics}
+ * 
+ * <p>
+ * Used by the API calls of this library, a probe is only created while a
+ * listener is registered:
+ * </p>
+ * 
+ * <pre>
+ * OperationProbe probe = OperationProbe.start(Operation.PASTE);
+ * WebRequest request = OperationProbe.attach(probe, new WebRequest(link, post));
+ * ...
+ * OperationProbe.finish(probe, error);
+ * </pre>
+ * 
+ * @author Brian B
+ * 
+ */
+public final class OperationProbe {
+	private final Operation operation;
+	private final long start = System.nanoTime();
+	private final TransferStats stats = new TransferStats();
+	private boolean finished;
+
+	private OperationProbe(Operation operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Starts measuring a call
+	 * 
+	 * @param operation
+	 *            the call, may be <code>null</code>
+	 * @return a new probe, <code>null</code> if no listener is registered or
+	 *         no operation is given
+	 */
+	public static OperationProbe start(Operation operation) {
+		return operation != null && PastebinMetrics.isEnabled() ? new OperationProbe(
+				operation) : null;
+	}
+
+	/**
+	 * Measures the network time and bytes of a request of the call
+	 * 
+	 * @param probe
+	 *            the probe, may be <code>null</code>
+	 * @param request
+	 *            the request
+	 * @return the request
+	 */
+	public static WebRequest attach(OperationProbe probe, WebRequest request) {
+		if (probe != null) {
+			request.setTransferStats(probe.stats);
+		}
+		return request;
+	}
+
+	/**
+	 * Finishes measuring a call and reports it to the listeners, only the
+	 * first call has an effect
+	 * 
+	 * @param probe
+	 *            the probe, may be <code>null</code>
+	 * @param error
+	 *            the answer of pastebin if the call failed, <code>null</code>
+	 *            if it succeeded
+	 */
+	public static void finish(OperationProbe probe, String error) {
+		if (probe == null) {
+			return;
+		}
+		synchronized (probe) {
+			if (probe.finished) {
+				return;
+			}
+			probe.finished = true;
+		}
+		PastebinMetrics.publish(new OperationEvent(probe.operation, System
+				.nanoTime() - probe.start, probe.stats.getNetworkNanos(),
+				probe.stats.getRequestBytes(), probe.stats.getResponseBytes(),
+				error));
+	}
+
+	/**
+	 * Finishes measuring a call once the response body it returns is closed,
+	 * as failed if reading the body failed
+	 * 
+	 * @param probe
+	 *            the probe, may be <code>null</code>
+	 * @param in
+	 *            the response body
+	 * @return the body to hand out
+	 */
+	public static InputStream finishOnClose(OperationProbe probe,
+			InputStream in) {
+		if (probe == null) {
+			return in;
+		}
+		if (in == null) {
+			finish(probe, null);
+			return null;
+		}
+		return new Body(in, probe);
+	}
+
+	/**
+	 * Finishes measuring a call which failed with an exception
+	 * 
+	 * @param probe
+	 *            the probe, may be <code>null</code>
+	 * @param e
+	 *            the failure
+	 */
+	public static void fail(OperationProbe probe, Exception e) {
+		if (probe != null) {
+			finish(probe, error(e));
+		}
+	}
+
+	/**
+	 * A response body which finishes its probe when closed
+	 */
+	private static class Body extends FilterInputStream {
+		private final OperationProbe probe;
+		private String error;
+
+		Body(InputStream in, OperationProbe probe) {
+			super(in);
+			this.probe = probe;
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (IOException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				return super.read(b, off, len);
+			} catch (IOException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			try {
+				return super.skip(n);
+			} catch (IOException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		private void failed(IOException e) {
+			if (error == null) {
+				error = error(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				finish(probe, error);
+			}
+		}
+	}
+
+	/**
+	 * Gets the error string of an exception, which names the failure without
+	 * its details so errors can be counted
+	 * 
+	 * @param e
+	 *            the failure
+	 * @return the error string
+	 */
+	public static String error(Exception e) {
+		if (e instanceof WebException) {
+			WebException web = (WebException) e;
+			if (web.getStatusCode() > 0) {
+				return "HTTP " + web.getStatusCode();
+			}
+			if (e.getCause() != null) {
+				return e.getCause().getClass().getSimpleName();
+			}
+		}
+		if (e instanceof HttpStatusException) {
+			return "HTTP " + ((HttpStatusException) e).getStatusCode();
+		}
+		return e.getClass().getSimpleName();
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.jpaste.pastebin.metrics;
+
+import java.util.EnumMap;
+
+/**
+ * 
+ * Aggregates the calls of every operation into {@link OperationStats}
+ * 
+ * @author Brian B
+ * 
+ */
+public class OperationRecorder implements OperationListener {
+	private final EnumMap<Operation, OperationStats> stats = new EnumMap<Operation, OperationStats>(
+			Operation.class);
+
+	/**
+	 * Creates a new <code>OperationRecorder</code> instance, register it with
+	 * {@link PastebinMetrics#addListener(OperationListener)}.
+	 */
+	public OperationRecorder() {
+		for (Operation operation : Operation.values()) {
+			stats.put(operation, new OperationStats(operation));
+		}
+	}
+
+	/**
+	 * Gets the statistics of an operation
+	 * 
+	 * @param operation
+	 *            the operation
+	 * @return its statistics
+	 */
+	public OperationStats getStats(Operation operation) {
+		return stats.get(operation);
+	}
+
+	/**
+	 * Clears the statistics of all operations
+	 */
+	public void reset() {
+		for (OperationStats operation : stats.values()) {
+			operation.reset();
+		}
+	}
+
+	@Override
+	public void onOperation(OperationEvent event) {
+		stats.get(event.getOperation()).record(event);
+	}
+
+}
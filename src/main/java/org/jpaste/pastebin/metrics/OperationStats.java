@@ -0,0 +1,193 @@
+package org.jpaste.pastebin.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * Latency histograms, byte counts and error counts of an operation
+ * 
+ * @author Brian B
+ * 
+ */
+public class OperationStats implements OperationStatsMXBean {
+	/**
+	 * Maximum amount of distinct error strings counted, further errors are
+	 * counted as <code>other</code>
+	 */
+	public static final int MAX_ERRORS = 64;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	private final Operation operation;
+	private final LatencyHistogram total = new LatencyHistogram();
+	private final LatencyHistogram network = new LatencyHistogram();
+	private final LatencyHistogram parse = new LatencyHistogram();
+	private final LongAdder requestBytes = new LongAdder();
+	private final LongAdder responseBytes = new LongAdder();
+	private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+	/**
+	 * Creates a new <code>OperationStats</code> instance.
+	 * 
+	 * @param operation
+	 *            the operation
+	 */
+	public OperationStats(Operation operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Adds a call
+	 * 
+	 * @param event
+	 *            the finished call
+	 */
+	public void record(OperationEvent event) {
+		total.record(event.getTotalNanos());
+		network.record(event.getNetworkNanos());
+		parse.record(event.getParseNanos());
+		requestBytes.add(event.getRequestBytes());
+		responseBytes.add(event.getResponseBytes());
+		if (!event.isSuccess()) {
+			String error = event.getError();
+			LongAdder count = errors.get(error);
+			if (count == null) {
+				if (errors.size() >= MAX_ERRORS) {
+					error = "other";
+				}
+				count = errors.computeIfAbsent(error, key -> new LongAdder());
+			}
+			count.increment();
+		}
+	}
+
+	/**
+	 * Gets the operation
+	 * 
+	 * @return the operation
+	 */
+	public Operation getOperationType() {
+		return operation;
+	}
+
+	/**
+	 * Gets the histogram of the time of a call
+	 * 
+	 * @return total latencies
+	 */
+	public LatencyHistogram getTotal() {
+		return total;
+	}
+
+	/**
+	 * Gets the histogram of the network time of a call
+	 * 
+	 * @return network latencies
+	 */
+	public LatencyHistogram getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Gets the histogram of the parse time of a call
+	 * 
+	 * @return parse latencies
+	 */
+	public LatencyHistogram getParse() {
+		return parse;
+	}
+
+	@Override
+	public String getOperation() {
+		return operation.getName();
+	}
+
+	@Override
+	public long getCount() {
+		return total.getCount();
+	}
+
+	@Override
+	public long getErrorCount() {
+		long count = 0;
+		for (LongAdder error : errors.values()) {
+			count += error.sum();
+		}
+		return count;
+	}
+
+	@Override
+	public Map<String, Long> getErrors() {
+		Map<String, Long> counts = new HashMap<String, Long>();
+		for (Map.Entry<String, LongAdder> error : errors.entrySet()) {
+			counts.put(error.getKey(), error.getValue().sum());
+		}
+		return counts;
+	}
+
+	@Override
+	public long getRequestBytes() {
+		return requestBytes.sum();
+	}
+
+	@Override
+	public long getResponseBytes() {
+		return responseBytes.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		return total.getMean() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMeanNetworkMillis() {
+		return network.getMean() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMeanParseMillis() {
+		return parse.getMean() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMedianMillis() {
+		return total.getPercentile(50) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double get99thPercentileMillis() {
+		return total.getPercentile(99) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double get99thPercentileNetworkMillis() {
+		return network.getPercentile(99) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double get99thPercentileParseMillis() {
+		return parse.getPercentile(99) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public void reset() {
+		total.reset();
+		network.reset();
+		parse.reset();
+		requestBytes.reset();
+		responseBytes.reset();
+		errors.clear();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d calls, %d errors, mean %.2f ms "
+				+ "(network %.2f ms, parse %.2f ms), p99 %.2f ms",
+				getOperation(), getCount(), getErrorCount(), getMeanMillis(),
+				getMeanNetworkMillis(), getMeanParseMillis(),
+				get99thPercentileMillis());
+	}
+
+}
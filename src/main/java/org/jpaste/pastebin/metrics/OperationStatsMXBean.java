@@ -0,0 +1,85 @@
+package org.jpaste.pastebin.metrics;
+
+import java.util.Map;
+
+/**
+ * 
+ * Statistics of an operation as published over JMX
+ * 
+ * @author Brian B
+ * @see PastebinMetrics#registerMBeans()
+ * 
+ */
+public interface OperationStatsMXBean {
+
+	/**
+	 * @return name of the operation
+	 */
+	String getOperation();
+
+	/**
+	 * @return amount of calls
+	 */
+	long getCount();
+
+	/**
+	 * @return amount of failed calls
+	 */
+	long getErrorCount();
+
+	/**
+	 * @return amount of failed calls by error string
+	 */
+	Map<String, Long> getErrors();
+
+	/**
+	 * @return post bytes sent over all calls
+	 */
+	long getRequestBytes();
+
+	/**
+	 * @return response bytes read over all calls
+	 */
+	long getResponseBytes();
+
+	/**
+	 * @return mean time of a call in milliseconds
+	 */
+	double getMeanMillis();
+
+	/**
+	 * @return mean network time of a call in milliseconds
+	 */
+	double getMeanNetworkMillis();
+
+	/**
+	 * @return mean parse time of a call in milliseconds
+	 */
+	double getMeanParseMillis();
+
+	/**
+	 * @return median time of a call in milliseconds
+	 */
+	double getMedianMillis();
+
+	/**
+	 * @return 99th percentile of the time of a call in milliseconds
+	 */
+	double get99thPercentileMillis();
+
+	/**
+	 * @return 99th percentile of the network time of a call in milliseconds
+	 */
+	double get99thPercentileNetworkMillis();
+
+	/**
+	 * @return 99th percentile of the parse time of a call in milliseconds
+	 */
+	double get99thPercentileParseMillis();
+
+	/**
+	 * Clears the statistics
+	 */
+	void reset();
+
+}
@@ -0,0 +1,141 @@
+package org.jpaste.pastebin.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 
+ * Reports every pastebin API call to the registered listeners
+ * 
+ * <p>
+ * Calls are only measured while a listener is registered. Every
+ * {@link Operation} can be published over JMX as an
+ * {@link OperationStatsMXBean} named
+ * <code>org.jpaste:type=Operation,name=&lt;operation&gt;</code>:
+ * </p>
+ * 
+ * <pre>
+ * PastebinMetrics.registerMBeans();
+ * </pre>
+ * 
+ * @author Brian B
+ * 
+ */
+public final class PastebinMetrics {
+	private static final CopyOnWriteArrayList<OperationListener> listeners = new CopyOnWriteArrayList<OperationListener>();
+	private static volatile boolean enabled;
+	private static OperationRecorder recorder;
+
+	private PastebinMetrics() {
+	}
+
+	/**
+	 * Registers a listener
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public static synchronized void addListener(OperationListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener can't be null.");
+		}
+		listeners.add(listener);
+		enabled = true;
+	}
+
+	/**
+	 * Removes a listener
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public static synchronized void removeListener(OperationListener listener) {
+		listeners.remove(listener);
+		enabled = !listeners.isEmpty();
+	}
+
+	/**
+	 * Determines if calls are measured
+	 * 
+	 * @return <code>true</code> if a listener is registered
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records every call and publishes the statistics of every operation
+	 * over JMX, doing nothing if they are published already
+	 * 
+	 * @return the recorder holding the statistics
+	 * @throws IllegalStateException
+	 *             if the MBeans could not be registered
+	 */
+	public static synchronized OperationRecorder registerMBeans() {
+		if (recorder != null) {
+			return recorder;
+		}
+		OperationRecorder created = new OperationRecorder();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (Operation operation : Operation.values()) {
+				server.registerMBean(created.getStats(operation),
+						objectName(operation));
+			}
+		} catch (JMException e) {
+			unregister(server);
+			throw new IllegalStateException("Failed to register MBeans: " + e,
+					e);
+		}
+		addListener(created);
+		recorder = created;
+		return created;
+	}
+
+	/**
+	 * Stops recording calls and removes the MBeans of
+	 * {@link #registerMBeans()}
+	 */
+	public static synchronized void unregisterMBeans() {
+		if (recorder == null) {
+			return;
+		}
+		removeListener(recorder);
+		unregister(ManagementFactory.getPlatformMBeanServer());
+		recorder = null;
+	}
+
+	private static void unregister(MBeanServer server) {
+		for (Operation operation : Operation.values()) {
+			try {
+				ObjectName name = objectName(operation);
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+			} catch (JMException e) {
+				// registered by someone else or gone already
+			}
+		}
+	}
+
+	private static ObjectName objectName(Operation operation)
+			throws JMException {
+		return new ObjectName("org.jpaste:type=Operation,name="
+				+ operation.getName());
+	}
+
+	static void publish(OperationEvent event) {
+		for (OperationListener listener : listeners) {
+			try {
+				listener.onOperation(event);
+			} catch (RuntimeException e) {
+				// a failing listener doesn't fail the call
+			}
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package org.jpaste.utils.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jpaste.utils.web.Deadline;
+
+/**
+ * 
+ * Holds helpers for running blocking calls asynchronously
+ * 
+ * @author Brian B
+ * 
+ */
+public class Async {
+
+	/**
+	 * Runs a blocking call on an executor
+	 * 
+	 * <p>
+	 * The returned future completes with the result of the call, or
+	 * exceptionally with the exception it threw. Checked exceptions such as
+	 * {@link org.jpaste.exceptions.PasteException PasteException} are passed
+	 * on as they are, {@link CompletableFuture#join()} wraps them in a
+	 * {@link java.util.concurrent.CompletionException CompletionException}.
+	 * A call which has not started yet is skipped when the future is
+	 * cancelled, a running call is interrupted, which aborts the request it is
+	 * sending.
+	 * </p>
+	 * 
+	 * <p>
+	 * The call runs under the {@link Deadline} of the submitting thread.
+	 * </p>
+	 * 
+	 * @param call
+	 *            the blocking call
+	 * @param executor
+	 *            the executor to run the call on
+	 * @return future result of the call
+	 */
+	public static <T> CompletableFuture<T> supply(final Callable<T> call,
+			Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor can't be null.");
+		}
+		Task<T> task = new Task<T>(call, Deadline.current());
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.completeExceptionally(e);
+		}
+		return task;
+	}
+
+	/**
+	 * Creates a bounded executor of daemon threads
+	 * 
+	 * <p>
+	 * Tasks beyond the thread count wait in the queue without holding a
+	 * thread. Idle threads die off after a minute.
+	 * </p>
+	 * 
+	 * @param threads
+	 *            maximum amount of threads
+	 * @param name
+	 *            prefix of the thread names
+	 * @return a new executor
+	 */
+	public static ThreadPoolExecutor newExecutor(int threads, final String name) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, name + "-"
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * A future which runs its call and interrupts it when cancelled
+	 */
+	private static class Task<T> extends CompletableFuture<T> implements
+			Runnable {
+		private final Callable<T> call;
+		private final Deadline deadline;
+		private Thread runner;
+
+		Task(Callable<T> call, Deadline deadline) {
+			this.call = call;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public void run() {
+			if (!start()) {
+				return;
+			}
+			try {
+				T result = deadline == null ? call.call() : deadline
+						.call(call::call);
+				finish();
+				complete(result);
+			} catch (Throwable t) {
+				finish();
+				completeExceptionally(t);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			synchronized (this) {
+				if (cancelled && runner != null) {
+					runner.interrupt();
+				}
+			}
+			return cancelled;
+		}
+
+		private synchronized boolean start() {
+			if (isDone()) {
+				return false;
+			}
+			runner = Thread.currentThread();
+			return true;
+		}
+
+		private synchronized void finish() {
+			runner = null;
+			// an interrupt meant for the call must not hit the next task
+			Thread.interrupted();
+		}
+	}
+
+}
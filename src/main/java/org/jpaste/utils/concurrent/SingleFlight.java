@@ -0,0 +1,185 @@
+package org.jpaste.utils.concurrent;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jpaste.utils.web.Deadline;
+
+/**
+ *
+ * Coalesces concurrent calls for the same key into one
+ *
+ * <p>
+ * The first caller of a key runs the call, callers arriving while it runs
+ * wait for it and get the same result, or the same exception thrown again.
+ * Once the call is over the next caller of the key runs it again, nothing is
+ * cached.
+ * </p>
+ *
+ * <p>
+ * A waiting caller which is interrupted, or whose {@link Deadline} passes,
+ * stops waiting and runs the call itself, which then fails the way it would
+ * have without coalescing. Likewise a failure which only concerns the caller
+ * that ran the call, because it was interrupted or cancelled or its deadline
+ * passed, is not handed on: the waiting callers run the call themselves.
+ * </p>
+ *
+ * @author Brian B
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            result type
+ */
+public class SingleFlight<K, V> {
+	private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<K, Flight<V>>();
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong sharedCalls = new AtomicLong();
+
+	/**
+	 * Runs a call, or waits for the call already running for the key
+	 *
+	 * @param key
+	 *            the key
+	 * @param call
+	 *            the call
+	 * @return result of the call
+	 * @throws E
+	 *             exception thrown by the call
+	 */
+	public <E extends Exception> V execute(K key, Deadline.Call<V, E> call)
+			throws E {
+		Flight<V> flight = new Flight<V>();
+		Flight<V> running = flights.putIfAbsent(key, flight);
+		if (running != null) {
+			sharedCalls.incrementAndGet();
+			return running.await(call);
+		}
+		calls.incrementAndGet();
+		V result;
+		try {
+			result = call.call();
+		} catch (Throwable t) {
+			flights.remove(key, flight);
+			flight.fail(t, isCallerFailure(t));
+			throw t;
+		}
+		flights.remove(key, flight);
+		flight.succeed(result);
+		return result;
+	}
+
+	/**
+	 * Determines if a failure is owed to the caller which ran the call rather
+	 * than to the call, so it says nothing about the result the waiting
+	 * callers would get
+	 */
+	private static boolean isCallerFailure(Throwable error) {
+		Deadline deadline = Deadline.current();
+		if (Thread.currentThread().isInterrupted()
+				|| (deadline != null && deadline.isExpired())) {
+			return true;
+		}
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			// a SocketTimeoutException is a timeout of the endpoint
+			if (cause instanceof InterruptedException
+					|| (cause instanceof InterruptedIOException
+							&& !(cause instanceof SocketTimeoutException))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the amount of calls run
+	 *
+	 * @return calls
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * Gets the amount of callers which got the result of a call run for
+	 * another caller
+	 *
+	 * @return shared calls
+	 */
+	public long getSharedCalls() {
+		return sharedCalls.get();
+	}
+
+	/**
+	 * Gets the amount of calls running
+	 *
+	 * @return calls in flight
+	 */
+	public int getInFlight() {
+		return flights.size();
+	}
+
+	/**
+	 * A running call
+	 */
+	private static class Flight<V> {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private V result;
+		private Throwable error;
+		private boolean callerFailure;
+
+		void succeed(V result) {
+			this.result = result;
+			done.countDown();
+		}
+
+		void fail(Throwable error, boolean callerFailure) {
+			this.error = error;
+			this.callerFailure = callerFailure;
+			done.countDown();
+		}
+
+		<E extends Exception> V await(Deadline.Call<V, E> call) throws E {
+			Deadline deadline = Deadline.current();
+			try {
+				if (deadline == null) {
+					done.await();
+				} else if (!done.await(
+						deadline.remaining(TimeUnit.NANOSECONDS),
+						TimeUnit.NANOSECONDS)) {
+					return call.call();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return call.call();
+			}
+			if (error == null) {
+				return result;
+			}
+			if (callerFailure) {
+				return call.call();
+			}
+			if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			}
+			if (error instanceof Error) {
+				throw (Error) error;
+			}
+			throw SingleFlight.<E> unchecked(error);
+		}
+	}
+
+	/**
+	 * Passes on a checked exception of the call, which can only be an
+	 * <code>E</code>
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E extends Exception> E unchecked(Throwable error) {
+		return (E) error;
+	}
+
+}
@@ -0,0 +1,252 @@
+package org.jpaste.utils.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * A token bucket rate limiter
+ * 
+ * <p>
+ * The bucket holds up to <code>burst</code> tokens and is refilled at a fixed
+ * rate. Every permit takes one token. Blocking acquires reserve their token
+ * right away and sleep until it has been refilled, so waiting threads are
+ * served in arrival order without holding a lock.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class TokenBucket {
+	private final double permitsPerSecond;
+	private final int burst;
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicInteger maxWaiting = new AtomicInteger();
+	private final AtomicLong granted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * Creates a new full <code>TokenBucket</code> instance.
+	 * 
+	 * @param permitsPerSecond
+	 *            refill rate, <code>0</code> for no limit
+	 * @param burst
+	 *            maximum amount of tokens, the amount of permits that can be
+	 *            taken at once after an idle period
+	 */
+	public TokenBucket(double permitsPerSecond, int burst) {
+		if (permitsPerSecond < 0 || Double.isNaN(permitsPerSecond)) {
+			throw new IllegalArgumentException("Rate can't be negative: "
+					+ permitsPerSecond);
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("Burst must be positive: "
+					+ burst);
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = burst;
+		this.tokens = burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Gets the refill rate
+	 * 
+	 * @return permits per second, <code>0</code> if unlimited
+	 */
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * Gets the bucket size
+	 * 
+	 * @return maximum amount of tokens
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Takes a permit, waiting until a token is available
+	 * 
+	 * @return time waited in nanoseconds
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, the token is given back
+	 */
+	public long acquire() throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			wait = reserve();
+		}
+		await(wait);
+		granted.incrementAndGet();
+		return wait;
+	}
+
+	/**
+	 * Takes a permit if a token is available within a timeout, waiting for it
+	 * 
+	 * <p>
+	 * Nothing is reserved if the token could not be refilled in time.
+	 * </p>
+	 * 
+	 * @param timeout
+	 *            longest time to wait
+	 * @param unit
+	 *            unit of the timeout
+	 * @return time waited in nanoseconds, <code>-1</code> if no permit was
+	 *         taken
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, the token is given back
+	 */
+	public long tryAcquire(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			refill();
+			if (permitsPerSecond != 0 && tokens < 1
+					&& (1 - tokens) / permitsPerSecond * 1e9 > unit
+							.toNanos(timeout)) {
+				rejected.incrementAndGet();
+				return -1;
+			}
+			wait = reserve();
+		}
+		await(wait);
+		granted.incrementAndGet();
+		return wait;
+	}
+
+	/**
+	 * Sleeps until a reserved token is available
+	 */
+	private void await(long wait) throws InterruptedException {
+		if (wait > 0) {
+			int depth = waiting.incrementAndGet();
+			int max;
+			while (depth > (max = maxWaiting.get())
+					&& !maxWaiting.compareAndSet(max, depth)) {
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				synchronized (this) {
+					tokens = Math.min(burst, tokens + 1);
+				}
+				throw e;
+			} finally {
+				waiting.decrementAndGet();
+			}
+			waitNanos.addAndGet(wait);
+		}
+	}
+
+	/**
+	 * Takes a permit if a token is available right now
+	 * 
+	 * @return <code>true</code> if a permit was taken
+	 */
+	public boolean tryAcquire() {
+		synchronized (this) {
+			refill();
+			if (permitsPerSecond != 0 && tokens < 1) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			tokens--;
+		}
+		granted.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Reserves a token, letting the bucket go into debt if it is empty
+	 * 
+	 * @return time until the reserved token is available in nanoseconds
+	 */
+	private long reserve() {
+		refill();
+		if (permitsPerSecond == 0) {
+			return 0;
+		}
+		tokens--;
+		if (tokens >= 0) {
+			return 0;
+		}
+		return (long) (-tokens / permitsPerSecond * 1e9);
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		if (permitsPerSecond == 0) {
+			tokens = burst;
+		} else {
+			tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9
+					* permitsPerSecond);
+		}
+		lastRefill = now;
+	}
+
+	/**
+	 * Gets the amount of tokens left
+	 * 
+	 * @return available tokens, negative if waiting threads reserved tokens
+	 *         which have not been refilled yet
+	 */
+	public synchronized double getAvailableTokens() {
+		refill();
+		return tokens;
+	}
+
+	/**
+	 * Gets the amount of threads waiting for a permit
+	 * 
+	 * @return queue depth
+	 */
+	public int getQueueDepth() {
+		return waiting.get();
+	}
+
+	/**
+	 * Gets the highest amount of threads that waited for a permit at once
+	 * 
+	 * @return maximum queue depth
+	 */
+	public int getMaxQueueDepth() {
+		return maxWaiting.get();
+	}
+
+	/**
+	 * Gets the amount of permits handed out
+	 * 
+	 * @return granted permits
+	 */
+	public long getGranted() {
+		return granted.get();
+	}
+
+	/**
+	 * Gets the amount of {@link #tryAcquire()} calls that found no token, and
+	 * timed calls that could not get one in time
+	 * 
+	 * @return rejected permits
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Gets the time all blocking acquires spent waiting
+	 * 
+	 * @return total wait time in nanoseconds
+	 */
+	public long getWaitNanos() {
+		return waitNanos.get();
+	}
+
+}
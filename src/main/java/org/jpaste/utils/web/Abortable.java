@@ -0,0 +1,111 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * 
+ * A blocking exchange which the {@link Watchdog} can abort
+ * 
+ * <p>
+ * Once watched, the exchange is aborted as soon as its deadline passes or the
+ * thread sending it is interrupted. Failures caused by the abort are then
+ * replaced with its reason by {@link #translate(IOException)}.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+abstract class Abortable {
+	private volatile Thread owner;
+	private volatile Deadline deadline;
+	private volatile boolean timedOut;
+	private volatile boolean interrupted;
+
+	/**
+	 * Unblocks the owner, typically by closing a socket
+	 */
+	abstract void abort();
+
+	/**
+	 * Lets the {@link Watchdog} abort this exchange once a deadline passes or
+	 * the owning thread is interrupted
+	 * 
+	 * @param owner
+	 *            the thread sending the request
+	 * @param deadline
+	 *            deadline of the request, may be <code>null</code>
+	 */
+	void watch(Thread owner, Deadline deadline) {
+		this.deadline = deadline;
+		this.timedOut = false;
+		this.interrupted = false;
+		this.owner = owner;
+		Watchdog.watch(this);
+	}
+
+	/**
+	 * Stops the {@link Watchdog} from aborting this exchange
+	 */
+	void unwatch() {
+		Watchdog.unwatch(this);
+		this.owner = null;
+	}
+
+	/**
+	 * Aborts this exchange if its deadline passed or its owner was
+	 * interrupted
+	 * 
+	 * @param now
+	 *            the current {@link System#nanoTime()}
+	 */
+	void check(long now) {
+		Thread thread = owner;
+		if (thread == null) {
+			return;
+		}
+		Deadline deadline = this.deadline;
+		if (deadline != null && now - deadline.nanoTime() >= 0) {
+			timedOut = true;
+		} else if (thread.isInterrupted()) {
+			interrupted = true;
+		} else {
+			return;
+		}
+		unwatch();
+		abort();
+	}
+
+	/**
+	 * Replaces the failure caused by an abort with the reason of the abort
+	 * 
+	 * @param e
+	 *            the failure
+	 * @return a {@link SocketTimeoutException} if the deadline passed, an
+	 *         {@link InterruptedIOException} if the owner was interrupted, the
+	 *         failure itself otherwise
+	 */
+	IOException translate(IOException e) {
+		InterruptedIOException reason;
+		if (timedOut) {
+			reason = new SocketTimeoutException("Deadline exceeded.");
+		} else if (interrupted) {
+			reason = new InterruptedIOException("Interrupted.");
+		} else {
+			return e;
+		}
+		reason.initCause(e);
+		return reason;
+	}
+
+	/**
+	 * Determines if the {@link Watchdog} aborted this exchange
+	 * 
+	 * @return <code>true</code> if aborted
+	 */
+	boolean isAborted() {
+		return timedOut || interrupted;
+	}
+
+}
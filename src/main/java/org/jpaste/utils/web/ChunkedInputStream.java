@@ -0,0 +1,109 @@
+package org.jpaste.utils.web;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 
+ * Reads a HTTP message body sent with <code>Transfer-Encoding: chunked</code>
+ * 
+ * <p>
+ * The underlying stream is never closed, it belongs to the connection.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+class ChunkedInputStream extends InputStream {
+	private final InputStream in;
+	private long remaining;
+	private boolean started;
+	private boolean eof;
+
+	/**
+	 * Creates a new <code>ChunkedInputStream</code> instance.
+	 * 
+	 * @param in
+	 *            the connection input stream
+	 */
+	ChunkedInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("Connection closed inside a chunk.");
+		}
+		remaining--;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int read = in.read(b, off, (int) Math.min(len, remaining));
+		if (read == -1) {
+			throw new EOFException("Connection closed inside a chunk.");
+		}
+		remaining -= read;
+		return read;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return eof ? 0 : (int) Math.min(in.available(), remaining);
+	}
+
+	/**
+	 * Moves to the next chunk if the current one has been read
+	 * 
+	 * @return <code>false</code> once the last chunk has been read
+	 */
+	private boolean nextChunk() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (remaining > 0) {
+			return true;
+		}
+		if (started) {
+			// CRLF after chunk data
+			Http.readLine(in);
+		}
+		started = true;
+		String line = Http.readLine(in);
+		if (line == null) {
+			throw new EOFException("Connection closed before last chunk.");
+		}
+		int extension = line.indexOf(';');
+		if (extension != -1) {
+			line = line.substring(0, extension);
+		}
+		try {
+			remaining = Long.parseLong(line.trim(), 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed chunk size: " + line);
+		}
+		if (remaining == 0) {
+			// trailers end with an empty line
+			String trailer;
+			while ((trailer = Http.readLine(in)) != null && !trailer.isEmpty()) {
+			}
+			eof = true;
+			return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,65 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 
+ * Writes a HTTP message body with <code>Transfer-Encoding: chunked</code>
+ * 
+ * <p>
+ * Every write becomes a chunk, callers are expected to write in large blocks.
+ * {@link #finish()} writes the last chunk, the underlying stream is never
+ * closed.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+class ChunkedOutputStream extends OutputStream {
+	private static final byte[] CRLF = { '\r', '\n' };
+	private final OutputStream out;
+
+	/**
+	 * Creates a new <code>ChunkedOutputStream</code> instance.
+	 * 
+	 * @param out
+	 *            the connection output stream
+	 */
+	ChunkedOutputStream(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return;
+		}
+		out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+		out.write(CRLF);
+		out.write(b, off, len);
+		out.write(CRLF);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes the last, empty chunk and flushes
+	 */
+	void finish() throws IOException {
+		out.write('0');
+		out.write(CRLF);
+		out.write(CRLF);
+		out.flush();
+	}
+
+}
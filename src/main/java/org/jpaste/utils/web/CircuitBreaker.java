@@ -0,0 +1,153 @@
+package org.jpaste.utils.web;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Stops sending requests to an endpoint which keeps failing
+ * 
+ * <p>
+ * After <code>failureThreshold</code> transient failures in a row the breaker
+ * opens and requests fail right away. Once <code>openDuration</code> has
+ * passed a single trial request is let through: if it succeeds the breaker
+ * closes, otherwise it opens again.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class CircuitBreaker {
+	/**
+	 * Circuit breaker states
+	 */
+	public enum State {
+		/**
+		 * Requests are sent
+		 */
+		CLOSED,
+		/**
+		 * Requests fail right away
+		 */
+		OPEN,
+		/**
+		 * A single trial request is sent
+		 */
+		HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openDuration;
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong trips = new AtomicLong();
+	private State state = State.CLOSED;
+	private int failures;
+	private long openedAt;
+	private boolean trial;
+
+	/**
+	 * Creates a new closed <code>CircuitBreaker</code> instance.
+	 * 
+	 * @param failureThreshold
+	 *            amount of failures in a row which open the breaker
+	 * @param openDuration
+	 *            time in milliseconds the breaker stays open
+	 */
+	public CircuitBreaker(int failureThreshold, long openDuration) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException(
+					"Failure threshold must be positive: " + failureThreshold);
+		}
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+	}
+
+	/**
+	 * Determines if a request may be sent, claiming the trial request if the
+	 * open duration has passed
+	 * 
+	 * @return <code>false</code> if the request must fail right away
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == State.OPEN
+				&& System.currentTimeMillis() - openedAt >= openDuration) {
+			state = State.HALF_OPEN;
+			trial = false;
+		}
+		if (state == State.CLOSED || (state == State.HALF_OPEN && !trial)) {
+			trial = state == State.HALF_OPEN;
+			return true;
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Records a request which reached the endpoint
+	 */
+	public synchronized void onSuccess() {
+		state = State.CLOSED;
+		failures = 0;
+		trial = false;
+	}
+
+	/**
+	 * Records a request which ended without telling anything about the
+	 * endpoint, cancelled or failed on the client side, so the next request
+	 * may be the trial if this one was
+	 */
+	public synchronized void release() {
+		trial = false;
+	}
+
+	/**
+	 * Records a transient failure
+	 */
+	public synchronized void onFailure() {
+		failures++;
+		if (state == State.HALF_OPEN || failures >= failureThreshold) {
+			if (state != State.OPEN) {
+				trips.incrementAndGet();
+			}
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			trial = false;
+		}
+	}
+
+	/**
+	 * Gets the current state
+	 * 
+	 * @return breaker state
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Gets the amount of transient failures in a row
+	 * 
+	 * @return consecutive failures
+	 */
+	public synchronized int getConsecutiveFailures() {
+		return failures;
+	}
+
+	/**
+	 * Gets the amount of requests refused while open
+	 * 
+	 * @return rejected requests
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Gets the amount of times the breaker opened
+	 * 
+	 * @return trips
+	 */
+	public long getTrips() {
+		return trips.get();
+	}
+
+}
@@ -0,0 +1,30 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+
+/**
+ * 
+ * Thrown when a request isn't sent because the {@link CircuitBreaker} of its
+ * endpoint is open
+ * 
+ * @author Brian B
+ * 
+ */
+public class CircuitOpenException extends IOException {
+	private static final long serialVersionUID = -3164127907515286014L;
+	private final String endpoint;
+
+	public CircuitOpenException(String endpoint) {
+		super("Circuit breaker open for " + endpoint);
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * Gets the endpoint whose breaker is open
+	 * 
+	 * @return host and path of the endpoint
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+}
@@ -0,0 +1,434 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ * A bounded pool of keep-alive HTTP connections
+ *
+ * <p>
+ * Connections are kept per host (protocol, host and port). At most
+ * {@link #getMaxConnectionsPerHost()} connections, leased or idle, exist for a
+ * host at any time; callers wait for a connection to be returned once that
+ * bound is reached. Idle connections are evicted once they have been unused
+ * for longer than {@link #getIdleTimeout()}.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class ConnectionPool {
+	/**
+	 * Default maximum amount of connections per host
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+	/**
+	 * Default idle timeout in milliseconds
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+	/**
+	 * Default time in milliseconds to wait for a free connection
+	 */
+	public static final long DEFAULT_ACQUIRE_TIMEOUT = 60000L;
+	private final ConcurrentHashMap<String, HostPool> hosts = new ConcurrentHashMap<String, HostPool>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private volatile int maxConnectionsPerHost;
+	private volatile long idleTimeout;
+	private volatile long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new <code>ConnectionPool</code> instance with default limits.
+	 */
+	public ConnectionPool() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Creates a new <code>ConnectionPool</code> instance.
+	 *
+	 * @param maxConnectionsPerHost
+	 *            maximum amount of connections per host
+	 * @param idleTimeout
+	 *            time in milliseconds after which an idle connection is
+	 *            evicted
+	 */
+	public ConnectionPool(int maxConnectionsPerHost, long idleTimeout) {
+		setMaxConnectionsPerHost(maxConnectionsPerHost);
+		setIdleTimeout(idleTimeout);
+	}
+
+	/**
+	 * Sets the maximum amount of connections per host
+	 *
+	 * @param maxConnectionsPerHost
+	 *            maximum amount of leased and idle connections per host
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException(
+					"Max connections must be positive: "
+							+ maxConnectionsPerHost);
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Gets the maximum amount of connections per host
+	 *
+	 * @return maximum amount of connections per host
+	 */
+	public int getMaxConnectionsPerHost() {
+		return this.maxConnectionsPerHost;
+	}
+
+	/**
+	 * Sets the idle timeout
+	 *
+	 * @param idleTimeout
+	 *            time in milliseconds after which an idle connection is
+	 *            evicted, <code>0</code> disables keep-alive
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException(
+					"Idle timeout can't be negative: " + idleTimeout);
+		}
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Gets the idle timeout
+	 *
+	 * @return idle timeout in milliseconds
+	 */
+	public long getIdleTimeout() {
+		return this.idleTimeout;
+	}
+
+	/**
+	 * Sets the time to wait for a free connection once a host is at its
+	 * connection limit
+	 *
+	 * @param acquireTimeout
+	 *            time in milliseconds
+	 */
+	public void setAcquireTimeout(long acquireTimeout) {
+		if (acquireTimeout < 0) {
+			throw new IllegalArgumentException(
+					"Acquire timeout can't be negative: " + acquireTimeout);
+		}
+		this.acquireTimeout = acquireTimeout;
+	}
+
+	/**
+	 * Gets the time to wait for a free connection
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getAcquireTimeout() {
+		return this.acquireTimeout;
+	}
+
+	/**
+	 * Gets the amount of requests that were served by an idle pooled
+	 * connection
+	 *
+	 * @return pool hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of requests that required a new connection
+	 *
+	 * @return pool misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the amount of idle connections that were closed because they
+	 * expired or went stale
+	 *
+	 * @return evicted connections
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the amount of idle connections over all hosts
+	 *
+	 * @return idle connections
+	 */
+	public int getIdleConnectionCount() {
+		int count = 0;
+		for (HostPool host : hosts.values()) {
+			count += host.idleCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the amount of connections currently in use over all hosts
+	 *
+	 * @return leased connections
+	 */
+	public int getLeasedConnectionCount() {
+		int count = 0;
+		for (HostPool host : hosts.values()) {
+			count += host.leasedCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Closes all connections that have been idle for longer than the idle
+	 * timeout
+	 *
+	 * <p>
+	 * Expired connections are also evicted whenever a connection is acquired
+	 * or released, this method only needs to be called to free sockets of
+	 * hosts that are no longer used.
+	 * </p>
+	 *
+	 * @return amount of connections closed
+	 */
+	public int evictIdleConnections() {
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (HostPool host : hosts.values()) {
+			count += host.evict(now, false);
+		}
+		return count;
+	}
+
+	/**
+	 * Closes all idle connections and refuses new ones. Leased connections are
+	 * closed once they are returned.
+	 */
+	public void close() {
+		this.closed = true;
+		for (HostPool host : hosts.values()) {
+			host.evict(System.currentTimeMillis(), true);
+		}
+	}
+
+	/**
+	 * Leases a connection to the host of an URL, reusing an idle one if
+	 * possible
+	 *
+	 * @param url
+	 *            the URL
+	 * @param deadline
+	 *            deadline of the request, may be <code>null</code>
+	 * @param connectTimeout
+	 *            connect timeout of a new connection in milliseconds
+	 * @param readTimeout
+	 *            read timeout of a new connection in milliseconds
+	 * @return a leased connection
+	 * @throws IOException
+	 *             if no connection could be opened or none became available in
+	 *             time
+	 */
+	HttpConnection acquire(URL url, Deadline deadline, int connectTimeout,
+			int readTimeout) throws IOException {
+		if (closed) {
+			throw new IOException("Connection pool has been closed.");
+		}
+		String route = HttpConnection.route(url);
+		HostPool host = hosts.get(route);
+		if (host == null) {
+			HostPool created = new HostPool();
+			host = hosts.putIfAbsent(route, created);
+			if (host == null) {
+				host = created;
+			}
+		}
+		long wait = TimeUnit.MILLISECONDS.toNanos(acquireTimeout);
+		if (deadline != null) {
+			wait = Math.min(wait, deadline.remaining(TimeUnit.NANOSECONDS));
+		}
+		HttpConnection connection = host.lease(wait);
+		if (connection != null) {
+			hits.incrementAndGet();
+			connection.setReused(true);
+			return connection;
+		}
+		misses.incrementAndGet();
+		try {
+			return HttpConnection.open(url, connectTimeout, readTimeout);
+		} catch (IOException e) {
+			host.free();
+			throw e;
+		} catch (RuntimeException e) {
+			host.free();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a connection whose response has been fully read
+	 *
+	 * @param connection
+	 *            the connection
+	 */
+	void release(HttpConnection connection) {
+		connection.unwatch();
+		HostPool host = hosts.get(connection.getRoute());
+		if (closed || idleTimeout == 0 || host == null
+				|| !connection.isUsable()) {
+			discard(connection);
+			return;
+		}
+		connection.setLastUsed(System.currentTimeMillis());
+		host.giveBack(connection);
+	}
+
+	/**
+	 * Closes a connection that can not be reused
+	 *
+	 * @param connection
+	 *            the connection
+	 */
+	void discard(HttpConnection connection) {
+		connection.unwatch();
+		connection.close();
+		HostPool host = hosts.get(connection.getRoute());
+		if (host != null) {
+			host.free();
+		}
+	}
+
+	/**
+	 * Connections of a single host
+	 */
+	private class HostPool {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition available = lock.newCondition();
+		private final ArrayDeque<HttpConnection> idle = new ArrayDeque<HttpConnection>();
+		private int leased;
+
+		/**
+		 * Leases an idle connection or a permit to open a new one
+		 *
+		 * @return an idle connection or <code>null</code> if a new one may be
+		 *         opened
+		 */
+		HttpConnection lease(long wait) throws IOException {
+			long deadline = System.nanoTime() + wait;
+			lock.lock();
+			try {
+				while (true) {
+					evict(System.currentTimeMillis(), false);
+					HttpConnection connection = idle.pollLast();
+					if (connection != null) {
+						leased++;
+						return connection;
+					}
+					if (leased < maxConnectionsPerHost) {
+						leased++;
+						return null;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						throw new SocketTimeoutException(
+								"Timed out waiting for a pooled connection.");
+					}
+					try {
+						available.awaitNanos(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException(
+								"Interrupted while waiting for a pooled connection.");
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void giveBack(HttpConnection connection) {
+			lock.lock();
+			try {
+				leased--;
+				if (leased + idle.size() < maxConnectionsPerHost) {
+					idle.addLast(connection);
+				} else {
+					connection.close();
+				}
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void free() {
+			lock.lock();
+			try {
+				leased--;
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int evict(long now, boolean all) {
+			int count = 0;
+			lock.lock();
+			try {
+				Iterator<HttpConnection> it = idle.iterator();
+				while (it.hasNext()) {
+					HttpConnection connection = it.next();
+					if (all || now - connection.getLastUsed() >= idleTimeout
+							|| !connection.isUsable()) {
+						it.remove();
+						connection.close();
+						count++;
+					}
+				}
+				if (count > 0) {
+					evictions.addAndGet(count);
+					available.signalAll();
+				}
+			} finally {
+				lock.unlock();
+			}
+			return count;
+		}
+
+		int idleCount() {
+			lock.lock();
+			try {
+				return idle.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int leasedCount() {
+			lock.lock();
+			try {
+				return leased;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+}
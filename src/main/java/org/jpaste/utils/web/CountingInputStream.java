@@ -0,0 +1,61 @@
+package org.jpaste.utils.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Adds the bytes read from a stream to a counter
+ * 
+ * @author Brian B
+ * 
+ */
+class CountingInputStream extends FilterInputStream {
+	private final AtomicLong counter;
+
+	/**
+	 * Creates a new <code>CountingInputStream</code> instance.
+	 * 
+	 * @param in
+	 *            the stream to count
+	 * @param counter
+	 *            the counter to add read bytes to
+	 */
+	CountingInputStream(InputStream in, AtomicLong counter) {
+		super(in);
+		this.counter = counter;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b != -1) {
+			counter.incrementAndGet();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = in.read(b, off, len);
+		if (read > 0) {
+			counter.addAndGet(read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(n);
+		counter.addAndGet(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+}
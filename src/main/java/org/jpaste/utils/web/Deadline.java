@@ -0,0 +1,151 @@
+package org.jpaste.utils.web;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * A point in time by which a call must have finished
+ * 
+ * <p>
+ * A deadline can be set on a single {@link WebRequest}, or on every request a
+ * piece of code sends with {@link #call(Call)}:
+ * </p>
+ * 
+ * <pre>
+ * PastebinLink link = Deadline.after(5, TimeUnit.SECONDS).call(() -&gt; paste.paste());
+ * </pre>
+ * 
+ * <p>
+ * Once a deadline expires the socket of the request is closed, wherever the
+ * request is at, and the call fails with a
+ * {@link java.net.SocketTimeoutException SocketTimeoutException}. Interrupting
+ * the calling thread aborts the socket in the same way.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public final class Deadline {
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+	private final long nanos;
+
+	private Deadline(long nanos) {
+		this.nanos = nanos;
+	}
+
+	/**
+	 * Creates a deadline a duration from now
+	 * 
+	 * @param duration
+	 *            the duration
+	 * @param unit
+	 *            unit of the duration
+	 * @return a new deadline
+	 */
+	public static Deadline after(long duration, TimeUnit unit) {
+		if (duration < 0) {
+			throw new IllegalArgumentException("Duration can't be negative: "
+					+ duration);
+		}
+		return new Deadline(System.nanoTime() + unit.toNanos(duration));
+	}
+
+	/**
+	 * Gets the deadline the current thread runs under
+	 * 
+	 * @return deadline set by {@link #call(Call)}, or <code>null</code>
+	 */
+	public static Deadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Gets the earliest of two deadlines
+	 * 
+	 * @param a
+	 *            a deadline or <code>null</code>
+	 * @param b
+	 *            a deadline or <code>null</code>
+	 * @return the earliest deadline, <code>null</code> if both are
+	 *         <code>null</code>
+	 */
+	public static Deadline earliest(Deadline a, Deadline b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		return a.nanos - b.nanos <= 0 ? a : b;
+	}
+
+	/**
+	 * Gets the time left
+	 * 
+	 * @param unit
+	 *            the unit to return
+	 * @return time left, <code>0</code> once expired
+	 */
+	public long remaining(TimeUnit unit) {
+		return unit.convert(Math.max(0, nanos - System.nanoTime()),
+				TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Determines if this deadline has passed
+	 * 
+	 * @return <code>true</code> if expired
+	 */
+	public boolean isExpired() {
+		return nanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Gets the deadline as {@link System#nanoTime()} value
+	 * 
+	 * @return deadline in nanoseconds
+	 */
+	long nanoTime() {
+		return nanos;
+	}
+
+	/**
+	 * Runs a call with this deadline applied to every request it sends
+	 * 
+	 * <p>
+	 * An earlier deadline which is already in effect stays in effect.
+	 * </p>
+	 * 
+	 * @param call
+	 *            the call
+	 * @return result of the call
+	 * @throws E
+	 *             exception thrown by the call
+	 */
+	public <T, E extends Exception> T call(Call<T, E> call) throws E {
+		Deadline previous = CURRENT.get();
+		CURRENT.set(earliest(previous, this));
+		try {
+			return call.call();
+		} finally {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * A call run with a deadline
+	 * 
+	 * @param <T>
+	 *            result type
+	 * @param <E>
+	 *            exception type
+	 */
+	public interface Call<T, E extends Exception> {
+		T call() throws E;
+	}
+
+}
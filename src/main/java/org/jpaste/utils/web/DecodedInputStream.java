@@ -0,0 +1,123 @@
+package org.jpaste.utils.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 
+ * Decompresses a <code>gzip</code> or <code>deflate</code> encoded response
+ * body while it is read
+ * 
+ * <p>
+ * Once the compressed data ends, whatever is left of the body is read so the
+ * connection is released to the pool instead of being closed.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+class DecodedInputStream extends FilterInputStream {
+	private final InputStream raw;
+	private final Inflater inflater;
+
+	private DecodedInputStream(InputStream decoder, InputStream raw,
+			Inflater inflater) {
+		super(decoder);
+		this.raw = raw;
+		this.inflater = inflater;
+	}
+
+	/**
+	 * Wraps a response body in a decoder for its content encoding
+	 * 
+	 * @param raw
+	 *            the body as received
+	 * @param encoding
+	 *            value of the <code>Content-Encoding</code> header, may be
+	 *            <code>null</code>
+	 * @return decoded body, or the body itself if it isn't encoded or the
+	 *         encoding is unknown
+	 * @throws IOException
+	 *             if the compression header could not be read
+	 */
+	static InputStream decode(InputStream raw, String encoding)
+			throws IOException {
+		if (encoding == null) {
+			return raw;
+		}
+		encoding = encoding.trim().toLowerCase(Locale.ROOT);
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new DecodedInputStream(new GZIPInputStream(raw, 8192), raw,
+					null);
+		}
+		if (encoding.equals("deflate")) {
+			// deflate should be zlib wrapped, some servers send raw deflate
+			PushbackInputStream in = new PushbackInputStream(raw, 2);
+			int b0 = in.read();
+			int b1 = b0 == -1 ? -1 : in.read();
+			if (b1 != -1) {
+				in.unread(b1);
+			}
+			if (b0 != -1) {
+				in.unread(b0);
+			}
+			boolean zlib = b1 != -1 && (b0 & 0x0F) == 8
+					&& ((b0 << 8) | b1) % 31 == 0;
+			Inflater inflater = new Inflater(!zlib);
+			return new DecodedInputStream(new InflaterInputStream(in, inflater,
+					8192), raw, inflater);
+		}
+		return raw;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			drain();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = in.read(b, off, len);
+		if (read == -1) {
+			drain();
+		}
+		return read;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Reads the rest of the raw body, such as padding after the compressed
+	 * data
+	 */
+	private void drain() throws IOException {
+		byte[] buffer = new byte[512];
+		while (raw.read(buffer) != -1) {
+		}
+	}
+
+}
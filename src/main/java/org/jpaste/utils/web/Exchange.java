@@ -0,0 +1,188 @@
+package org.jpaste.utils.web;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * A single request handed to a {@link Transport}
+ * 
+ * @author Brian B
+ * 
+ */
+public final class Exchange {
+	private final String method;
+	private final URL url;
+	private final Map<String, String> headers;
+	private final Post post;
+	private final long contentLength;
+	private final Deadline deadline;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final RequestTrace trace;
+
+	/**
+	 * Creates a new <code>Exchange</code> instance.
+	 * 
+	 * @param method
+	 *            the request method
+	 * @param url
+	 *            the requested URL
+	 * @param headers
+	 *            request headers
+	 * @param post
+	 *            the post, <code>null</code> if there is no body
+	 * @param contentLength
+	 *            encoded length of the post, <code>-1</code> if unknown
+	 * @param deadline
+	 *            the deadline, may be <code>null</code>
+	 * @param connectTimeout
+	 *            connect timeout in milliseconds
+	 * @param readTimeout
+	 *            read timeout in milliseconds
+	 * @param trace
+	 *            trace of the request, <code>null</code> if not traced
+	 */
+	Exchange(String method, URL url, Map<String, String> headers, Post post,
+			long contentLength, Deadline deadline, int connectTimeout,
+			int readTimeout, RequestTrace trace) {
+		this.method = method;
+		this.url = url;
+		this.headers = Collections.unmodifiableMap(headers);
+		this.post = post;
+		this.contentLength = contentLength;
+		this.deadline = deadline;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.trace = trace;
+	}
+
+	/**
+	 * Creates a copy of this exchange with a header added, replacing a header
+	 * of the same name
+	 * 
+	 * @param name
+	 *            header name
+	 * @param value
+	 *            header value
+	 * @return the copy
+	 */
+	public Exchange withHeader(String name, String value) {
+		if (name == null || value == null) {
+			throw new IllegalArgumentException(
+					"Header name and value can't be null.");
+		}
+		Map<String, String> copy = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (!header.getKey().equalsIgnoreCase(name)) {
+				copy.put(header.getKey(), header.getValue());
+			}
+		}
+		copy.put(name, value);
+		return new Exchange(method, url, copy, post, contentLength, deadline,
+				connectTimeout, readTimeout, trace);
+	}
+
+	/**
+	 * Gets the request method
+	 * 
+	 * @return <code>GET</code> or <code>POST</code>
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Gets the requested URL
+	 * 
+	 * @return the URL
+	 */
+	public URL getURL() {
+		return url;
+	}
+
+	/**
+	 * Gets the request headers, without <code>Host</code> and body framing
+	 * 
+	 * @return headers keyed by name
+	 */
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Gets the request body
+	 * 
+	 * @return the post, <code>null</code> if there is no body
+	 */
+	public Post getPost() {
+		return post;
+	}
+
+	/**
+	 * Gets the length of the encoded post
+	 * 
+	 * @return length in bytes, <code>0</code> without a post, <code>-1</code>
+	 *         if unknown
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Gets the deadline of this exchange
+	 * 
+	 * @return the deadline, may be <code>null</code>
+	 */
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Gets the connect timeout, bounded by the time left until the deadline
+	 * 
+	 * @return time in milliseconds, <code>0</code> to wait forever
+	 */
+	public int getConnectTimeout() {
+		return bound(connectTimeout);
+	}
+
+	/**
+	 * Gets the read timeout, bounded by the time left until the deadline
+	 * 
+	 * @return time in milliseconds, <code>0</code> to wait forever
+	 */
+	public int getReadTimeout() {
+		return bound(readTimeout);
+	}
+
+	RequestTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * Reports the time a transport spent getting a connection for this
+	 * exchange
+	 * 
+	 * @param nanos
+	 *            time in nanoseconds
+	 */
+	void connected(long nanos) {
+		if (trace != null) {
+			trace.addConnectNanos(nanos);
+		}
+	}
+
+	private int bound(int timeout) {
+		if (deadline == null) {
+			return timeout;
+		}
+		long remaining = Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS));
+		return (int) (timeout == 0 ? Math.min(remaining, Integer.MAX_VALUE)
+				: Math.min(remaining, timeout));
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.jpaste.utils.web;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 
+ * Reads a HTTP message body framed by a <code>Content-Length</code> header
+ * 
+ * <p>
+ * The underlying stream is never closed, it belongs to the connection.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+class FixedLengthInputStream extends InputStream {
+	private final InputStream in;
+	private long remaining;
+
+	/**
+	 * Creates a new <code>FixedLengthInputStream</code> instance.
+	 * 
+	 * @param in
+	 *            the connection input stream
+	 * @param length
+	 *            the body length in bytes
+	 */
+	FixedLengthInputStream(InputStream in, long length) {
+		this.in = in;
+		this.remaining = length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("Connection closed before end of body.");
+		}
+		remaining--;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		int read = in.read(b, off, (int) Math.min(len, remaining));
+		if (read == -1) {
+			throw new EOFException("Connection closed before end of body.");
+		}
+		remaining -= read;
+		return read;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(in.available(), remaining);
+	}
+
+}
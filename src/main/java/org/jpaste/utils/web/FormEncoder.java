@@ -0,0 +1,182 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 
+ * Encodes characters as <code>application/x-www-form-urlencoded</code> UTF-8
+ * bytes while they are written
+ * 
+ * <p>
+ * Produces the same output as {@link java.net.URLEncoder} with the UTF-8
+ * charset, but encodes straight into a stream in chunks. Without a stream it
+ * only counts the bytes it would write.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+class FormEncoder {
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+	private final OutputStream out;
+	private final byte[] buffer = new byte[8192];
+	private int position;
+	private long count;
+	private char highSurrogate;
+
+	/**
+	 * Creates a new <code>FormEncoder</code> instance.
+	 * 
+	 * @param out
+	 *            the stream to write to, or <code>null</code> to only count
+	 */
+	FormEncoder(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Encodes characters
+	 * 
+	 * @param chars
+	 *            the characters
+	 * @param start
+	 *            index of the first character
+	 * @param end
+	 *            index after the last character
+	 */
+	void encode(CharSequence chars, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			encode(chars.charAt(i));
+		}
+	}
+
+	/**
+	 * Encodes characters
+	 * 
+	 * @param chars
+	 *            the characters
+	 * @param offset
+	 *            index of the first character
+	 * @param length
+	 *            amount of characters
+	 */
+	void encode(char[] chars, int offset, int length) throws IOException {
+		for (int i = offset, end = offset + length; i < end; i++) {
+			encode(chars[i]);
+		}
+	}
+
+	private void encode(char c) throws IOException {
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				encodeUtf8(Character.toCodePoint(high, c));
+				return;
+			}
+			encodeUtf8('?');
+		}
+		if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*'
+				|| c == '_') {
+			write(c);
+		} else if (c == ' ') {
+			write('+');
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			encodeUtf8('?');
+		} else {
+			encodeUtf8(c);
+		}
+	}
+
+	/**
+	 * Ends a key or value, a dangling high surrogate is encoded as
+	 * <code>?</code> like {@link java.net.URLEncoder} does
+	 */
+	void endValue() throws IOException {
+		if (highSurrogate != 0) {
+			highSurrogate = 0;
+			encodeUtf8('?');
+		}
+	}
+
+	/**
+	 * Writes a separator or an already encoded byte as is
+	 * 
+	 * @param b
+	 *            the byte
+	 */
+	void write(int b) throws IOException {
+		if (position == buffer.length) {
+			flushBuffer();
+		}
+		buffer[position++] = (byte) b;
+		count++;
+	}
+
+	/**
+	 * Writes already encoded text as is
+	 * 
+	 * @param encoded
+	 *            ASCII text
+	 */
+	void write(String encoded) throws IOException {
+		for (int i = 0; i < encoded.length(); i++) {
+			write(encoded.charAt(i));
+		}
+	}
+
+	private void encodeUtf8(int codePoint) throws IOException {
+		if (codePoint < 0x80) {
+			percent(codePoint);
+		} else if (codePoint < 0x800) {
+			percent(0xC0 | (codePoint >> 6));
+			percent(0x80 | (codePoint & 0x3F));
+		} else if (codePoint < 0x10000) {
+			percent(0xE0 | (codePoint >> 12));
+			percent(0x80 | ((codePoint >> 6) & 0x3F));
+			percent(0x80 | (codePoint & 0x3F));
+		} else {
+			percent(0xF0 | (codePoint >> 18));
+			percent(0x80 | ((codePoint >> 12) & 0x3F));
+			percent(0x80 | ((codePoint >> 6) & 0x3F));
+			percent(0x80 | (codePoint & 0x3F));
+		}
+	}
+
+	private void percent(int b) throws IOException {
+		write('%');
+		write(HEX[(b >> 4) & 0xF]);
+		write(HEX[b & 0xF]);
+	}
+
+	/**
+	 * Gets the amount of bytes encoded so far
+	 * 
+	 * @return encoded bytes
+	 */
+	long getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes buffered bytes to the stream
+	 */
+	void flush() throws IOException {
+		flushBuffer();
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (out != null && position > 0) {
+			out.write(buffer, 0, position);
+		}
+		position = 0;
+	}
+
+}
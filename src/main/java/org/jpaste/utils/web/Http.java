@@ -0,0 +1,48 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 
+ * Holds HTTP/1.1 wire format helpers
+ * 
+ * @author Brian B
+ * 
+ */
+final class Http {
+	private static final int MAX_LINE_LENGTH = 65536;
+
+	private Http() {
+	}
+
+	/**
+	 * Reads a CRLF terminated header line
+	 * 
+	 * @param in
+	 *            the connection input stream
+	 * @return the line without its terminator or <code>null</code> if the
+	 *         stream ended before the first byte
+	 * @throws IOException
+	 *             if reading failed or the line is too long
+	 */
+	static String readLine(InputStream in) throws IOException {
+		StringBuilder builder = new StringBuilder(64);
+		int b;
+		while ((b = in.read()) != -1) {
+			if (b == '\n') {
+				int length = builder.length();
+				if (length > 0 && builder.charAt(length - 1) == '\r') {
+					builder.setLength(length - 1);
+				}
+				return builder.toString();
+			}
+			if (builder.length() >= MAX_LINE_LENGTH) {
+				throw new IOException("HTTP header line too long.");
+			}
+			builder.append((char) b);
+		}
+		return builder.length() == 0 ? null : builder.toString();
+	}
+
+}
@@ -0,0 +1,168 @@
+package org.jpaste.utils.web;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ *
+ * A single keep-alive HTTP/1.1 connection to a host
+ *
+ * <p>
+ * Connections are opened and handed out by a {@link ConnectionPool}.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+class HttpConnection extends Abortable {
+	private final String route;
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+	private long lastUsed;
+	private boolean reused;
+
+	private HttpConnection(String route, Socket socket) throws IOException {
+		this.route = route;
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+		this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Opens a new connection to the host of an URL
+	 *
+	 * @param url
+	 *            the URL to connect to
+	 * @param connectTimeout
+	 *            connect timeout in milliseconds
+	 * @param readTimeout
+	 *            read timeout in milliseconds, also bounds the TLS handshake
+	 * @return a connected connection
+	 * @throws IOException
+	 *             if connecting failed
+	 */
+	static HttpConnection open(URL url, int connectTimeout, int readTimeout)
+			throws IOException {
+		String host = url.getHost();
+		int port = port(url);
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(readTimeout);
+			socket.connect(new InetSocketAddress(host, port), connectTimeout);
+			if (url.getProtocol().equalsIgnoreCase("https")) {
+				SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory
+						.getDefault()).createSocket(socket, host, port, true);
+				SSLParameters parameters = ssl.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS");
+				ssl.setSSLParameters(parameters);
+				ssl.startHandshake();
+				socket = ssl;
+			}
+			return new HttpConnection(route(url), socket);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the pool route of an URL
+	 *
+	 * @param url
+	 *            the URL
+	 * @return <code>protocol://host:port</code>
+	 */
+	static String route(URL url) {
+		return url.getProtocol().toLowerCase() + "://"
+				+ url.getHost().toLowerCase() + ":" + port(url);
+	}
+
+	private static int port(URL url) {
+		return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+	}
+
+	String getRoute() {
+		return route;
+	}
+
+	Socket getSocket() {
+		return socket;
+	}
+
+	InputStream getInputStream() {
+		return in;
+	}
+
+	OutputStream getOutputStream() {
+		return out;
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	void setLastUsed(long lastUsed) {
+		this.lastUsed = lastUsed;
+	}
+
+	/**
+	 * Determines if this connection has served a previous request
+	 *
+	 * @return <code>true</code> if this connection came from the idle pool
+	 */
+	boolean isReused() {
+		return reused;
+	}
+
+	void setReused(boolean reused) {
+		this.reused = reused;
+	}
+
+	/**
+	 * Determines if this connection may still be handed out again
+	 *
+	 * @return <code>false</code> if the socket has been closed or holds
+	 *         unexpected unread data
+	 */
+	boolean isUsable() {
+		if (socket.isClosed() || socket.isInputShutdown()
+				|| socket.isOutputShutdown()) {
+			return false;
+		}
+		try {
+			return in.available() == 0;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	void abort() {
+		close();
+	}
+
+	/**
+	 * Closes the underlying socket, ignoring failures
+	 */
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// already gone
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+
+/**
+ * 
+ * Thrown when a server answers with an error status code
+ * 
+ * @author Brian B
+ * 
+ */
+public class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 2411539410851284367L;
+	private final int statusCode;
+
+	public HttpStatusException(int statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Gets the HTTP status code
+	 * 
+	 * @return status code
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+}
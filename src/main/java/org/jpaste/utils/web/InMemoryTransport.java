@@ -0,0 +1,190 @@
+package org.jpaste.utils.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * A transport which answers requests in-process without touching the network
+ *
+ * <p>
+ * Requests are answered by the {@link Handler} registered for the path of
+ * their URL, whatever the host. Paths without handler are answered with
+ * <code>404 Not Found</code>. Useful for tests and for benchmarking the
+ * client without network noise:
+ * </p>
+ *
+ * <pre>
+ * InMemoryTransport transport = new InMemoryTransport();
+ * transport.setHandler(&quot;/raw.php&quot;, exchange -&gt; InMemoryTransport.response(
+ * 		exchange, 200, &quot;contents&quot;));
+ * Web.setClient(new WebClient(transport));
+ * </pre>
+ *
+ * @author Brian B
+ *
+ */
+public class InMemoryTransport implements Transport {
+	private final ConcurrentHashMap<String, Handler> handlers = new ConcurrentHashMap<String, Handler>();
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Sets the handler of a path
+	 *
+	 * @param path
+	 *            the path, such as <code>/api/api_post.php</code>
+	 * @param handler
+	 *            the handler
+	 */
+	public void setHandler(String path, Handler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException("Handler can't be null.");
+		}
+		handlers.put(path, handler);
+	}
+
+	/**
+	 * Removes the handler of a path
+	 *
+	 * @param path
+	 *            the path
+	 */
+	public void removeHandler(String path) {
+		handlers.remove(path);
+	}
+
+	/**
+	 * Gets the amount of requests answered
+	 *
+	 * @return requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	@Override
+	public WebResponse send(Exchange exchange) throws IOException {
+		Deadline deadline = exchange.getDeadline();
+		if (deadline != null && deadline.isExpired()) {
+			throw new SocketTimeoutException("Deadline exceeded.");
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Interrupted.");
+		}
+		requests.incrementAndGet();
+		Handler handler = handlers.get(exchange.getURL().getPath());
+		if (handler == null) {
+			return response(exchange, 404, "Not Found");
+		}
+		return handler.handle(exchange);
+	}
+
+	/**
+	 * Does nothing, there is nothing to free
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Creates a plain text response
+	 *
+	 * @param exchange
+	 *            the request
+	 * @param statusCode
+	 *            the HTTP status code
+	 * @param body
+	 *            the body
+	 * @return the response
+	 */
+	public static WebResponse response(Exchange exchange, int statusCode,
+			String body) {
+		return response(exchange, statusCode, "text/plain; charset=UTF-8",
+				body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Creates a response
+	 *
+	 * @param exchange
+	 *            the request
+	 * @param statusCode
+	 *            the HTTP status code
+	 * @param contentType
+	 *            value of the <code>Content-Type</code> header
+	 * @param body
+	 *            the body
+	 * @return the response
+	 */
+	public static WebResponse response(Exchange exchange, int statusCode,
+			String contentType, byte[] body) {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		headers.put("content-type", Collections.singletonList(contentType));
+		headers.put("content-length",
+				Collections.singletonList(String.valueOf(body.length)));
+		return new WebResponse(exchange.getURL(), statusCode, "", headers,
+				new ByteArrayInputStream(body));
+	}
+
+	/**
+	 * Decodes the query and post parameters of a request
+	 *
+	 * @param exchange
+	 *            the request
+	 * @return parameter values keyed by name, in request order
+	 */
+	public static Map<String, String> getParameters(Exchange exchange) {
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		decode(exchange.getURL().getQuery(), parameters);
+		if (exchange.getPost() != null) {
+			decode(exchange.getPost().getPost(), parameters);
+		}
+		return parameters;
+	}
+
+	private static void decode(String form, Map<String, String> parameters) {
+		if (form == null || form.isEmpty()) {
+			return;
+		}
+		try {
+			for (String pair : form.split("&")) {
+				int equals = pair.indexOf('=');
+				String key = equals < 0 ? pair : pair.substring(0, equals);
+				String value = equals < 0 ? "" : pair.substring(equals + 1);
+				parameters.put(URLDecoder.decode(key, "UTF-8"),
+						URLDecoder.decode(value, "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Answers the requests of a path
+	 */
+	public interface Handler {
+
+		/**
+		 * Answers a request
+		 *
+		 * @param exchange
+		 *            the request
+		 * @return the response
+		 * @throws IOException
+		 *             to fail the request
+		 */
+		WebResponse handle(Exchange exchange) throws IOException;
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+
+/**
+ *
+ * Sits between a {@link WebClient} and its {@link Transport}
+ *
+ * <p>
+ * Interceptors see every exchange sent by the client, redirects and retries
+ * included, in the order they were added. An interceptor may pass the
+ * exchange on with {@link Chain#proceed(Exchange)}, possibly with headers
+ * added by {@link Exchange#withHeader(String, String)}, or answer it itself,
+ * such as from a cache, without touching the network.
+ * </p>
+ *
+ * <p>
+ * The response returned is handled like one from the transport: redirects
+ * are followed, error statuses fail the request and the body is decompressed
+ * according to its <code>Content-Encoding</code>. Implementations must be
+ * thread safe.
+ * </p>
+ *
+ * @author Brian B
+ * @see WebClient#addInterceptor(Interceptor)
+ *
+ */
+public interface Interceptor {
+
+	/**
+	 * Handles an exchange
+	 *
+	 * @param chain
+	 *            the exchange and the rest of the chain
+	 * @return the response, which is closed by the client
+	 * @throws IOException
+	 *             if the exchange failed
+	 */
+	WebResponse intercept(Chain chain) throws IOException;
+
+	/**
+	 *
+	 * The interceptors which have not seen an exchange yet, followed by the
+	 * transport
+	 *
+	 */
+	interface Chain {
+
+		/**
+		 * Gets the exchange to handle
+		 *
+		 * @return the exchange
+		 */
+		Exchange getExchange();
+
+		/**
+		 * Gets the trace of the request the exchange belongs to
+		 *
+		 * @return the trace
+		 */
+		RequestTrace getTrace();
+
+		/**
+		 * Passes an exchange on to the next interceptor, or the transport if
+		 * this is the last one
+		 *
+		 * @param exchange
+		 *            the exchange, usually the one from
+		 *            {@link #getExchange()} or a copy of it
+		 * @return the response
+		 * @throws IOException
+		 *             if the exchange failed
+		 */
+		WebResponse proceed(Exchange exchange) throws IOException;
+
+	}
+
+}
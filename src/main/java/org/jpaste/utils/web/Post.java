@@ -1,39 +1,81 @@
 package org.jpaste.utils.web;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 
+ *
  * A representation of a HTTP post
- * 
+ *
  * <p>
  * Encodes parameters with the UTF-8 Charset.
  * </p>
- * 
+ *
+ * <p>
+ * Values can be plain strings, which are encoded right away, or sources which
+ * are encoded while the post is written to the connection: a
+ * {@link CharSequence}, a {@link Reader} or a UTF-8 text file. Large values
+ * such as paste contents are never copied into a single string that way.
+ * </p>
+ *
  * <p>
  * <a href="http://en.wikipedia.org/wiki/POST_(HTTP)">Reference manual</a>
  * </p>
- * 
+ *
  * @author Brian B
- * 
+ *
  */
 public class Post {
 	private static final String ENCODING = "UTF-8";
-	private HashMap<String, String> post;
+	private static final int MAP_WINDOW = 4 * 1024 * 1024;
+	private LinkedHashMap<String, Object> post;
+	private final AtomicLong written;
 
 	/**
 	 * Creates a new <code>Post</code> instance.
 	 */
 	public Post() {
-		post = new HashMap<String, String>();
+		post = new LinkedHashMap<String, Object>();
+		written = null;
+	}
+
+	private Post(Post source, AtomicLong written) {
+		this.post = source.post;
+		this.written = written;
+	}
+
+	/**
+	 * Gets a view of this post which adds the bytes it writes to a counter,
+	 * for posts sent without a known length
+	 *
+	 * @param written
+	 *            the counter
+	 * @return a post sharing the parameters of this one
+	 */
+	Post counting(AtomicLong written) {
+		return new Post(this, written);
 	}
 
 	/**
 	 * Adds a key value pair to the post parameters
-	 * 
+	 *
 	 * @param key
 	 *            the key
 	 * @param value
@@ -48,19 +90,240 @@ public class Post {
 		}
 	}
 
+	/**
+	 * Adds a key value pair to the post parameters, the value is encoded when
+	 * the post is written
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value, which must not change until the post has been
+	 *            sent
+	 */
+	public void put(String key, CharSequence value) {
+		// wrapped so it isn't mistaken for an already encoded string
+		putSource(key, value == null ? null : CharBuffer.wrap(value));
+	}
+
+	/**
+	 * Adds a key value pair to the post parameters, the value is read and
+	 * encoded when the post is written
+	 *
+	 * <p>
+	 * A reader can only be read once, a post holding one has no known length
+	 * and is sent with chunked transfer encoding. The reader is closed once it
+	 * has been read.
+	 * </p>
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 */
+	public void put(String key, Reader value) {
+		putSource(key, value);
+	}
+
+	/**
+	 * Adds a key value pair to the post parameters, the value is the contents
+	 * of a UTF-8 text file which is read through a memory mapping when the
+	 * post is written
+	 *
+	 * @param key
+	 *            the key
+	 * @param file
+	 *            the file holding the value
+	 */
+	public void put(String key, Path file) {
+		putSource(key, file);
+	}
+
+	private void putSource(String key, Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value can't be null.");
+		}
+		try {
+			this.post.put(URLEncoder.encode(key, ENCODING), value);
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Gets a value added as a plain string
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value, <code>null</code> if the key is absent or its value
+	 *         is a source encoded while the post is written
+	 */
+	public String get(String key) {
+		try {
+			Object value = post.get(URLEncoder.encode(key, ENCODING));
+			return value instanceof String ? URLDecoder.decode((String) value,
+					ENCODING) : null;
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Determines if this post can be written more than once
+	 *
+	 * @return <code>false</code> if a value is a {@link Reader}
+	 */
+	public boolean isRepeatable() {
+		for (Object value : post.values()) {
+			if (value instanceof Reader) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the length of the encoded post
+	 *
+	 * <p>
+	 * Only the length of plain string values is known up front. Counting a
+	 * source value would mean encoding it, and reading a file value, once
+	 * more than it is sent, so a post holding one is sent with chunked
+	 * transfer encoding instead.
+	 * </p>
+	 *
+	 * @return length in bytes, <code>-1</code> if the post holds a
+	 *         {@link CharSequence}, {@link Reader} or file value
+	 */
+	public long getContentLength() {
+		for (Object value : post.values()) {
+			if (!(value instanceof String)) {
+				return -1;
+			}
+		}
+		// encoded strings are ASCII, a byte per character
+		long length = Math.max(0, post.size() - 1);
+		for (Entry<String, Object> entry : post.entrySet()) {
+			length += entry.getKey().length() + 1
+					+ ((String) entry.getValue()).length();
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the encoded post to a stream in chunks
+	 *
+	 * @param out
+	 *            the stream to write to, which is flushed but left open
+	 * @throws IOException
+	 *             if reading a value or writing failed
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		FormEncoder encoder = new FormEncoder(out);
+		encode(encoder);
+		encoder.flush();
+		if (written != null) {
+			written.addAndGet(encoder.getCount());
+		}
+	}
+
+	private void encode(FormEncoder encoder) throws IOException {
+		boolean first = true;
+		for (Entry<String, Object> entry : post.entrySet()) {
+			if (!first) {
+				encoder.write('&');
+			}
+			first = false;
+			encoder.write(entry.getKey());
+			encoder.write('=');
+			Object value = entry.getValue();
+			if (value instanceof String) {
+				encoder.write((String) value);
+			} else if (value instanceof CharSequence) {
+				CharSequence chars = (CharSequence) value;
+				encoder.encode(chars, 0, chars.length());
+			} else if (value instanceof Reader) {
+				encode(encoder, (Reader) value);
+			} else {
+				encode(encoder, (Path) value);
+			}
+			encoder.endValue();
+		}
+	}
+
+	private static void encode(FormEncoder encoder, Reader reader)
+			throws IOException {
+		try {
+			char[] chars = new char[8192];
+			int read;
+			while ((read = reader.read(chars)) != -1) {
+				encoder.encode(chars, 0, read);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void encode(FormEncoder encoder, Path file)
+			throws IOException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.allocate(8192);
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return;
+			}
+			long position = 0;
+			boolean last = false;
+			while (!last) {
+				long length = Math.min(MAP_WINDOW, size - position);
+				MappedByteBuffer window = channel.map(
+						FileChannel.MapMode.READ_ONLY, position, length);
+				last = position + length == size;
+				decode(decoder, window, chars, encoder, last);
+				// a character split by the window end is mapped again
+				position += window.position();
+			}
+			while (decoder.flush(chars).isOverflow()) {
+				drain(chars, encoder);
+			}
+			drain(chars, encoder);
+		}
+	}
+
+	private static void decode(CharsetDecoder decoder, ByteBuffer bytes,
+			CharBuffer chars, FormEncoder encoder, boolean endOfInput)
+			throws IOException {
+		while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+			drain(chars, encoder);
+		}
+		drain(chars, encoder);
+	}
+
+	private static void drain(CharBuffer chars, FormEncoder encoder)
+			throws IOException {
+		chars.flip();
+		encoder.encode(chars.array(), chars.arrayOffset() + chars.position(),
+				chars.remaining());
+		chars.clear();
+	}
+
 	/**
 	 * The HTTP post string representation
-	 * 
+	 *
 	 * @return HTTP Post contents
 	 */
 	public String getPost() {
-		StringBuilder builder = new StringBuilder();
-		for (Entry<String, String> entry : post.entrySet()) {
-			builder.append(entry.getKey()).append('=').append(entry.getValue())
-					.append('&');
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			writeTo(out);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to encode post: " + e);
 		}
-		builder.deleteCharAt(builder.length() - 1);
-		return new String(builder);
+		return new String(out.toByteArray(), StandardCharsets.US_ASCII);
 	}
 
 }
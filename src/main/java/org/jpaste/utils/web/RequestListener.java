@@ -0,0 +1,26 @@
+package org.jpaste.utils.web;
+
+/**
+ *
+ * Is told about every request of a {@link WebClient} once it is over
+ *
+ * @author Brian B
+ * @see WebClient#addRequestListener(RequestListener)
+ *
+ */
+public interface RequestListener {
+
+	/**
+	 * Called once the response body has been read and closed, or the request
+	 * failed, on the thread which did so
+	 *
+	 * <p>
+	 * Listeners should return quickly, exceptions thrown are ignored.
+	 * </p>
+	 *
+	 * @param trace
+	 *            the phase timings of the request
+	 */
+	void onRequest(RequestTrace trace);
+
+}
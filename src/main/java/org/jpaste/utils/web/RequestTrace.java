@@ -0,0 +1,384 @@
+package org.jpaste.utils.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * Where a single request of a {@link WebClient} spent its time
+ *
+ * <p>
+ * A request goes through these phases, which add up to its total time:
+ * </p>
+ * <ul>
+ * <li><b>first byte</b>: until the response headers arrived, including the
+ * time to get a connection, redirects, retries and their backoff</li>
+ * <li><b>body read</b>: blocked reading the response body</li>
+ * <li><b>parse</b>: between reads of the body until it was closed, the time
+ * the caller spent handling what it read</li>
+ * </ul>
+ * <p>
+ * The time to get a connection, leased from a pool or newly connected, is
+ * also reported on its own. Transports other than the ones of this package
+ * may leave it at <code>0</code>.
+ * </p>
+ *
+ * @author Brian B
+ * @see RequestListener
+ *
+ */
+public final class RequestTrace {
+	private final String method;
+	private final String link;
+	private final String apiOption;
+	private final List<RequestListener> listeners;
+	private final long start = System.nanoTime();
+	private final AtomicLong connectNanos = new AtomicLong();
+	private final AtomicLong bodyReadNanos = new AtomicLong();
+	private final AtomicLong responseBytes = new AtomicLong();
+	private volatile int attempts;
+	private volatile int exchanges;
+	private volatile int statusCode = -1;
+	private volatile long firstByteNanos = -1;
+	private volatile long totalNanos = -1;
+	private volatile IOException error;
+	private volatile IOException bodyError;
+	private boolean handled;
+	private boolean closed;
+	private boolean completed;
+
+	RequestTrace(String method, String link, String apiOption,
+			List<RequestListener> listeners) {
+		this.method = method;
+		this.link = link;
+		this.apiOption = apiOption;
+		this.listeners = listeners;
+	}
+
+	/**
+	 * Gets the request method
+	 *
+	 * @return <code>GET</code> or <code>POST</code>
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Gets the requested link
+	 *
+	 * @return the link/URL, before redirects
+	 */
+	public String getLink() {
+		return link;
+	}
+
+	/**
+	 * Gets the <code>api_option</code> of the post
+	 *
+	 * @return the option, <code>null</code> if the request has none
+	 */
+	public String getApiOption() {
+		return apiOption;
+	}
+
+	/**
+	 * Gets the status code of the final response
+	 *
+	 * @return status code, <code>-1</code> if there was no response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Gets the error the request failed with
+	 *
+	 * @return the error, <code>null</code> if the request succeeded
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Gets the amount of times the request was sent, retries included
+	 *
+	 * @return attempts
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Gets the amount of exchanges which reached the transport, redirects and
+	 * retries included
+	 *
+	 * @return exchanges, <code>0</code> if an {@link Interceptor} answered
+	 */
+	public int getExchanges() {
+		return exchanges;
+	}
+
+	/**
+	 * Determines if an {@link Interceptor} answered the request without
+	 * sending it
+	 *
+	 * @return <code>true</code> if the response never came from the transport
+	 */
+	public boolean isShortCircuited() {
+		return statusCode != -1 && exchanges == 0;
+	}
+
+	/**
+	 * Gets the time spent getting connections
+	 *
+	 * @return time in nanoseconds, <code>0</code> for transports which don't
+	 *         report it, such as the <code>HttpClientTransport</code>
+	 */
+	public long getConnectNanos() {
+		return connectNanos.get();
+	}
+
+	/**
+	 * Gets the time until the headers of the final response arrived
+	 *
+	 * @return time in nanoseconds, <code>-1</code> if there was no response
+	 */
+	public long getFirstByteNanos() {
+		return firstByteNanos;
+	}
+
+	/**
+	 * Gets the time spent blocked reading the body of the final response
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getBodyReadNanos() {
+		return bodyReadNanos.get();
+	}
+
+	/**
+	 * Gets the time the caller spent between reads of the body
+	 *
+	 * @return time in nanoseconds, <code>0</code> until the request is over
+	 *         or if it failed
+	 */
+	public long getParseNanos() {
+		long total = totalNanos;
+		if (total < 0 || firstByteNanos < 0 || error != null) {
+			return 0;
+		}
+		return Math.max(0, total - firstByteNanos - bodyReadNanos.get());
+	}
+
+	/**
+	 * Gets the time the whole request took
+	 *
+	 * @return time in nanoseconds, <code>-1</code> until the request is over
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the amount of response body bytes read, after decompression
+	 *
+	 * @return response bytes
+	 */
+	public long getResponseBytes() {
+		return responseBytes.get();
+	}
+
+	void attempt() {
+		attempts++;
+	}
+
+	void exchanged() {
+		exchanges++;
+	}
+
+	void addConnectNanos(long nanos) {
+		connectNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Marks the arrival of a final response, the body of an earlier attempt
+	 * counts towards the first byte
+	 */
+	synchronized void responded(int statusCode) {
+		this.statusCode = statusCode;
+		this.firstByteNanos = System.nanoTime() - start;
+		this.bodyReadNanos.set(0);
+		this.responseBytes.set(0);
+		this.bodyError = null;
+		this.closed = false;
+	}
+
+	/**
+	 * Marks the response as handed to the caller, the request is over once
+	 * its body is closed
+	 */
+	synchronized void handled() {
+		handled = true;
+		if (closed) {
+			complete(bodyError);
+		}
+	}
+
+	private synchronized void closed() {
+		closed = true;
+		if (handled) {
+			complete(bodyError);
+		}
+	}
+
+	/**
+	 * Ends the request and tells the listeners, only the first call counts
+	 */
+	void complete(IOException error) {
+		synchronized (this) {
+			if (completed) {
+				return;
+			}
+			completed = true;
+			this.error = error;
+			this.totalNanos = System.nanoTime() - start;
+		}
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onRequest(this);
+			} catch (RuntimeException e) {
+				// a listener must not fail the request
+			}
+		}
+	}
+
+	/**
+	 * Wraps the body of a final response to time its reads and end the
+	 * request when it is closed
+	 */
+	WebResponse wrap(WebResponse response) {
+		InputStream body = response.getInputStream();
+		if (body == null) {
+			closed();
+			return response;
+		}
+		return new WebResponse(response.getURL(), response.getStatusCode(),
+				response.getStatusMessage(), response.getHeaders(),
+				new Body(body));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(128);
+		builder.append(method).append(' ').append(link);
+		if (apiOption != null) {
+			builder.append(" [").append(apiOption).append(']');
+		}
+		builder.append(' ');
+		if (error != null) {
+			builder.append(error.getClass().getSimpleName());
+		} else {
+			builder.append(statusCode);
+		}
+		builder.append(" in ").append(millis(totalNanos))
+				.append(" ms (connect ").append(millis(getConnectNanos()))
+				.append(", first byte ").append(millis(firstByteNanos))
+				.append(", body read ").append(millis(getBodyReadNanos()))
+				.append(", parse ").append(millis(getParseNanos()))
+				.append("), ").append(attempts).append(" attempts, ")
+				.append(exchanges).append(" exchanges, ")
+				.append(getResponseBytes()).append(" B");
+		return builder.toString();
+	}
+
+	private static String millis(long nanos) {
+		if (nanos < 0) {
+			return "-";
+		}
+		return String.format("%.3f", nanos
+				/ (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	/**
+	 * A response body which times its reads
+	 */
+	private class Body extends FilterInputStream {
+		private boolean closedBody;
+
+		Body(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			try {
+				int b = in.read();
+				if (b != -1) {
+					responseBytes.incrementAndGet();
+				}
+				return b;
+			} catch (IOException e) {
+				bodyError = e;
+				throw e;
+			} finally {
+				bodyReadNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			try {
+				int read = in.read(b, off, len);
+				if (read > 0) {
+					responseBytes.addAndGet(read);
+				}
+				return read;
+			} catch (IOException e) {
+				bodyError = e;
+				throw e;
+			} finally {
+				bodyReadNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long start = System.nanoTime();
+			try {
+				long skipped = in.skip(n);
+				responseBytes.addAndGet(skipped);
+				return skipped;
+			} catch (IOException e) {
+				bodyError = e;
+				throw e;
+			} finally {
+				bodyReadNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				in.close();
+			} finally {
+				if (!closedBody) {
+					closedBody = true;
+					closed();
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 
+ * A response body which hands its connection back to the pool
+ * 
+ * <p>
+ * The connection is returned to the pool once the body has been read till the
+ * end. Closing the stream before that closes the connection, as the remaining
+ * bytes would otherwise be read as the next response.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+class ResponseInputStream extends InputStream {
+	private final InputStream in;
+	private final HttpConnection connection;
+	private final ConnectionPool pool;
+	private final boolean keepAlive;
+	private boolean done;
+
+	/**
+	 * Creates a new <code>ResponseInputStream</code> instance.
+	 * 
+	 * @param in
+	 *            the framed body stream
+	 * @param connection
+	 *            the connection the body is read from
+	 * @param pool
+	 *            the pool the connection belongs to
+	 * @param keepAlive
+	 *            if the connection may be reused after the body
+	 */
+	ResponseInputStream(InputStream in, HttpConnection connection,
+			ConnectionPool pool, boolean keepAlive) {
+		this.in = in;
+		this.connection = connection;
+		this.pool = pool;
+		this.keepAlive = keepAlive;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (done) {
+			return -1;
+		}
+		try {
+			int b = in.read();
+			if (b == -1) {
+				finish(keepAlive);
+			}
+			return b;
+		} catch (IOException e) {
+			finish(false);
+			throw connection.translate(e);
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (done) {
+			return -1;
+		}
+		try {
+			int read = in.read(b, off, len);
+			if (read == -1) {
+				finish(keepAlive);
+			}
+			return read;
+		} catch (IOException e) {
+			finish(false);
+			throw connection.translate(e);
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		return done ? 0 : in.available();
+	}
+
+	@Override
+	public void close() {
+		finish(false);
+	}
+
+	/**
+	 * Marks the body as consumed and releases the connection
+	 * 
+	 * @param reuse
+	 *            if the connection may go back to the idle pool
+	 */
+	void finish(boolean reuse) {
+		if (done) {
+			return;
+		}
+		done = true;
+		if (reuse) {
+			pool.release(connection);
+		} else {
+			pool.discard(connection);
+		}
+	}
+
+}
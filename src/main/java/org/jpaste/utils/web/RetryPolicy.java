@@ -0,0 +1,102 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLHandshakeException;
+
+/**
+ * 
+ * Decides if and when a failed idempotent request is retried
+ * 
+ * <p>
+ * Transient failures are retried with exponential backoff: the n-th retry
+ * waits between half and all of <code>baseDelay * 2^(n-1)</code>, capped at
+ * <code>maxDelay</code>. The random part keeps clients which failed together
+ * from retrying together.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class RetryPolicy {
+	/**
+	 * Never retries
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+	private final int maxAttempts;
+	private final long baseDelay;
+	private final long maxDelay;
+
+	/**
+	 * Creates a new <code>RetryPolicy</code> instance.
+	 * 
+	 * @param maxAttempts
+	 *            maximum amount of attempts, including the first one
+	 * @param baseDelay
+	 *            delay before the first retry in milliseconds
+	 * @param maxDelay
+	 *            maximum delay between attempts in milliseconds
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException(
+					"Max attempts must be positive: " + maxAttempts);
+		}
+		if (baseDelay < 0 || maxDelay < baseDelay) {
+			throw new IllegalArgumentException("Invalid delays: " + baseDelay
+					+ ", " + maxDelay);
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Gets the maximum amount of attempts
+	 * 
+	 * @return attempts including the first one
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Gets the delay before a retry
+	 * 
+	 * @param retry
+	 *            the retry, starting at 1
+	 * @return delay in milliseconds
+	 */
+	public long getDelay(int retry) {
+		long delay = baseDelay << Math.min(retry - 1, 30);
+		if (delay > maxDelay || delay < 0) {
+			delay = maxDelay;
+		}
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+	}
+
+	/**
+	 * Determines if a failure might go away when tried again
+	 * 
+	 * @param e
+	 *            the failure
+	 * @return <code>true</code> for dropped connections, timeouts, 5xx and 429
+	 *         responses, <code>false</code> for interrupts
+	 */
+	public static boolean isTransient(IOException e) {
+		if (e instanceof HttpStatusException) {
+			int code = ((HttpStatusException) e).getStatusCode();
+			return code >= 500 || code == 429 || code == 408;
+		}
+		if (e instanceof InterruptedIOException) {
+			return e instanceof SocketTimeoutException;
+		}
+		return !(e instanceof MalformedURLException || e instanceof SSLHandshakeException);
+	}
+
+}
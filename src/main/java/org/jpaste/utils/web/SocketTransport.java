@@ -0,0 +1,247 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ *
+ * A HTTP/1.1 transport over plain and TLS sockets which keeps connections
+ * alive between requests
+ *
+ * <p>
+ * Connections are leased from a {@link ConnectionPool}, requests to the same
+ * host reuse idle connections instead of paying a new TCP and TLS handshake.
+ * This is the default transport of a {@link WebClient}.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class SocketTransport implements Transport {
+	private static final int MAX_ATTEMPTS = 3;
+	private final ConnectionPool pool;
+
+	/**
+	 * Creates a new <code>SocketTransport</code> instance with a default
+	 * connection pool.
+	 */
+	public SocketTransport() {
+		this(new ConnectionPool());
+	}
+
+	/**
+	 * Creates a new <code>SocketTransport</code> instance.
+	 *
+	 * @param pool
+	 *            the connection pool to lease connections from
+	 */
+	public SocketTransport(ConnectionPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("Connection pool can't be null.");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets the connection pool of this transport
+	 *
+	 * @return connection pool
+	 */
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
+
+	/**
+	 * Sends a single request over a pooled connection
+	 *
+	 * <p>
+	 * A pooled connection may have been closed by the server while it was
+	 * idle, in which case the request is sent again over another connection
+	 * as long as no response byte has been received.
+	 * </p>
+	 */
+	@Override
+	public WebResponse send(Exchange exchange) throws IOException {
+		URL url = exchange.getURL();
+		Post post = exchange.getPost();
+		for (int attempt = 1;; attempt++) {
+			long start = System.nanoTime();
+			HttpConnection connection = pool.acquire(url,
+					exchange.getDeadline(), exchange.getConnectTimeout(),
+					exchange.getReadTimeout());
+			exchange.connected(System.nanoTime() - start);
+			connection.watch(Thread.currentThread(), exchange.getDeadline());
+			boolean started = false;
+			try {
+				connection.getSocket().setSoTimeout(exchange.getReadTimeout());
+				writeRequest(connection.getOutputStream(), exchange);
+				String statusLine = Http.readLine(connection.getInputStream());
+				if (statusLine == null) {
+					throw new IOException("Connection closed by server.");
+				}
+				started = true;
+				return readResponse(connection, exchange.getMethod(), url,
+						statusLine);
+			} catch (IOException e) {
+				pool.discard(connection);
+				if (!started && !connection.isAborted()
+						&& connection.isReused() && attempt < MAX_ATTEMPTS
+						&& (post == null || post.isRepeatable())) {
+					continue;
+				}
+				throw connection.translate(e);
+			} catch (RuntimeException e) {
+				pool.discard(connection);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Closes all pooled connections of this transport
+	 */
+	@Override
+	public void close() {
+		pool.close();
+	}
+
+	private static void writeRequest(OutputStream out, Exchange exchange)
+			throws IOException {
+		URL url = exchange.getURL();
+		Post post = exchange.getPost();
+		long length = exchange.getContentLength();
+		String file = url.getFile();
+		StringBuilder head = new StringBuilder(256);
+		head.append(exchange.getMethod()).append(' ')
+				.append(file.isEmpty() ? "/" : file).append(" HTTP/1.1\r\n");
+		head.append("Host: ").append(url.getHost());
+		if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+			head.append(':').append(url.getPort());
+		}
+		head.append("\r\n");
+		for (Entry<String, String> header : exchange.getHeaders().entrySet()) {
+			head.append(header.getKey()).append(": ")
+					.append(header.getValue()).append("\r\n");
+		}
+		if (post != null) {
+			if (length < 0) {
+				head.append("Transfer-Encoding: chunked\r\n");
+			} else {
+				head.append("Content-Length: ").append(length).append("\r\n");
+			}
+		}
+		head.append("\r\n");
+		out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+		if (post == null) {
+			out.flush();
+		} else if (length < 0) {
+			ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+			post.writeTo(chunked);
+			chunked.finish();
+		} else {
+			post.writeTo(out);
+		}
+	}
+
+	private WebResponse readResponse(HttpConnection connection,
+			String method, URL url, String statusLine) throws IOException {
+		InputStream in = connection.getInputStream();
+		String[] status;
+		int code;
+		Map<String, List<String>> headers;
+		do {
+			if (statusLine == null) {
+				throw new IOException("Connection closed by server.");
+			}
+			status = statusLine.split(" ", 3);
+			if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+				throw new IOException("Malformed status line: " + statusLine);
+			}
+			try {
+				code = Integer.parseInt(status[1]);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed status line: " + statusLine);
+			}
+			headers = readHeaders(in);
+			// interim 1xx responses are followed by the real one
+			if (code < 200) {
+				statusLine = Http.readLine(in);
+			}
+		} while (code < 200);
+
+		String connectionHeader = first(headers, "connection");
+		boolean keepAlive = status[0].equals("HTTP/1.1") ? !"close"
+				.equalsIgnoreCase(connectionHeader) : "keep-alive"
+				.equalsIgnoreCase(connectionHeader);
+
+		InputStream body;
+		long length = -1;
+		String transferEncoding = first(headers, "transfer-encoding");
+		String contentLength = first(headers, "content-length");
+		if (method.equals("HEAD") || code == 204 || code == 304) {
+			length = 0;
+			body = new FixedLengthInputStream(in, length);
+		} else if (transferEncoding != null
+				&& transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+			body = new ChunkedInputStream(in);
+		} else if (contentLength != null) {
+			try {
+				length = Long.parseLong(contentLength);
+				body = new FixedLengthInputStream(in, length);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed content length: "
+						+ contentLength);
+			}
+		} else {
+			// body ends when the server closes the connection
+			body = in;
+			keepAlive = false;
+		}
+		ResponseInputStream stream = new ResponseInputStream(body, connection,
+				pool, keepAlive);
+		if (length == 0) {
+			stream.finish(keepAlive);
+		}
+		return new WebResponse(url, code, status.length > 2 ? status[2] : "",
+				headers, stream);
+	}
+
+	private static Map<String, List<String>> readHeaders(InputStream in)
+			throws IOException {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		String line;
+		while ((line = Http.readLine(in)) != null && !line.isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			String name = line.substring(0, colon).trim()
+					.toLowerCase(Locale.ROOT);
+			List<String> values = headers.get(name);
+			if (values == null) {
+				values = new ArrayList<String>(1);
+				headers.put(name, values);
+			}
+			values.add(line.substring(colon + 1).trim());
+		}
+		if (line == null) {
+			throw new IOException("Connection closed inside response headers.");
+		}
+		return headers;
+	}
+
+	private static String first(Map<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null ? null : values.get(0);
+	}
+
+}
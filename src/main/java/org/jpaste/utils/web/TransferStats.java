@@ -0,0 +1,107 @@
+package org.jpaste.utils.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Collects the bytes and network time of a {@link WebRequest}
+ * 
+ * <p>
+ * Network time is the time spent sending the request and waiting for the
+ * response headers, over all attempts, plus the time spent blocked reading
+ * the response body. The body may be read on another thread than the one
+ * which sent the request.
+ * </p>
+ * 
+ * @author Brian B
+ * @see WebRequest#setTransferStats(TransferStats)
+ * 
+ */
+public final class TransferStats {
+	private final AtomicLong requestBytes = new AtomicLong();
+	private final AtomicLong responseBytes = new AtomicLong();
+	private final AtomicLong networkNanos = new AtomicLong();
+
+	/**
+	 * Gets the amount of post bytes sent over all attempts, posts streamed
+	 * with an unknown length are left out
+	 * 
+	 * @return request bytes
+	 */
+	public long getRequestBytes() {
+		return requestBytes.get();
+	}
+
+	/**
+	 * Gets the amount of response body bytes read, after decompression
+	 * 
+	 * @return response bytes
+	 */
+	public long getResponseBytes() {
+		return responseBytes.get();
+	}
+
+	/**
+	 * Gets the time spent on the network
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public long getNetworkNanos() {
+		return networkNanos.get();
+	}
+
+	AtomicLong requestBytes() {
+		return requestBytes;
+	}
+
+	void addNetworkNanos(long nanos) {
+		networkNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Wraps a response body to count its bytes and the time spent reading it
+	 */
+	InputStream wrap(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				long start = System.nanoTime();
+				int b = in.read();
+				networkNanos.addAndGet(System.nanoTime() - start);
+				if (b != -1) {
+					responseBytes.incrementAndGet();
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				long start = System.nanoTime();
+				int read = in.read(b, off, len);
+				networkNanos.addAndGet(System.nanoTime() - start);
+				if (read > 0) {
+					responseBytes.addAndGet(read);
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				long start = System.nanoTime();
+				long skipped = in.skip(n);
+				networkNanos.addAndGet(System.nanoTime() - start);
+				responseBytes.addAndGet(skipped);
+				return skipped;
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+
+/**
+ * 
+ * Sends single HTTP exchanges for a {@link WebClient}
+ * 
+ * <p>
+ * The client takes care of everything around an exchange: request headers,
+ * redirects, error statuses, retries, circuit breakers, deadlines and
+ * decompression. A transport only moves the request to the server and the
+ * response back, which allows swapping the wire protocol or leaving the
+ * network out entirely.
+ * </p>
+ * 
+ * <p>
+ * Implementations must be thread safe. They should:
+ * </p>
+ * <ul>
+ * <li>send the headers of the exchange plus whatever the protocol needs, such
+ * as <code>Host</code> and the body framing</li>
+ * <li>not follow redirects and return responses of every status</li>
+ * <li>return the body as received, without undoing its
+ * <code>Content-Encoding</code></li>
+ * <li>stop once the deadline of the exchange passes or the calling thread is
+ * interrupted, failing with a {@link java.net.SocketTimeoutException
+ * SocketTimeoutException} or {@link java.io.InterruptedIOException
+ * InterruptedIOException}</li>
+ * </ul>
+ * 
+ * @author Brian B
+ * 
+ */
+public interface Transport {
+
+	/**
+	 * Sends a request and returns the response with an unread body
+	 * 
+	 * @param exchange
+	 *            the request
+	 * @return the response, which is closed by the caller
+	 * @throws IOException
+	 *             if the request failed
+	 */
+	WebResponse send(Exchange exchange) throws IOException;
+
+	/**
+	 * Frees the resources of this transport, such as pooled connections
+	 */
+	void close();
+
+}
@@ -0,0 +1,178 @@
+package org.jpaste.utils.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ *
+ * A transport over {@link HttpURLConnection}
+ *
+ * <p>
+ * Connection reuse is left to the keep-alive cache of the JDK. Use this
+ * transport where the JDK networking configuration, such as system proxies,
+ * must be honoured.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class URLConnectionTransport implements Transport {
+	private static final int CHUNK_LENGTH = 8192;
+
+	@Override
+	public WebResponse send(Exchange exchange) throws IOException {
+		URLConnection opened = exchange.getURL().openConnection();
+		if (!(opened instanceof HttpURLConnection)) {
+			throw new IOException("Not a HTTP link: " + exchange.getURL());
+		}
+		HttpURLConnection connection = (HttpURLConnection) opened;
+		Aborter aborter = new Aborter(connection);
+		aborter.watch(Thread.currentThread(), exchange.getDeadline());
+		try {
+			connection.setInstanceFollowRedirects(false);
+			connection.setUseCaches(false);
+			connection.setConnectTimeout(exchange.getConnectTimeout());
+			connection.setReadTimeout(exchange.getReadTimeout());
+			connection.setRequestMethod(exchange.getMethod());
+			for (Entry<String, String> header : exchange.getHeaders()
+					.entrySet()) {
+				connection.setRequestProperty(header.getKey(),
+						header.getValue());
+			}
+			Post post = exchange.getPost();
+			if (post != null) {
+				connection.setDoOutput(true);
+				if (exchange.getContentLength() < 0) {
+					connection.setChunkedStreamingMode(CHUNK_LENGTH);
+				} else {
+					connection.setFixedLengthStreamingMode(exchange
+							.getContentLength());
+				}
+			}
+			long start = System.nanoTime();
+			connection.connect();
+			exchange.connected(System.nanoTime() - start);
+			if (post != null) {
+				OutputStream out = connection.getOutputStream();
+				try {
+					post.writeTo(out);
+				} finally {
+					out.close();
+				}
+			}
+			int code = connection.getResponseCode();
+			InputStream body = code >= 400 ? connection.getErrorStream()
+					: connection.getInputStream();
+			if (body == null) {
+				body = new ByteArrayInputStream(new byte[0]);
+			}
+			String message = connection.getResponseMessage();
+			return new WebResponse(exchange.getURL(), code,
+					message == null ? "" : message, headers(connection),
+					new Body(body, aborter));
+		} catch (IOException e) {
+			aborter.unwatch();
+			connection.disconnect();
+			throw aborter.translate(e);
+		} catch (RuntimeException e) {
+			aborter.unwatch();
+			connection.disconnect();
+			throw e;
+		}
+	}
+
+	/**
+	 * Does nothing, connections are kept alive by the JDK
+	 */
+	@Override
+	public void close() {
+	}
+
+	private static Map<String, List<String>> headers(
+			HttpURLConnection connection) {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		for (Entry<String, List<String>> header : connection.getHeaderFields()
+				.entrySet()) {
+			// the status line is keyed by null
+			if (header.getKey() != null) {
+				headers.put(header.getKey().toLowerCase(Locale.ROOT),
+						new ArrayList<String>(header.getValue()));
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Aborts a connection by disconnecting it
+	 */
+	private static class Aborter extends Abortable {
+		private final HttpURLConnection connection;
+
+		Aborter(HttpURLConnection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		void abort() {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * A response body which stays watched until it has been read
+	 */
+	private static class Body extends FilterInputStream {
+		private final Aborter aborter;
+
+		Body(InputStream in, Aborter aborter) {
+			super(in);
+			this.aborter = aborter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				int b = super.read();
+				if (b == -1) {
+					aborter.unwatch();
+				}
+				return b;
+			} catch (IOException e) {
+				aborter.unwatch();
+				throw aborter.translate(e);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				int read = super.read(b, off, len);
+				if (read == -1) {
+					aborter.unwatch();
+				}
+				return read;
+			} catch (IOException e) {
+				aborter.unwatch();
+				throw aborter.translate(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			aborter.unwatch();
+			super.close();
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.jpaste.utils.web;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 
+ * Aborts exchanges whose deadline passed or whose caller was interrupted
+ * 
+ * <p>
+ * Blocking socket calls don't react to interrupts and read timeouts only bound
+ * a single read, so a single daemon thread checks the exchanges in progress
+ * and aborts those which have to stop. The thread only runs while exchanges
+ * are watched.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+final class Watchdog implements Runnable {
+	private static final long INTERVAL = 20;
+	private static final Watchdog INSTANCE = new Watchdog();
+	private final Set<Abortable> watched = Collections
+			.newSetFromMap(new ConcurrentHashMap<Abortable, Boolean>());
+	private Thread thread;
+
+	private Watchdog() {
+	}
+
+	/**
+	 * Starts watching an exchange
+	 * 
+	 * @param exchange
+	 *            the exchange
+	 */
+	static void watch(Abortable exchange) {
+		INSTANCE.watched.add(exchange);
+		INSTANCE.start();
+	}
+
+	/**
+	 * Stops watching an exchange
+	 * 
+	 * @param exchange
+	 *            the exchange
+	 */
+	static void unwatch(Abortable exchange) {
+		INSTANCE.watched.remove(exchange);
+	}
+
+	private synchronized void start() {
+		if (thread == null) {
+			thread = new Thread(this, "jpastebin-watchdog");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			synchronized (this) {
+				if (watched.isEmpty()) {
+					thread = null;
+					return;
+				}
+			}
+			long now = System.nanoTime();
+			for (Abortable exchange : watched) {
+				exchange.check(now);
+			}
+			try {
+				Thread.sleep(INTERVAL);
+			} catch (InterruptedException e) {
+				synchronized (this) {
+					thread = null;
+				}
+				return;
+			}
+		}
+	}
+
+}
@@ -1,21 +1,54 @@
 package org.jpaste.utils.web;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
 
 /**
  * 
  * Web utility class
  * 
+ * <p>
+ * Requests are sent through a shared {@link WebClient}, which keeps
+ * connections alive between requests. The client can be replaced with
+ * {@link #setClient(WebClient)} to tune its {@link ConnectionPool} or to send
+ * requests through another {@link Transport}:
+ * </p>
+ * 
+ * <pre>
+ * Web.setClient(new WebClient(new URLConnectionTransport()));
+ * </pre>
+ * 
  * @author Brian B
  * 
  */
 public class Web {
+	private static volatile WebClient client = new WebClient();
+
+	/**
+	 * Gets the client all requests are sent through
+	 * 
+	 * @return shared web client
+	 */
+	public static WebClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Sets the client all requests are sent through
+	 * 
+	 * <p>
+	 * The previous client is not closed, use {@link WebClient#close()} to
+	 * free its pooled connections.
+	 * </p>
+	 * 
+	 * @param client
+	 *            the new shared web client
+	 */
+	public static void setClient(WebClient client) {
+		if (client == null) {
+			throw new IllegalArgumentException("Web client can't be null.");
+		}
+		Web.client = client;
+	}
 
 	/**
 	 * Submits a HTTP post and fetches and returns the response
@@ -27,40 +60,20 @@ public class Web {
 	 * @return response of the web page
 	 */
 	public static String getContents(String link, Post post) {
-		try {
-			URL url = new URL(link);
-
-			URLConnection connection = url.openConnection();
-
-			if(post != null) {
-				connection.setDoOutput(true);
-				OutputStreamWriter wr = new OutputStreamWriter(
-						connection.getOutputStream());
-				wr.write(post.getPost());
-				wr.flush();
-				wr.close();
-			}
-
-			BufferedReader reader = new BufferedReader(new InputStreamReader(
-					connection.getInputStream()));
-			StringBuilder builder = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (builder.length() > 0) {
-					builder.append('\n');
-				}
-				builder.append(line);
-			}
-			reader.close();
-			return new String(builder);
-		} catch (MalformedURLException e) {
-			throw new IllegalArgumentException("Malformed link: " + e);
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to fetch contents from link: "
-					+ e);
-		}
+		return client.getContents(link, post);
 	}
 	
+	/**
+	 * Sends a request and fetches and returns the response
+	 * 
+	 * @param request
+	 *            the request
+	 * @return response of the web page
+	 */
+	public static String getContents(WebRequest request) {
+		return client.getContents(request);
+	}
+
 	/**
 	 * Gets text from a link
 	 * 
@@ -72,4 +85,46 @@ public class Web {
 		return getContents(link, null);
 	}
 
+	/**
+	 * Submits a HTTP post and returns the response without reading its body
+	 * 
+	 * @param link
+	 *            The link/URL
+	 * @param post
+	 *            the HTTP post representation, <code>null</code> for a get
+	 *            request
+	 * @return response of the web page, which must be closed by the caller
+	 * @throws IOException
+	 *             if the request failed
+	 */
+	public static WebResponse open(String link, Post post) throws IOException {
+		return client.open(link, post);
+	}
+
+	/**
+	 * Sends a request and returns the response without reading its body
+	 * 
+	 * @param request
+	 *            the request
+	 * @return response of the web page, which must be closed by the caller
+	 * @throws IOException
+	 *             if the request failed
+	 */
+	public static WebResponse open(WebRequest request) throws IOException {
+		return client.open(request);
+	}
+
+	/**
+	 * Opens a link without reading its body
+	 * 
+	 * @param link
+	 *            The link/URL
+	 * @return response of the web page, which must be closed by the caller
+	 * @throws IOException
+	 *             if the request failed
+	 */
+	public static WebResponse open(String link) throws IOException {
+		return open(link, null);
+	}
+
 }
@@ -0,0 +1,781 @@
+package org.jpaste.utils.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * A HTTP client which sends its requests through a {@link Transport}
+ * 
+ * <p>
+ * By default a client sends requests through a {@link SocketTransport}, which
+ * keeps connections alive in a {@link ConnectionPool}. Clients are thread safe
+ * and are meant to be shared, {@link Web} holds the client used by the
+ * pastebin classes.
+ * </p>
+ * 
+ * <p>
+ * Responses are requested gzip or deflate compressed and decompressed while
+ * they are read, see {@link #setCompression(boolean)}.
+ * </p>
+ * 
+ * <p>
+ * Idempotent requests which fail transiently are retried according to the
+ * {@link RetryPolicy}. Every endpoint (host and path) has a
+ * {@link CircuitBreaker} which fails requests right away while the endpoint
+ * keeps failing.
+ * </p>
+ * 
+ * <p>
+ * Every request runs under the earliest of its own {@link Deadline}, the
+ * deadline of the calling thread and the default timeout of the client. The
+ * socket of a request is closed as soon as its deadline passes or the calling
+ * thread is interrupted, so a hung server never blocks a caller for longer.
+ * </p>
+ * 
+ * <p>
+ * Exchanges pass through the {@link Interceptor}s of the client on their way
+ * to the transport, and {@link RequestListener}s are told where each request
+ * spent its time. Requests are only traced while the client has any of
+ * either.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class WebClient {
+	private static final int MAX_REDIRECTS = 5;
+	private static final String USER_AGENT = "jPastebin/1.0.0";
+	private final Transport transport;
+	private final AtomicLong wireBytes = new AtomicLong();
+	private final AtomicLong decodedBytes = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final CopyOnWriteArrayList<Interceptor> interceptors = new CopyOnWriteArrayList<Interceptor>();
+	private final CopyOnWriteArrayList<RequestListener> listeners = new CopyOnWriteArrayList<RequestListener>();
+	private volatile boolean compression = true;
+	private volatile RetryPolicy retryPolicy = new RetryPolicy(3, 250, 5000);
+	private volatile int breakerThreshold = 5;
+	private volatile long breakerOpenDuration = 30000;
+	private volatile int connectTimeout = 30000;
+	private volatile int readTimeout = 60000;
+	private volatile long defaultTimeout;
+
+	/**
+	 * Creates a new <code>WebClient</code> instance which sends requests over
+	 * pooled sockets.
+	 */
+	public WebClient() {
+		this(new SocketTransport());
+	}
+
+	/**
+	 * Creates a new <code>WebClient</code> instance which sends requests over
+	 * pooled sockets.
+	 * 
+	 * @param pool
+	 *            the connection pool to lease connections from
+	 */
+	public WebClient(ConnectionPool pool) {
+		this(new SocketTransport(pool));
+	}
+
+	/**
+	 * Creates a new <code>WebClient</code> instance.
+	 * 
+	 * @param transport
+	 *            the transport to send requests through
+	 */
+	public WebClient(Transport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("Transport can't be null.");
+		}
+		this.transport = transport;
+	}
+
+	/**
+	 * Gets the transport of this client
+	 * 
+	 * @return transport
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Gets the connection pool of this client
+	 * 
+	 * @return connection pool, <code>null</code> if the transport is not a
+	 *         {@link SocketTransport}
+	 */
+	public ConnectionPool getConnectionPool() {
+		return transport instanceof SocketTransport ? ((SocketTransport) transport)
+				.getConnectionPool() : null;
+	}
+
+	/**
+	 * Sets if responses are requested compressed
+	 * 
+	 * @param compression
+	 *            <code>true</code> to send <code>Accept-Encoding: gzip,
+	 *            deflate</code>, enabled by default
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Determines if responses are requested compressed
+	 * 
+	 * @return <code>true</code> if compression is enabled
+	 */
+	public boolean isCompression() {
+		return this.compression;
+	}
+
+	/**
+	 * Gets the amount of response body bytes received over the wire
+	 * 
+	 * @return received bytes, before decompression
+	 */
+	public long getWireBytes() {
+		return wireBytes.get();
+	}
+
+	/**
+	 * Gets the amount of response body bytes handed to callers
+	 * 
+	 * @return read bytes, after decompression
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes.get();
+	}
+
+	/**
+	 * Sets the connect timeout
+	 * 
+	 * @param connectTimeout
+	 *            time in milliseconds to wait for a new connection,
+	 *            <code>0</code> to wait forever
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		if (connectTimeout < 0) {
+			throw new IllegalArgumentException(
+					"Connect timeout can't be negative: " + connectTimeout);
+		}
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Gets the connect timeout
+	 * 
+	 * @return time in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return this.connectTimeout;
+	}
+
+	/**
+	 * Sets the read timeout
+	 * 
+	 * @param readTimeout
+	 *            time in milliseconds a single read may block,
+	 *            <code>0</code> to wait forever
+	 */
+	public void setReadTimeout(int readTimeout) {
+		if (readTimeout < 0) {
+			throw new IllegalArgumentException(
+					"Read timeout can't be negative: " + readTimeout);
+		}
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Gets the read timeout
+	 * 
+	 * @return time in milliseconds
+	 */
+	public int getReadTimeout() {
+		return this.readTimeout;
+	}
+
+	/**
+	 * Sets the timeout of requests without a deadline of their own
+	 * 
+	 * @param defaultTimeout
+	 *            time in milliseconds a whole request, retries and redirects
+	 *            included, may take, <code>0</code> for no limit
+	 */
+	public void setDefaultTimeout(long defaultTimeout) {
+		if (defaultTimeout < 0) {
+			throw new IllegalArgumentException(
+					"Default timeout can't be negative: " + defaultTimeout);
+		}
+		this.defaultTimeout = defaultTimeout;
+	}
+
+	/**
+	 * Gets the timeout of requests without a deadline of their own
+	 * 
+	 * @return time in milliseconds, <code>0</code> for no limit
+	 */
+	public long getDefaultTimeout() {
+		return this.defaultTimeout;
+	}
+
+	/**
+	 * Sets the retry policy of idempotent requests
+	 * 
+	 * @param retryPolicy
+	 *            the policy, {@link RetryPolicy#NONE} to never retry
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		if (retryPolicy == null) {
+			throw new IllegalArgumentException("Retry policy can't be null.");
+		}
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Gets the retry policy of idempotent requests
+	 * 
+	 * @return retry policy
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return this.retryPolicy;
+	}
+
+	/**
+	 * Gets the amount of retries sent
+	 * 
+	 * @return retries
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Sets when circuit breakers open, affects endpoints not used yet
+	 * 
+	 * @param failureThreshold
+	 *            amount of failures in a row which open a breaker
+	 * @param openDuration
+	 *            time in milliseconds a breaker stays open
+	 */
+	public void setCircuitBreaker(int failureThreshold, long openDuration) {
+		// validates the values
+		new CircuitBreaker(failureThreshold, openDuration);
+		this.breakerThreshold = failureThreshold;
+		this.breakerOpenDuration = openDuration;
+	}
+
+	/**
+	 * Gets the circuit breaker of the endpoint of a link
+	 * 
+	 * @param link
+	 *            The link/URL
+	 * @return circuit breaker of the host and path of the link
+	 * @throws MalformedURLException
+	 *             if the link is malformed
+	 */
+	public CircuitBreaker getCircuitBreaker(String link)
+			throws MalformedURLException {
+		return getCircuitBreaker(new URL(link));
+	}
+
+	/**
+	 * Gets the circuit breakers of all endpoints used so far
+	 * 
+	 * @return circuit breakers keyed by endpoint
+	 */
+	public Map<String, CircuitBreaker> getCircuitBreakers() {
+		return Collections.unmodifiableMap(breakers);
+	}
+
+	private CircuitBreaker getCircuitBreaker(URL url) {
+		String endpoint = HttpConnection.route(url) + url.getPath();
+		CircuitBreaker breaker = breakers.get(endpoint);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(breakerThreshold,
+					breakerOpenDuration);
+			breaker = breakers.putIfAbsent(endpoint, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * Adds an interceptor after the ones added before
+	 * 
+	 * @param interceptor
+	 *            the interceptor
+	 */
+	public void addInterceptor(Interceptor interceptor) {
+		if (interceptor == null) {
+			throw new IllegalArgumentException("Interceptor can't be null.");
+		}
+		interceptors.add(interceptor);
+	}
+
+	/**
+	 * Removes an interceptor
+	 * 
+	 * @param interceptor
+	 *            the interceptor
+	 */
+	public void removeInterceptor(Interceptor interceptor) {
+		interceptors.remove(interceptor);
+	}
+
+	/**
+	 * Gets the interceptors of this client
+	 * 
+	 * @return interceptors in the order exchanges pass them
+	 */
+	public List<Interceptor> getInterceptors() {
+		return Collections.unmodifiableList(interceptors);
+	}
+
+	/**
+	 * Adds a listener told about every request once it is over
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void addRequestListener(RequestListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener can't be null.");
+		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a request listener
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void removeRequestListener(RequestListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Submits a HTTP post and fetches and returns the response
+	 * 
+	 * @param link
+	 *            The link/URL
+	 * @param post
+	 *            the HTTP post representation, <code>null</code> for a get
+	 *            request
+	 * @return response of the web page
+	 * @throws WebException
+	 *             if the request failed
+	 */
+	public String getContents(String link, Post post) {
+		return getContents(new WebRequest(link, post));
+	}
+
+	/**
+	 * Sends a request and fetches and returns the response
+	 * 
+	 * @param request
+	 *            the request
+	 * @return response of the web page
+	 * @throws WebException
+	 *             if the request failed
+	 */
+	public String getContents(WebRequest request) {
+		try {
+			return execute(request, new ResponseHandler<String>() {
+				@Override
+				public String handle(WebResponse response) throws IOException {
+					return readText(response);
+				}
+			});
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Malformed link: " + e);
+		} catch (IOException e) {
+			throw new WebException("Failed to fetch contents from link: " + e,
+					e);
+		}
+	}
+
+	private static String readText(WebResponse response) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				response.getInputStream(), response.getCharset()));
+		try {
+			StringBuilder builder = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (builder.length() > 0) {
+					builder.append('\n');
+				}
+				builder.append(line);
+			}
+			return new String(builder);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Closes the transport of this client, freeing its pooled connections
+	 */
+	public void close() {
+		transport.close();
+	}
+
+	/**
+	 * Sends a request, following redirects, and returns the response with an
+	 * unread body
+	 * 
+	 * @param link
+	 *            The link/URL
+	 * @param post
+	 *            the HTTP post representation, <code>null</code> for a get
+	 *            request
+	 * @return a successful response, which must be closed by the caller
+	 * @throws IOException
+	 *             if the request failed or the server answered with an error
+	 *             status
+	 */
+	public WebResponse open(String link, Post post) throws IOException {
+		return open(new WebRequest(link, post));
+	}
+
+	/**
+	 * Sends a request, following redirects, and returns the response with an
+	 * unread body
+	 * 
+	 * <p>
+	 * Retries of idempotent requests only cover the response status and
+	 * headers, not reading the body.
+	 * </p>
+	 * 
+	 * @param request
+	 *            the request
+	 * @return a successful response, which must be closed by the caller
+	 * @throws IOException
+	 *             if the request failed, a {@link HttpStatusException} if the
+	 *             server answered with an error status
+	 */
+	public WebResponse open(WebRequest request) throws IOException {
+		return execute(request, new ResponseHandler<WebResponse>() {
+			@Override
+			public WebResponse handle(WebResponse response) {
+				return response;
+			}
+		});
+	}
+
+	/**
+	 * Sends a request and handles its response, tracing it while the client
+	 * has interceptors or listeners
+	 */
+	private <T> T execute(WebRequest request, ResponseHandler<T> handler)
+			throws IOException {
+		URL url = new URL(request.getLink());
+		Post post = request.getPost();
+		Deadline deadline = Deadline.earliest(request.getDeadline(),
+				Deadline.current());
+		if (defaultTimeout > 0) {
+			deadline = Deadline.earliest(deadline,
+					Deadline.after(defaultTimeout, TimeUnit.MILLISECONDS));
+		}
+		TransferStats stats = request.getTransferStats();
+		RequestTrace trace = interceptors.isEmpty() && listeners.isEmpty() ? null
+				: new RequestTrace(post == null ? "GET" : "POST",
+						request.getLink(), post == null ? null
+								: post.get("api_option"), listeners);
+		try {
+			T result = execute(url, post, deadline, stats, trace,
+					request.isIdempotent(), handler);
+			if (trace != null) {
+				trace.handled();
+			}
+			return result;
+		} catch (IOException e) {
+			if (trace != null) {
+				trace.complete(e);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a request and handles its response, retrying idempotent requests
+	 * which failed transiently
+	 */
+	private <T> T execute(URL url, Post post, Deadline deadline,
+			TransferStats stats, RequestTrace trace, boolean idempotent,
+			ResponseHandler<T> handler) throws IOException {
+		CircuitBreaker breaker = getCircuitBreaker(url);
+		RetryPolicy policy = idempotent
+				&& (post == null || post.isRepeatable()) ? retryPolicy
+				: RetryPolicy.NONE;
+		long delay;
+		for (int attempt = 1;; attempt++) {
+			if (!breaker.allowRequest()) {
+				throw new CircuitOpenException(HttpConnection.route(url)
+						+ url.getPath());
+			}
+			if (trace != null) {
+				trace.attempt();
+			}
+			boolean recorded = false;
+			try {
+				T result = handler.handle(send(url, post, deadline, stats,
+						trace));
+				breaker.onSuccess();
+				recorded = true;
+				return result;
+			} catch (IOException e) {
+				if (isCancelled(e)) {
+					throw e;
+				}
+				if (!RetryPolicy.isTransient(e)) {
+					// the endpoint answered
+					breaker.onSuccess();
+					recorded = true;
+					throw e;
+				}
+				breaker.onFailure();
+				recorded = true;
+				if (attempt >= policy.getMaxAttempts()) {
+					throw e;
+				}
+				delay = policy.getDelay(attempt);
+				if (deadline != null
+						&& delay >= deadline.remaining(TimeUnit.MILLISECONDS)) {
+					// the retry could not finish in time
+					throw e;
+				}
+			} finally {
+				if (!recorded) {
+					// cancelled, or a runtime failure of the transport, an
+					// interceptor or the handler
+					breaker.release();
+				}
+			}
+			retries.incrementAndGet();
+			long start = System.nanoTime();
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted before retry.");
+			} finally {
+				if (stats != null) {
+					// waiting to retry is part of the transfer
+					stats.addNetworkNanos(System.nanoTime() - start);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines if a request failed because its thread was interrupted,
+	 * which says nothing about the endpoint
+	 */
+	private static boolean isCancelled(IOException e) {
+		if (e instanceof InterruptedIOException) {
+			return !(e instanceof SocketTimeoutException);
+		}
+		return e instanceof ClosedByInterruptException
+				|| Thread.currentThread().isInterrupted();
+	}
+
+	/**
+	 * Sends a request, adding its bytes and the time until the response
+	 * headers to the stats, which also get the time spent reading the body
+	 */
+	private WebResponse send(URL url, Post post, Deadline deadline,
+			TransferStats stats, RequestTrace trace) throws IOException {
+		if (stats == null) {
+			return send(url, post, deadline, (AtomicLong) null, trace);
+		}
+		long start = System.nanoTime();
+		try {
+			WebResponse response = send(url, post, deadline,
+					stats.requestBytes(), trace);
+			if (response.getInputStream() == null) {
+				return response;
+			}
+			return new WebResponse(response.getURL(),
+					response.getStatusCode(), response.getStatusMessage(),
+					response.getHeaders(), stats.wrap(response
+							.getInputStream()));
+		} finally {
+			stats.addNetworkNanos(System.nanoTime() - start);
+		}
+	}
+
+	private WebResponse send(URL url, Post post, Deadline deadline,
+			AtomicLong requestBytes, RequestTrace trace) throws IOException {
+		String link = url.toString();
+		String method = post == null ? "GET" : "POST";
+		if (post != null && requestBytes != null) {
+			// counted as written, most posts are sent without a known length
+			post = post.counting(requestBytes);
+		}
+		long length = post == null ? 0 : post.getContentLength();
+		for (int redirects = 0;; redirects++) {
+			if (deadline != null && deadline.isExpired()) {
+				throw new SocketTimeoutException("Deadline exceeded.");
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException("Interrupted.");
+			}
+			WebResponse response = exchange(new Exchange(method, url,
+					headers(post), post, length, deadline, connectTimeout,
+					readTimeout, trace));
+			int code = response.getStatusCode();
+			String location = response.getHeader("Location");
+			if (code >= 300 && code < 400 && code != 304 && location != null) {
+				response.discard();
+				if (redirects >= MAX_REDIRECTS) {
+					throw new IOException("Too many redirects: " + link);
+				}
+				url = new URL(url, location);
+				if (code == 303 || ((code == 301 || code == 302) && post != null)) {
+					method = "GET";
+					post = null;
+					length = 0;
+				} else if (post != null && !post.isRepeatable()) {
+					throw new IOException("Can't resend post to " + url);
+				}
+				continue;
+			}
+			if (trace != null) {
+				trace.responded(code);
+			}
+			if (code >= 400) {
+				response.discard();
+				throw new HttpStatusException(code,
+						"Server returned HTTP response code: " + code
+								+ " for URL: " + url);
+			}
+			try {
+				response = decode(response);
+			} catch (IOException e) {
+				response.close();
+				throw e;
+			}
+			if (trace != null) {
+				response = trace.wrap(response);
+			}
+			return response;
+		}
+	}
+
+	/**
+	 * Sends an exchange through the interceptors to the transport
+	 */
+	private WebResponse exchange(Exchange exchange) throws IOException {
+		if (exchange.getTrace() == null) {
+			return transport.send(exchange);
+		}
+		return new Chain(interceptors.toArray(new Interceptor[0]), 0,
+				exchange).proceed(exchange);
+	}
+
+	private Map<String, String> headers(Post post) {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("User-Agent", USER_AGENT);
+		headers.put("Accept", "*/*");
+		if (compression) {
+			headers.put("Accept-Encoding", "gzip, deflate");
+		}
+		if (post != null) {
+			headers.put("Content-Type",
+					"application/x-www-form-urlencoded; charset=UTF-8");
+		}
+		return headers;
+	}
+
+	/**
+	 * Wraps the body of a final response in decompression and byte counting
+	 */
+	private WebResponse decode(WebResponse response) throws IOException {
+		String contentLength = response.getHeader("Content-Length");
+		int code = response.getStatusCode();
+		if (code == 204 || code == 304 || "0".equals(contentLength)) {
+			return response;
+		}
+		InputStream wire = new CountingInputStream(response.getInputStream(),
+				wireBytes);
+		InputStream decoded = new CountingInputStream(DecodedInputStream.decode(
+				wire, response.getHeader("Content-Encoding")), decodedBytes);
+		return new WebResponse(response.getURL(), code,
+				response.getStatusMessage(), response.getHeaders(), decoded);
+	}
+
+	/**
+	 * The interceptors after the one an exchange is at
+	 */
+	private class Chain implements Interceptor.Chain {
+		private final Interceptor[] interceptors;
+		private final int index;
+		private final Exchange exchange;
+
+		Chain(Interceptor[] interceptors, int index, Exchange exchange) {
+			this.interceptors = interceptors;
+			this.index = index;
+			this.exchange = exchange;
+		}
+
+		@Override
+		public Exchange getExchange() {
+			return exchange;
+		}
+
+		@Override
+		public RequestTrace getTrace() {
+			return exchange.getTrace();
+		}
+
+		@Override
+		public WebResponse proceed(Exchange exchange) throws IOException {
+			if (exchange == null) {
+				throw new IllegalArgumentException("Exchange can't be null.");
+			}
+			if (index == interceptors.length) {
+				exchange.getTrace().exchanged();
+				return transport.send(exchange);
+			}
+			Interceptor interceptor = interceptors[index];
+			WebResponse response = interceptor.intercept(new Chain(
+					interceptors, index + 1, exchange));
+			if (response == null) {
+				throw new IOException("No response from interceptor: "
+						+ interceptor);
+			}
+			return response;
+		}
+	}
+
+	/**
+	 * Handles a successful response
+	 */
+	private interface ResponseHandler<T> {
+		T handle(WebResponse response) throws IOException;
+	}
+
+}
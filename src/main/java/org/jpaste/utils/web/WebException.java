@@ -0,0 +1,46 @@
+package org.jpaste.utils.web;
+
+import java.io.IOException;
+
+/**
+ * 
+ * Thrown when a web request failed
+ * 
+ * <p>
+ * Tells transient failures, such as timeouts, dropped connections and 5xx
+ * responses, apart from permanent ones a retry won't fix.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class WebException extends RuntimeException {
+	private static final long serialVersionUID = -6181429412780183722L;
+	private final int statusCode;
+	private final boolean temporary;
+
+	public WebException(String message, IOException cause) {
+		super(message, cause);
+		this.statusCode = cause instanceof HttpStatusException ? ((HttpStatusException) cause)
+				.getStatusCode() : -1;
+		this.temporary = RetryPolicy.isTransient(cause);
+	}
+
+	/**
+	 * Gets the HTTP status code the server answered with
+	 * 
+	 * @return status code, <code>-1</code> if no response was received
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Determines if the request might succeed when tried again later
+	 * 
+	 * @return <code>true</code> for transient failures
+	 */
+	public boolean isTransient() {
+		return temporary;
+	}
+}
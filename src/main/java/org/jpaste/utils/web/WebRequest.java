@@ -0,0 +1,132 @@
+package org.jpaste.utils.web;
+
+/**
+ * 
+ * A request to be sent by a {@link WebClient}
+ * 
+ * <p>
+ * Holds the link and optional post, and how the request may be treated by the
+ * client. Only idempotent requests are retried after a transient failure.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class WebRequest {
+	private final String link;
+	private final Post post;
+	private boolean idempotent;
+	private Deadline deadline;
+	private TransferStats transferStats;
+
+	/**
+	 * Creates a new get <code>WebRequest</code> instance.
+	 * 
+	 * @param link
+	 *            The link/URL
+	 */
+	public WebRequest(String link) {
+		this(link, null);
+	}
+
+	/**
+	 * Creates a new <code>WebRequest</code> instance.
+	 * 
+	 * <p>
+	 * Get requests are idempotent, posts are not unless marked with
+	 * {@link #setIdempotent(boolean)}.
+	 * </p>
+	 * 
+	 * @param link
+	 *            The link/URL
+	 * @param post
+	 *            the HTTP post representation, <code>null</code> for a get
+	 *            request
+	 */
+	public WebRequest(String link, Post post) {
+		if (link == null) {
+			throw new IllegalArgumentException("Link can't be null.");
+		}
+		this.link = link;
+		this.post = post;
+		this.idempotent = post == null;
+	}
+
+	/**
+	 * Gets the link
+	 * 
+	 * @return The link/URL
+	 */
+	public String getLink() {
+		return link;
+	}
+
+	/**
+	 * Gets the post
+	 * 
+	 * @return the HTTP post representation, <code>null</code> for a get
+	 *         request
+	 */
+	public Post getPost() {
+		return post;
+	}
+
+	/**
+	 * Sets if sending this request more than once is safe
+	 * 
+	 * @param idempotent
+	 *            <code>true</code> if the request may be retried
+	 */
+	public void setIdempotent(boolean idempotent) {
+		this.idempotent = idempotent;
+	}
+
+	/**
+	 * Determines if sending this request more than once is safe
+	 * 
+	 * @return <code>true</code> if the request may be retried
+	 */
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	/**
+	 * Sets the deadline of this request
+	 * 
+	 * @param deadline
+	 *            the deadline, <code>null</code> for the deadline of the
+	 *            calling thread or the client default
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Gets the deadline of this request
+	 * 
+	 * @return the deadline, may be <code>null</code>
+	 */
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Collects the bytes and network time of this request
+	 * 
+	 * @param transferStats
+	 *            the stats to add to, <code>null</code> to collect none
+	 */
+	public void setTransferStats(TransferStats transferStats) {
+		this.transferStats = transferStats;
+	}
+
+	/**
+	 * Gets the stats this request adds to
+	 * 
+	 * @return the stats, may be <code>null</code>
+	 */
+	public TransferStats getTransferStats() {
+		return transferStats;
+	}
+
+}
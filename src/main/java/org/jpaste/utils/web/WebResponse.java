@@ -0,0 +1,184 @@
+package org.jpaste.utils.web;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 
+ * A HTTP response whose body has not been read yet
+ * 
+ * <p>
+ * The body must either be read till the end or the response must be closed,
+ * otherwise the underlying connection is never released. A connection whose
+ * body has been read till the end is returned to the pool, closing the
+ * response earlier closes the connection.
+ * </p>
+ * 
+ * @author Brian B
+ * 
+ */
+public class WebResponse implements Closeable {
+	private final URL url;
+	private final int statusCode;
+	private final String statusMessage;
+	private final Map<String, List<String>> headers;
+	private final InputStream body;
+
+	/**
+	 * Creates a new <code>WebResponse</code> instance, used by
+	 * {@link Transport} implementations.
+	 * 
+	 * @param url
+	 *            the requested URL
+	 * @param statusCode
+	 *            the HTTP status code
+	 * @param statusMessage
+	 *            the HTTP reason phrase
+	 * @param headers
+	 *            response headers keyed by lower case name
+	 * @param body
+	 *            the response body
+	 */
+	public WebResponse(URL url, int statusCode, String statusMessage,
+			Map<String, List<String>> headers, InputStream body) {
+		this.url = url;
+		this.statusCode = statusCode;
+		this.statusMessage = statusMessage;
+		this.headers = headers;
+		this.body = body;
+	}
+
+	/**
+	 * Gets the URL this response was received from
+	 * 
+	 * @return requested URL
+	 */
+	public URL getURL() {
+		return url;
+	}
+
+	/**
+	 * Gets the HTTP status code
+	 * 
+	 * @return status code
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Gets the HTTP reason phrase
+	 * 
+	 * @return reason phrase
+	 */
+	public String getStatusMessage() {
+		return statusMessage;
+	}
+
+	/**
+	 * Gets the first value of a header
+	 * 
+	 * @param name
+	 *            case insensitive header name
+	 * @return header value or <code>null</code> if absent
+	 */
+	public String getHeader(String name) {
+		List<String> values = getHeaders(name);
+		return values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * Gets all values of a header
+	 * 
+	 * @param name
+	 *            case insensitive header name
+	 * @return header values
+	 */
+	public List<String> getHeaders(String name) {
+		List<String> values = headers.get(name.toLowerCase(Locale.ROOT));
+		if (values == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * Gets all headers
+	 * 
+	 * @return header values keyed by lower case name
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return Collections.unmodifiableMap(headers);
+	}
+
+	/**
+	 * Gets the charset declared by the <code>Content-Type</code> header
+	 * 
+	 * @return declared charset, UTF-8 if none was declared
+	 */
+	public Charset getCharset() {
+		String contentType = getHeader("Content-Type");
+		if (contentType != null) {
+			for (String parameter : contentType.split(";")) {
+				parameter = parameter.trim();
+				if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+					try {
+						return Charset.forName(parameter.substring(8)
+								.replace("\"", "").trim());
+					} catch (IllegalArgumentException e) {
+						break;
+					}
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Gets the response body
+	 * 
+	 * @return body stream
+	 */
+	public InputStream getInputStream() {
+		return body;
+	}
+
+	/**
+	 * Reads and discards what is left of the body so the connection can be
+	 * reused, closing it instead if the body is large
+	 */
+	void discard() {
+		byte[] buffer = new byte[4096];
+		long left = 65536;
+		try {
+			int read;
+			while (left > 0 && (read = body.read(buffer)) != -1) {
+				left -= read;
+			}
+		} catch (IOException e) {
+			// connection is discarded below
+		}
+		close();
+	}
+
+	/**
+	 * Releases the connection of this response
+	 */
+	@Override
+	public void close() {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// nothing left to release
+		}
+	}
+
+}
@@ -1,5 +1,11 @@
 package org.jpaste.utils.xml;
 
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Element;
 
 /**
@@ -10,6 +16,7 @@ import org.w3c.dom.Element;
  * 
  */
 public class XMLUtils {
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
 
 	/**
 	 * Fetches text from a element
@@ -24,4 +31,34 @@ public class XMLUtils {
 		return parent.getElementsByTagName(tagName).item(0).getTextContent();
 	}
 
+	/**
+	 * Creates a streaming reader over XML from the shared input factory
+	 * 
+	 * <p>
+	 * The factory is configured once. External entities and DTDs are not
+	 * resolved, pastebin responses don't use them.
+	 * </p>
+	 * 
+	 * @param in
+	 *            the XML
+	 * @param encoding
+	 *            encoding of the XML
+	 * @return a new reader
+	 * @throws XMLStreamException
+	 *             if the reader could not be created
+	 */
+	public static XMLStreamReader createReader(InputStream in, String encoding)
+			throws XMLStreamException {
+		return INPUT_FACTORY.createXMLStreamReader(in, encoding);
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
 }
@@ -0,0 +1,347 @@
+package org.jpaste.utils.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ *
+ * A transport over {@link HttpClient}, which speaks HTTP/2 where the server
+ * does
+ *
+ * <p>
+ * HTTP/2 multiplexes concurrent requests as streams over a single connection
+ * per host, so many parallel requests don't need a socket each. Servers
+ * without HTTP/2 support are spoken to with HTTP/1.1.
+ * </p>
+ *
+ * <p>
+ * {@link HttpClient} doesn't tell when it opened or reused a connection, so
+ * requests over this transport report no connect time in their
+ * {@link RequestTrace}, it is part of the time to the first byte.
+ * </p>
+ *
+ * <p>
+ * Only built with the <code>java11</code> Maven profile.
+ * </p>
+ *
+ * @author Brian B
+ *
+ */
+public class HttpClientTransport implements Transport {
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+	private final HttpClient client;
+
+	/**
+	 * Creates a new <code>HttpClientTransport</code> instance with a client
+	 * preferring HTTP/2.
+	 */
+	public HttpClientTransport() {
+		this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NEVER)
+				.connectTimeout(CONNECT_TIMEOUT).build());
+	}
+
+	/**
+	 * Creates a new <code>HttpClientTransport</code> instance.
+	 *
+	 * @param client
+	 *            the client, which must not follow redirects
+	 */
+	public HttpClientTransport(HttpClient client) {
+		if (client == null) {
+			throw new IllegalArgumentException("Http client can't be null.");
+		}
+		this.client = client;
+	}
+
+	/**
+	 * Gets the client of this transport
+	 *
+	 * @return http client
+	 */
+	public HttpClient getClient() {
+		return client;
+	}
+
+	@Override
+	public WebResponse send(Exchange exchange) throws IOException {
+		HttpRequest.Builder builder;
+		try {
+			builder = HttpRequest.newBuilder(exchange.getURL().toURI());
+		} catch (URISyntaxException e) {
+			throw new IOException("Malformed link: " + exchange.getURL(), e);
+		}
+		if (exchange.getReadTimeout() > 0) {
+			builder.timeout(Duration.ofMillis(exchange.getReadTimeout()));
+		}
+		for (Entry<String, String> header : exchange.getHeaders().entrySet()) {
+			builder.header(header.getKey(), header.getValue());
+		}
+		Post post = exchange.getPost();
+		PostWriter writer = null;
+		if (post == null) {
+			builder.GET();
+		} else {
+			// streamed while it is encoded, large pastes aren't copied
+			writer = new PostWriter(post);
+			HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers
+					.ofInputStream(writer);
+			long length = exchange.getContentLength();
+			if (length >= 0) {
+				body = HttpRequest.BodyPublishers.fromPublisher(body, length);
+			}
+			builder.method(exchange.getMethod(), body);
+		}
+		CompletableFuture<HttpResponse<InputStream>> future = client.sendAsync(
+				builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		HttpResponse<InputStream> response;
+		try {
+			response = await(future, exchange.getDeadline());
+		} catch (IOException e) {
+			if (writer != null) {
+				writer.close();
+				IOException error = writer.getError();
+				if (error != null) {
+					throw error;
+				}
+			}
+			throw e;
+		}
+		if (writer != null) {
+			// a body the server didn't wait for is dropped
+			writer.close();
+		}
+		Aborter aborter = new Aborter(response.body());
+		aborter.watch(Thread.currentThread(), exchange.getDeadline());
+		return new WebResponse(exchange.getURL(), response.statusCode(), "",
+				headers(response), new Body(response.body(), aborter));
+	}
+
+	private static HttpResponse<InputStream> await(
+			CompletableFuture<HttpResponse<InputStream>> future,
+			Deadline deadline) throws IOException {
+		try {
+			if (deadline == null) {
+				return future.get();
+			}
+			return future.get(deadline.remaining(TimeUnit.NANOSECONDS),
+					TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted.");
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new SocketTimeoutException("Deadline exceeded.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof HttpTimeoutException) {
+				SocketTimeoutException timeout = new SocketTimeoutException(
+						cause.getMessage());
+				timeout.initCause(cause);
+				throw timeout;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Does nothing, the connections of the client are freed once it is no
+	 * longer referenced
+	 */
+	@Override
+	public void close() {
+	}
+
+	private static Map<String, List<String>> headers(HttpResponse<?> response) {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		for (Entry<String, List<String>> header : response.headers().map()
+				.entrySet()) {
+			// HTTP/2 pseudo headers such as :status
+			if (!header.getKey().startsWith(":")) {
+				headers.put(header.getKey().toLowerCase(Locale.ROOT),
+						new ArrayList<String>(header.getValue()));
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Encodes a post into pipes the client reads the request body from
+	 *
+	 * <p>
+	 * Every pipe is written by a thread of a shared pool, which is unbounded
+	 * because a writer blocks until the client has read its body.
+	 * </p>
+	 */
+	private static class PostWriter implements Supplier<InputStream> {
+		private static final int PIPE_SIZE = 64 * 1024;
+		private static final ExecutorService WRITERS = Executors
+				.newCachedThreadPool(new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"jpastebin-post-writer-"
+										+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		private final Post post;
+		private final List<PipedInputStream> pipes = new ArrayList<PipedInputStream>();
+		private volatile IOException error;
+
+		PostWriter(Post post) {
+			this.post = post;
+		}
+
+		@Override
+		public synchronized InputStream get() {
+			final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+			final PipedOutputStream out;
+			try {
+				out = new PipedOutputStream(in);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			pipes.add(in);
+			WRITERS.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						post.writeTo(out);
+						out.close();
+					} catch (IOException e) {
+						error = e;
+						// fails the body instead of ending it early
+						close(in);
+					}
+				}
+			});
+			return in;
+		}
+
+		/**
+		 * Gets the error the post failed to encode with
+		 */
+		IOException getError() {
+			return error;
+		}
+
+		/**
+		 * Closes all pipes, which stops writers still blocked on them
+		 */
+		synchronized void close() {
+			for (PipedInputStream in : pipes) {
+				close(in);
+			}
+		}
+
+		private static void close(InputStream in) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// nothing to free
+			}
+		}
+	}
+
+	/**
+	 * Aborts a response by closing its body
+	 */
+	private static class Aborter extends Abortable {
+		private final InputStream body;
+
+		Aborter(InputStream body) {
+			this.body = body;
+		}
+
+		@Override
+		void abort() {
+			try {
+				body.close();
+			} catch (IOException e) {
+				// already gone
+			}
+		}
+	}
+
+	/**
+	 * A response body which stays watched until it has been read
+	 */
+	private static class Body extends FilterInputStream {
+		private final Aborter aborter;
+
+		Body(InputStream in, Aborter aborter) {
+			super(in);
+			this.aborter = aborter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				int b = super.read();
+				if (b == -1) {
+					aborter.unwatch();
+				}
+				return b;
+			} catch (IOException e) {
+				aborter.unwatch();
+				throw aborter.translate(e);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				int read = super.read(b, off, len);
+				if (read == -1) {
+					aborter.unwatch();
+				}
+				return read;
+			} catch (IOException e) {
+				aborter.unwatch();
+				throw aborter.translate(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			aborter.unwatch();
+			super.close();
+		}
+	}
+
+}
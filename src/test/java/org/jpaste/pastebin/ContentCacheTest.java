@@ -0,0 +1,125 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *
+ * Expiry and eviction of the {@link ContentCache}
+ *
+ * @author Brian B
+ *
+ */
+public class ContentCacheTest {
+
+	@Test
+	public void putAndGet() {
+		ContentCache cache = new ContentCache(1 << 20);
+		cache.put("key", "contents", ContentCache.NEVER);
+
+		assertEquals("contents", cache.get("key"));
+		assertNull(cache.get("other"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void unknownExpiryNeedsTimeToLive() {
+		ContentCache cache = new ContentCache(1 << 20);
+		cache.put("key", "contents");
+		assertNull(cache.get("key"));
+
+		cache.setDefaultTimeToLive(60000);
+		cache.put("key", "contents");
+		assertEquals("contents", cache.get("key"));
+	}
+
+	@Test
+	public void expiredContentsAreDropped() {
+		ContentCache cache = new ContentCache(1 << 20);
+		long now = System.currentTimeMillis();
+		cache.put("old", "contents", now - 1);
+		cache.put("soon", "contents", now + 500);
+		cache.put("later", "contents", now + 3600000);
+		assertEquals(2, cache.getSize());
+
+		awaitTime(now + 500);
+		assertNull(cache.get("old"));
+		assertNull(cache.get("soon"));
+		assertEquals("contents", cache.get("later"));
+		assertEquals(1, cache.getExpirations());
+	}
+
+	@Test
+	public void cleanUpDropsExpiredContents() {
+		ContentCache cache = new ContentCache(1 << 20);
+		long now = System.currentTimeMillis();
+		cache.put("soon", "contents", now + 500);
+		cache.put("later", "contents", now + 3600000);
+
+		awaitTime(now + 500);
+		cache.cleanUp();
+		assertEquals(1, cache.getSize());
+		assertEquals(1, cache.getExpirations());
+		assertEquals("contents", cache.get("later"));
+	}
+
+	@Test
+	public void invalidate() {
+		ContentCache cache = new ContentCache(1 << 20);
+		cache.put("key", "contents", ContentCache.NEVER);
+		cache.invalidate("key");
+
+		assertNull(cache.get("key"));
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getResidentBytes());
+	}
+
+	@Test
+	public void staysWithinMaximumBytes() {
+		ContentCache cache = new ContentCache(64 * 1024);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("key" + i, contents(500), ContentCache.NEVER);
+		}
+
+		assertTrue(cache.getResidentBytes() <= cache.getMaximumBytes());
+		assertTrue(cache.getEvictions() > 0);
+	}
+
+	@Test
+	public void hotContentsSurviveScan() {
+		ContentCache cache = new ContentCache(64 * 1024);
+		cache.put("hot", contents(500), ContentCache.NEVER);
+		for (int i = 0; i < 20; i++) {
+			cache.get("hot");
+		}
+		for (int i = 0; i < 1000; i++) {
+			cache.put("scan" + i, contents(500), ContentCache.NEVER);
+		}
+
+		assertEquals(contents(500), cache.get("hot"));
+	}
+
+	private static String contents(int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append((char) ('a' + i % 26));
+		}
+		return builder.toString();
+	}
+
+	private static void awaitTime(long millis) {
+		while (System.currentTimeMillis() <= millis) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+}
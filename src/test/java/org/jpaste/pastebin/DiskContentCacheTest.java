@@ -0,0 +1,90 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * Persistence and eviction of the {@link DiskContentCache}
+ *
+ * @author Brian B
+ *
+ */
+public class DiskContentCacheTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void contentsSurviveReopen() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (DiskContentCache cache = new DiskContentCache(directory, 1 << 20, 8192)) {
+			cache.put("key", "contents é", ContentCache.NEVER);
+			assertEquals("contents é", cache.get("key"));
+		}
+		try (DiskContentCache cache = new DiskContentCache(directory, 1 << 20, 8192)) {
+			assertEquals("contents é", cache.get("key"));
+			assertNull(cache.get("other"));
+		}
+	}
+
+	@Test
+	public void invalidationSurvivesReopen() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (DiskContentCache cache = new DiskContentCache(directory, 1 << 20, 8192)) {
+			cache.put("key", "contents", ContentCache.NEVER);
+			cache.invalidate("key");
+			assertNull(cache.get("key"));
+		}
+		try (DiskContentCache cache = new DiskContentCache(directory, 1 << 20, 8192)) {
+			assertNull(cache.get("key"));
+		}
+	}
+
+	@Test
+	public void expiredContentsAreNotServed() throws IOException {
+		try (DiskContentCache cache = new DiskContentCache(folder.getRoot()
+				.toPath(), 1 << 20, 8192)) {
+			cache.put("old", "contents", System.currentTimeMillis() - 1);
+
+			assertNull(cache.get("old"));
+		}
+	}
+
+	@Test
+	public void staysWithinMaximumBytes() throws IOException {
+		try (DiskContentCache cache = new DiskContentCache(folder.getRoot()
+				.toPath(), 32768, 8192)) {
+			StringBuilder contents = new StringBuilder();
+			for (int i = 0; i < 1000; i++) {
+				contents.append('x');
+			}
+			for (int i = 0; i < 200; i++) {
+				cache.put("key" + i, contents.toString(), ContentCache.NEVER);
+			}
+
+			assertTrue(cache.getDiskBytes() <= 32768);
+			assertTrue(cache.getEvictions() > 0);
+			assertEquals(contents.toString(), cache.get("key199"));
+		}
+	}
+
+	@Test
+	public void directoryIsLocked() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (DiskContentCache cache = new DiskContentCache(directory, 1 << 20, 8192)) {
+			assertThrows(IOException.class, () -> new DiskContentCache(
+					directory, 1 << 20, 8192));
+			assertEquals(directory, cache.getDirectory());
+		}
+	}
+
+}
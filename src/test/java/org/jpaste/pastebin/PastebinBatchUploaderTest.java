@@ -0,0 +1,140 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.jpaste.exceptions.PasteException;
+import org.junit.Test;
+
+/**
+ *
+ * Bounded concurrent pasting by a {@link PastebinBatchUploader}
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinBatchUploaderTest {
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	@Test
+	public void everyPasteIsReported() throws Exception {
+		List<PastebinPaste> pastes = new ArrayList<PastebinPaste>();
+		for (int i = 0; i < 20; i++) {
+			pastes.add(new FakePaste("paste" + i, i % 5 == 0));
+		}
+		PastebinBatchReport report;
+		try (PastebinBatchUploader uploader = new PastebinBatchUploader(4)) {
+			report = uploader.upload(pastes);
+		}
+
+		assertEquals(20, report.getSubmitted());
+		assertEquals(16, report.getSucceeded());
+		assertEquals(4, report.getFailed());
+		assertEquals("https://pastebin.com/paste1", report.getLinks().get(0)
+				.getLink().toString());
+		assertSame(pastes.get(0), report.getFailures().get(0).getPaste());
+		assertTrue(report.getFailures().get(0).getException() instanceof PasteException);
+	}
+
+	@Test
+	public void concurrencyIsBounded() throws Exception {
+		PastebinBatchReport report;
+		try (PastebinBatchUploader uploader = new PastebinBatchUploader(3)) {
+			report = uploader.upload(IntStream.range(0, 30).mapToObj(
+					i -> (PastebinPaste) new FakePaste("paste" + i, false)));
+		}
+
+		assertEquals(30, report.getSucceeded());
+		assertTrue(maxRunning.get() <= 3);
+		assertTrue(report.getMaxLatency() >= report.getMinLatency());
+	}
+
+	@Test
+	public void errorIsReported() throws Exception {
+		List<PastebinPaste> pastes = new ArrayList<PastebinPaste>();
+		pastes.add(new FakePaste("paste0", false));
+		pastes.add(new PastebinPaste("dev", "broken") {
+			@Override
+			public PastebinLink paste() {
+				throw new AssertionError("broken");
+			}
+		});
+		PastebinBatchReport report;
+		try (PastebinBatchUploader uploader = new PastebinBatchUploader(2)) {
+			report = uploader.upload(pastes);
+		}
+
+		assertEquals(2, report.getSubmitted());
+		assertEquals(1, report.getFailed());
+		assertTrue(report.getFailures().get(0).getException() instanceof AssertionError);
+	}
+
+	@Test
+	public void closeShutsDownOwnThreadsOnly() throws Exception {
+		PastebinBatchUploader uploader = new PastebinBatchUploader(2);
+		uploader.close();
+		PastebinBatchReport report = uploader.upload(Collections
+				.<PastebinPaste> singletonList(new FakePaste("paste0", false)));
+		assertEquals(1, report.getFailed());
+		assertTrue(report.getFailures().get(0).getException() instanceof RejectedExecutionException);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			new PastebinBatchUploader(2, executor).close();
+			assertFalse(executor.isShutdown());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parallelismMustBePositive() {
+		new PastebinBatchUploader(0);
+	}
+
+	/**
+	 * A paste which is pasted without a request
+	 */
+	private class FakePaste extends PastebinPaste {
+		private final boolean fail;
+
+		FakePaste(String contents, boolean fail) {
+			super("dev", contents);
+			this.fail = fail;
+		}
+
+		@Override
+		public PastebinLink paste() throws PasteException {
+			int now = running.incrementAndGet();
+			maxRunning.accumulateAndGet(now, Math::max);
+			try {
+				Thread.sleep(5);
+				if (fail) {
+					throw new PasteException("Failed to generate paste: "
+							+ getContents());
+				}
+				return new PastebinLink(this, new URL("https://pastebin.com/"
+						+ getContents()));
+			} catch (InterruptedException | MalformedURLException e) {
+				throw new PasteException(e.toString());
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jpaste.utils.web.InMemoryTransport;
+import org.jpaste.utils.web.Web;
+import org.jpaste.utils.web.WebClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * Parallel raw content downloads of a {@link PastebinContentFetcher} against
+ * raw pastes answered from memory
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinContentFetcherTest {
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+	private InMemoryTransport transport;
+	private WebClient previous;
+
+	@Before
+	public void answerRaw() {
+		transport = new InMemoryTransport();
+		transport.setHandler("/raw.php", exchange -> {
+			String key = InMemoryTransport.getParameters(exchange).get("i");
+			int now = running.incrementAndGet();
+			maxRunning.accumulateAndGet(now, Math::max);
+			try {
+				Thread.sleep(key.startsWith("slow") ? 200 : 5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+			if (key.startsWith("error")) {
+				throw new AssertionError("broken handler");
+			}
+			if (key.startsWith("missing")) {
+				return InMemoryTransport.response(exchange, 404, "Not Found");
+			}
+			return InMemoryTransport.response(exchange, 200, "contents of "
+					+ key);
+		});
+		previous = Web.getClient();
+		Web.setClient(new WebClient(transport));
+	}
+
+	@After
+	public void restoreClient() {
+		Web.setClient(previous);
+	}
+
+	@Test
+	public void contentsAreSetInOrder() throws Exception {
+		List<PastebinLink> links = links("a", "missing1", "b", "c");
+		List<PastebinLink> failed = new CopyOnWriteArrayList<PastebinLink>();
+		List<PastebinLink> fetched = fetch(new PastebinContentFetcher(2),
+				links, failed, null);
+
+		assertEquals(3, fetched.size());
+		assertEquals("a", fetched.get(0).getKey());
+		assertEquals("contents of c", fetched.get(2).getPaste().getContents());
+		assertEquals(1, failed.size());
+		assertEquals("missing1", failed.get(0).getKey());
+	}
+
+	@Test
+	public void concurrencyIsBounded() throws Exception {
+		List<PastebinLink> links = new ArrayList<PastebinLink>();
+		for (int i = 0; i < 30; i++) {
+			links.addAll(links("paste" + i));
+		}
+
+		assertEquals(30, fetch(new PastebinContentFetcher(3), links, null, null)
+				.size());
+		assertTrue(maxRunning.get() <= 3);
+	}
+
+	@Test
+	public void unorderedLinksAreHandedOnWhenDone() throws Exception {
+		PastebinContentFetcher fetcher = new PastebinContentFetcher(4);
+		fetcher.setOrdered(false);
+		List<PastebinLink> fetched = fetch(fetcher, links("slow", "a", "b"),
+				null, null);
+
+		assertEquals(3, fetched.size());
+		assertEquals("slow", fetched.get(2).getKey());
+	}
+
+	@Test
+	public void fetchedLinksAreNotRequested() throws Exception {
+		List<PastebinLink> links = links("a", "b");
+		links.get(0).getPaste().setContents("known");
+		fetch(new PastebinContentFetcher(2), links, null, null);
+
+		assertEquals(1, transport.getRequests());
+		assertEquals("known", links.get(0).getPaste().getContents());
+	}
+
+	@Test
+	public void errorIsReportedAsFailure() throws Exception {
+		List<PastebinLink> failed = new CopyOnWriteArrayList<PastebinLink>();
+		List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+		List<PastebinLink> fetched = fetch(new PastebinContentFetcher(2),
+				links("a", "error1"), failed, errors);
+
+		assertEquals(1, fetched.size());
+		assertEquals("error1", failed.get(0).getKey());
+		assertTrue(errors.get(0) instanceof AssertionError);
+	}
+
+	@Test
+	public void closeShutsDownOwnThreadsOnly() throws Exception {
+		PastebinContentFetcher fetcher = new PastebinContentFetcher(2);
+		fetcher.close();
+		List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+		assertEquals(0, fetch(fetcher, links("a"), null, errors).size());
+		assertTrue(errors.get(0) instanceof RejectedExecutionException);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			new PastebinContentFetcher(2, executor).close();
+			assertFalse(executor.isShutdown());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Fetches with a fetcher which is closed afterwards, collecting the
+	 * failed links and their errors into lists which may be
+	 * <code>null</code>
+	 */
+	private static List<PastebinLink> fetch(PastebinContentFetcher fetcher,
+			List<PastebinLink> links, List<PastebinLink> failed,
+			List<Throwable> errors) throws InterruptedException {
+		try (PastebinContentFetcher closed = fetcher) {
+			return closed.fetch(links, new PastebinContentFetcher.Listener() {
+				@Override
+				public void onFetched(PastebinLink link) {
+				}
+
+				@Override
+				public void onFailed(PastebinLink link, Throwable e) {
+					if (failed != null) {
+						failed.add(link);
+					}
+					if (errors != null) {
+						errors.add(e);
+					}
+				}
+			});
+		}
+	}
+
+	private static List<PastebinLink> links(String... keys) throws Exception {
+		List<PastebinLink> links = new ArrayList<PastebinLink>();
+		for (String key : keys) {
+			links.add(new PastebinLink(new PastebinPaste(), new URL(
+					"https://pastebin.com/" + key)));
+		}
+		return links;
+	}
+
+}
@@ -0,0 +1,145 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jpaste.exceptions.PasteException;
+import org.jpaste.pastebin.exceptions.RateLimitException;
+import org.jpaste.pastebin.local.LocalPastebinServer;
+import org.jpaste.utils.web.Web;
+import org.jpaste.utils.web.WebClient;
+import org.jpaste.utils.web.WebException;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * Rotation and cooldown of the keys of a {@link PastebinKeyPool} against a
+ * {@link LocalPastebinServer}
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinKeyPoolTest {
+	private static LocalPastebinServer server;
+
+	@BeforeClass
+	public static void startServer() throws IOException {
+		server = new LocalPastebinServer();
+		server.start();
+		Pastebin.setBaseURL(server.getBaseURL());
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		Pastebin.setBaseURL(Pastebin.BASE_URL);
+		server.close();
+	}
+
+	@Before
+	public void resetLimit() {
+		server.setPostLimit(0);
+		server.resetPostLimit();
+	}
+
+	@Test
+	public void roundRobinSpreadsPastes() throws Exception {
+		PastebinKeyPool pool = new PastebinKeyPool(PastebinKeyPool.Policy.ROUND_ROBIN);
+		pool.add("a");
+		pool.add("b");
+		Set<String> used = new HashSet<String>();
+		for (int i = 0; i < 4; i++) {
+			used.add(pool.paste(new PastebinPaste("contents " + i)).getPaste()
+					.getDeveloperKey());
+		}
+
+		assertEquals(2, used.size());
+		for (PastebinKeyPool.Key key : pool.getKeys()) {
+			assertEquals(2, key.getPastes());
+		}
+	}
+
+	@Test
+	public void throttledKeyCoolsDown() throws Exception {
+		server.setPostLimit(2);
+		new PastebinPaste("first", "contents").paste();
+		new PastebinPaste("first", "contents").paste();
+		PastebinKeyPool pool = new PastebinKeyPool(PastebinKeyPool.Policy.ROUND_ROBIN);
+		pool.setCooldown(60000, 120000);
+		PastebinKeyPool.Key first = pool.add("first");
+		pool.add("second");
+		for (int i = 0; i < 2; i++) {
+			assertEquals("second", pool.paste(new PastebinPaste("contents " + i))
+					.getPaste().getDeveloperKey());
+		}
+
+		assertEquals(1, first.getThrottles());
+		assertFalse(first.isAvailable());
+		assertEquals(1, pool.getAvailable());
+	}
+
+	@Test
+	public void allKeysCoolingDownIsRateLimited() throws Exception {
+		server.setPostLimit(1);
+		PastebinKeyPool pool = new PastebinKeyPool();
+		pool.setCooldown(60000, 120000);
+		PastebinKeyPool.Key key = pool.add("only");
+		pool.paste(new PastebinPaste("contents"));
+
+		assertThrows(PasteException.class,
+				() -> pool.paste(new PastebinPaste("over the limit")));
+		assertFalse(key.isAvailable());
+		assertThrows(RateLimitException.class, pool::acquire);
+	}
+
+	@Test
+	public void refusedPastesDontUseLimit() throws Exception {
+		server.setPostLimit(1);
+		PastebinPaste refused = new PastebinPaste("dev", "private");
+		refused.setVisibility(PastebinPaste.VISIBILITY_PRIVATE);
+		for (int i = 0; i < 3; i++) {
+			assertThrows(PasteException.class, refused::paste);
+		}
+
+		assertEquals("dev", new PastebinPaste("dev", "contents").paste()
+				.getPaste().getDeveloperKey());
+		assertThrows(PasteException.class,
+				() -> new PastebinPaste("dev", "over the limit").paste());
+	}
+
+	@Test
+	public void openBreakerDoesntFailKey() throws Exception {
+		WebClient previous = Web.getClient();
+		WebClient client = new WebClient();
+		client.setCircuitBreaker(1, 60000);
+		client.getCircuitBreaker(Pastebin.getPostLink()).onFailure();
+		Web.setClient(client);
+		try {
+			PastebinKeyPool pool = new PastebinKeyPool();
+			pool.setFailureThreshold(1);
+			PastebinKeyPool.Key key = pool.add("only");
+
+			assertThrows(WebException.class,
+					() -> pool.paste(new PastebinPaste("contents")));
+			assertEquals(0, key.getFailures());
+			assertTrue(key.isAvailable());
+		} finally {
+			Web.setClient(previous);
+		}
+	}
+
+	@Test
+	public void emptyPoolIsRejected() {
+		assertThrows(IllegalStateException.class,
+				() -> new PastebinKeyPool().acquire());
+	}
+
+}
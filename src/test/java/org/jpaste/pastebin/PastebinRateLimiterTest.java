@@ -0,0 +1,69 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpaste.pastebin.exceptions.RateLimitException;
+import org.jpaste.utils.web.Deadline;
+import org.junit.Test;
+
+/**
+ *
+ * Per developer key limits of the {@link PastebinRateLimiter}
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinRateLimiterTest {
+
+	@Test
+	public void nonBlockingLimiterRejects() {
+		PastebinRateLimiter limiter = new PastebinRateLimiter(1, 2);
+		limiter.setBlocking(false);
+		limiter.acquire("dev");
+		limiter.acquire("dev");
+
+		assertThrows(RateLimitException.class, () -> limiter.acquire("dev"));
+		limiter.acquire("other");
+	}
+
+	@Test
+	public void blockingLimiterWaitsWithinDeadline() {
+		PastebinRateLimiter limiter = new PastebinRateLimiter(0.1, 1);
+		limiter.acquire("dev");
+		long start = System.nanoTime();
+
+		assertThrows(RateLimitException.class, () -> Deadline.after(100,
+				TimeUnit.MILLISECONDS).call(() -> {
+			limiter.acquire("dev");
+			return null;
+		}));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertEquals(1, limiter.getBucket("dev").getRejected());
+	}
+
+	@Test
+	public void keysHaveOwnBuckets() {
+		PastebinRateLimiter limiter = new PastebinRateLimiter(1, 2);
+		limiter.setLimit("fast", 100, 10);
+
+		assertNotSame(limiter.getBucket("a"), limiter.getBucket("b"));
+		assertEquals(10, limiter.getBucket("fast").getBurst());
+		assertEquals(2, limiter.getBucket("a").getBurst());
+	}
+
+	@Test
+	public void newLimitDropsBuckets() {
+		PastebinRateLimiter limiter = new PastebinRateLimiter(1, 2);
+		limiter.getBucket("dev");
+		limiter.setLimit(5, 5);
+
+		assertEquals(0, limiter.getBuckets().size());
+		assertEquals(5, limiter.getBucket("dev").getBurst());
+	}
+
+}
@@ -0,0 +1,194 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jpaste.pastebin.exceptions.ParseException;
+import org.jpaste.utils.web.InMemoryTransport;
+import org.jpaste.utils.web.Web;
+import org.jpaste.utils.web.WebClient;
+import org.jpaste.utils.web.WebResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * Polls of a {@link PastebinScraper} against a scraping API answered from
+ * memory
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinScraperTest {
+	private final List<String> keys = new CopyOnWriteArrayList<String>();
+	private InMemoryTransport transport;
+	private WebClient previous;
+	private long date = 1500000000L;
+
+	@Before
+	public void answerScraping() {
+		transport = new InMemoryTransport();
+		transport.setHandler("/api_scraping.php", exchange -> {
+			StringBuilder json = new StringBuilder("[");
+			// newest first, like pastebin
+			for (int i = keys.size() - 1; i >= 0; i--) {
+				if (json.length() > 1) {
+					json.append(',');
+				}
+				json.append("{\"full_url\":\"https://pastebin.com/")
+						.append(keys.get(i)).append("\",\"key\":\"")
+						.append(keys.get(i)).append("\",\"date\":\"")
+						.append(date + i).append("\",\"title\":\"\",")
+						.append("\"syntax\":\"text\",\"expire\":\"0\"}");
+			}
+			return InMemoryTransport.response(exchange, 200, json.append(']')
+					.toString());
+		});
+		previous = Web.getClient();
+		Web.setClient(new WebClient(transport));
+		for (int i = 0; i < 20; i++) {
+			keys.add("paste" + i);
+		}
+	}
+
+	@After
+	public void restoreClient() {
+		Web.setClient(previous);
+	}
+
+	@Test
+	public void newPastesAreDeliveredOnce() throws Exception {
+		List<PastebinLink> received = new CopyOnWriteArrayList<PastebinLink>();
+		try (PastebinScraper scraper = new PastebinScraper()) {
+			scraper.subscribe(received::add);
+			List<PastebinLink> first = scraper.poll();
+			assertEquals(20, first.size());
+			assertEquals("paste0", first.get(0).getKey());
+			assertEquals(20, received.size());
+
+			assertEquals(0, scraper.poll().size());
+			keys.add("paste20");
+			List<PastebinLink> third = scraper.poll();
+
+			assertEquals(1, third.size());
+			assertEquals("paste20", third.get(0).getKey());
+			assertEquals(21, received.size());
+			assertEquals(3, scraper.getPolls());
+			assertEquals(40, scraper.getDuplicates());
+		}
+	}
+
+	@Test
+	public void pollWithoutOverlapCountsGap() throws Exception {
+		try (PastebinScraper scraper = new PastebinScraper()) {
+			scraper.poll();
+			List<String> next = new ArrayList<String>();
+			for (int i = 100; i < 120; i++) {
+				next.add("paste" + i);
+			}
+			keys.clear();
+			keys.addAll(next);
+			date += 1000;
+
+			assertEquals(20, scraper.poll().size());
+			assertEquals(1, scraper.getGaps());
+			assertTrue(scraper.getEstimatedMissed() >= 0);
+		}
+	}
+
+	@Test
+	public void startedScraperPolls() throws Exception {
+		List<PastebinLink> received = new CopyOnWriteArrayList<PastebinLink>();
+		try (PastebinScraper scraper = new PastebinScraper()) {
+			scraper.subscribe(received::add);
+			scraper.setInterval(10);
+			scraper.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (scraper.getPolls() < 3
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			scraper.stop();
+
+			assertTrue(scraper.getPolls() >= 3);
+			assertEquals(20, received.size());
+		}
+	}
+
+	@Test
+	public void restartDuringPollKeepsOneChain() throws Exception {
+		List<Long> starts = new CopyOnWriteArrayList<Long>();
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		transport.setHandler("/api_scraping.php", exchange -> {
+			starts.add(System.nanoTime());
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return InMemoryTransport.response(exchange, 200, "[]");
+		});
+		try (PastebinScraper scraper = new PastebinScraper()) {
+			scraper.setInterval(200);
+			scraper.start();
+			assertTrue(entered.await(5, TimeUnit.SECONDS));
+			scraper.stop();
+			scraper.start();
+			release.countDown();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (starts.size() < 4 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			scraper.stop();
+		}
+
+		// the restart polls right after the blocked poll, then once per
+		// interval, a second chain would poll twice per interval
+		assertTrue(starts.size() >= 4);
+		assertTrue(starts.get(3) - starts.get(2) >= TimeUnit.MILLISECONDS
+				.toNanos(100));
+	}
+
+	@Test
+	public void responseIsClosedWhenReaderFails() {
+		AtomicBoolean closed = new AtomicBoolean();
+		transport.setHandler("/api_scraping.php", exchange -> new WebResponse(
+				exchange.getURL(), 200, "",
+				Collections.<String, List<String>> emptyMap(), new InputStream() {
+					private boolean read;
+
+					@Override
+					public int read() throws IOException {
+						if (read) {
+							throw new IOException("Connection reset");
+						}
+						read = true;
+						return '[';
+					}
+
+					@Override
+					public void close() {
+						closed.set(true);
+					}
+				}));
+
+		assertThrows(ParseException.class, () -> ScrapedPasteReader
+				.open(Pastebin.getScrapingLink()));
+		assertTrue(closed.get());
+	}
+
+}
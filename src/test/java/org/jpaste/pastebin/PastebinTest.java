@@ -0,0 +1,141 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jpaste.pastebin.local.LocalPastebinServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * Round trips of pastes and paste lists against a {@link LocalPastebinServer}
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinTest {
+	private static LocalPastebinServer server;
+
+	@BeforeClass
+	public static void startServer() throws IOException {
+		server = new LocalPastebinServer();
+		server.populate(40, 200);
+		server.start();
+		Pastebin.setBaseURL(server.getBaseURL() + "/");
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		Pastebin.setBaseURL(Pastebin.BASE_URL);
+		server.close();
+	}
+
+	@Test
+	public void pasteRoundTrip() throws Exception {
+		PastebinPaste paste = new PastebinPaste("dev", "hello <world> & \"q\"");
+		paste.setPasteTitle("T <1>");
+		paste.setPasteFormat("java");
+		PastebinLink link = paste.paste();
+
+		assertNotNull(link.getKey());
+		assertTrue(link.getLink().toString().startsWith(server.getBaseURL()));
+		assertEquals("hello <world> & \"q\"",
+				PastebinLink.getContents(link.getKey()));
+	}
+
+	@Test
+	public void streamedContentsMatchText() throws Exception {
+		String contents = "first line\nsecond line é";
+		String key = server.addPaste(contents, "streamed", "text");
+
+		InputStream in = PastebinLink.openContents(key);
+		try {
+			assertEquals(contents, new String(readAll(in), StandardCharsets.UTF_8));
+		} finally {
+			in.close();
+		}
+		StringWriter writer = new StringWriter();
+		Reader reader = PastebinLink.openContentsReader(key);
+		try {
+			char[] buffer = new char[64];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				writer.write(buffer, 0, read);
+			}
+		} finally {
+			reader.close();
+		}
+		assertEquals(contents, writer.toString());
+	}
+
+	@Test
+	public void emptyPasteIsRejected() {
+		assertThrows(IllegalStateException.class,
+				() -> new PastebinPaste("dev", "").paste());
+	}
+
+	@Test
+	public void missingDeveloperKeyIsRejected() {
+		assertThrows(IllegalStateException.class,
+				() -> new PastebinPaste("contents").paste());
+	}
+
+	@Test
+	public void trendingIsSortedByHits() throws Exception {
+		PastebinLink[] trending = Pastebin.getTrending("dev");
+
+		assertTrue(trending.length > 0);
+		for (int i = 1; i < trending.length; i++) {
+			assertTrue(trending[i - 1].getHits() >= trending[i].getHits());
+		}
+	}
+
+	@Test
+	public void trendingCallsGetOwnLinks() throws Exception {
+		PastebinLink[] first = Pastebin.getTrending("dev");
+		PastebinLink[] second = Pastebin.getTrending("dev");
+
+		assertEquals(first.length, second.length);
+		assertFalse(first[0] == second[0]);
+		assertEquals(first[0].getKey(), second[0].getKey());
+	}
+
+	@Test
+	public void mostRecentStreamsLikeItReads() throws Exception {
+		PastebinLink[] recent = Pastebin.getMostRecent(null);
+		String keys;
+		try (Stream<PastebinLink> stream = Pastebin.streamMostRecent(null)) {
+			keys = stream.map(PastebinLink::getKey).collect(
+					Collectors.joining(","));
+		}
+
+		assertTrue(recent.length > 0);
+		assertEquals(Stream.of(recent).map(PastebinLink::getKey)
+				.collect(Collectors.joining(",")), keys);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,109 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *
+ * Intervals and limits chosen by a {@link PollingCadence}
+ *
+ * @author Brian B
+ *
+ */
+public class PollingCadenceTest {
+
+	@Test
+	public void quantileOfNormalDistribution() {
+		assertEquals(2.326, PollingCadence.quantile(0.01), 1e-3);
+		assertEquals(1.645, PollingCadence.quantile(0.05), 1e-3);
+	}
+
+	@Test
+	public void noEstimateUsesLongestIntervalAndLargestLimit() {
+		PollingCadence cadence = cadence();
+
+		assertEquals(60000, cadence.interval());
+		assertEquals(500, cadence.limit(60000));
+	}
+
+	@Test
+	public void firstPollEstimatesFromSpan() {
+		PollingCadence cadence = cadence();
+		// 1000 gaps over 100 seconds
+		cadence.update(200000, 1001, 1001, 0, 100000, -1);
+
+		assertEquals(0.01, cadence.getRate(), 1e-9);
+		long interval = cadence.interval();
+		assertTrue(interval > 44000 && interval < 46000);
+		assertEquals(500, cadence.limit(interval));
+	}
+
+	@Test
+	public void intervalIsClampedAndLimitFitsIt() {
+		PollingCadence cadence = cadence();
+		cadence.update(200000, 101, 101, 0, 100000, -1);
+
+		assertEquals(60000, cadence.interval());
+		int limit = cadence.limit(60000);
+		double mean = 0.001 * 60000;
+		assertTrue(limit > mean + 2.3 * Math.sqrt(mean));
+		assertTrue(limit < 100);
+	}
+
+	@Test
+	public void fastRateUsesShortestInterval() {
+		PollingCadence cadence = cadence();
+		cadence.update(200000, 500, 500, 0, 499, -1);
+
+		assertEquals(1000, cadence.interval());
+		assertEquals(500, cadence.limit(1000));
+	}
+
+	@Test
+	public void slowRateUsesSmallestLimit() {
+		PollingCadence cadence = cadence();
+		cadence.update(200000, 2, 2, 0, 100000, -1);
+
+		assertEquals(25, cadence.limit(cadence.interval()));
+	}
+
+	@Test
+	public void overlappingPollsAreSmoothed() {
+		PollingCadence cadence = cadence();
+		cadence.update(200000, 101, 101, 0, 100000, -1);
+		// 10 new pastes in 1 second
+		cadence.update(201000, 20, 10, 91000, 101000, 100000);
+
+		assertEquals(0.001 + 0.3 * (0.01 - 0.001), cadence.getRate(), 1e-9);
+	}
+
+	@Test
+	public void pollWithoutNewPastesLowersRate() {
+		PollingCadence cadence = cadence();
+		cadence.update(200000, 101, 101, 0, 100000, -1);
+		cadence.update(201000, 20, 0, 80000, 100000, 100000);
+
+		assertEquals(0.0007, cadence.getRate(), 1e-9);
+	}
+
+	@Test
+	public void spikeAfterGapIsTakenAsIs() {
+		PollingCadence cadence = cadence();
+		cadence.update(200000, 101, 101, 0, 100000, -1);
+		cadence.update(300000, 101, 101, 200000, 210000, 100000);
+
+		assertEquals(0.01, cadence.getRate(), 1e-9);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missRateMustBeBelowHalf() {
+		new PollingCadence(500, 0.5, 1000, 60000);
+	}
+
+	private static PollingCadence cadence() {
+		return new PollingCadence(500, 0.01, 1000, 60000);
+	}
+
+}
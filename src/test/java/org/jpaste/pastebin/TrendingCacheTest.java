@@ -0,0 +1,91 @@
+package org.jpaste.pastebin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.jpaste.pastebin.local.LocalPastebinServer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * Reads and background refreshes of the {@link TrendingCache} against a
+ * {@link LocalPastebinServer}
+ *
+ * @author Brian B
+ *
+ */
+public class TrendingCacheTest {
+	private static LocalPastebinServer server;
+
+	@BeforeClass
+	public static void startServer() throws IOException {
+		server = new LocalPastebinServer();
+		server.populate(30, 100);
+		server.start();
+		Pastebin.setBaseURL(server.getBaseURL());
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		Pastebin.setBaseURL(Pastebin.BASE_URL);
+		server.close();
+	}
+
+	@After
+	public void removeCache() {
+		TrendingCache cache = Pastebin.getTrendingCache();
+		Pastebin.setTrendingCache(null);
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void readsAreAnsweredFromMemory() throws Exception {
+		TrendingCache cache = new TrendingCache();
+		Pastebin.setTrendingCache(cache);
+		long requests = server.getRequests();
+		PastebinLink[] first = Pastebin.getTrending("dev");
+		PastebinLink[] second = Pastebin.getTrending("dev");
+
+		assertEquals(requests + 1, server.getRequests());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(first.length, second.length);
+		assertFalse(first[0] == second[0]);
+	}
+
+	@Test
+	public void refreshesInBackground() throws Exception {
+		TrendingCache cache = new TrendingCache(50, 5000);
+		Pastebin.setTrendingCache(cache);
+		Pastebin.getTrending("dev");
+		long deadline = System.currentTimeMillis() + 5000;
+		while (cache.getRefreshes() == 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertTrue(cache.getRefreshes() > 0);
+		assertTrue(cache.getAge("dev") < 5000);
+	}
+
+	@Test
+	public void invalidateFetchesAgain() throws Exception {
+		TrendingCache cache = new TrendingCache();
+		Pastebin.setTrendingCache(cache);
+		Pastebin.getTrending("dev");
+		cache.invalidate("dev");
+
+		assertEquals(-1, cache.getAge("dev"));
+		Pastebin.getTrending("dev");
+		assertEquals(2, cache.getMisses());
+	}
+
+}
@@ -0,0 +1,89 @@
+package org.jpaste.pastebin.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+
+import org.jpaste.pastebin.Pastebin;
+import org.jpaste.pastebin.PastebinLink;
+import org.jpaste.pastebin.PastebinPaste;
+import org.jpaste.pastebin.exceptions.LoginException;
+import org.jpaste.pastebin.local.LocalPastebinServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * Logs in to a {@link LocalPastebinServer} and manages the pastes of the
+ * account
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinAccountTest {
+	private static LocalPastebinServer server;
+
+	@BeforeClass
+	public static void startServer() throws IOException {
+		server = new LocalPastebinServer();
+		server.addUser("bob", "secret");
+		server.addUser("alice", "secret");
+		server.start();
+		Pastebin.setBaseURL(server.getBaseURL());
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		Pastebin.setBaseURL(Pastebin.BASE_URL);
+		server.close();
+	}
+
+	@Test
+	public void loginFetchesSession() throws Exception {
+		PastebinAccount account = new PastebinAccount("dev", "bob", "secret");
+		account.login();
+
+		assertNotNull(account.getUserSessionId());
+	}
+
+	@Test
+	public void badPasswordFailsLogin() {
+		PastebinAccount account = new PastebinAccount("dev", "bob", "wrong");
+
+		assertThrows(LoginException.class, account::login);
+	}
+
+	@Test
+	public void accountDetails() throws Exception {
+		PastebinAccount account = new PastebinAccount("dev", "bob", "secret");
+		account.login();
+		PastebinAccountDetails details = account.getAccountDetails();
+
+		assertEquals("bob", details.getUsername());
+		assertEquals("bob@localhost", details.getEmail());
+	}
+
+	@Test
+	public void listAndDeletePastes() throws Exception {
+		PastebinAccount account = new PastebinAccount("dev", "alice", "secret");
+		account.login();
+		PastebinPaste paste = new PastebinPaste(account);
+		paste.setDeveloperKey("dev");
+		paste.setContents("owned by alice");
+		paste.setPasteTitle("mine");
+		PastebinLink link = paste.paste();
+
+		PastebinLink[] pastes = account.getPastes();
+		assertEquals(1, pastes.length);
+		assertEquals(link.getKey(), pastes[0].getKey());
+		assertEquals("mine", pastes[0].getPaste().getPasteTitle());
+
+		int count = server.getPasteCount();
+		pastes[0].delete("dev", account);
+		assertEquals(count - 1, server.getPasteCount());
+	}
+
+}
@@ -0,0 +1,802 @@
+package org.jpaste.pastebin.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jpaste.pastebin.Pastebin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * An embedded stand-in for pastebin, for integration and load tests
+ *
+ * <p>
+ * Serves <code>api_post.php</code> (paste, list, trends, delete and
+ * userdetails), <code>api_login.php</code>, <code>raw.php</code> and
+ * <code>api_scraping.php</code> from memory, with the response formats of
+ * pastebin. Any non empty developer key is accepted. Point the library at the
+ * server with {@link Pastebin#setBaseURL(String)}:
+ * </p>
+ *
+ * <pre>
+ * try (LocalPastebinServer server = new LocalPastebinServer()) {
+ * 	server.addUser(&quot;user&quot;, &quot;password&quot;);
+ * 	server.populate(1000, 2048);
+ * 	server.setLatency(20, 80);
+ * 	server.setErrorRate(0.01);
+ * 	server.start();
+ * 	Pastebin.setBaseURL(server.getBaseURL());
+ * 	...
+ * }
+ * </pre>
+ *
+ * @author Brian B
+ *
+ */
+public class LocalPastebinServer implements Closeable {
+	private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+	private static final String[] FORMATS = { "text", "java", "python",
+			"javascript", "c", "cpp", "php", "bash", "sql", "xml" };
+	private static final String TEXT = "text/plain; charset=UTF-8";
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ConcurrentHashMap<String, LocalPaste> pastes = new ConcurrentHashMap<String, LocalPaste>();
+	private final ConcurrentLinkedDeque<LocalPaste> recent = new ConcurrentLinkedDeque<LocalPaste>();
+	private final ConcurrentHashMap<String, LocalUser> users = new ConcurrentHashMap<String, LocalUser>();
+	private final ConcurrentHashMap<String, LocalUser> sessions = new ConcurrentHashMap<String, LocalUser>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile long minLatency;
+	private volatile long maxLatency;
+	private volatile double errorRate;
+	private final ConcurrentHashMap<String, AtomicInteger> postCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	private volatile int trendingSize = 18;
+	private volatile int postLimit;
+
+	/**
+	 * Creates a new <code>LocalPastebinServer</code> instance on a free
+	 * loopback port.
+	 *
+	 * @throws IOException
+	 *             if the server socket could not be opened
+	 */
+	public LocalPastebinServer() throws IOException {
+		this(0);
+	}
+
+	/**
+	 * Creates a new <code>LocalPastebinServer</code> instance.
+	 *
+	 * @param port
+	 *            the loopback port to listen on, 0 for a free one
+	 * @throws IOException
+	 *             if the server socket could not be opened
+	 */
+	public LocalPastebinServer(int port) throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port), 0);
+		final AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jpastebin-local-"
+						+ threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/api/api_post.php", new Endpoint() {
+			@Override
+			String serve(HttpExchange exchange) throws IOException {
+				return post(parameters(exchange));
+			}
+		});
+		server.createContext("/api/api_login.php", new Endpoint() {
+			@Override
+			String serve(HttpExchange exchange) throws IOException {
+				return login(parameters(exchange));
+			}
+		});
+		server.createContext("/raw.php", new Endpoint() {
+			@Override
+			String serve(HttpExchange exchange) throws IOException {
+				return raw(exchange, parameters(exchange));
+			}
+		});
+		server.createContext("/api_scraping.php", new Endpoint() {
+			@Override
+			String serve(HttpExchange exchange) throws IOException {
+				return scrape(exchange, parameters(exchange));
+			}
+		});
+	}
+
+	/**
+	 * Starts serving requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops serving requests and frees the server threads
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Gets the base URL to pass to {@link Pastebin#setBaseURL(String)}
+	 *
+	 * @return base URL, such as <code>http://127.0.0.1:8080</code>
+	 */
+	public String getBaseURL() {
+		InetSocketAddress address = server.getAddress();
+		return "http://" + address.getAddress().getHostAddress() + ":"
+				+ address.getPort();
+	}
+
+	/**
+	 * Delays every response by a random time between two bounds
+	 *
+	 * @param minLatency
+	 *            shortest delay in milliseconds
+	 * @param maxLatency
+	 *            longest delay in milliseconds
+	 */
+	public void setLatency(long minLatency, long maxLatency) {
+		if (minLatency < 0 || maxLatency < minLatency) {
+			throw new IllegalArgumentException("Invalid latency bounds: "
+					+ minLatency + " - " + maxLatency);
+		}
+		this.minLatency = minLatency;
+		this.maxLatency = maxLatency;
+	}
+
+	/**
+	 * Sets the share of requests which fail with
+	 * <code>503 Service Unavailable</code>
+	 *
+	 * @param errorRate
+	 *            share of requests, between 0 and 1
+	 */
+	public void setErrorRate(double errorRate) {
+		if (!(errorRate >= 0 && errorRate <= 1)) {
+			throw new IllegalArgumentException(
+					"Error rate must be between 0 and 1: " + errorRate);
+		}
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Sets the amount of pastes the trends option answers with
+	 *
+	 * @param trendingSize
+	 *            amount of pastes, 18 like pastebin by default
+	 */
+	public void setTrendingSize(int trendingSize) {
+		if (trendingSize < 0) {
+			throw new IllegalArgumentException(
+					"Trending size can't be negative: " + trendingSize);
+		}
+		this.trendingSize = trendingSize;
+	}
+
+	/**
+	 * Sets the amount of pastes a developer key may paste, further pastes are
+	 * answered with the post limit message of pastebin
+	 *
+	 * @param postLimit
+	 *            amount of pastes per developer key, <code>0</code> for no
+	 *            limit
+	 */
+	public void setPostLimit(int postLimit) {
+		if (postLimit < 0) {
+			throw new IllegalArgumentException(
+					"Post limit can't be negative: " + postLimit);
+		}
+		this.postLimit = postLimit;
+	}
+
+	/**
+	 * Forgets the pastes counted against the post limit, like pastebin does
+	 * once a day
+	 */
+	public void resetPostLimit() {
+		postCounts.clear();
+	}
+
+	/**
+	 * Gets the amount of requests served, failed ones included
+	 *
+	 * @return requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Gets the amount of requests which failed on purpose
+	 *
+	 * @return failed requests
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Gets the amount of stored pastes
+	 *
+	 * @return pastes
+	 */
+	public int getPasteCount() {
+		return pastes.size();
+	}
+
+	/**
+	 * Adds an user who can log in
+	 *
+	 * @param username
+	 *            the username
+	 * @param password
+	 *            the password
+	 */
+	public void addUser(String username, String password) {
+		users.put(username, new LocalUser(username, password));
+	}
+
+	/**
+	 * Adds public pastes with random titles, syntaxes, hits and contents, one
+	 * second apart and ending now
+	 *
+	 * @param count
+	 *            amount of pastes
+	 * @param contentLength
+	 *            length of the contents of every paste
+	 */
+	public void populate(int count, int contentLength) {
+		Random random = ThreadLocalRandom.current();
+		long now = System.currentTimeMillis() / 1000;
+		for (int i = count - 1; i >= 0; i--) {
+			StringBuilder contents = new StringBuilder(contentLength);
+			while (contents.length() < contentLength) {
+				contents.append(contents.length() % 64 == 63 ? '\n'
+						: (char) ('a' + random.nextInt(26)));
+			}
+			LocalPaste paste = new LocalPaste(newKey(), contents.toString(),
+					"Paste " + (count - i), FORMATS[random.nextInt(FORMATS.length)],
+					0, 0, now - i, null);
+			paste.hits.set(random.nextInt(10000));
+			store(paste);
+		}
+	}
+
+	/**
+	 * Adds a paste
+	 *
+	 * @param contents
+	 *            contents of the paste
+	 * @param title
+	 *            title of the paste, may be <code>null</code>
+	 * @param format
+	 *            syntax of the paste, may be <code>null</code>
+	 * @return key of the paste
+	 */
+	public String addPaste(String contents, String title, String format) {
+		LocalPaste paste = new LocalPaste(newKey(), contents, title, format, 0,
+				0, System.currentTimeMillis() / 1000, null);
+		store(paste);
+		return paste.key;
+	}
+
+	private void store(LocalPaste paste) {
+		pastes.put(paste.key, paste);
+		recent.addFirst(paste);
+	}
+
+	private void remove(LocalPaste paste) {
+		pastes.remove(paste.key);
+		recent.remove(paste);
+	}
+
+	private LocalPaste find(String key) {
+		LocalPaste paste = key == null ? null : pastes.get(key);
+		if (paste != null && paste.isExpired()) {
+			remove(paste);
+			return null;
+		}
+		return paste;
+	}
+
+	private String newKey() {
+		Random random = ThreadLocalRandom.current();
+		char[] key = new char[8];
+		do {
+			for (int i = 0; i < key.length; i++) {
+				key[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			}
+		} while (pastes.containsKey(new String(key)));
+		return new String(key);
+	}
+
+	private String post(Map<String, String> parameters) {
+		String developerKey = parameters.get("api_dev_key");
+		if (developerKey == null || developerKey.isEmpty()) {
+			return "Bad API request, invalid api_dev_key";
+		}
+		String option = parameters.get("api_option");
+		if ("paste".equals(option)) {
+			AtomicInteger count = postCount(developerKey);
+			int posted;
+			do {
+				posted = count.get();
+				if (postLimit > 0 && posted >= postLimit) {
+					return "Post limit, maximum pastes per 24h reached";
+				}
+			} while (!count.compareAndSet(posted, posted + 1));
+			String response = paste(parameters);
+			if (!response.startsWith("http")) {
+				// only created pastes count, like on pastebin
+				count.decrementAndGet();
+			}
+			return response;
+		}
+		if ("trends".equals(option)) {
+			return trends();
+		}
+		LocalUser user = sessions.get(String.valueOf(parameters
+				.get("api_user_key")));
+		if ("list".equals(option)) {
+			return user == null ? "Bad API request, invalid api_user_key"
+					: list(user, parameters);
+		}
+		if ("delete".equals(option)) {
+			return user == null ? "Bad API request, invalid api_user_key"
+					: delete(user, parameters);
+		}
+		if ("userdetails".equals(option)) {
+			return user == null ? "Bad API request, invalid api_user_key"
+					: user.toXML();
+		}
+		return "Bad API request, invalid api_option";
+	}
+
+	private AtomicInteger postCount(String developerKey) {
+		AtomicInteger count = postCounts.get(developerKey);
+		if (count == null) {
+			AtomicInteger created = new AtomicInteger();
+			count = postCounts.putIfAbsent(developerKey, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		return count;
+	}
+
+	private String paste(Map<String, String> parameters) {
+		String code = parameters.get("api_paste_code");
+		if (code == null || code.isEmpty()) {
+			return "Bad API request, api_paste_code was empty";
+		}
+		LocalUser owner = null;
+		if (parameters.containsKey("api_user_key")) {
+			owner = sessions.get(parameters.get("api_user_key"));
+			if (owner == null) {
+				return "Bad API request, invalid api_user_key";
+			}
+		}
+		int visibility = 0;
+		if (parameters.containsKey("api_paste_private")) {
+			try {
+				visibility = Integer.parseInt(parameters
+						.get("api_paste_private"));
+			} catch (NumberFormatException e) {
+				visibility = -1;
+			}
+			if (visibility < 0 || visibility > 2
+					|| (visibility == 2 && owner == null)) {
+				return "Bad API request, invalid api_paste_private";
+			}
+		}
+		long expire = 0;
+		String expireDate = parameters.get("api_paste_expire_date");
+		if (expireDate != null) {
+			expire = expireSeconds(expireDate);
+			if (expire < 0) {
+				return "Bad API request, invalid api_paste_expire_date";
+			}
+		}
+		LocalPaste paste = new LocalPaste(newKey(), code,
+				parameters.get("api_paste_name"),
+				parameters.get("api_paste_format"), visibility, expire,
+				System.currentTimeMillis() / 1000, owner);
+		store(paste);
+		return getBaseURL() + "/" + paste.key;
+	}
+
+	private static long expireSeconds(String value) {
+		if (value.equals("N")) {
+			return 0;
+		}
+		if (value.equals("10M")) {
+			return 10 * 60;
+		}
+		if (value.equals("1H")) {
+			return 60 * 60;
+		}
+		if (value.equals("1D")) {
+			return 60 * 60 * 24;
+		}
+		if (value.equals("1W")) {
+			return 60 * 60 * 24 * 7;
+		}
+		if (value.equals("2W")) {
+			return 60 * 60 * 24 * 14;
+		}
+		if (value.equals("1M")) {
+			return 60 * 60 * 24 * 30;
+		}
+		return -1;
+	}
+
+	private String trends() {
+		List<LocalPaste> trending = new ArrayList<LocalPaste>();
+		for (LocalPaste paste : recent) {
+			if (paste.visibility == 0 && !paste.isExpired()) {
+				trending.add(paste);
+			}
+		}
+		Collections.sort(trending, (a, b) -> Long.compare(b.hits.get(),
+				a.hits.get()));
+		return toXML(trending.subList(0,
+				Math.min(trendingSize, trending.size())));
+	}
+
+	private String list(LocalUser user, Map<String, String> parameters) {
+		int limit = 50;
+		if (parameters.containsKey("api_results_limit")) {
+			try {
+				limit = Integer.parseInt(parameters.get("api_results_limit"));
+			} catch (NumberFormatException e) {
+				limit = 0;
+			}
+			if (limit < 1 || limit > 1000) {
+				return "Bad API request, invalid api_results_limit";
+			}
+		}
+		List<LocalPaste> owned = new ArrayList<LocalPaste>();
+		for (Iterator<LocalPaste> it = recent.iterator(); it.hasNext()
+				&& owned.size() < limit;) {
+			LocalPaste paste = it.next();
+			if (paste.owner == user && !paste.isExpired()) {
+				owned.add(paste);
+			}
+		}
+		return toXML(owned);
+	}
+
+	private String delete(LocalUser user, Map<String, String> parameters) {
+		LocalPaste paste = find(parameters.get("api_paste_key"));
+		if (paste == null || paste.owner != user) {
+			return "Bad API request, invalid permission to remove paste";
+		}
+		remove(paste);
+		return "Paste Removed";
+	}
+
+	private String login(Map<String, String> parameters) {
+		String developerKey = parameters.get("api_dev_key");
+		if (developerKey == null || developerKey.isEmpty()) {
+			return "Bad API request, invalid api_dev_key";
+		}
+		LocalUser user = users.get(String.valueOf(parameters
+				.get("api_user_name")));
+		if (user == null
+				|| !user.password.equals(parameters.get("api_user_password"))) {
+			return "Bad API request, invalid login";
+		}
+		Random random = ThreadLocalRandom.current();
+		StringBuilder session = new StringBuilder(32);
+		for (int i = 0; i < 32; i++) {
+			session.append(Character.forDigit(random.nextInt(16), 16));
+		}
+		sessions.put(session.toString(), user);
+		return session.toString();
+	}
+
+	private String raw(HttpExchange exchange, Map<String, String> parameters)
+			throws IOException {
+		LocalPaste paste = find(parameters.get("i"));
+		if (paste == null || paste.visibility == 2) {
+			respond(exchange, 404, TEXT, "Not Found (#404)");
+			return null;
+		}
+		paste.hits.incrementAndGet();
+		return paste.contents;
+	}
+
+	private String scrape(HttpExchange exchange, Map<String, String> parameters)
+			throws IOException {
+		int limit = 50;
+		if (parameters.containsKey("limit")) {
+			try {
+				limit = Math.max(1,
+						Math.min(500, Integer.parseInt(parameters.get("limit"))));
+			} catch (NumberFormatException e) {
+				// pastebin falls back to the default as well
+			}
+		}
+		String language = parameters.get("lang");
+		StringBuilder json = new StringBuilder("[");
+		int count = 0;
+		for (Iterator<LocalPaste> it = recent.iterator(); it.hasNext()
+				&& count < limit;) {
+			LocalPaste paste = it.next();
+			if (paste.visibility != 0 || paste.isExpired()
+					|| (language != null && !language.equals(paste.format))) {
+				continue;
+			}
+			if (count++ > 0) {
+				json.append(',');
+			}
+			paste.toJSON(json, getBaseURL());
+		}
+		respond(exchange, 200, "application/json; charset=UTF-8",
+				json.append(']').toString());
+		return null;
+	}
+
+	private static String toXML(List<LocalPaste> list) {
+		if (list.isEmpty()) {
+			return "No pastes found.";
+		}
+		StringBuilder xml = new StringBuilder();
+		for (LocalPaste paste : list) {
+			paste.toXML(xml);
+		}
+		return xml.toString();
+	}
+
+	private static Map<String, String> parameters(HttpExchange exchange)
+			throws IOException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		decode(exchange.getRequestURI().getRawQuery(), parameters);
+		if ("POST".equals(exchange.getRequestMethod())) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			InputStream in = exchange.getRequestBody();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+			decode(new String(body.toByteArray(), StandardCharsets.US_ASCII),
+					parameters);
+		}
+		return parameters;
+	}
+
+	private static void decode(String form, Map<String, String> parameters)
+			throws UnsupportedEncodingException {
+		if (form == null || form.isEmpty()) {
+			return;
+		}
+		for (String pair : form.split("&")) {
+			int split = pair.indexOf('=');
+			String name = split < 0 ? pair : pair.substring(0, split);
+			String value = split < 0 ? "" : pair.substring(split + 1);
+			parameters.put(URLDecoder.decode(name, "UTF-8"),
+					URLDecoder.decode(value, "UTF-8"));
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int statusCode,
+			String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(statusCode, bytes.length == 0 ? -1
+				: bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	private static void escape(StringBuilder out, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			case '&':
+				out.append("&amp;");
+				break;
+			default:
+				out.append(c);
+			}
+		}
+	}
+
+	private static void quote(StringBuilder out, String text) {
+		out.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < 0x20) {
+				out.append(String.format("\\u%04x", (int) c));
+			} else {
+				out.append(c);
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Applies the latency and error rate before handing a request on
+	 */
+	private abstract class Endpoint implements HttpHandler {
+
+		/**
+		 * Handles a request
+		 *
+		 * @return the plain text response, <code>null</code> if the response
+		 *         has been sent already
+		 */
+		abstract String serve(HttpExchange exchange) throws IOException;
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				requests.incrementAndGet();
+				Random random = ThreadLocalRandom.current();
+				long latency = minLatency + (maxLatency > minLatency ? (long) (random
+						.nextDouble() * (maxLatency - minLatency)) : 0);
+				if (latency > 0) {
+					Thread.sleep(latency);
+				}
+				if (errorRate > 0 && random.nextDouble() < errorRate) {
+					failures.incrementAndGet();
+					respond(exchange, 503, TEXT, "Service Unavailable");
+					return;
+				}
+				String response = serve(exchange);
+				if (response != null) {
+					respond(exchange, 200, TEXT, response);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private class LocalPaste {
+		private final String key;
+		private final String contents;
+		private final String title;
+		private final String format;
+		private final int visibility;
+		private final long expire;
+		private final long date;
+		private final LocalUser owner;
+		private final AtomicLong hits = new AtomicLong();
+
+		private LocalPaste(String key, String contents, String title,
+				String format, int visibility, long expire, long date,
+				LocalUser owner) {
+			this.key = key;
+			this.contents = contents;
+			this.title = title == null ? "" : title;
+			this.format = format == null ? "text" : format;
+			this.visibility = visibility;
+			this.expire = expire;
+			this.date = date;
+			this.owner = owner;
+		}
+
+		private boolean isExpired() {
+			return expire > 0
+					&& System.currentTimeMillis() / 1000 >= date + expire;
+		}
+
+		private void toXML(StringBuilder xml) {
+			xml.append("<paste>\r\n<paste_key>").append(key)
+					.append("</paste_key>\r\n<paste_date>").append(date)
+					.append("</paste_date>\r\n<paste_title>");
+			escape(xml, title);
+			xml.append("</paste_title>\r\n<paste_size>")
+					.append(contents.getBytes(StandardCharsets.UTF_8).length)
+					.append("</paste_size>\r\n<paste_expire_date>")
+					.append(expire == 0 ? 0 : date + expire)
+					.append("</paste_expire_date>\r\n<paste_private>")
+					.append(visibility)
+					.append("</paste_private>\r\n<paste_format_long>");
+			escape(xml, format);
+			xml.append("</paste_format_long>\r\n<paste_format_short>");
+			escape(xml, format);
+			xml.append("</paste_format_short>\r\n<paste_url>")
+					.append(getBaseURL()).append('/').append(key)
+					.append("</paste_url>\r\n<paste_hits>").append(hits.get())
+					.append("</paste_hits>\r\n</paste>\r\n");
+		}
+
+		private void toJSON(StringBuilder json, String baseURL) {
+			json.append("{\"scrape_url\":");
+			quote(json, baseURL + "/api_scrape_item.php?i=" + key);
+			json.append(",\"full_url\":");
+			quote(json, baseURL + "/" + key);
+			json.append(",\"date\":\"").append(date).append("\",\"key\":\"")
+					.append(key).append("\",\"size\":\"")
+					.append(contents.getBytes(StandardCharsets.UTF_8).length)
+					.append("\",\"expire\":\"")
+					.append(expire == 0 ? 0 : date + expire)
+					.append("\",\"title\":");
+			quote(json, title);
+			json.append(",\"syntax\":");
+			quote(json, format);
+			json.append(",\"user\":");
+			quote(json, owner == null ? "" : owner.username);
+			json.append('}');
+		}
+	}
+
+	private class LocalUser {
+		private final String username;
+		private final String password;
+
+		private LocalUser(String username, String password) {
+			this.username = username;
+			this.password = password;
+		}
+
+		private String toXML() {
+			StringBuilder xml = new StringBuilder("<user>\r\n<user_name>");
+			escape(xml, username);
+			xml.append("</user_name>\r\n<user_format_short>text</user_format_short>\r\n")
+					.append("<user_expiration>N</user_expiration>\r\n")
+					.append("<user_avatar_url>").append(getBaseURL())
+					.append("/i/guest.png</user_avatar_url>\r\n")
+					.append("<user_private>0</user_private>\r\n")
+					.append("<user_website></user_website>\r\n<user_email>");
+			escape(xml, username);
+			xml.append("@localhost</user_email>\r\n")
+					.append("<user_location></user_location>\r\n")
+					.append("<user_account_type>0</user_account_type>\r\n</user>");
+			return xml.toString();
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+package org.jpaste.pastebin.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jpaste.exceptions.PasteException;
+import org.jpaste.pastebin.Pastebin;
+import org.jpaste.pastebin.PastebinLink;
+import org.jpaste.pastebin.PastebinPaste;
+import org.jpaste.pastebin.local.LocalPastebinServer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * Events of {@link PastebinMetrics} for calls against a
+ * {@link LocalPastebinServer}
+ *
+ * @author Brian B
+ *
+ */
+public class PastebinMetricsTest {
+	private static LocalPastebinServer server;
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private final List<OperationEvent> events = new CopyOnWriteArrayList<OperationEvent>();
+	private final OperationListener listener = events::add;
+
+	@BeforeClass
+	public static void startServer() throws IOException {
+		server = new LocalPastebinServer();
+		server.start();
+		Pastebin.setBaseURL(server.getBaseURL() + "/");
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		Pastebin.setBaseURL(Pastebin.BASE_URL);
+		server.close();
+	}
+
+	@Before
+	public void addListener() {
+		PastebinMetrics.addListener(listener);
+	}
+
+	@After
+	public void removeListener() {
+		PastebinMetrics.removeListener(listener);
+	}
+
+	@Test
+	public void pasteAndRawAreReported() throws Exception {
+		PastebinLink link = new PastebinPaste("dev", "measured").paste();
+		assertEquals("measured", PastebinLink.getContents(link.getKey()));
+
+		assertEquals(2, events.size());
+		OperationEvent paste = events.get(0);
+		assertEquals(Operation.PASTE, paste.getOperation());
+		assertTrue(paste.isSuccess());
+		assertNull(paste.getError());
+		assertTrue(paste.getRequestBytes() > 0);
+		assertTrue(paste.getResponseBytes() > 0);
+		assertTrue(paste.getNetworkNanos() > 0);
+		assertTrue(paste.getNetworkNanos() <= paste.getTotalNanos());
+
+		OperationEvent raw = events.get(1);
+		assertEquals(Operation.RAW, raw.getOperation());
+		assertTrue(raw.isSuccess());
+		assertEquals("measured".length(), raw.getResponseBytes());
+	}
+
+	@Test
+	public void streamedRawIsReportedOnClose() throws Exception {
+		PastebinLink link = new PastebinPaste("dev", "streamed").paste();
+		events.clear();
+
+		StringWriter writer = new StringWriter();
+		try (Reader reader = PastebinLink.openContentsReader(link.getKey())) {
+			char[] buffer = new char[4];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				writer.write(buffer, 0, read);
+			}
+			assertTrue(events.isEmpty());
+		}
+		assertEquals("streamed", writer.toString());
+		assertEquals(1, events.size());
+		assertEquals(Operation.RAW, events.get(0).getOperation());
+		assertTrue(events.get(0).isSuccess());
+
+		Path target = folder.newFile().toPath();
+		assertEquals(8, PastebinLink.downloadContents(link.getKey(), target));
+		assertEquals(2, events.size());
+		assertTrue(events.get(1).isSuccess());
+	}
+
+	@Test
+	public void missingStreamedRawIsReportedAsFailed() {
+		assertThrows(IOException.class,
+				() -> PastebinLink.openContents("missing"));
+
+		assertEquals(1, events.size());
+		assertEquals(Operation.RAW, events.get(0).getOperation());
+		assertEquals("HTTP 404", events.get(0).getError());
+	}
+
+	@Test
+	public void rejectedPasteReportsAnswer() {
+		PastebinPaste paste = new PastebinPaste("dev", "private");
+		paste.setVisibility(PastebinPaste.VISIBILITY_PRIVATE);
+		assertThrows(PasteException.class, paste::paste);
+
+		assertEquals(1, events.size());
+		assertFalse(events.get(0).isSuccess());
+		assertEquals("Bad API request, invalid api_paste_private", events
+				.get(0).getError());
+	}
+
+	@Test
+	public void noProbeWithoutListener() throws Exception {
+		assertNotNull(OperationProbe.start(Operation.RAW));
+		PastebinMetrics.removeListener(listener);
+		assertFalse(PastebinMetrics.isEnabled());
+		assertNull(OperationProbe.start(Operation.RAW));
+
+		new PastebinPaste("dev", "unmeasured").paste();
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void probeFinishesOnce() {
+		OperationProbe probe = OperationProbe.start(Operation.LIST);
+		OperationProbe.finish(probe, null);
+		OperationProbe.finish(probe, "late");
+		OperationProbe.finish(null, null);
+
+		assertEquals(1, events.size());
+		assertTrue(events.get(0).isSuccess());
+	}
+
+	@Test
+	public void failingListenerDoesNotFailCall() throws Exception {
+		OperationListener failing = event -> {
+			throw new IllegalStateException();
+		};
+		PastebinMetrics.addListener(failing);
+		try {
+			assertNotNull(new PastebinPaste("dev", "still pasted").paste());
+		} finally {
+			PastebinMetrics.removeListener(failing);
+		}
+		assertEquals(1, events.size());
+	}
+
+	@Test
+	public void recorderCountsErrors() {
+		OperationRecorder recorder = new OperationRecorder();
+		recorder.onOperation(new OperationEvent(Operation.PASTE, 3000000, 2000000,
+				10, 20, null));
+		recorder.onOperation(new OperationEvent(Operation.PASTE, 1000000, 1000000,
+				10, 30, "HTTP 503"));
+		recorder.onOperation(new OperationEvent(Operation.PASTE, 1000000, 1000000,
+				10, 30, "HTTP 503"));
+
+		OperationStats stats = recorder.getStats(Operation.PASTE);
+		assertEquals(3, stats.getCount());
+		assertEquals(2, stats.getErrorCount());
+		assertEquals(Long.valueOf(2), stats.getErrors().get("HTTP 503"));
+		assertEquals(30, stats.getRequestBytes());
+		assertEquals(80, stats.getResponseBytes());
+		assertEquals(0, recorder.getStats(Operation.RAW).getCount());
+
+		recorder.reset();
+		assertEquals(0, stats.getCount());
+		assertTrue(stats.getErrors().isEmpty());
+	}
+
+	@Test
+	public void histogramPercentilesAreBucketBounds() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long nanos = 1; nanos <= 100; nanos++) {
+			histogram.record(nanos * 1000);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50500, histogram.getMean(), 0.001);
+		// buckets are at most a quarter of their base wide
+		long median = histogram.getPercentile(50);
+		assertTrue(median >= 50000 && median <= 50000 * 5 / 4);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 99000 && p99 <= 99000 * 5 / 4);
+
+		histogram.reset();
+		assertEquals(0, histogram.getPercentile(50));
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.jpaste.utils.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jpaste.utils.web.Deadline;
+import org.junit.Test;
+
+/**
+ *
+ * Sharing of concurrent calls by a {@link SingleFlight}
+ *
+ * @author Brian B
+ *
+ */
+public class SingleFlightTest {
+
+	@Test
+	public void concurrentCallsShareOneRun() throws Exception {
+		SingleFlight<String, Object> flights = new SingleFlight<String, Object>();
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Object result = new Object();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<Object> leader = executor.submit(() -> flights.execute(
+					"key", () -> {
+						runs.incrementAndGet();
+						started.countDown();
+						release.await();
+						return result;
+					}));
+			started.await();
+			List<Future<Object>> followers = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 3; i++) {
+				followers.add(executor.submit(() -> flights.execute("key",
+						() -> {
+							runs.incrementAndGet();
+							return new Object();
+						})));
+			}
+			while (flights.getSharedCalls() < followers.size()) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			assertSame(result, leader.get(5, TimeUnit.SECONDS));
+			for (Future<Object> follower : followers) {
+				assertSame(result, follower.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, runs.get());
+			assertEquals(1, flights.getCalls());
+			assertEquals(0, flights.getInFlight());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failureIsThrown() {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>();
+
+		assertThrows(IOException.class, () -> flights.execute("key", () -> {
+			throw new IOException("failed");
+		}));
+		assertEquals(0, flights.getInFlight());
+	}
+
+	@Test
+	public void sequentialCallsRunAgain() throws Exception {
+		SingleFlight<String, Integer> flights = new SingleFlight<String, Integer>();
+		AtomicInteger runs = new AtomicInteger();
+
+		assertEquals(1, (int) flights.execute("key", runs::incrementAndGet));
+		assertEquals(2, (int) flights.execute("key", runs::incrementAndGet));
+		assertEquals(0, flights.getSharedCalls());
+	}
+
+	@Test
+	public void sharedFailureIsThrownToFollowers() {
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> followFailedLeader(null, () -> {
+					throw new IOException("failed");
+				}));
+		assertEquals("failed", e.getCause().getMessage());
+	}
+
+	@Test
+	public void cancelledLeaderIsRunAgain() throws Exception {
+		assertEquals("own", followFailedLeader(null, () -> {
+			throw new InterruptedIOException("Interrupted.");
+		}));
+	}
+
+	@Test
+	public void leaderDeadlineIsRunAgain() throws Exception {
+		Deadline deadline = Deadline.after(50, TimeUnit.MILLISECONDS);
+		assertEquals("own", followFailedLeader(deadline, () -> {
+			while (!deadline.isExpired()) {
+				Thread.sleep(5);
+			}
+			throw new SocketTimeoutException("Deadline exceeded.");
+		}));
+	}
+
+	/**
+	 * Runs a failing call with a caller joining it, which answers
+	 * <code>own</code> if it runs the call itself
+	 *
+	 * @return result of the joining caller
+	 */
+	private static Object followFailedLeader(Deadline deadline,
+			Deadline.Call<Object, Exception> failure) throws Exception {
+		SingleFlight<String, Object> flights = new SingleFlight<String, Object>();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch joined = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Deadline.Call<Object, Exception> call = () -> flights.execute("key",
+					() -> {
+						started.countDown();
+						joined.await();
+						return failure.call();
+					});
+			Future<Object> leader = executor.submit(() -> deadline == null ? call
+					.call() : deadline.call(call));
+			started.await();
+			Future<Object> follower = executor.submit(() -> flights.execute(
+					"key", () -> "own"));
+			while (flights.getSharedCalls() < 1) {
+				Thread.sleep(1);
+			}
+			joined.countDown();
+
+			assertThrows(ExecutionException.class,
+					() -> leader.get(5, TimeUnit.SECONDS));
+			return follower.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.jpaste.utils.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ *
+ * Permits handed out by a {@link TokenBucket}
+ *
+ * @author Brian B
+ *
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void burstIsGrantedAtOnce() {
+		TokenBucket bucket = new TokenBucket(1, 3);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(bucket.tryAcquire());
+		}
+
+		assertFalse(bucket.tryAcquire());
+		assertEquals(3, bucket.getGranted());
+		assertEquals(1, bucket.getRejected());
+	}
+
+	@Test
+	public void acquireWaitsForRefill() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(50, 1);
+		bucket.acquire();
+		long start = System.nanoTime();
+		bucket.acquire();
+
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+				.toNanos(10));
+		assertTrue(bucket.getWaitNanos() > 0);
+	}
+
+	@Test
+	public void timedAcquireGivesUpWithoutReserving()
+			throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(1, 1);
+		bucket.acquire();
+
+		assertEquals(-1, bucket.tryAcquire(10, TimeUnit.MILLISECONDS));
+		assertTrue(bucket.getAvailableTokens() < 1);
+		assertTrue(bucket.getAvailableTokens() > -0.5);
+	}
+
+	@Test
+	public void timedAcquireWaitsWithinTimeout() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(100, 1);
+		bucket.acquire();
+
+		assertTrue(bucket.tryAcquire(1, TimeUnit.SECONDS) >= 0);
+	}
+
+	@Test
+	public void noLimitNeverWaits() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(0, 1);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(0, bucket.acquire());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void burstMustBePositive() {
+		new TokenBucket(1, 0);
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.jpaste.utils.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *
+ * State changes of a {@link CircuitBreaker}
+ *
+ * @author Brian B
+ *
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	public void opensAtThreshold() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+		for (int i = 0; i < 2; i++) {
+			assertTrue(breaker.allowRequest());
+			breaker.onFailure();
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		breaker.onFailure();
+
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		assertEquals(1, breaker.getTrips());
+		assertEquals(1, breaker.getRejected());
+	}
+
+	@Test
+	public void successResetsFailures() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+		breaker.allowRequest();
+		breaker.onFailure();
+		breaker.allowRequest();
+		breaker.onSuccess();
+
+		assertEquals(0, breaker.getConsecutiveFailures());
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void halfOpenAllowsOneTrial() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(1, 10);
+		breaker.allowRequest();
+		breaker.onFailure();
+		Thread.sleep(30);
+
+		assertTrue(breaker.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		breaker.onSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void failedTrialReopens() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(1, 10);
+		breaker.allowRequest();
+		breaker.onFailure();
+		Thread.sleep(30);
+		breaker.allowRequest();
+		breaker.onFailure();
+
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(2, breaker.getTrips());
+	}
+
+	@Test
+	public void releaseFreesTrialWithoutVerdict() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(1, 10);
+		breaker.allowRequest();
+		breaker.onFailure();
+		Thread.sleep(30);
+		assertTrue(breaker.allowRequest());
+		breaker.release();
+
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		assertFalse(breaker.allowRequest());
+	}
+
+}
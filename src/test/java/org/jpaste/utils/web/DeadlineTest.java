@@ -0,0 +1,62 @@
+package org.jpaste.utils.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ *
+ * Thread scoping and arithmetic of {@link Deadline}
+ *
+ * @author Brian B
+ *
+ */
+public class DeadlineTest {
+
+	@Test
+	public void earliestWins() {
+		Deadline soon = Deadline.after(1, TimeUnit.SECONDS);
+		Deadline later = Deadline.after(1, TimeUnit.HOURS);
+
+		assertSame(soon, Deadline.earliest(soon, later));
+		assertSame(soon, Deadline.earliest(later, soon));
+		assertSame(later, Deadline.earliest(null, later));
+		assertNull(Deadline.earliest(null, null));
+	}
+
+	@Test
+	public void expiry() throws InterruptedException {
+		Deadline deadline = Deadline.after(10, TimeUnit.MILLISECONDS);
+		assertFalse(deadline.isExpired());
+		Thread.sleep(30);
+
+		assertTrue(deadline.isExpired());
+		assertEquals(0, deadline.remaining(TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void callScopesDeadlineToThread() {
+		Deadline outer = Deadline.after(1, TimeUnit.SECONDS);
+		Deadline inner = Deadline.after(1, TimeUnit.HOURS);
+
+		assertNull(Deadline.current());
+		outer.call(() -> {
+			assertSame(outer, Deadline.current());
+			// a later deadline doesn't extend the one in effect
+			inner.call(() -> {
+				assertSame(outer, Deadline.current());
+				return null;
+			});
+			assertSame(outer, Deadline.current());
+			return null;
+		});
+		assertNull(Deadline.current());
+	}
+
+}
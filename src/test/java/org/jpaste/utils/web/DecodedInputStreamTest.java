@@ -0,0 +1,106 @@
+package org.jpaste.utils.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+/**
+ *
+ * Decompression of response bodies by {@link DecodedInputStream}
+ *
+ * @author Brian B
+ *
+ */
+public class DecodedInputStreamTest {
+	private static final byte[] TEXT = text();
+
+	@Test
+	public void gzip() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(TEXT);
+		}
+
+		assertArrayEquals(TEXT, decoded(compressed.toByteArray(), "gzip"));
+		assertArrayEquals(TEXT, decoded(compressed.toByteArray(), " X-GZIP "));
+	}
+
+	@Test
+	public void zlibDeflate() throws IOException {
+		assertArrayEquals(TEXT, decoded(deflate(false), "deflate"));
+	}
+
+	@Test
+	public void rawDeflate() throws IOException {
+		assertArrayEquals(TEXT, decoded(deflate(true), "deflate"));
+	}
+
+	@Test
+	public void unknownEncodingIsPassedThrough() throws IOException {
+		InputStream raw = new ByteArrayInputStream(TEXT);
+
+		assertSame(raw, DecodedInputStream.decode(raw, null));
+		assertSame(raw, DecodedInputStream.decode(raw, "br"));
+	}
+
+	@Test
+	public void restOfBodyIsDrained() throws IOException {
+		byte[] compressed = deflate(false);
+		byte[] body = new byte[compressed.length + 100];
+		System.arraycopy(compressed, 0, body, 0, compressed.length);
+		ByteArrayInputStream raw = new ByteArrayInputStream(body);
+
+		assertArrayEquals(TEXT, readAll(DecodedInputStream.decode(raw, "deflate")));
+		assertEquals(0, raw.available());
+	}
+
+	private static byte[] deflate(boolean nowrap) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+		try (DeflaterOutputStream out = new DeflaterOutputStream(compressed,
+				deflater)) {
+			out.write(TEXT);
+		} finally {
+			deflater.end();
+		}
+		return compressed.toByteArray();
+	}
+
+	private static byte[] decoded(byte[] body, String encoding)
+			throws IOException {
+		try (InputStream in = DecodedInputStream.decode(
+				new ByteArrayInputStream(body), encoding)) {
+			return readAll(in);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] text() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			builder.append("paste line ").append(i).append('\n');
+		}
+		return builder.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
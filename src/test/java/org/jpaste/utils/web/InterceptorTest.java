@@ -0,0 +1,113 @@
+package org.jpaste.utils.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * {@link Interceptor}s and {@link RequestTrace}s of a {@link WebClient} over
+ * an {@link InMemoryTransport}
+ *
+ * @author Brian B
+ *
+ */
+public class InterceptorTest {
+	private final InMemoryTransport transport = new InMemoryTransport();
+	private final WebClient client = new WebClient(transport);
+	private final List<RequestTrace> traces = new CopyOnWriteArrayList<RequestTrace>();
+
+	@Before
+	public void setUp() {
+		transport.setHandler("/echo", exchange -> InMemoryTransport.response(
+				exchange, 200, String.valueOf(exchange.getHeaders().get(
+						"X-Test"))));
+		client.addRequestListener(traces::add);
+	}
+
+	@Test
+	public void answeredExchangeSkipsTransport() {
+		client.addInterceptor(chain -> InMemoryTransport.response(
+				chain.getExchange(), 200, "cached"));
+
+		assertEquals("cached", client.getContents("http://local/echo", null));
+		assertEquals(0, transport.getRequests());
+		assertEquals(1, traces.size());
+		RequestTrace trace = traces.get(0);
+		assertTrue(trace.isShortCircuited());
+		assertEquals(0, trace.getExchanges());
+		assertEquals(200, trace.getStatusCode());
+	}
+
+	@Test
+	public void answeredErrorStatusFailsRequest() {
+		client.addInterceptor(chain -> InMemoryTransport.response(
+				chain.getExchange(), 404, "not cached"));
+
+		WebException e = assertThrows(WebException.class,
+				() -> client.getContents("http://local/echo", null));
+		assertEquals(404, e.getStatusCode());
+		assertEquals(0, transport.getRequests());
+		assertEquals(1, traces.size());
+		assertNotNull(traces.get(0).getError());
+	}
+
+	@Test
+	public void addedHeadersReachTransport() {
+		client.addInterceptor(chain -> chain.proceed(chain.getExchange()
+				.withHeader("X-Test", "first")));
+		client.addInterceptor(chain -> {
+			assertEquals("first", chain.getExchange().getHeaders().get("X-Test"));
+			return chain.proceed(chain.getExchange().withHeader("X-Test",
+					"second"));
+		});
+
+		assertEquals("second", client.getContents("http://local/echo", null));
+		assertEquals(1, transport.getRequests());
+		assertFalse(traces.get(0).isShortCircuited());
+		assertEquals(1, traces.get(0).getExchanges());
+	}
+
+	@Test
+	public void retriesPassThroughInterceptors() {
+		AtomicInteger calls = new AtomicInteger();
+		transport.setHandler("/flaky", exchange -> InMemoryTransport.response(
+				exchange, calls.incrementAndGet() < 3 ? 503 : 200, "ok"));
+		AtomicInteger seen = new AtomicInteger();
+		client.addInterceptor(chain -> {
+			seen.incrementAndGet();
+			return chain.proceed(chain.getExchange());
+		});
+		client.setRetryPolicy(new RetryPolicy(3, 1, 1));
+
+		assertEquals("ok", client.getContents("http://local/flaky", null));
+		assertEquals(3, seen.get());
+		assertEquals(3, traces.get(0).getAttempts());
+	}
+
+	@Test
+	public void traceNamesApiOption() {
+		Post post = new Post();
+		post.put("api_option", "paste");
+		post.put("api_paste_code", "code");
+
+		assertEquals("null", client.getContents("http://local/echo", post));
+		RequestTrace trace = traces.get(0);
+		assertEquals("POST", trace.getMethod());
+		assertEquals("paste", trace.getApiOption());
+		assertEquals("http://local/echo", trace.getLink());
+		assertNull(trace.getError());
+		assertTrue(trace.getTotalNanos() >= trace.getFirstByteNanos());
+	}
+
+}
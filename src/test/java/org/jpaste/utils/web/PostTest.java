@@ -0,0 +1,120 @@
+package org.jpaste.utils.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * Encoding of the values of a {@link Post}
+ *
+ * @author Brian B
+ *
+ */
+public class PostTest {
+	private static final String TEXT = "a+b = c & d\r\né€ 😀 ~*-._/?";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void stringsAreEncodedLikeURLEncoder() throws IOException {
+		Post post = new Post();
+		post.put("api_option", "paste");
+		post.put("api_paste_code", TEXT);
+
+		assertEquals("api_option=paste&api_paste_code=" + encode(TEXT),
+				post.getPost());
+		assertEquals(post.getPost(), written(post));
+		assertEquals(post.getPost().length(), post.getContentLength());
+	}
+
+	@Test
+	public void characterSequencesAreEncodedLikeURLEncoder()
+			throws IOException {
+		Post post = new Post();
+		post.put("api_paste_code", new StringBuilder(TEXT));
+		String expected = "api_paste_code=" + encode(TEXT);
+
+		assertEquals(expected, written(post));
+		assertEquals(expected, written(post));
+		assertEquals(-1, post.getContentLength());
+	}
+
+	@Test
+	public void longValuesAreEncodedAcrossBuffers() throws IOException {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 100000) {
+			text.append(TEXT);
+		}
+		Post post = new Post();
+		post.put("api_paste_code", text);
+
+		assertEquals("api_paste_code=" + encode(text.toString()), written(post));
+	}
+
+	@Test
+	public void filesAreEncodedAsUtf8() throws IOException {
+		Path file = folder.newFile("paste.txt").toPath();
+		Files.write(file, TEXT.getBytes(StandardCharsets.UTF_8));
+		Post post = new Post();
+		post.put("api_option", "paste");
+		post.put("api_paste_code", file);
+		String expected = "api_option=paste&api_paste_code=" + encode(TEXT);
+
+		assertTrue(post.isRepeatable());
+		assertEquals(expected, written(post));
+		assertEquals(expected, written(post));
+		assertEquals(-1, post.getContentLength());
+	}
+
+	@Test
+	public void readersAreWrittenOnce() throws IOException {
+		Post post = new Post();
+		post.put("api_paste_code", new StringReader(TEXT));
+
+		assertFalse(post.isRepeatable());
+		assertEquals(-1, post.getContentLength());
+		assertEquals("api_paste_code=" + encode(TEXT), written(post));
+	}
+
+	@Test
+	public void countingPostAddsWrittenBytes() throws IOException {
+		Post post = new Post();
+		post.put("api_option", "paste");
+		post.put("api_paste_code", new StringBuilder(TEXT));
+		AtomicLong bytes = new AtomicLong();
+		Post counting = post.counting(bytes);
+
+		assertEquals("paste", counting.get("api_option"));
+		String expected = written(counting);
+		assertEquals(post.getPost(), expected);
+		assertEquals(expected.length(), bytes.get());
+		written(post);
+		assertEquals(expected.length(), bytes.get());
+	}
+
+	private static String written(Post post) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		post.writeTo(out);
+		return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+	}
+
+	private static String encode(String text) throws IOException {
+		return URLEncoder.encode(text, "UTF-8");
+	}
+
+}
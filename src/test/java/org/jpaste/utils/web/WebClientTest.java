@@ -0,0 +1,363 @@
+package org.jpaste.utils.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * Requests of a {@link WebClient} against an embedded HTTP server
+ *
+ * @author Brian B
+ *
+ */
+public class WebClientTest {
+	private static final String LONG_TEXT = longText();
+	private final AtomicInteger flakyCalls = new AtomicInteger();
+	private final AtomicInteger downCalls = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private HttpServer server;
+	private ExecutorService executor;
+	private String baseURL;
+	private WebClient client;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/text", exchange -> respond(exchange, 200, "hello"));
+		server.createContext("/echo", exchange -> respond(exchange, 200,
+				new String(readAll(exchange.getRequestBody()),
+						StandardCharsets.US_ASCII)));
+		server.createContext("/chunked", exchange -> {
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream out = exchange.getResponseBody();
+			for (int i = 0; i < 100; i++) {
+				out.write(("line " + i + "\n").getBytes(StandardCharsets.US_ASCII));
+				out.flush();
+			}
+			out.close();
+		});
+		server.createContext("/compressed", exchange -> {
+			String accepted = exchange.getRequestHeaders().getFirst(
+					"Accept-Encoding");
+			if (accepted == null || !accepted.contains("gzip")) {
+				respond(exchange, 200, LONG_TEXT);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = new GZIPOutputStream(
+					exchange.getResponseBody())) {
+				out.write(LONG_TEXT.getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		server.createContext("/flaky", exchange -> respond(exchange,
+				flakyCalls.incrementAndGet() < 3 ? 503 : 200, "answer"));
+		server.createContext("/down", exchange -> {
+			downCalls.incrementAndGet();
+			respond(exchange, 503, "down");
+		});
+		server.createContext("/slow", exchange -> {
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			respond(exchange, 200, "late");
+		});
+		server.createContext("/missing", exchange -> respond(exchange, 404,
+				"not here"));
+		server.createContext("/moved", exchange -> {
+			exchange.getResponseHeaders().set("Location", "/text");
+			respond(exchange, 302, "");
+		});
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+		InetSocketAddress address = server.getAddress();
+		baseURL = "http://" + address.getAddress().getHostAddress() + ":"
+				+ address.getPort();
+		client = new WebClient(new ConnectionPool(2, 60000));
+	}
+
+	@After
+	public void stopServer() {
+		release.countDown();
+		client.close();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void connectionsAreReused() {
+		for (int i = 0; i < 3; i++) {
+			assertEquals("hello", client.getContents(baseURL + "/text", null));
+		}
+		ConnectionPool pool = client.getConnectionPool();
+
+		assertEquals(1, pool.getMisses());
+		assertEquals(2, pool.getHits());
+		assertEquals(1, pool.getIdleConnectionCount());
+		assertEquals(0, pool.getLeasedConnectionCount());
+	}
+
+	@Test
+	public void postBodyIsSent() {
+		Post post = new Post();
+		post.put("api_option", "paste");
+		post.put("api_paste_code", "a & b");
+
+		assertEquals("api_option=paste&api_paste_code=a+%26+b",
+				client.getContents(baseURL + "/echo", post));
+	}
+
+	@Test
+	public void chunkedResponseIsRead() {
+		String contents = client.getContents(baseURL + "/chunked", null);
+
+		assertEquals(100, contents.split("\n").length);
+		assertEquals("hello", client.getContents(baseURL + "/text", null));
+		assertEquals(1, client.getConnectionPool().getMisses());
+	}
+
+	@Test
+	public void errorBodyIsDrainedBeforeReuse() {
+		assertThrows(RuntimeException.class,
+				() -> client.getContents(baseURL + "/missing", null));
+
+		assertEquals("hello", client.getContents(baseURL + "/text", null));
+		assertEquals(1, client.getConnectionPool().getMisses());
+	}
+
+	@Test
+	public void redirectsAreFollowed() {
+		assertEquals("hello", client.getContents(baseURL + "/moved", null));
+	}
+
+	@Test
+	public void idleConnectionsAreEvicted() throws InterruptedException {
+		client.getConnectionPool().setIdleTimeout(10);
+		client.getContents(baseURL + "/text", null);
+		Thread.sleep(50);
+
+		assertEquals(1, client.getConnectionPool().evictIdleConnections());
+		assertEquals(0, client.getConnectionPool().getIdleConnectionCount());
+	}
+
+	@Test
+	public void compressedResponseIsDecoded() {
+		assertEquals(LONG_TEXT, client.getContents(baseURL + "/compressed", null));
+		assertTrue(client.getWireBytes() < client.getDecodedBytes());
+		assertEquals("hello", client.getContents(baseURL + "/text", null));
+		assertEquals(1, client.getConnectionPool().getMisses());
+	}
+
+	@Test
+	public void compressionCanBeDisabled() {
+		client.setCompression(false);
+
+		assertEquals(LONG_TEXT, client.getContents(baseURL + "/compressed", null));
+		assertEquals(client.getWireBytes(), client.getDecodedBytes());
+	}
+
+	@Test
+	public void getIsRetried() {
+		client.setRetryPolicy(new RetryPolicy(3, 1, 1));
+
+		assertEquals("answer", client.getContents(baseURL + "/flaky", null));
+		assertEquals(3, flakyCalls.get());
+		assertEquals(2, client.getRetries());
+	}
+
+	@Test
+	public void postIsNotRetried() {
+		client.setRetryPolicy(new RetryPolicy(3, 1, 1));
+		Post post = new Post();
+		post.put("api_option", "paste");
+
+		assertThrows(RuntimeException.class,
+				() -> client.getContents(baseURL + "/down", post));
+		assertEquals(1, downCalls.get());
+	}
+
+	@Test
+	public void nonIdempotentGetIsNotRetried() {
+		client.setRetryPolicy(new RetryPolicy(3, 1, 1));
+		WebRequest request = new WebRequest(baseURL + "/down");
+		request.setIdempotent(false);
+
+		assertThrows(RuntimeException.class, () -> client.getContents(request));
+		assertEquals(1, downCalls.get());
+	}
+
+	@Test
+	public void breakerOpensAfterFailures() throws IOException {
+		client.setRetryPolicy(RetryPolicy.NONE);
+		client.setCircuitBreaker(2, 60000);
+		for (int i = 0; i < 2; i++) {
+			assertThrows(IOException.class,
+					() -> client.open(baseURL + "/down", null));
+		}
+		CircuitBreaker breaker = client.getCircuitBreaker(baseURL + "/down");
+
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertThrows(CircuitOpenException.class,
+				() -> client.open(baseURL + "/down", null));
+		assertEquals(2, downCalls.get());
+		assertEquals(1, breaker.getRejected());
+	}
+
+	@Test
+	public void clientErrorsDontTripBreaker() throws IOException {
+		client.setRetryPolicy(RetryPolicy.NONE);
+		client.setCircuitBreaker(1, 60000);
+		assertThrows(IOException.class,
+				() -> client.open(baseURL + "/missing", null));
+
+		assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker(
+				baseURL + "/missing").getState());
+	}
+
+	@Test
+	public void requestDeadlineAbortsRead() {
+		client.setRetryPolicy(RetryPolicy.NONE);
+		WebRequest request = new WebRequest(baseURL + "/slow");
+		request.setDeadline(Deadline.after(100, TimeUnit.MILLISECONDS));
+		long start = System.nanoTime();
+
+		assertThrows(RuntimeException.class, () -> client.getContents(request));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+	}
+
+	@Test
+	public void threadDeadlineApplies() {
+		client.setRetryPolicy(RetryPolicy.NONE);
+		long start = System.nanoTime();
+
+		assertThrows(RuntimeException.class, () -> Deadline.after(100,
+				TimeUnit.MILLISECONDS).call(
+				() -> client.getContents(baseURL + "/slow", null)));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+	}
+
+	@Test
+	public void readTimeoutAbortsRead() {
+		client.setRetryPolicy(RetryPolicy.NONE);
+		client.setReadTimeout(100);
+
+		assertThrows(RuntimeException.class,
+				() -> client.getContents(baseURL + "/slow", null));
+	}
+
+	@Test
+	public void interruptAbortsRequest() throws InterruptedException {
+		client.setRetryPolicy(RetryPolicy.NONE);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread caller = new Thread(() -> {
+			try {
+				client.getContents(baseURL + "/slow", null);
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		});
+		caller.start();
+		Thread.sleep(100);
+		caller.interrupt();
+		caller.join(5000);
+
+		assertFalse(caller.isAlive());
+		assertTrue(failure.get() instanceof RuntimeException);
+	}
+
+	@Test
+	public void trialIsReleasedWithoutVerdict() throws Exception {
+		String link = "http://pastebin.test/endpoint";
+		String[] mode = { "down" };
+		InMemoryTransport transport = new InMemoryTransport();
+		transport.setHandler("/endpoint", exchange -> {
+			switch (mode[0]) {
+			case "down":
+				return InMemoryTransport.response(exchange, 503, "down");
+			case "broken":
+				throw new IllegalStateException("broken handler");
+			case "cancelled":
+				throw new InterruptedIOException("cancelled");
+			default:
+				return InMemoryTransport.response(exchange, 200, "ok");
+			}
+		});
+		WebClient memoryClient = new WebClient(transport);
+		memoryClient.setRetryPolicy(RetryPolicy.NONE);
+		memoryClient.setCircuitBreaker(1, 20);
+		assertThrows(IOException.class, () -> memoryClient.open(link, null));
+		CircuitBreaker breaker = memoryClient.getCircuitBreaker(link);
+		Thread.sleep(40);
+
+		mode[0] = "broken";
+		assertThrows(IllegalStateException.class, () -> memoryClient.open(link, null));
+		mode[0] = "cancelled";
+		assertThrows(InterruptedIOException.class,
+				() -> memoryClient.open(link, null));
+		assertTrue(breaker.getState() != CircuitBreaker.State.CLOSED);
+
+		mode[0] = "up";
+		memoryClient.open(link, null).close();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	private static void respond(HttpExchange exchange, int code, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static String longText() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			if (i > 0) {
+				builder.append('\n');
+			}
+			builder.append("paste line ").append(i);
+		}
+		return builder.toString();
+	}
+
+}